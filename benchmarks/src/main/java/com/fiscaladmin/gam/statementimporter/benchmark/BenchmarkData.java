@@ -0,0 +1,94 @@
+package com.fiscaladmin.gam.statementimporter.benchmark;
+
+import com.fiscaladmin.gam.statementimporter.parser.Format;
+import com.fiscaladmin.gam.statementimporter.parser.StatementParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Synthetic statement files for the benchmarks, produced by {@link StatementGenerator}.
+ */
+public final class BenchmarkData {
+
+    public static final String LHV_HEADER =
+            "\"Kliendi konto\",\"Dokumendi number\",\"Kuupäev\",\"Saaja/maksja konto\","
+                    + "\"Saaja/maksja nimi\",\"Saaja panga kood\",\"Tühi\",\"Deebet/Kreedit (D/C)\","
+                    + "\"Summa\",\"Viitenumber\",\"Arhiveerimistunnus\",\"Selgitus\","
+                    + "\"Teenustasu\",\"Valuuta\",\"Isikukood või registrikood\","
+                    + "\"Saaja/maksja panga BIC\",\"Makse algataja nimi\","
+                    + "\"Kande viide\",\"Konto teenusepakkuja viide\"";
+
+    public static final String SWEDBANK_HEADER =
+            "\"Kliendi konto\";\"Dok nr\";\"Makse kuupäev\";\"Saaja/maksja konto\";"
+                    + "\"Saaja/maksja nimi\";\"Saaja/maksja pank\";\"D/C\";\"Summa\";"
+                    + "\"Viitenumber\";\"Arhiveerimistunnus\";\"Selgitus\";\"Teenustasu\";"
+                    + "\"Valuuta\";\"Isikukood/registrikood\"";
+
+    public static final String SECU_HEADER =
+            "\"VÄÄRTUSPÄEV\",\"TEHINGUPÄEV\",\"TEHING\",\"SÜMBOL\",\"VÄÄRTPABER\","
+                    + "\"KOGUS\",\"HIND\",\"VALUUTA\",\"NETOSUMMA\",\"TEENUSTASU\","
+                    + "\"KOKKU\",\"VIIDE\",\"KOMMENTAAR\"";
+
+    private BenchmarkData() {
+        // utility class
+    }
+
+    /**
+     * Writes statement 0 of {@link #generator} to a temp file deleted on exit.
+     *
+     * @param format the export layout
+     * @param rows   number of data rows
+     * @param seed   random seed
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    public static File writeStatement(Format format, int rows, long seed) throws IOException {
+        File file = File.createTempFile("bench-" + format.name().toLowerCase() + "-", ".csv");
+        file.deleteOnExit();
+        return generator(format, rows, seed).write(0, file);
+    }
+
+    /**
+     * Returns the generator behind the benchmark files: one account, a quarter of
+     * the rows without a provider reference, and consolidation groups of three rows.
+     *
+     * @param format the export layout
+     * @param rows   data rows per statement
+     * @param seed   random seed
+     * @return a generator with no overlap between statements
+     */
+    public static StatementGenerator generator(Format format, int rows, long seed) {
+        StatementGenerator generator = new StatementGenerator(format, seed);
+        generator.setRows(rows);
+        generator.setEmptyReferenceShare(0.25);
+        generator.setGroupCardinality(3);
+        return generator;
+    }
+
+    /**
+     * Generates and parses a statement, returning parsed rows as the importer sees them.
+     *
+     * @param format the export layout
+     * @param rows   number of data rows
+     * @param seed   random seed
+     * @return parsed rows
+     * @throws IOException if the temp file cannot be written or read
+     */
+    public static List<String[]> parsedRows(Format format, int rows, long seed) throws IOException {
+        File file = writeStatement(format, rows, seed);
+        try {
+            return StatementParser.parse(file, format);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Returns the built-in format of an account type's benchmark data.
+     */
+    public static Format formatFor(String accountType) {
+        return "secu".equals(accountType) ? Format.SECURITIES : Format.LHV_BANK;
+    }
+}
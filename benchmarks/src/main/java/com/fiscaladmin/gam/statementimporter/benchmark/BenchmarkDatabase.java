@@ -0,0 +1,150 @@
+package com.fiscaladmin.gam.statementimporter.benchmark;
+
+import com.fiscaladmin.gam.statementimporter.dedup.DedupBloomFilters;
+import com.fiscaladmin.gam.statementimporter.dedup.DedupKeyIndex;
+import com.fiscaladmin.gam.statementimporter.dedup.DedupSchema;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * In-memory H2 database in MySQL mode with the raw and consolidated transaction
+ * tables, laid out as in the Joget form tables (all {@code VARCHAR} / {@code TEXT}).
+ */
+public final class BenchmarkDatabase {
+
+    private BenchmarkDatabase() {
+        // utility class
+    }
+
+    /**
+     * Opens a private in-memory database and creates the four transaction tables,
+     * with the raw tables migrated to the stored dedup key column.
+     *
+     * @param name database name, unique per benchmark state
+     * @return an open auto-commit connection; closing it drops the database
+     * @throws SQLException if the database cannot be created
+     */
+    public static Connection open(String name) throws SQLException {
+        Connection con = DriverManager.getConnection("jdbc:h2:mem:" + name + ";MODE=MySQL", "sa", "");
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE app_fd_bank_account_trx ("
+                    + "id VARCHAR(255) PRIMARY KEY, "
+                    + "c_statement_id VARCHAR(255), "
+                    + "c_transaction_id VARCHAR(10), "
+                    + "c_account_number VARCHAR(255), "
+                    + "c_document_nr VARCHAR(255), "
+                    + "c_payment_date VARCHAR(255), "
+                    + "c_other_side_account VARCHAR(255), "
+                    + "c_other_side_name VARCHAR(255), "
+                    + "c_other_side_bank VARCHAR(255), "
+                    + "c_d_c VARCHAR(10), "
+                    + "c_payment_amount VARCHAR(255), "
+                    + "c_reference_number VARCHAR(255), "
+                    + "c_archival_number VARCHAR(255), "
+                    + "c_payment_description TEXT, "
+                    + "c_transaction_fee VARCHAR(255), "
+                    + "c_currency VARCHAR(255), "
+                    + "c_customer_id VARCHAR(255), "
+                    + "c_other_side_bic VARCHAR(255), "
+                    + "c_initiator VARCHAR(255), "
+                    + "c_transaction_reference VARCHAR(255), "
+                    + "c_provider_reference VARCHAR(255), "
+                    + "dateCreated VARCHAR(50), "
+                    + "createdBy VARCHAR(255)"
+                    + ")");
+
+            stmt.execute("CREATE TABLE app_fd_sec_account_trx ("
+                    + "id VARCHAR(255) PRIMARY KEY, "
+                    + "c_statement_id VARCHAR(255), "
+                    + "c_transaction_id VARCHAR(10), "
+                    + "c_value_date VARCHAR(255), "
+                    + "c_transaction_date VARCHAR(255), "
+                    + "c_type VARCHAR(255), "
+                    + "c_ticker VARCHAR(255), "
+                    + "c_description TEXT, "
+                    + "c_quantity VARCHAR(255), "
+                    + "c_price VARCHAR(255), "
+                    + "c_currency VARCHAR(255), "
+                    + "c_amount VARCHAR(255), "
+                    + "c_fee VARCHAR(255), "
+                    + "c_total_amount VARCHAR(255), "
+                    + "c_reference VARCHAR(255), "
+                    + "c_comment TEXT, "
+                    + "dateCreated VARCHAR(50), "
+                    + "createdBy VARCHAR(255)"
+                    + ")");
+
+            stmt.execute("CREATE TABLE app_fd_bank_total_trx ("
+                    + "id VARCHAR(255) PRIMARY KEY, "
+                    + "c_statement_id VARCHAR(255), "
+                    + "c_statement_reference VARCHAR(50), "
+                    + "c_account_number VARCHAR(255), "
+                    + "c_document_nr VARCHAR(255), "
+                    + "c_payment_date VARCHAR(255), "
+                    + "c_other_side_account VARCHAR(255), "
+                    + "c_other_side_name VARCHAR(255), "
+                    + "c_other_side_bank VARCHAR(255), "
+                    + "c_d_c VARCHAR(10), "
+                    + "c_payment_description TEXT, "
+                    + "c_currency VARCHAR(255), "
+                    + "c_customer_id VARCHAR(255), "
+                    + "c_other_side_bic VARCHAR(255), "
+                    + "c_payment_amount VARCHAR(255), "
+                    + "c_transaction_fee VARCHAR(255), "
+                    + "c_provider_reference TEXT, "
+                    + "c_status VARCHAR(50), "
+                    + "dateCreated VARCHAR(50), "
+                    + "createdBy VARCHAR(255)"
+                    + ")");
+
+            stmt.execute("CREATE TABLE app_fd_secu_total_trx ("
+                    + "id VARCHAR(255) PRIMARY KEY, "
+                    + "c_statement_id VARCHAR(255), "
+                    + "c_statement_reference VARCHAR(50), "
+                    + "c_value_date VARCHAR(255), "
+                    + "c_transaction_date VARCHAR(255), "
+                    + "c_type VARCHAR(255), "
+                    + "c_ticker VARCHAR(255), "
+                    + "c_description TEXT, "
+                    + "c_currency VARCHAR(255), "
+                    + "c_quantity VARCHAR(255), "
+                    + "c_price VARCHAR(255), "
+                    + "c_amount VARCHAR(255), "
+                    + "c_fee VARCHAR(255), "
+                    + "c_total_amount VARCHAR(255), "
+                    + "c_reference TEXT, "
+                    + "c_status VARCHAR(50), "
+                    + "dateCreated VARCHAR(50), "
+                    + "createdBy VARCHAR(255)"
+                    + ")");
+            DedupSchema.migrate(con);
+        } catch (SQLException e) {
+            con.close();
+            throw e;
+        }
+        return con;
+    }
+
+    /**
+     * Removes all rows from a table.
+     */
+    public static void truncate(Connection con, String table) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("TRUNCATE TABLE " + table);
+        }
+    }
+
+    /**
+     * Removes all rows from a raw transaction table together with the dedup key
+     * index entries and Bloom filters {@code RawTransactionPersister} writes
+     * alongside them.
+     */
+    public static void truncateRawRows(Connection con, String rawTable) throws SQLException {
+        truncate(con, rawTable);
+        truncate(con, DedupKeyIndex.TABLE);
+        truncate(con, DedupBloomFilters.TABLE);
+    }
+}
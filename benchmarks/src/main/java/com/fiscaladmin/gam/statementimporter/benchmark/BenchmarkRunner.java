@@ -0,0 +1,32 @@
+package com.fiscaladmin.gam.statementimporter.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code benchmarks.jar}: the standard JMH command line with the GC
+ * profiler always enabled, so every result reports ops/s together with
+ * {@code gc.alloc.rate} (MB/s) and {@code gc.alloc.rate.norm} (bytes/op).
+ * <p>
+ * All JMH options apply, e.g. {@code -p rows=1000,100000} or a benchmark regex
+ * such as {@code ParseBenchmark}.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+        // entry point only
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
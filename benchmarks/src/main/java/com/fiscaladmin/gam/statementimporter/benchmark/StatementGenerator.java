@@ -0,0 +1,350 @@
+package com.fiscaladmin.gam.statementimporter.benchmark;
+
+import com.fiscaladmin.gam.statementimporter.parser.Format;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Generates realistic LHV, Swedbank and securities statement CSVs of any size, with
+ * the exact headers {@code CsvFormatDetector} recognises and no customer data.
+ * <p>
+ * A generator describes a series of consecutive statements of one account
+ * (statement 0, 1, 2, ...). Every row is a pure function of the seed, the statement
+ * number and the row index, so any statement can be regenerated on its own and a
+ * re-exported row is byte-identical to the original. The knobs:
+ * <ul>
+ *   <li><b>rows</b> — data rows per statement</li>
+ *   <li><b>periodDays</b> — days covered by each statement; row dates advance
+ *       evenly through the period</li>
+ *   <li><b>overlap</b> — share of each statement's period (and of its rows, at the
+ *       start) that falls inside the previous statement's period. The dedup
+ *       check finds the previous statement only when this is above 0</li>
+ *   <li><b>duplicateRatio</b> — share of the overlapping rows that are re-exports of
+ *       the previous statement's rows (same dedup key); the rest are new. A statement
+ *       therefore has about {@code rows × overlap × duplicateRatio} duplicates</li>
+ *   <li><b>emptyReferenceShare</b> — share of rows with an empty
+ *       {@code provider_reference} (LHV) or {@code reference} (securities), which
+ *       forces the composite dedup key. Swedbank has no provider reference column,
+ *       so it always uses the composite key</li>
+ *   <li><b>groupCardinality</b> — raw rows per consolidation group: consecutive rows
+ *       share every GROUP BY column (document number, date, counterparty, ... for
+ *       bank; dates, type, ticker, security name, currency for securities) and
+ *       differ in amounts and references. Group keys are unique, so the consolidated
+ *       row count is exactly {@code ceil(rows / groupCardinality)} for a statement
+ *       without duplicates</li>
+ * </ul>
+ * From the command line:
+ * <pre>
+ * java -cp benchmarks.jar com.fiscaladmin.gam.statementimporter.benchmark.StatementGenerator \
+ *     LHV_BANK 1000000 3 out/ [overlap] [duplicateRatio] [emptyReferenceShare] [groupCardinality] [seed]
+ * </pre>
+ * writes {@code out/LHV_BANK-0.csv} ... {@code out/LHV_BANK-2.csv} and prints each
+ * statement's period.
+ */
+public final class StatementGenerator {
+
+    private static final String[] CURRENCIES = {"EUR", "EUR", "EUR", "EUR", "USD", "SEK", "GBP"};
+    private static final String[] BANKS = {"HABAEE2X", "EEUHEE2X", "LHVBEE22", "RIKOEE22", "NDEAEE2X"};
+    private static final String[] COMPANIES = {"Näidis OÜ", "Põhja Kaubandus AS", "Šokolaadi Tehas OÜ",
+            "Jõe Ehitus AS", "Küla Pood OÜ", "Ülikooli Kohvik OÜ", "Tallinna Vesi AS", "Elering AS"};
+    private static final String[] TICKERS = {"AAPL", "MSFT", "TSLA", "SMCI", "NVDA", "AMZN", "LHV1T",
+            "TKM1T", "EEG1T", "HLMBK095034FA", "SXR8", "VWCE", "IWDA", "BTC1T", "TAL1T", "ARC1T"};
+
+    private final Format format;
+    private final long seed;
+    private final String accountNumber;
+
+    private int rows = 1000;
+    private int periodDays = 30;
+    private double overlap;
+    private double duplicateRatio;
+    private double emptyReferenceShare = 0.25;
+    private int groupCardinality = 1;
+    private LocalDate startDate = LocalDate.of(2024, 1, 1);
+
+    /**
+     * @param format the export layout to generate
+     * @param seed   seed; the same seed and settings always produce the same files
+     */
+    public StatementGenerator(Format format, long seed) {
+        this.format = format;
+        this.seed = seed;
+        this.accountNumber = "EE" + (100000000000000000L + Math.floorMod(mix(seed, -1, -1), 900000000000000000L));
+    }
+
+    public void setRows(int rows) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("rows must be >= 0: " + rows);
+        }
+        this.rows = rows;
+    }
+
+    public void setPeriodDays(int periodDays) {
+        if (periodDays < 1) {
+            throw new IllegalArgumentException("periodDays must be >= 1: " + periodDays);
+        }
+        this.periodDays = periodDays;
+    }
+
+    public void setOverlap(double overlap) {
+        this.overlap = share("overlap", overlap);
+    }
+
+    public void setDuplicateRatio(double duplicateRatio) {
+        this.duplicateRatio = share("duplicateRatio", duplicateRatio);
+    }
+
+    public void setEmptyReferenceShare(double emptyReferenceShare) {
+        this.emptyReferenceShare = share("emptyReferenceShare", emptyReferenceShare);
+    }
+
+    public void setGroupCardinality(int groupCardinality) {
+        if (groupCardinality < 1) {
+            throw new IllegalArgumentException("groupCardinality must be >= 1: " + groupCardinality);
+        }
+        this.groupCardinality = groupCardinality;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    /**
+     * Returns the account number shared by every bank statement of this generator.
+     */
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    /**
+     * Returns the first day of a statement's period.
+     */
+    public LocalDate getFromDate(int statement) {
+        return startDate.plusDays((long) statement * (periodDays - overlapDays()));
+    }
+
+    /**
+     * Returns the last day of a statement's period.
+     */
+    public LocalDate getToDate(int statement) {
+        return getFromDate(statement).plusDays(periodDays - 1);
+    }
+
+    /**
+     * Returns the header line of the format, without a line break.
+     */
+    public String header() {
+        switch (format) {
+            case LHV_BANK:
+                return BenchmarkData.LHV_HEADER;
+            case SWEDBANK:
+                return BenchmarkData.SWEDBANK_HEADER;
+            default:
+                return BenchmarkData.SECU_HEADER;
+        }
+    }
+
+    /**
+     * Returns one data row as it appears in the file (raw columns, including the
+     * empty LHV "Tühi" column).
+     *
+     * @param statement statement number, from 0
+     * @param index     row index within the statement, from 0
+     */
+    public String[] rawRow(int statement, int index) {
+        if (index < 0 || index >= rows) {
+            throw new IndexOutOfBoundsException("Row " + index + " of " + rows);
+        }
+        int overlapRows = overlapRows();
+        if (statement > 0 && index < overlapRows
+                && unit(mix(seed, statement, index), 1) < duplicateRatio) {
+            // Re-export of the matching row at the end of the previous statement
+            return rawRow(statement - 1, rows - overlapRows + index);
+        }
+        return (format == Format.SECURITIES) ? secuRow(statement, index) : bankRow(statement, index);
+    }
+
+    /**
+     * Writes a statement (header and all rows, CRLF line ends, every field quoted).
+     *
+     * @param statement statement number, from 0
+     * @param out       destination; not closed
+     * @throws IOException if writing fails
+     */
+    public void write(int statement, Writer out) throws IOException {
+        char separator = format.getSeparator();
+        out.write(header());
+        out.write("\r\n");
+        for (int i = 0; i < rows; i++) {
+            String[] row = rawRow(statement, i);
+            for (int c = 0; c < row.length; c++) {
+                if (c > 0) {
+                    out.write(separator);
+                }
+                out.write('"');
+                out.write(row[c]);
+                out.write('"');
+            }
+            out.write("\r\n");
+        }
+    }
+
+    /**
+     * Writes a statement to a UTF-8 file.
+     *
+     * @param statement statement number, from 0
+     * @param file      destination, overwritten
+     * @return {@code file}
+     * @throws IOException if writing fails
+     */
+    public File write(int statement, File file) throws IOException {
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            write(statement, out);
+        }
+        return file;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: StatementGenerator <LHV_BANK|SWEDBANK|SECURITIES> <rows> <statements> <outDir>"
+                    + " [overlap] [duplicateRatio] [emptyReferenceShare] [groupCardinality] [seed]");
+            System.exit(2);
+        }
+        Format format = Format.valueOf(args[0]);
+        StatementGenerator generator = new StatementGenerator(format,
+                (args.length > 8) ? Long.parseLong(args[8]) : 42L);
+        generator.setRows(Integer.parseInt(args[1]));
+        int statements = Integer.parseInt(args[2]);
+        File outDir = new File(args[3]);
+        if (args.length > 4) {
+            generator.setOverlap(Double.parseDouble(args[4]));
+        }
+        if (args.length > 5) {
+            generator.setDuplicateRatio(Double.parseDouble(args[5]));
+        }
+        if (args.length > 6) {
+            generator.setEmptyReferenceShare(Double.parseDouble(args[6]));
+        }
+        if (args.length > 7) {
+            generator.setGroupCardinality(Integer.parseInt(args[7]));
+        }
+
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Cannot create " + outDir);
+        }
+        for (int s = 0; s < statements; s++) {
+            File file = generator.write(s, new File(outDir, format.name() + "-" + s + ".csv"));
+            System.out.println(file + "\t" + generator.getFromDate(s) + "\t" + generator.getToDate(s));
+        }
+    }
+
+    // ── Rows ────────────────────────────────────────────────────────────
+
+    private String[] bankRow(int statement, int index) {
+        int group = index / groupCardinality;
+        int inGroup = index % groupCardinality;
+        SplittableRandom g = new SplittableRandom(mix(seed, statement, -2 - group));
+        SplittableRandom r = new SplittableRandom(mix(seed, statement, index));
+
+        int counterparty = g.nextInt(1000);
+        boolean debit = g.nextInt(3) != 0;
+        String documentNr = Long.toString(1000000L + (long) statement * rows + group);
+        String date = rowDate(statement, group * groupCardinality).toString();
+        String bank = BANKS[counterparty % BANKS.length];
+        long cents = (1 + r.nextInt(500000)) * (long) groupCardinality + inGroup; // unique within the group
+        String amount = money(debit ? -cents : cents);
+        String reference = (r.nextInt(4) == 0) ? "" : Integer.toString(1000 + counterparty * 7);
+        String archival = statement + "-" + index + "-" + Long.toHexString(r.nextLong() & 0xFFFFFFL).toUpperCase();
+        String description = "Arve nr " + documentNr;
+        String fee = (r.nextInt(10) == 0) ? "-0.50" : "0.00";
+        String currency = CURRENCIES[g.nextInt(CURRENCIES.length)];
+        String customerId = Integer.toString(10000000 + counterparty * 37);
+        String name = COMPANIES[counterparty % COMPANIES.length] + " " + counterparty;
+        String otherAccount = "EE" + (200000000000000000L + counterparty * 1000003L);
+
+        if (format == Format.SWEDBANK) {
+            return new String[]{accountNumber, documentNr, date, otherAccount, name, bank,
+                    debit ? "D" : "C", amount, reference, archival, description, fee, currency, customerId};
+        }
+        String providerReference = (unit(mix(seed, statement, index), 2) < emptyReferenceShare)
+                ? "" : String.format("%016X%016X", mix(seed, statement, index), mix(seed, index, statement));
+        return new String[]{accountNumber, documentNr, date, otherAccount, name, bank, "",
+                debit ? "D" : "C", amount, reference, archival, description, fee, currency, customerId,
+                bank, "Initiator " + (counterparty % 13), "KV" + statement + "-" + index, providerReference};
+    }
+
+    private String[] secuRow(int statement, int index) {
+        int group = index / groupCardinality;
+        int inGroup = index % groupCardinality;
+        SplittableRandom g = new SplittableRandom(mix(seed, statement, -2 - group));
+        SplittableRandom r = new SplittableRandom(mix(seed, statement, index));
+
+        LocalDate tradeDate = rowDate(statement, group * groupCardinality);
+        boolean buy = g.nextInt(3) != 0;
+        String ticker = TICKERS[g.nextInt(TICKERS.length)];
+        String currency = ticker.endsWith("1T") ? "EUR" : CURRENCIES[g.nextInt(CURRENCIES.length)];
+        long priceCents = 100 + g.nextInt(50000);
+        long quantity = (1 + r.nextInt(100)) * (long) groupCardinality + inGroup; // unique within the group
+        long amountCents = quantity * priceCents;
+        long feeCents = 100 + r.nextInt(500);
+        long net = buy ? -amountCents : amountCents;
+
+        String reference = (unit(mix(seed, statement, index), 2) < emptyReferenceShare)
+                ? "" : Long.toString(900000000L + (long) statement * rows + index);
+        return new String[]{tradeDate.plusDays(2).toString(), tradeDate.toString(), buy ? "ost" : "müük",
+                ticker, ticker + " order " + statement + "-" + group, Long.toString(quantity), money(priceCents),
+                currency, money(net), money(-feeCents), money(net - feeCents), reference,
+                (r.nextInt(5) == 0) ? "Partial fill" : ""};
+    }
+
+    private LocalDate rowDate(int statement, int index) {
+        return getFromDate(statement).plusDays((long) index * periodDays / Math.max(rows, 1));
+    }
+
+    private int overlapRows() {
+        return (int) Math.round(overlap * rows);
+    }
+
+    private int overlapDays() {
+        return (int) Math.round(overlap * periodDays);
+    }
+
+    private static String money(long cents) {
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        return ((cents < 0) ? "-" : "") + (abs / 100) + ((fraction < 10) ? ".0" : ".") + fraction;
+    }
+
+    private static double share(String name, double value) {
+        if (!(value >= 0.0 && value <= 1.0)) {
+            throw new IllegalArgumentException(name + " must be within [0, 1]: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Uniform value in [0, 1) for a row and a purpose, independent of the row's content.
+     */
+    private static double unit(long hash, int purpose) {
+        return (mix(hash, purpose, 0) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * SplitMix64-style mix of a seed and two coordinates.
+     */
+    private static long mix(long seed, long a, long b) {
+        long z = seed + 0x9E3779B97F4A7C15L * (a + 1) + 0xC2B2AE3D27D4EB4FL * (b + 1);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,98 @@
+package com.fiscaladmin.gam.statementimporter.consolidation;
+
+import com.fiscaladmin.gam.statementimporter.benchmark.BenchmarkData;
+import com.fiscaladmin.gam.statementimporter.benchmark.BenchmarkDatabase;
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfigurations;
+import com.fiscaladmin.gam.statementimporter.parser.Format;
+import com.fiscaladmin.gam.statementimporter.persister.RawTransactionPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consolidation of one statement's raw rows on H2 (MySQL mode): the GROUP BY query
+ * followed by {@code ConsolidatedRowPersister.persist}, as run by
+ * {@code StatementConsolidator}. Raw rows are loaded once; the target table is
+ * emptied before every invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class ConsolidationBenchmark {
+
+    private static final String STATEMENT_ID = "STMT-BENCH";
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"bank", "secu"})
+    public String accountType;
+
+    private Connection con;
+    private boolean bank;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        Format format = BenchmarkData.formatFor(accountType);
+        bank = "bank".equals(accountType);
+        con = BenchmarkDatabase.open("consolidation");
+        RawTransactionPersister.persist(BenchmarkData.parsedRows(format, rows, 42L), STATEMENT_ID,
+                MappingConfigurations.getConfig(format), con);
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyTarget() throws SQLException {
+        BenchmarkDatabase.truncate(con, bank ? BankConsolidationQuery.TARGET_TABLE
+                : SecuConsolidationQuery.TARGET_TABLE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        con.close();
+    }
+
+    @Benchmark
+    public int consolidate() throws SQLException {
+        List<Map<String, String>> consolidated = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement(
+                bank ? BankConsolidationQuery.GROUP_BY_SQL : SecuConsolidationQuery.GROUP_BY_SQL)) {
+            ps.setString(1, STATEMENT_ID);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    consolidated.add(bank ? BankConsolidationQuery.readRow(rs) : SecuConsolidationQuery.readRow(rs));
+                }
+            }
+        }
+        if (bank) {
+            return ConsolidatedRowPersister.persist(consolidated, STATEMENT_ID, "STMT2024",
+                    BankConsolidationQuery.INSERT_SQL, BankConsolidationQuery.INSERT_COLUMNS,
+                    BankConsolidationQuery.TARGET_TABLE, con);
+        }
+        return ConsolidatedRowPersister.persist(consolidated, STATEMENT_ID, "STMT2024",
+                SecuConsolidationQuery.INSERT_SQL, SecuConsolidationQuery.INSERT_COLUMNS,
+                SecuConsolidationQuery.TARGET_TABLE, con);
+    }
+}
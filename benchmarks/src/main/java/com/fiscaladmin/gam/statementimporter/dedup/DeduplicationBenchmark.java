@@ -0,0 +1,79 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import com.fiscaladmin.gam.statementimporter.benchmark.BenchmarkData;
+import com.fiscaladmin.gam.statementimporter.benchmark.StatementGenerator;
+import com.fiscaladmin.gam.statementimporter.parser.Format;
+import com.fiscaladmin.gam.statementimporter.parser.StatementParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory dedup classification ({@code DeduplicationChecker.check(rows, accountType,
+ * existingKeys)}) of a statement whose period fully overlaps the previous one, with
+ * half of its rows re-exported from it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class DeduplicationBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"bank", "secu"})
+    public String accountType;
+
+    private List<String[]> parsed;
+    private Set<String> existingKeys;
+
+    @Setup(Level.Trial)
+    public void loadRows() throws IOException {
+        Format format = BenchmarkData.formatFor(accountType);
+        StatementGenerator generator = BenchmarkData.generator(format, rows, 42L);
+        generator.setOverlap(1.0);
+        generator.setDuplicateRatio(0.5);
+        parsed = parse(generator, 1, format);
+
+        int primary = DeduplicationChecker.primaryKeyIndex(accountType);
+        int[] composite = DeduplicationChecker.compositeKeyIndices(accountType);
+        existingKeys = new HashSet<>();
+        for (String[] row : parse(generator, 0, format)) {
+            existingKeys.add(DeduplicationChecker.extractKey(row, primary, composite));
+        }
+    }
+
+    @Benchmark
+    public DeduplicationResult check() {
+        return DeduplicationChecker.check(parsed, accountType, existingKeys);
+    }
+
+    private static List<String[]> parse(StatementGenerator generator, int statement, Format format)
+            throws IOException {
+        File file = generator.write(statement, File.createTempFile("bench-dedup-", ".csv"));
+        try {
+            return StatementParser.parse(file, format);
+        } finally {
+            file.delete();
+        }
+    }
+}
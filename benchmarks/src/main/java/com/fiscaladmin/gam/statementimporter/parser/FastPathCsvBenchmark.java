@@ -0,0 +1,81 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import com.fiscaladmin.gam.statementimporter.benchmark.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizing cost of the Commons CSV engine with and without the quote-free fast
+ * path of {@link FastPathCsvCursor}. The statement is parsed from memory, so only
+ * tokenizing is measured.
+ * <p>
+ * Runs on a generated statement of each format, or on a statement file given with
+ * {@code -p file=../test-data/bank_statement.csv} (its format is detected; the
+ * {@code format} and {@code rows} parameters are then ignored).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class FastPathCsvBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"LHV_BANK", "SWEDBANK", "SECURITIES"})
+    public Format format;
+
+    @Param({""})
+    public String file;
+
+    @Param({"true", "false"})
+    public boolean fastPath;
+
+    private String content;
+    private FormatDefinition definition;
+    private ColumnProjection projection;
+
+    @Setup(Level.Trial)
+    public void readStatement() throws IOException, UnrecognisedFormatException {
+        File source = file.isEmpty() ? BenchmarkData.writeStatement(format, rows, 42L) : new File(file);
+        Format sourceFormat = file.isEmpty() ? format : CsvFormatDetector.detect(source);
+        content = new String(Files.readAllBytes(source.toPath()), StandardCharsets.UTF_8);
+        if (file.isEmpty()) {
+            source.delete();
+        }
+        definition = FormatRegistry.builtIn(sourceFormat);
+        projection = ColumnProjection.all(definition);
+    }
+
+    @Benchmark
+    public long parse() throws IOException {
+        long count = 0;
+        try (RowCursor cursor = StatementParser.openCommonsCsv(
+                new BufferedReader(new StringReader(content)), definition, projection, fastPath)) {
+            while (cursor.nextRow() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
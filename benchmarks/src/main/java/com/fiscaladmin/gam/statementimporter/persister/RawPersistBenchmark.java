@@ -0,0 +1,73 @@
+package com.fiscaladmin.gam.statementimporter.persister;
+
+import com.fiscaladmin.gam.statementimporter.benchmark.BenchmarkData;
+import com.fiscaladmin.gam.statementimporter.benchmark.BenchmarkDatabase;
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfig;
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfigurations;
+import com.fiscaladmin.gam.statementimporter.parser.Format;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JDBC batch insert of raw rows into H2 (MySQL mode). The target table, the dedup
+ * key index and the Bloom filters are emptied before every invocation so each one
+ * inserts into the same starting state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class RawPersistBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"bank", "secu"})
+    public String accountType;
+
+    private Connection con;
+    private List<String[]> parsed;
+    private MappingConfig config;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        Format format = BenchmarkData.formatFor(accountType);
+        parsed = BenchmarkData.parsedRows(format, rows, 42L);
+        config = MappingConfigurations.getConfig(format);
+        con = BenchmarkDatabase.open("raw_persist");
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyTables() throws SQLException {
+        BenchmarkDatabase.truncateRawRows(con, config.getTargetTable());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        con.close();
+    }
+
+    @Benchmark
+    public int persist() throws SQLException {
+        return RawTransactionPersister.persist(parsed, "STMT-BENCH", config, con);
+    }
+}
@@ -3,6 +3,7 @@ package com.fiscaladmin.gam;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import com.fiscaladmin.gam.statementimporter.dedup.DeduplicationStats;
 import com.fiscaladmin.gam.statementimporter.lib.StatementConsolidator;
 import com.fiscaladmin.gam.statementimporter.lib.StatementImporter;
 import org.osgi.framework.BundleActivator;
@@ -51,8 +52,9 @@ public class Activator implements BundleActivator {
     /**
      * Called when the OSGi bundle is stopped.
      * <p>
-     * Unregisters all services that were registered in {@link #start(BundleContext)},
-     * ensuring clean shutdown and preventing memory leaks.
+     * Unregisters all services that were registered in {@link #start(BundleContext)}
+     * and the {@link DeduplicationStats} MBean, ensuring clean shutdown and
+     * preventing memory leaks.
      *
      * @param context the bundle context provided by the OSGi framework
      */
@@ -60,5 +62,6 @@ public class Activator implements BundleActivator {
         for (ServiceRegistration registration : registrationList) {
             registration.unregister();
         }
+        DeduplicationStats.unregister();
     }
 }
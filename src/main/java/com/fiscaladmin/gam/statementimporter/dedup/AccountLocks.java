@@ -0,0 +1,262 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.joget.commons.util.LogUtil;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serialises the de-duplication and persisting of imports for the same account.
+ * <p>
+ * A dedup check only sees committed rows, so two statements of one account
+ * imported at the same time would each miss the other's rows and both insert the
+ * shared transactions. An import holds its account's lock from the first key
+ * lookup until its last row is persisted; imports for other accounts take other
+ * locks and run in parallel.
+ * <p>
+ * Within the JVM an account maps to one of {@value #STRIPES} striped
+ * {@link ReentrantLock}s (unrelated accounts occasionally share a stripe and wait
+ * for each other, which is harmless). With {@link Scope#DATABASE}, a database
+ * advisory lock named after the account is taken as well, so imports on other
+ * nodes of a clustered Joget wait too: {@code GET_LOCK} on MySQL/MariaDB and a
+ * polled {@code pg_try_advisory_lock} on PostgreSQL, held on a connection of its
+ * own. On other
+ * databases only the JVM lock is taken, with a warning.
+ */
+public final class AccountLocks {
+
+    private static final String CLASS_NAME = AccountLocks.class.getName();
+
+    /** Number of in-JVM lock stripes. */
+    static final int STRIPES = 64;
+
+    /** Interval at which a PostgreSQL advisory lock is retried. */
+    private static final long POLL_MILLIS = 500;
+
+    /** Default time to wait for a lock before the import fails. */
+    public static final int DEFAULT_TIMEOUT_SECONDS = 600;
+
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock(true);
+        }
+    }
+
+    /**
+     * Where imports for one account are serialised.
+     */
+    public enum Scope {
+        /** Imports in this JVM (default). */
+        LOCAL,
+        /** Imports on every node sharing the database. */
+        DATABASE
+    }
+
+    private AccountLocks() {
+        // utility class
+    }
+
+    /**
+     * Takes the in-JVM lock of an account; see {@link #acquire(String, String, DataSource, int)}.
+     */
+    public static Handle acquire(String accountType, String account) {
+        return acquire(accountType, account, null, DEFAULT_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Takes the lock of an account, waiting up to {@code timeoutSeconds} for it.
+     *
+     * @param accountType    "bank" or "secu"
+     * @param account        account number (or other account identity)
+     * @param lockSource     data source for the database advisory lock, or {@code null}
+     *                       for the in-JVM lock only
+     * @param timeoutSeconds maximum wait for each of the two locks
+     * @return handle releasing the lock on {@link Handle#close()}; close it on the same thread
+     * @throws IllegalStateException if the lock is not granted in time
+     */
+    public static Handle acquire(String accountType, String account, DataSource lockSource, int timeoutSeconds) {
+        String name = lockName(accountType, account);
+        ReentrantLock lock = LOCKS[stripeOf(name)];
+        long start = System.currentTimeMillis();
+        try {
+            if (!lock.tryLock(timeoutSeconds, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out waiting for the import lock of account "
+                        + accountType + "/" + account);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for the import lock of account "
+                    + accountType + "/" + account, e);
+        }
+
+        Connection con = null;
+        try {
+            if (lockSource != null) {
+                con = lockDatabase(lockSource, name, timeoutSeconds);
+            }
+        } catch (RuntimeException e) {
+            lock.unlock();
+            throw e;
+        }
+        long waited = System.currentTimeMillis() - start;
+        if (waited > 1000) {
+            LogUtil.info(CLASS_NAME, "Waited " + waited + " ms for the import lock of account "
+                    + accountType + "/" + account);
+        }
+        return new Handle(lock, con, name);
+    }
+
+    /**
+     * Releases an account's lock on {@link #close()}.
+     */
+    public static final class Handle implements AutoCloseable {
+
+        private final ReentrantLock lock;
+        private final Connection con;
+        private final String name;
+        private boolean closed;
+
+        private Handle(ReentrantLock lock, Connection con, String name) {
+            this.lock = lock;
+            this.con = con;
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (con != null) {
+                    unlockDatabase(con, name);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the lock name of an account: a fixed-length hash, within the 64
+     * characters MySQL allows.
+     */
+    static String lockName(String accountType, String account) {
+        long[] hash = DedupKeyHash.hash(accountType + "\u0000" + (account != null ? account.trim() : ""));
+        return "stmt_import_" + Long.toHexString(hash[0]);
+    }
+
+    static int stripeOf(String name) {
+        return (name.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    private static Connection lockDatabase(DataSource lockSource, String name, int timeoutSeconds) {
+        Connection con = null;
+        try {
+            con = lockSource.getConnection();
+            String product = con.getMetaData().getDatabaseProductName();
+            boolean granted;
+            if (product != null && (product.contains("MySQL") || product.contains("MariaDB"))) {
+                // 1 granted, 0 timed out, NULL error
+                granted = queryInt(con, "SELECT GET_LOCK(?, " + timeoutSeconds + ")", name) == 1;
+            } else if (product != null && product.contains("PostgreSQL")) {
+                // pg_advisory_lock cannot time out, so poll the non-blocking variant
+                long deadline = System.currentTimeMillis() + timeoutSeconds * 1000L;
+                while (!(granted = queryInt(con, "SELECT CASE WHEN pg_try_advisory_lock(?) THEN 1 ELSE 0 END",
+                        DedupKeyHash.hash(name)[0]) == 1) && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(POLL_MILLIS);
+                }
+            } else {
+                LogUtil.warn(CLASS_NAME, "No advisory locks on " + product + ", serialising imports in this JVM only");
+                con.close();
+                return null;
+            }
+            if (!granted) {
+                throw new IllegalStateException("Timed out waiting for database import lock " + name);
+            }
+            return con;
+        } catch (SQLException | InterruptedException | RuntimeException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (con != null) {
+                try {
+                    con.close();
+                } catch (SQLException closeEx) {
+                    LogUtil.warn(CLASS_NAME, "Could not close lock connection: " + closeEx.getMessage());
+                }
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new IllegalStateException("Could not take database import lock " + name + ": "
+                    + e.getMessage(), e);
+        }
+    }
+
+    private static void unlockDatabase(Connection con, String name) {
+        boolean released = false;
+        try {
+            String product = con.getMetaData().getDatabaseProductName();
+            boolean postgres = product != null && product.contains("PostgreSQL");
+            if (postgres) {
+                released = queryInt(con, "SELECT CASE WHEN pg_advisory_unlock(?) THEN 1 ELSE 0 END",
+                        DedupKeyHash.hash(name)[0]) == 1;
+            } else {
+                released = queryInt(con, "SELECT RELEASE_LOCK(?)", name) == 1;
+            }
+            if (!released) {
+                LogUtil.warn(CLASS_NAME, "Database import lock " + name + " was not held at release");
+            }
+        } catch (SQLException e) {
+            LogUtil.warn(CLASS_NAME, "Could not release database import lock " + name + ": " + e.getMessage());
+        } finally {
+            if (!released) {
+                // The lock goes with the session, but a pool would keep the session
+                // open and hand it out again: end the physical connection instead
+                abort(con);
+            }
+            try {
+                con.close();
+            } catch (SQLException e) {
+                LogUtil.warn(CLASS_NAME, "Could not close lock connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Closes the physical connection behind a (possibly pooled) connection, so the
+     * pool discards it on {@code close()} rather than reusing its session.
+     */
+    private static void abort(Connection con) {
+        try {
+            con.abort(Runnable::run);
+        } catch (SQLException | RuntimeException | AbstractMethodError e) {
+            LogUtil.warn(CLASS_NAME, "Could not abort lock connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a one-parameter query returning a single number; {@code -1} for no row or NULL.
+     */
+    private static int queryInt(Connection con, String sql, Object param) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setObject(1, param);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return -1;
+                }
+                int value = rs.getInt(1);
+                return rs.wasNull() ? -1 : value;
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.joget.commons.util.LogUtil;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Finds which candidate dedup keys exist in the raw rows of the overlapping
+ * statements, without pulling the existing keys into the JVM.
+ * <p>
+ * The incoming keys are bulk-loaded into a session temporary table, which is then
+ * joined against the raw transaction table on its indexed stored key
+ * ({@link DedupKeyColumn#COLUMN}), or — while the statements are not fully keyed —
+ * on the primary key column (reference) and on the composite key expression, the
+ * same keys, built the same way, as the full load of {@link RawKeyLoader}.
+ * Only the colliding keys come back, so
+ * network transfer and heap use follow the size of the incoming file rather than
+ * the history of the account.
+ * <p>
+ * Keys match exactly, as in the full load: on MySQL each join also compares both
+ * sides {@code BINARY}, since the plain {@code =} (kept for the index) ignores case
+ * and trailing spaces under the default collations. A primary key is trimmed the
+ * way Java trims it; SQL {@code TRIM} strips spaces only, so the few primary keys
+ * that still start or end with another control character after it are fetched and
+ * trimmed in Java.
+ * <p>
+ * {@link #countExistingRows} gives the row count the automatic strategy choice in
+ * {@link DeduplicationOptions.LookupStrategy#AUTO} weighs against the incoming rows.
+ */
+public final class CandidateKeyPushdown {
+
+    private static final String CLASS_NAME = CandidateKeyPushdown.class.getName();
+
+    static final String TEMP_TABLE = "tmp_stmt_dedup_candidate";
+
+    /** Candidate keys per {@code executeBatch()} round trip into the temporary table. */
+    static final int INSERT_BATCH_SIZE = 1000;
+
+    private CandidateKeyPushdown() {
+        // utility class
+    }
+
+    /**
+     * Counts the raw rows of the given statements, through the {@code c_statement_id} index.
+     *
+     * @param con          JDBC connection
+     * @param statementIds statements to count (the overlapping statements)
+     * @param accountType  "bank" or "secu"
+     * @return number of existing raw rows
+     * @throws SQLException if a database error occurs
+     */
+    public static long countExistingRows(Connection con, List<String> statementIds, String accountType)
+            throws SQLException {
+        if (statementIds.isEmpty()) {
+            return 0;
+        }
+        String sql = "SELECT COUNT(*) FROM " + rawTable(accountType)
+                + " WHERE c_statement_id IN (" + placeholders(statementIds.size()) + ")";
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            for (int i = 0; i < statementIds.size(); i++) {
+                ps.setString(i + 1, statementIds.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the candidate keys that are dedup keys of a raw row of one of the
+     * given statements.
+     *
+     * @param con           JDBC connection (the temporary table lives in its session)
+     * @param statementIds  statements to match against (the overlapping statements)
+     * @param accountType   "bank" or "secu"
+     * @param candidateKeys dedup keys of the incoming rows
+     * @return the subset of {@code candidateKeys} found in the raw rows
+     * @throws SQLException if a database error occurs
+     */
+    public static Set<String> findExisting(Connection con, List<String> statementIds, String accountType,
+                                           Collection<String> candidateKeys) throws SQLException {
+        if (statementIds.isEmpty() || candidateKeys.isEmpty()) {
+            return new HashSet<>();
+        }
+        return findExisting(con, statementIds, accountType, candidateKeys,
+                DedupKeyColumn.keyed(con, accountType, statementIds));
+    }
+
+    /**
+     * As {@link #findExisting(Connection, List, String, Collection)}, for a caller
+     * that already knows whether the statements are fully keyed.
+     *
+     * @param stored whether every raw row of the statements has its stored key
+     *               ({@link DedupKeyColumn#keyed})
+     */
+    static Set<String> findExisting(Connection con, List<String> statementIds, String accountType,
+                                    Collection<String> candidateKeys, boolean stored) throws SQLException {
+        Set<String> found = new HashSet<>();
+        if (statementIds.isEmpty() || candidateKeys.isEmpty()) {
+            return found;
+        }
+
+        boolean mysql = isMySql(con);
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute((mysql ? "CREATE TEMPORARY TABLE IF NOT EXISTS " : "CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS ")
+                    + TEMP_TABLE + " (dedup_key VARCHAR(1024) NOT NULL)");
+            // Left over on a pooled connection if an earlier drop failed
+            stmt.execute("DELETE FROM " + TEMP_TABLE);
+        }
+        try {
+            try (PreparedStatement insert = con.prepareStatement(
+                    "INSERT INTO " + TEMP_TABLE + " (dedup_key) VALUES (?)")) {
+                int pending = 0;
+                for (String key : new LinkedHashSet<>(candidateKeys)) {
+                    insert.setString(1, key);
+                    insert.addBatch();
+                    if (++pending == INSERT_BATCH_SIZE) {
+                        insert.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    insert.executeBatch();
+                }
+            }
+
+            boolean bank = "bank".equals(accountType);
+            String primaryColumn = bank ? "c_provider_reference" : "c_reference";
+            String compositeKey = bank
+                    ? "CONCAT(IFNULL(r.c_account_number,''), '|', IFNULL(r.c_document_nr,''), '|', "
+                            + "IFNULL(r.c_payment_date,''), '|', IFNULL(r.c_payment_amount,''), '|', "
+                            + "IFNULL(r.c_currency,''), '|')"
+                    : "CONCAT(IFNULL(r.c_value_date,''), '|', IFNULL(r.c_transaction_date,''), '|', "
+                            + "IFNULL(r.c_type,''), '|', IFNULL(r.c_ticker,''), '|', "
+                            + "IFNULL(r.c_amount,''), '|', IFNULL(r.c_currency,''), '|')";
+            String statementIn = placeholders(statementIds.size());
+
+            // One indexed join on the stored key; without it, primary keys (stored
+            // untrimmed; the full load trims them in Java), then composite keys of
+            // rows without one. Two queries: MySQL cannot open a temporary table
+            // twice in one statement
+            String[] sqls = stored ? new String[]{
+                    "SELECT t.dedup_key FROM " + TEMP_TABLE + " t "
+                            + "JOIN " + rawTable(accountType) + " r ON "
+                            + equal("r." + DedupKeyColumn.COLUMN, "t.dedup_key", mysql) + " "
+                            + "WHERE r.c_statement_id IN (" + statementIn + ")"
+            } : new String[]{
+                    "SELECT t.dedup_key FROM " + TEMP_TABLE + " t "
+                            + "JOIN " + rawTable(accountType) + " r ON "
+                            + equal("TRIM(r." + primaryColumn + ")", "t.dedup_key", mysql) + " "
+                            + "WHERE r.c_statement_id IN (" + statementIn + ") "
+                            + "AND r." + primaryColumn + " IS NOT NULL AND r." + primaryColumn + " != ''",
+                    "SELECT t.dedup_key FROM " + TEMP_TABLE + " t "
+                            + "JOIN " + rawTable(accountType) + " r ON " + equal(compositeKey, "t.dedup_key", mysql)
+                            + " WHERE r.c_statement_id IN (" + statementIn + ") "
+                            + "AND (r." + primaryColumn + " IS NULL OR r." + primaryColumn + " = '')"
+            };
+            for (String sql : sqls) {
+                try (PreparedStatement ps = con.prepareStatement(sql)) {
+                    for (int i = 0; i < statementIds.size(); i++) {
+                        ps.setString(i + 1, statementIds.get(i));
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            found.add(rs.getString(1));
+                        }
+                    }
+                }
+            }
+
+            if (!stored) {
+                // Primary keys SQL TRIM leaves with a control character at either end
+                String trimmed = "TRIM(r." + primaryColumn + ")";
+                Set<String> candidates = new HashSet<>(candidateKeys);
+                try (PreparedStatement ps = con.prepareStatement("SELECT r." + primaryColumn + " FROM "
+                        + rawTable(accountType) + " r WHERE r.c_statement_id IN (" + statementIn + ") "
+                        + "AND r." + primaryColumn + " IS NOT NULL AND r." + primaryColumn + " != '' "
+                        + "AND (ASCII(" + trimmed + ") < 32 OR ASCII(RIGHT(" + trimmed + ", 1)) < 32)")) {
+                    for (int i = 0; i < statementIds.size(); i++) {
+                        ps.setString(i + 1, statementIds.get(i));
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            String key = rs.getString(1).trim();
+                            if (candidates.contains(key)) {
+                                found.add(key);
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute((mysql ? "DROP TEMPORARY TABLE IF EXISTS " : "DROP TABLE IF EXISTS ") + TEMP_TABLE);
+            } catch (SQLException e) {
+                LogUtil.warn(CLASS_NAME, "Could not drop " + TEMP_TABLE + ": " + e.getMessage());
+            }
+        }
+
+        LogUtil.info(CLASS_NAME, "Pushdown lookup: " + found.size() + " of " + candidateKeys.size()
+                + " candidate keys exist");
+        return found;
+    }
+
+    /**
+     * Returns an exact equality of two string expressions: the plain {@code =}, which
+     * can use an index, narrowed on MySQL by a {@code BINARY} comparison.
+     */
+    private static String equal(String left, String right, boolean mysql) {
+        return left + " = " + right + (mysql ? " AND BINARY " + left + " = BINARY " + right : "");
+    }
+
+    private static boolean isMySql(Connection con) throws SQLException {
+        String product = con.getMetaData().getDatabaseProductName();
+        return product != null && (product.contains("MySQL") || product.contains("MariaDB"));
+    }
+
+    private static String rawTable(String accountType) {
+        return "bank".equals(accountType) ? "app_fd_bank_account_trx" : "app_fd_sec_account_trx";
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+}
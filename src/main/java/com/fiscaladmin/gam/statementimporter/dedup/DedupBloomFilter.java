@@ -0,0 +1,146 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Bloom filter over 128-bit {@link DedupKeyHash} values.
+ * <p>
+ * Sized for an expected number of keys at about 1% false positives (10 bits and
+ * 7 probes per key). Probe positions are derived from the two hash halves by
+ * double hashing, so adding or probing a key costs no further hashing. A filter
+ * never reports a key it holds as absent; past its capacity the false-positive
+ * rate grows, and {@link DedupBloomFilters} rebuilds it larger.
+ * <p>
+ * {@link #toBytes()} / {@link #fromBytes(byte[])} serialise the filter, with its
+ * sizing and key count, for storage. Not thread-safe.
+ */
+public final class DedupBloomFilter {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASH_COUNT = 7;
+
+    /** Smallest capacity a filter is created with. */
+    static final int MIN_CAPACITY = 256;
+
+    private final int capacity;
+    private final int hashCount;
+    private final long numBits;
+    private final long[] bits;
+    private int count;
+
+    /**
+     * @param expectedKeys number of keys the filter should hold at its target false-positive rate
+     */
+    public DedupBloomFilter(int expectedKeys) {
+        this(Math.max(MIN_CAPACITY, expectedKeys), HASH_COUNT, 0, null);
+    }
+
+    private DedupBloomFilter(int capacity, int hashCount, int count, long[] bits) {
+        this.capacity = capacity;
+        this.hashCount = hashCount;
+        this.bits = (bits != null) ? bits : new long[(int) ((capacity * (long) BITS_PER_KEY + 63) >>> 6)];
+        this.numBits = this.bits.length * 64L;
+        this.count = count;
+    }
+
+    /**
+     * Adds a hashed key.
+     */
+    public void put(long hi, long lo) {
+        long combined = hi;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (combined & Long.MAX_VALUE) % numBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+            combined += lo;
+        }
+        count++;
+    }
+
+    /**
+     * Returns {@code false} if the key was certainly never added, {@code true} if it may have been.
+     */
+    public boolean mightContain(long hi, long lo) {
+        long combined = hi;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (combined & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+            combined += lo;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of keys added (duplicates included).
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns the number of keys the filter was sized for.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns whether more keys were added than the filter was sized for.
+     */
+    public boolean isSaturated() {
+        return count > capacity;
+    }
+
+    /**
+     * Serialises the filter: format version, sizing, key count and bit array.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(13 + bits.length * 8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(capacity);
+            out.writeInt(hashCount);
+            out.writeInt(count);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restores a filter serialised by {@link #toBytes()}.
+     *
+     * @throws IllegalArgumentException if the bytes are not a serialised filter
+     */
+    public static DedupBloomFilter fromBytes(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported Bloom filter format");
+            }
+            int capacity = in.readInt();
+            int hashCount = in.readInt();
+            int count = in.readInt();
+            int words = (int) ((capacity * (long) BITS_PER_KEY + 63) >>> 6);
+            if (capacity < 1 || hashCount < 1 || count < 0 || data.length != 13 + words * 8) {
+                throw new IllegalArgumentException("Corrupt Bloom filter");
+            }
+            long[] bits = new long[words];
+            for (int i = 0; i < words; i++) {
+                bits[i] = in.readLong();
+            }
+            return new DedupBloomFilter(capacity, hashCount, count, bits);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupt Bloom filter", e);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.joget.commons.util.LogUtil;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Persistent Bloom filters of the {@link DedupKeyIndex} entries, one per account
+ * type, account number (bank only) and calendar month.
+ * <p>
+ * A dedup check loads the filters of every account and month the overlapping
+ * statements have index entries in, and probes them before looking a row up in the
+ * index: a row with a primary key may match in any of them, a composite key (which
+ * holds the account and date) only in its own month. A row none of them knows is
+ * new without a database lookup. Filters cover every statement of the account, not
+ * just the overlapping ones, so a negative answer is always safe.
+ * <p>
+ * Filters are stored serialised in {@value #TABLE} and kept in step with the index:
+ * {@link DedupKeyIndex.Writer} adds the keys it writes (imports and back-fills), and
+ * {@link DedupKeyIndex#delete} rebuilds the filters of a deleted statement's months
+ * from the remaining entries. A missing filter (months indexed before the filters
+ * existed) or one filled past its capacity is rebuilt from the index on first use,
+ * so a bundle restart costs nothing and no full rebuild is ever needed.
+ * <p>
+ * Every update and rebuild reads the filter row with {@code SELECT ... FOR UPDATE}
+ * in the writing transaction (a short one of its own on an auto-commit connection),
+ * so concurrent imports sharing a month (all securities imports do), in this JVM or
+ * another, cannot drop each other's keys. The rows of one update are locked in
+ * {@link Bucket} order, all before the index is read, so two updates cannot
+ * deadlock and a rebuild sees every key published before it. On a manual-commit
+ * connection {@link DedupKeyIndex.Writer} publishes its keys just before the
+ * commit, so the rows stay locked only for it.
+ * <p>
+ * The table is not a Joget form table; {@link DedupSchema#migrate} creates it with
+ * the index table.
+ */
+public final class DedupBloomFilters {
+
+    private static final String CLASS_NAME = DedupBloomFilters.class.getName();
+
+    /** Name of the filter table. */
+    public static final String TABLE = "stmt_dedup_bloom";
+
+    /** Maximum number of months bound to one load query. */
+    static final int LOAD_CHUNK_SIZE = 200;
+
+    private DedupBloomFilters() {
+        // utility class
+    }
+
+    /**
+     * Account number and month ({@code yyyyMM}) of a filter. Ordered by account,
+     * then month, which is the order filter rows are locked in.
+     */
+    public static final class Bucket implements Comparable<Bucket> {
+
+        private final String account;
+        private final int period;
+
+        public Bucket(String account, int period) {
+            this.account = account;
+            this.period = period;
+        }
+
+        public String getAccount() {
+            return account;
+        }
+
+        public int getPeriod() {
+            return period;
+        }
+
+        @Override
+        public int compareTo(Bucket other) {
+            int c = account.compareTo(other.account);
+            return (c != 0) ? c : Integer.compare(period, other.period);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Bucket)) return false;
+            Bucket other = (Bucket) o;
+            return period == other.period && account.equals(other.account);
+        }
+
+        @Override
+        public int hashCode() {
+            return account.hashCode() * 31 + period;
+        }
+
+        @Override
+        public String toString() {
+            return account + "/" + period;
+        }
+    }
+
+    /**
+     * Loads the filters of the given months, rebuilding missing or saturated ones
+     * from the index.
+     *
+     * @param con         JDBC connection
+     * @param accountType "bank" or "secu"
+     * @param buckets     months to load
+     * @return one filter per requested month
+     * @throws SQLException if a database error occurs
+     */
+    public static Map<Bucket, DedupBloomFilter> load(Connection con, String accountType,
+                                                     Collection<Bucket> buckets) throws SQLException {
+        Map<Bucket, DedupBloomFilter> filters = new HashMap<>();
+        List<Bucket> list = new ArrayList<>(buckets);
+        for (int from = 0; from < list.size(); from += LOAD_CHUNK_SIZE) {
+            List<Bucket> chunk = list.subList(from, Math.min(from + LOAD_CHUNK_SIZE, list.size()));
+            StringBuilder sql = new StringBuilder("SELECT account, period, filter_data FROM " + TABLE
+                    + " WHERE account_type = ? AND (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i > 0 ? " OR " : "").append("(account = ? AND period = ?)");
+            }
+            sql.append(")");
+            try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+                int p = 1;
+                ps.setString(p++, accountType);
+                for (Bucket bucket : chunk) {
+                    ps.setString(p++, bucket.getAccount());
+                    ps.setInt(p++, bucket.getPeriod());
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Bucket bucket = new Bucket(rs.getString(1), rs.getInt(2));
+                        try {
+                            DedupBloomFilter filter = DedupBloomFilter.fromBytes(rs.getBytes(3));
+                            if (!filter.isSaturated()) {
+                                filters.put(bucket, filter);
+                            }
+                        } catch (IllegalArgumentException e) {
+                            LogUtil.warn(CLASS_NAME, "Rebuilding unreadable Bloom filter " + bucket
+                                    + ": " + e.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Bucket> missing = new ArrayList<>();
+        for (Bucket bucket : list) {
+            if (!filters.containsKey(bucket)) {
+                missing.add(bucket);
+            }
+        }
+        filters.putAll(rebuild(con, accountType, missing));
+        return filters;
+    }
+
+    /**
+     * Adds newly indexed keys to the filters of their months. Called once the
+     * index entries are committed, or on the connection that wrote them. Each
+     * filter row is locked for the read-modify-write.
+     *
+     * @param con         JDBC connection
+     * @param accountType "bank" or "secu"
+     * @param added       hashed keys per month, as {@code hi, lo} pairs
+     * @throws SQLException if a database error occurs
+     */
+    static void add(Connection con, String accountType, Map<Bucket, long[]> added) throws SQLException {
+        if (added.isEmpty()) {
+            return;
+        }
+        inTransaction(con, () -> {
+            for (Map.Entry<Bucket, byte[]> entry : lock(con, accountType, added.keySet()).entrySet()) {
+                Bucket bucket = entry.getKey();
+                DedupBloomFilter filter = parse(entry.getValue());
+                if (filter == null) {
+                    // Built from the index, which already holds the new entries
+                    rebuildLocked(con, accountType, bucket);
+                    continue;
+                }
+                long[] keys = added.get(bucket);
+                for (int i = 0; i < keys.length; i += 2) {
+                    filter.put(keys[i], keys[i + 1]);
+                }
+                if (filter.isSaturated()) {
+                    rebuildLocked(con, accountType, bucket);
+                } else {
+                    save(con, accountType, bucket, filter);
+                }
+            }
+        });
+    }
+
+    /**
+     * Rebuilds the filters of the given months from their index entries and stores
+     * them, with their rows locked.
+     *
+     * @return the rebuilt filters
+     * @throws SQLException if a database error occurs
+     */
+    static Map<Bucket, DedupBloomFilter> rebuild(Connection con, String accountType, Collection<Bucket> buckets)
+            throws SQLException {
+        Map<Bucket, DedupBloomFilter> filters = new HashMap<>();
+        if (buckets.isEmpty()) {
+            return filters;
+        }
+        inTransaction(con, () -> {
+            for (Bucket bucket : lock(con, accountType, buckets).keySet()) {
+                filters.put(bucket, rebuildLocked(con, accountType, bucket));
+            }
+        });
+        return filters;
+    }
+
+    /**
+     * Rebuilds the filter of one month, whose row the caller has locked.
+     */
+    private static DedupBloomFilter rebuildLocked(Connection con, String accountType, Bucket bucket)
+            throws SQLException {
+        List<long[]> keys = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement("SELECT key_hi, key_lo FROM " + DedupKeyIndex.TABLE
+                + " WHERE account_type = ? AND account = ? AND period = ?")) {
+            ps.setString(1, accountType);
+            ps.setString(2, bucket.getAccount());
+            ps.setInt(3, bucket.getPeriod());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    keys.add(new long[]{rs.getLong(1), rs.getLong(2)});
+                }
+            }
+        }
+
+        // Room to grow: the month may still receive a few more statements
+        DedupBloomFilter filter = new DedupBloomFilter(keys.size() * 2);
+        for (long[] key : keys) {
+            filter.put(key[0], key[1]);
+        }
+        save(con, accountType, bucket, filter);
+        return filter;
+    }
+
+    /**
+     * Locks the filter rows of the given months, in {@link Bucket} order, creating
+     * an empty placeholder row (read as "rebuild") for a month without one.
+     *
+     * @return the stored filter data per month, in lock order
+     */
+    private static Map<Bucket, byte[]> lock(Connection con, String accountType, Collection<Bucket> buckets)
+            throws SQLException {
+        List<Bucket> order = new ArrayList<>(new HashSet<>(buckets));
+        Collections.sort(order);
+        Map<Bucket, byte[]> locked = new LinkedHashMap<>();
+        try (PreparedStatement select = con.prepareStatement("SELECT filter_data FROM " + TABLE
+                + " WHERE account_type = ? AND account = ? AND period = ? FOR UPDATE")) {
+            for (Bucket bucket : order) {
+                byte[] data = selectForUpdate(select, accountType, bucket);
+                if (data == null) {
+                    insertPlaceholder(con, accountType, bucket);
+                    data = selectForUpdate(select, accountType, bucket);
+                }
+                locked.put(bucket, (data != null) ? data : new byte[0]);
+            }
+        }
+        return locked;
+    }
+
+    private static byte[] selectForUpdate(PreparedStatement select, String accountType, Bucket bucket)
+            throws SQLException {
+        select.setString(1, accountType);
+        select.setString(2, bucket.getAccount());
+        select.setInt(3, bucket.getPeriod());
+        try (ResultSet rs = select.executeQuery()) {
+            return rs.next() ? rs.getBytes(1) : null;
+        }
+    }
+
+    /**
+     * Inserts an empty filter row unless another transaction already has one.
+     */
+    private static void insertPlaceholder(Connection con, String accountType, Bucket bucket) throws SQLException {
+        String product = con.getMetaData().getDatabaseProductName();
+        boolean mySql = product != null && (product.contains("MySQL") || product.contains("MariaDB"));
+        boolean postgres = product != null && product.contains("PostgreSQL");
+        String sql = (mySql ? "INSERT IGNORE INTO " : "INSERT INTO ") + TABLE
+                + " (account_type, account, period, filter_data) VALUES (?, ?, ?, ?)"
+                + (postgres ? " ON CONFLICT DO NOTHING" : "");
+        try (PreparedStatement insert = con.prepareStatement(sql)) {
+            insert.setString(1, accountType);
+            insert.setString(2, bucket.getAccount());
+            insert.setInt(3, bucket.getPeriod());
+            insert.setBytes(4, new byte[0]);
+            insert.executeUpdate();
+        } catch (SQLException e) {
+            // Inserted concurrently: the row is there to lock
+            if (e.getSQLState() == null || !e.getSQLState().startsWith("23")) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reads stored filter data; {@code null} for a placeholder or unreadable filter.
+     */
+    private static DedupBloomFilter parse(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        try {
+            return DedupBloomFilter.fromBytes(data);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void save(Connection con, String accountType, Bucket bucket, DedupBloomFilter filter)
+            throws SQLException {
+        try (PreparedStatement update = con.prepareStatement("UPDATE " + TABLE
+                + " SET filter_data = ? WHERE account_type = ? AND account = ? AND period = ?")) {
+            update.setBytes(1, filter.toBytes());
+            update.setString(2, accountType);
+            update.setString(3, bucket.getAccount());
+            update.setInt(4, bucket.getPeriod());
+            update.executeUpdate();
+        }
+    }
+
+    /**
+     * Runs {@code work} in the connection's current transaction, or, on an
+     * auto-commit connection, in a transaction of its own.
+     */
+    private static void inTransaction(Connection con, SqlWork work) throws SQLException {
+        if (!con.getAutoCommit()) {
+            work.run();
+            return;
+        }
+        con.setAutoCommit(false);
+        try {
+            work.run();
+            con.commit();
+        } catch (SQLException | RuntimeException e) {
+            try {
+                con.rollback();
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+            throw e;
+        } finally {
+            con.setAutoCommit(true);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+}
@@ -0,0 +1,260 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.joget.commons.util.LogUtil;
+
+import java.sql.*;
+import java.util.List;
+
+/**
+ * Stored dedup key column ({@value #COLUMN}) of the bank and securities raw
+ * transaction tables.
+ * <p>
+ * {@code RawTransactionPersister} writes each row's dedup key — the string
+ * {@link DeduplicationChecker#extractKey} builds from the parsed row — next to the
+ * row, so the key-loading queries of {@link RawKeyLoader} and the join of
+ * {@link CandidateKeyPushdown} read (and, for the join, probe an index on) one
+ * column instead of evaluating the composite {@code CONCAT(IFNULL(...))} over every
+ * row of the overlapping statements.
+ * <p>
+ * The column is not a Joget form field, and imports never change the schema: an
+ * administrator adds it with {@link DedupSchema#migrate} and then keys the rows
+ * persisted before it with {@link #backfill}. Until then imports neither write nor read it,
+ * and a statement with unkeyed rows is read through the composite expression. A key
+ * longer than {@value #MAX_KEY_LENGTH} characters (never for rows within the
+ * documented field sizes) is not stored either.
+ * <p>
+ * Whether a table has the column is looked up as {@link DedupSchema} looks up its
+ * objects: once per database and table, a missing column again at most once a minute.
+ */
+public final class DedupKeyColumn {
+
+    private static final String CLASS_NAME = DedupKeyColumn.class.getName();
+
+    /** Name of the stored key column. */
+    public static final String COLUMN = "c_dedup_key";
+
+    /** Width of {@value #COLUMN}. */
+    static final int MAX_KEY_LENGTH = 255;
+
+    /** Rows keyed per {@code executeBatch()} round trip when back-filling. */
+    public static final int BACKFILL_BATCH_SIZE = 1000;
+
+    private DedupKeyColumn() {
+        // utility class
+    }
+
+    /**
+     * Returns the raw table of an account type.
+     */
+    static String rawTable(String accountType) {
+        return "bank".equals(accountType) ? "app_fd_bank_account_trx" : "app_fd_sec_account_trx";
+    }
+
+    /**
+     * Adds {@value #COLUMN} and its index to the raw table of an account type if it
+     * does not have them yet. The column step of {@link DedupSchema#migrate}.
+     *
+     * @param con         JDBC connection
+     * @param accountType "bank" or "secu"
+     * @throws SQLException if the column cannot be added
+     */
+    public static void migrate(Connection con, String accountType) throws SQLException {
+        String table = rawTable(accountType);
+        if (!columnExists(con, table)) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + COLUMN + " VARCHAR(" + MAX_KEY_LENGTH + ")");
+                stmt.execute("CREATE INDEX " + indexName(accountType) + " ON " + table + " (" + COLUMN + ")");
+            }
+            LogUtil.info(CLASS_NAME, "Added dedup key column " + COLUMN + " to " + table);
+        }
+        DedupSchema.present(con, table + "." + COLUMN);
+    }
+
+    /**
+     * Returns whether the raw table of an account type has {@value #COLUMN}, from
+     * the cached lookup.
+     *
+     * @param con         JDBC connection
+     * @param accountType "bank" or "secu"
+     * @return {@code true} if the column exists, {@code false} if it does not or cannot be checked
+     */
+    public static boolean exists(Connection con, String accountType) {
+        String table = rawTable(accountType);
+        return DedupSchema.exists(con, table + "." + COLUMN, () -> columnExists(con, table));
+    }
+
+    /**
+     * Returns whether every raw row of the given statements has its stored key.
+     * {@code false} means the statements' keys must be read through the composite
+     * expression.
+     *
+     * @param con          JDBC connection
+     * @param accountType  "bank" or "secu"
+     * @param statementIds statements about to be read
+     * @throws SQLException if a database error occurs
+     */
+    public static boolean keyed(Connection con, String accountType, List<String> statementIds)
+            throws SQLException {
+        if (statementIds.isEmpty()) {
+            return true;
+        }
+        if (!exists(con, accountType)) {
+            return false;
+        }
+        StringBuilder sql = new StringBuilder("SELECT 1 FROM " + rawTable(accountType)
+                + " WHERE " + COLUMN + " IS NULL AND c_statement_id IN (");
+        for (int i = 0; i < statementIds.size(); i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        sql.append(')');
+        try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+            ps.setMaxRows(1);
+            for (int i = 0; i < statementIds.size(); i++) {
+                ps.setString(i + 1, statementIds.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return !rs.next();
+            }
+        }
+    }
+
+    /**
+     * Stores the dedup key of every raw row of an account type that has none, in
+     * batches of {@code batchSize} rows. Each batch is read by a fresh query that
+     * continues after the last row ID, so no result set is held open across updates
+     * and an interrupted run can simply be repeated. The back-fill step of the
+     * migration; imports never run it.
+     *
+     * @param con         JDBC connection
+     * @param accountType "bank" or "secu"
+     * @param batchSize   rows read and updated per round trip
+     * @return number of rows keyed
+     * @throws SQLException if the column has not been added by {@link DedupSchema#migrate}, or
+     *                      a database error occurs
+     */
+    public static int backfill(Connection con, String accountType, int batchSize) throws SQLException {
+        if (!columnExists(con, rawTable(accountType))) {
+            throw new SQLException("Dedup key column " + COLUMN + " is missing from " + rawTable(accountType)
+                    + "; run DedupSchema.migrate first");
+        }
+        return backfillRows(con, accountType, batchSize);
+    }
+
+    /**
+     * Keys the unkeyed rows of the table.
+     *
+     * @return rows keyed
+     */
+    private static int backfillRows(Connection con, String accountType, int batchSize) throws SQLException {
+        boolean bank = "bank".equals(accountType);
+        String table = rawTable(accountType);
+        // Raw columns, in parsed-row order of the dedup key indices
+        int[] indices = DeduplicationChecker.keyIndices(accountType);
+        String[] columns = bank
+                ? new String[]{"c_provider_reference", "c_account_number", "c_document_nr",
+                        "c_payment_date", "c_payment_amount", "c_currency"}
+                : new String[]{"c_reference", "c_value_date", "c_transaction_date",
+                        "c_type", "c_ticker", "c_amount", "c_currency"};
+
+        String sql = "SELECT id, " + String.join(", ", columns) + " FROM " + table
+                + " WHERE " + COLUMN + " IS NULL AND id > ? ORDER BY id";
+
+        Extractor extractor = new Extractor(accountType);
+        String[] row = new String[extractor.width()];
+        int keyed = 0;
+        int tooLong = 0;
+        String lastId = "";
+        try (PreparedStatement select = con.prepareStatement(sql);
+             PreparedStatement update = con.prepareStatement("UPDATE " + table + " SET " + COLUMN
+                     + " = ? WHERE id = ?")) {
+            select.setMaxRows(batchSize);
+            while (true) {
+                select.setString(1, lastId);
+                int read = 0;
+                int pending = 0;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        read++;
+                        lastId = rs.getString(1);
+                        for (int c = 0; c < columns.length; c++) {
+                            row[indices[c]] = rs.getString(c + 2);
+                        }
+                        String key = extractor.of(row);
+                        if (key == null) {
+                            tooLong++;
+                            continue;
+                        }
+                        update.setString(1, key);
+                        update.setString(2, lastId);
+                        update.addBatch();
+                        pending++;
+                    }
+                }
+                if (pending > 0) {
+                    update.executeBatch();
+                    keyed += pending;
+                }
+                if (read < batchSize) {
+                    break;
+                }
+            }
+        }
+
+        if (keyed > 0 || tooLong > 0) {
+            LogUtil.info(CLASS_NAME, "Back-filled " + COLUMN + " of " + keyed + " rows in " + table
+                    + (tooLong > 0 ? " (" + tooLong + " keys too long to store)" : ""));
+        }
+        return keyed;
+    }
+
+    private static boolean columnExists(Connection con, String table) throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase()}) {
+            try (ResultSet rs = meta.getColumns(con.getCatalog(), null, name, null)) {
+                while (rs.next()) {
+                    if (COLUMN.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String indexName(String accountType) {
+        return "bank".equals(accountType) ? "idx_bank_trx_dedup_key" : "idx_sec_trx_dedup_key";
+    }
+
+    /**
+     * Computes the stored key of parsed rows of one account type. Not thread-safe.
+     */
+    public static final class Extractor {
+
+        private final int primaryKeyIndex;
+        private final int[] compositeKeyIndices;
+        private final int[] keyColumns;
+
+        public Extractor(String accountType) {
+            this.primaryKeyIndex = DeduplicationChecker.primaryKeyIndex(accountType);
+            this.compositeKeyIndices = DeduplicationChecker.compositeKeyIndices(accountType);
+            this.keyColumns = DeduplicationChecker.keyIndices(accountType);
+        }
+
+        /**
+         * Returns the stored key of a parsed row, or {@code null} if it is too long to store.
+         */
+        public String of(String[] row) {
+            String key = DeduplicationChecker.extractKey(row, primaryKeyIndex, compositeKeyIndices);
+            return (key.length() <= MAX_KEY_LENGTH) ? key : null;
+        }
+
+        /** Width of a row holding every key column. */
+        int width() {
+            int width = 0;
+            for (int idx : keyColumns) {
+                width = Math.max(width, idx + 1);
+            }
+            return width;
+        }
+    }
+}
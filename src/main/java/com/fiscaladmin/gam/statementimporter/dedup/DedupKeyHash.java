@@ -0,0 +1,292 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 128-bit hash of a dedup key string (MurmurHash3 x64/128 over its UTF-8 bytes,
+ * seed 0), as stored in the {@link DedupKeyIndex} table.
+ * <p>
+ * The hash is always computed in Java — from parsed rows at persist and check time,
+ * and from raw table columns when an older statement is back-filled — so the same
+ * key string yields the same pair of longs on every path.
+ * <p>
+ * {@link #hash(String)} hashes a key string; a {@link Hasher} hashes the key of a
+ * parsed row straight from its fields, without building the string, and gives the
+ * same result.
+ */
+public final class DedupKeyHash {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private DedupKeyHash() {
+        // utility class
+    }
+
+    /**
+     * Returns the 128-bit hash of a dedup key.
+     *
+     * @param key dedup key as produced by {@code DeduplicationChecker.extractKey}
+     * @return two longs: high half first, low half second
+     */
+    public static long[] hash(String key) {
+        byte[] data = key.getBytes(StandardCharsets.UTF_8);
+        int length = data.length;
+        int blocks = length >>> 4;
+        long h1 = 0;
+        long h2 = 0;
+
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLong(data, i << 4);
+            long k2 = getLong(data, (i << 4) + 8);
+
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        // Tail: up to 15 remaining bytes
+        int tail = blocks << 4;
+        long k1 = 0;
+        long k2 = 0;
+        switch (length & 15) {
+            case 15: k2 ^= (long) (data[tail + 14] & 0xff) << 48;
+            case 14: k2 ^= (long) (data[tail + 13] & 0xff) << 40;
+            case 13: k2 ^= (long) (data[tail + 12] & 0xff) << 32;
+            case 12: k2 ^= (long) (data[tail + 11] & 0xff) << 24;
+            case 11: k2 ^= (long) (data[tail + 10] & 0xff) << 16;
+            case 10: k2 ^= (long) (data[tail + 9] & 0xff) << 8;
+            case 9:
+                k2 ^= data[tail + 8] & 0xff;
+                k2 *= C2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= C1;
+                h2 ^= k2;
+            case 8: k1 ^= (long) (data[tail + 7] & 0xff) << 56;
+            case 7: k1 ^= (long) (data[tail + 6] & 0xff) << 48;
+            case 6: k1 ^= (long) (data[tail + 5] & 0xff) << 40;
+            case 5: k1 ^= (long) (data[tail + 4] & 0xff) << 32;
+            case 4: k1 ^= (long) (data[tail + 3] & 0xff) << 24;
+            case 3: k1 ^= (long) (data[tail + 2] & 0xff) << 16;
+            case 2: k1 ^= (long) (data[tail + 1] & 0xff) << 8;
+            case 1:
+                k1 ^= data[tail] & 0xff;
+                k1 *= C1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= C2;
+                h1 ^= k1;
+            default:
+                break;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[]{h1, h2};
+    }
+
+    /**
+     * Reusable, allocation-free hasher for the dedup keys of parsed rows. Not thread-safe.
+     */
+    public static final class Hasher {
+
+        private final int primaryKeyIndex;
+        private final int[] compositeKeyIndices;
+
+        private long h1;
+        private long h2;
+        private long k1;
+        private long k2;
+        private int blockBytes;
+        private int length;
+
+        /**
+         * @param primaryKeyIndex     index of the primary key field
+         * @param compositeKeyIndices indices of the composite key fields
+         */
+        public Hasher(int primaryKeyIndex, int[] compositeKeyIndices) {
+            this.primaryKeyIndex = primaryKeyIndex;
+            this.compositeKeyIndices = compositeKeyIndices;
+        }
+
+        /**
+         * Hashes the dedup key of a row: equal to
+         * {@code DedupKeyHash.hash(DeduplicationChecker.extractKey(row, ...))}.
+         *
+         * @param row parsed CSV row
+         * @param out receives the high half at 0 and the low half at 1
+         */
+        public void hash(String[] row, long[] out) {
+            h1 = 0;
+            h2 = 0;
+            k1 = 0;
+            k2 = 0;
+            blockBytes = 0;
+            length = 0;
+
+            // Primary key if it is non-blank after trimming...
+            if (primaryKeyIndex < row.length && row[primaryKeyIndex] != null) {
+                String primaryKey = row[primaryKeyIndex];
+                int start = trimStart(primaryKey);
+                int end = trimEnd(primaryKey, start);
+                if (start < end) {
+                    putChars(primaryKey, start, end);
+                    finish(out);
+                    return;
+                }
+            }
+
+            // ...otherwise the composite key, "a|b|c|"
+            for (int idx : compositeKeyIndices) {
+                if (idx < row.length && row[idx] != null) {
+                    String field = row[idx];
+                    int start = trimStart(field);
+                    putChars(field, start, trimEnd(field, start));
+                }
+                putByte('|');
+            }
+            finish(out);
+        }
+
+        /**
+         * Feeds the UTF-8 encoding of {@code s[start, end)}, as {@code String.getBytes}
+         * would produce it (an unpaired surrogate becomes {@code '?'}).
+         */
+        private void putChars(String s, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    putByte(c);
+                } else if (c < 0x800) {
+                    putByte(0xC0 | (c >> 6));
+                    putByte(0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, s.charAt(++i));
+                        putByte(0xF0 | (cp >> 18));
+                        putByte(0x80 | ((cp >> 12) & 0x3F));
+                        putByte(0x80 | ((cp >> 6) & 0x3F));
+                        putByte(0x80 | (cp & 0x3F));
+                    } else {
+                        putByte('?');
+                    }
+                } else {
+                    putByte(0xE0 | (c >> 12));
+                    putByte(0x80 | ((c >> 6) & 0x3F));
+                    putByte(0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void putByte(int b) {
+            long v = b & 0xffL;
+            if (blockBytes < 8) {
+                k1 |= v << (blockBytes << 3);
+            } else {
+                k2 |= v << ((blockBytes - 8) << 3);
+            }
+            length++;
+            if (++blockBytes == 16) {
+                k1 *= C1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= C2;
+                h1 ^= k1;
+                h1 = Long.rotateLeft(h1, 27);
+                h1 += h2;
+                h1 = h1 * 5 + 0x52dce729;
+
+                k2 *= C2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= C1;
+                h2 ^= k2;
+                h2 = Long.rotateLeft(h2, 31);
+                h2 += h1;
+                h2 = h2 * 5 + 0x38495ab5;
+
+                k1 = 0;
+                k2 = 0;
+                blockBytes = 0;
+            }
+        }
+
+        private void finish(long[] out) {
+            if (blockBytes > 8) {
+                k2 *= C2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= C1;
+                h2 ^= k2;
+            }
+            if (blockBytes > 0) {
+                k1 *= C1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= C2;
+                h1 ^= k1;
+            }
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+            out[0] = h1;
+            out[1] = h2;
+        }
+
+        /** First index not trimmed by {@link String#trim()}. */
+        private static int trimStart(String s) {
+            int start = 0;
+            while (start < s.length() && s.charAt(start) <= ' ') {
+                start++;
+            }
+            return start;
+        }
+
+        /** End index after {@link String#trim()}. */
+        private static int trimEnd(String s, int start) {
+            int end = s.length();
+            while (end > start && s.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            return end;
+        }
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        return (data[offset] & 0xffL)
+                | (data[offset + 1] & 0xffL) << 8
+                | (data[offset + 2] & 0xffL) << 16
+                | (data[offset + 3] & 0xffL) << 24
+                | (data[offset + 4] & 0xffL) << 32
+                | (data[offset + 5] & 0xffL) << 40
+                | (data[offset + 6] & 0xffL) << 48
+                | (data[offset + 7] & 0xffL) << 56;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,515 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import com.fiscaladmin.gam.statementimporter.parser.TypedValues;
+import org.joget.commons.util.LogUtil;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Persistent index of the dedup keys of every imported raw transaction row.
+ * <p>
+ * One row per raw row in {@value #TABLE}: account type, account number (bank only),
+ * period bucket ({@code yyyyMM} of the payment / transaction date), the 128-bit
+ * {@link DedupKeyHash} of the dedup key and the owning statement. Entries are
+ * written by {@code RawTransactionPersister} together with the raw rows and removed
+ * with them by the importer's idempotency delete.
+ * <p>
+ * A dedup check then looks up only the keys of the incoming rows, through the
+ * {@code (account_type, key_hi)} index, instead of loading every key of every
+ * overlapping statement. Statements imported before the index existed are
+ * back-filled from their raw rows the first time they overlap an import.
+ * <p>
+ * The table is not a Joget form table; {@link DedupSchema#migrate} creates it.
+ * Until then imports write no entries and checks load the existing keys instead.
+ */
+public final class DedupKeyIndex {
+
+    private static final String CLASS_NAME = DedupKeyIndex.class.getName();
+
+    /** Name of the index table. */
+    public static final String TABLE = "stmt_dedup_key";
+
+    /** Maximum number of hashes bound to one lookup query. */
+    static final int LOOKUP_CHUNK_SIZE = 500;
+
+    /** Index rows per {@code executeBatch()} round trip when back-filling. */
+    static final int BACKFILL_BATCH_SIZE = 1000;
+
+    private static final String INSERT_SQL = "INSERT INTO " + TABLE
+            + " (account_type, account, period, key_hi, key_lo, statement_id) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private DedupKeyIndex() {
+        // utility class
+    }
+
+    /**
+     * Returns the account type whose raw rows live in a table, or {@code null} for
+     * a table that is not a raw transaction table.
+     */
+    public static String accountTypeOf(String rawTable) {
+        if ("app_fd_bank_account_trx".equals(rawTable)) {
+            return "bank";
+        }
+        if ("app_fd_sec_account_trx".equals(rawTable)) {
+            return "secu";
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether {@link DedupSchema#migrate} has created the index table and
+     * its {@link DedupBloomFilters} table, from the cached lookup.
+     *
+     * @param con JDBC connection
+     * @return {@code true} if the index can be written and read
+     */
+    public static boolean exists(Connection con) {
+        return DedupSchema.exists(con, TABLE) && DedupSchema.exists(con, DedupBloomFilters.TABLE);
+    }
+
+    /**
+     * Removes the index entries of a statement and rebuilds the
+     * {@link DedupBloomFilters} of the months they were in.
+     *
+     * @param con         JDBC connection
+     * @param statementId the statement whose raw rows were deleted
+     * @return number of entries removed
+     * @throws SQLException if a database error occurs
+     */
+    public static int delete(Connection con, String statementId) throws SQLException {
+        Map<String, Set<DedupBloomFilters.Bucket>> buckets = new TreeMap<>();
+        try (PreparedStatement ps = con.prepareStatement("SELECT DISTINCT account_type, account, period FROM "
+                + TABLE + " WHERE statement_id = ?")) {
+            ps.setString(1, statementId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    buckets.computeIfAbsent(rs.getString(1), k -> new HashSet<>())
+                            .add(new DedupBloomFilters.Bucket(rs.getString(2), rs.getInt(3)));
+                }
+            }
+        }
+
+        int deleted;
+        try (PreparedStatement ps = con.prepareStatement("DELETE FROM " + TABLE + " WHERE statement_id = ?")) {
+            ps.setString(1, statementId);
+            deleted = ps.executeUpdate();
+        }
+        for (Map.Entry<String, Set<DedupBloomFilters.Bucket>> entry : buckets.entrySet()) {
+            DedupBloomFilters.rebuild(con, entry.getKey(), entry.getValue());
+        }
+        return deleted;
+    }
+
+    /**
+     * Opens a writer that adds index entries for a statement's rows, batched
+     * alongside the raw row inserts. The flushed keys are added to the
+     * {@link DedupBloomFilters} right away on an auto-commit connection, and
+     * otherwise by {@link Writer#publish()} in the writing transaction.
+     *
+     * @param con         JDBC connection (the one the raw rows are inserted with)
+     * @param statementId the owning statement
+     * @param accountType "bank" or "secu"
+     * @return the writer; the caller flushes and closes it
+     * @throws SQLException if a database error occurs
+     */
+    public static Writer openWriter(Connection con, String statementId, String accountType) throws SQLException {
+        return new Writer(con.prepareStatement(INSERT_SQL), statementId, accountType);
+    }
+
+    /**
+     * Returns the candidate keys that are already indexed for one of the given statements.
+     *
+     * @param con           JDBC connection
+     * @param statementIds  statements to match against (the overlapping statements)
+     * @param accountType   "bank" or "secu"
+     * @param candidateKeys dedup keys of the incoming rows
+     * @return the subset of {@code candidateKeys} with an index entry
+     * @throws SQLException if a database error occurs
+     */
+    public static Set<String> findExisting(Connection con, List<String> statementIds, String accountType,
+                                           Collection<String> candidateKeys) throws SQLException {
+        int count = candidateKeys.size();
+        long[] his = new long[count];
+        long[] los = new long[count];
+        int i = 0;
+        for (String key : candidateKeys) {
+            long[] h = DedupKeyHash.hash(key);
+            his[i] = h[0];
+            los[i++] = h[1];
+        }
+
+        DedupKeySet existing = findExisting(con, statementIds, accountType, his, los, count);
+        Set<String> found = new HashSet<>();
+        i = 0;
+        for (String key : candidateKeys) {
+            if (existing.contains(his[i], los[i])) {
+                found.add(key);
+            }
+            i++;
+        }
+        return found;
+    }
+
+    /**
+     * Returns the hashed candidate keys that are already indexed for one of the
+     * given statements.
+     *
+     * @param con          JDBC connection
+     * @param statementIds statements to match against (the overlapping statements)
+     * @param accountType  "bank" or "secu"
+     * @param his          high halves of the candidate key hashes
+     * @param los          low halves of the candidate key hashes
+     * @param count        number of candidates
+     * @return the candidates with an index entry
+     * @throws SQLException if a database error occurs
+     */
+    public static DedupKeySet findExisting(Connection con, List<String> statementIds, String accountType,
+                                           long[] his, long[] los, int count) throws SQLException {
+        DedupKeySet found = new DedupKeySet();
+        if (statementIds.isEmpty() || count == 0) {
+            return found;
+        }
+
+        DedupKeySet candidates = new DedupKeySet(count);
+        Set<Long> distinctHis = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            candidates.add(his[i], los[i]);
+            distinctHis.add(his[i]);
+        }
+
+        List<Long> hiList = new ArrayList<>(distinctHis);
+        String statementIn = placeholders(statementIds.size());
+        for (int from = 0; from < hiList.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<Long> chunk = hiList.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, hiList.size()));
+            String sql = "SELECT key_hi, key_lo FROM " + TABLE
+                    + " WHERE account_type = ? AND key_hi IN (" + placeholders(chunk.size()) + ")"
+                    + " AND statement_id IN (" + statementIn + ")";
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                int p = 1;
+                ps.setString(p++, accountType);
+                for (Long hi : chunk) {
+                    ps.setLong(p++, hi);
+                }
+                for (String id : statementIds) {
+                    ps.setString(p++, id);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        long hi = rs.getLong(1);
+                        long lo = rs.getLong(2);
+                        if (candidates.contains(hi, lo)) {
+                            found.add(hi, lo);
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the Bloom filter buckets (account and month) the given statements have
+     * index entries in.
+     *
+     * @param con          JDBC connection
+     * @param statementIds statements to look at (the overlapping statements)
+     * @param accountType  "bank" or "secu"
+     * @return the distinct buckets
+     * @throws SQLException if a database error occurs
+     */
+    public static Set<DedupBloomFilters.Bucket> bucketsOf(Connection con, List<String> statementIds,
+                                                          String accountType) throws SQLException {
+        Set<DedupBloomFilters.Bucket> buckets = new HashSet<>();
+        for (int from = 0; from < statementIds.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = statementIds.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, statementIds.size()));
+            try (PreparedStatement ps = con.prepareStatement("SELECT DISTINCT account, period FROM " + TABLE
+                    + " WHERE account_type = ? AND statement_id IN (" + placeholders(chunk.size()) + ")")) {
+                int p = 1;
+                ps.setString(p++, accountType);
+                for (String id : chunk) {
+                    ps.setString(p++, id);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        buckets.add(new DedupBloomFilters.Bucket(rs.getString(1), rs.getInt(2)));
+                    }
+                }
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Back-fills the index for those of the given statements whose index entries do
+     * not match their raw rows: none (imported before the index existed) or a
+     * different number of them (a partial index). A partially indexed statement is
+     * deleted from the index first and indexed again.
+     *
+     * @param con          JDBC connection
+     * @param statementIds statements to check
+     * @param accountType  "bank" or "secu"
+     * @return number of index entries written
+     * @throws SQLException if a database error occurs
+     */
+    public static int backfillMissing(Connection con, List<String> statementIds, String accountType)
+            throws SQLException {
+        if (statementIds.isEmpty()) {
+            return 0;
+        }
+
+        String rawTable = "bank".equals(accountType) ? "app_fd_bank_account_trx" : "app_fd_sec_account_trx";
+        Map<String, Integer> rows = countPerStatement(con, rawTable, "c_statement_id", statementIds);
+        Map<String, Integer> indexed = countPerStatement(con, TABLE, "statement_id", statementIds);
+
+        int written = 0;
+        for (String statementId : statementIds) {
+            int entries = indexed.getOrDefault(statementId, 0);
+            if (entries == rows.getOrDefault(statementId, 0)) {
+                continue;
+            }
+            if (entries > 0) {
+                LogUtil.warn(CLASS_NAME, "Re-indexing statement " + statementId + ": " + entries
+                        + " dedup index entries for " + rows.getOrDefault(statementId, 0) + " raw rows");
+                delete(con, statementId);
+            }
+            written += backfill(con, statementId, accountType);
+        }
+        return written;
+    }
+
+    /**
+     * Counts the rows of a table per statement.
+     */
+    private static Map<String, Integer> countPerStatement(Connection con, String table, String column,
+                                                          List<String> statementIds) throws SQLException {
+        Map<String, Integer> counts = new HashMap<>();
+        try (PreparedStatement ps = con.prepareStatement("SELECT " + column + ", COUNT(*) FROM " + table
+                + " WHERE " + column + " IN (" + placeholders(statementIds.size()) + ") GROUP BY " + column)) {
+            for (int i = 0; i < statementIds.size(); i++) {
+                ps.setString(i + 1, statementIds.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Writes index entries for every raw row of one statement.
+     */
+    static int backfill(Connection con, String statementId, String accountType) throws SQLException {
+        boolean bank = "bank".equals(accountType);
+        // Raw columns, in parsed-row order of the dedup key indices
+        int[] indices = DeduplicationChecker.keyIndices(accountType);
+        String[] columns = bank
+                ? new String[]{"c_provider_reference", "c_account_number", "c_document_nr",
+                        "c_payment_date", "c_payment_amount", "c_currency"}
+                : new String[]{"c_reference", "c_value_date", "c_transaction_date",
+                        "c_type", "c_ticker", "c_amount", "c_currency"};
+        String rawTable = bank ? "app_fd_bank_account_trx" : "app_fd_sec_account_trx";
+
+        int width = 0;
+        for (int idx : indices) {
+            width = Math.max(width, idx + 1);
+        }
+        String[] row = new String[width];
+
+        int written = 0;
+        try (PreparedStatement select = con.prepareStatement("SELECT " + String.join(", ", columns)
+                + " FROM " + rawTable + " WHERE c_statement_id = ?");
+             Writer writer = openWriter(con, statementId, accountType)) {
+            select.setString(1, statementId);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    for (int c = 0; c < columns.length; c++) {
+                        row[indices[c]] = rs.getString(c + 1);
+                    }
+                    writer.add(row);
+                    if (writer.pending() == BACKFILL_BATCH_SIZE) {
+                        written += writer.flush();
+                    }
+                }
+            }
+            written += writer.flush();
+            writer.publish();
+        }
+
+        if (written > 0) {
+            LogUtil.info(CLASS_NAME, "Back-filled " + written + " dedup index entries for statement " + statementId);
+        }
+        return written;
+    }
+
+    /**
+     * Returns the Bloom filter bucket of a parsed row: account number and payment
+     * date for bank rows, transaction date for securities rows.
+     */
+    static DedupBloomFilters.Bucket bucketOf(boolean bank, String[] row) {
+        String account = (bank && row.length > 0 && row[0] != null) ? row[0].trim() : "";
+        int dateIndex = bank ? 2 : 1;
+        return new DedupBloomFilters.Bucket((account.length() > 64) ? account.substring(0, 64) : account,
+                period((dateIndex < row.length) ? row[dateIndex] : null));
+    }
+
+    /**
+     * Returns the period bucket ({@code yyyyMM}) of a date field, or 0 if it is not a date.
+     */
+    static int period(String date) {
+        if (date == null) {
+            return 0;
+        }
+        int epochDay = TypedValues.parseEpochDay(date.trim());
+        if (epochDay == TypedValues.NO_DATE) {
+            return 0;
+        }
+        LocalDate d = LocalDate.ofEpochDay(epochDay);
+        return d.getYear() * 100 + d.getMonthValue();
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Batches index entries for the rows of one statement on an open
+     * {@link PreparedStatement}. Not thread-safe.
+     * <p>
+     * On a connection in manual-commit mode the keys of flushed entries are held
+     * back until {@link #publish()}, which the caller runs just before it commits:
+     * the Bloom filter rows are then locked only for the commit, all at once in
+     * bucket order, and the filters change in the same transaction as the index.
+     * Keys of rolled-back entries are dropped with {@link #discard()}; any left
+     * unpublished are published on {@link #close()}, since a filter may hold keys
+     * that are not indexed but must not miss any that are.
+     */
+    public static final class Writer implements AutoCloseable {
+
+        private final PreparedStatement insert;
+        private final String statementId;
+        private final String accountType;
+        private final boolean bank;
+        private final DedupKeyHash.Hasher hasher;
+        private final long[] hash = new long[2];
+        /** Hashed keys added since the last flush, per Bloom filter bucket, as hi/lo pairs. */
+        private final Map<DedupBloomFilters.Bucket, long[]> pendingKeys = new HashMap<>();
+        private final Map<DedupBloomFilters.Bucket, Integer> pendingKeyCounts = new HashMap<>();
+        /** Hashed keys flushed but not yet added to the Bloom filters. */
+        private final Map<DedupBloomFilters.Bucket, long[]> unpublished = new HashMap<>();
+        private int pending;
+
+        private Writer(PreparedStatement insert, String statementId, String accountType) {
+            this.insert = insert;
+            this.statementId = statementId;
+            this.accountType = accountType;
+            this.bank = "bank".equals(accountType);
+            this.hasher = DeduplicationChecker.hasher(accountType);
+        }
+
+        /**
+         * Adds the index entry of a parsed row to the batch.
+         */
+        public void add(String[] row) throws SQLException {
+            DedupBloomFilters.Bucket bucket = bucketOf(bank, row);
+            hasher.hash(row, hash);
+
+            insert.setString(1, accountType);
+            insert.setString(2, bucket.getAccount());
+            insert.setInt(3, bucket.getPeriod());
+            insert.setLong(4, hash[0]);
+            insert.setLong(5, hash[1]);
+            insert.setString(6, statementId);
+            insert.addBatch();
+            pending++;
+
+            int n = pendingKeyCounts.getOrDefault(bucket, 0);
+            long[] keys = pendingKeys.get(bucket);
+            if (keys == null || keys.length < n + 2) {
+                keys = Arrays.copyOf((keys != null) ? keys : new long[0], Math.max(16, (n + 2) * 2));
+                pendingKeys.put(bucket, keys);
+            }
+            keys[n] = hash[0];
+            keys[n + 1] = hash[1];
+            pendingKeyCounts.put(bucket, n + 2);
+        }
+
+        /**
+         * Returns the number of entries added since the last flush.
+         */
+        public int pending() {
+            return pending;
+        }
+
+        /**
+         * Executes the pending batch, and on an auto-commit connection adds its keys
+         * to the Bloom filters.
+         *
+         * @return number of entries written
+         */
+        public int flush() throws SQLException {
+            if (pending == 0) {
+                return 0;
+            }
+            int written = pending;
+            insert.executeBatch();
+            pending = 0;
+
+            for (Map.Entry<DedupBloomFilters.Bucket, long[]> entry : pendingKeys.entrySet()) {
+                long[] keys = entry.getValue();
+                int n = pendingKeyCounts.get(entry.getKey());
+                long[] flushed = unpublished.get(entry.getKey());
+                if (flushed == null) {
+                    unpublished.put(entry.getKey(), Arrays.copyOf(keys, n));
+                } else {
+                    long[] merged = Arrays.copyOf(flushed, flushed.length + n);
+                    System.arraycopy(keys, 0, merged, flushed.length, n);
+                    unpublished.put(entry.getKey(), merged);
+                }
+            }
+            pendingKeys.clear();
+            pendingKeyCounts.clear();
+            if (insert.getConnection().getAutoCommit()) {
+                publish();
+            }
+            return written;
+        }
+
+        /**
+         * Adds the keys of the entries flushed so far to the Bloom filters, in the
+         * connection's current transaction.
+         */
+        public void publish() throws SQLException {
+            if (unpublished.isEmpty()) {
+                return;
+            }
+            DedupBloomFilters.add(insert.getConnection(), accountType, unpublished);
+            unpublished.clear();
+        }
+
+        /**
+         * Drops the keys of the entries flushed so far, after their transaction
+         * was rolled back.
+         */
+        public void discard() {
+            unpublished.clear();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                publish();
+            } finally {
+                insert.close();
+            }
+        }
+    }
+}
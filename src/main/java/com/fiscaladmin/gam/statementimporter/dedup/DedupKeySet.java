@@ -0,0 +1,155 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+/**
+ * Open-addressing hash set of 128-bit {@link DedupKeyHash} values.
+ * <p>
+ * Each key takes two {@code long} slots of one flat array (linear probing, load
+ * factor at most 1/2), instead of a boxed {@code String} plus a {@code HashMap}
+ * entry in a {@code HashSet<String>}. The hash is already well mixed, so its low
+ * half picks the slot directly. Not thread-safe for writes; concurrent reads of a
+ * set that is no longer modified are safe.
+ */
+public final class DedupKeySet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    /** Pairs of (hi, lo); (0, 0) marks an empty slot. */
+    private long[] slots;
+    private int mask;
+    private int size;
+    /** Whether the key hashing to (0, 0) is in the set; it cannot occupy a slot. */
+    private boolean containsZero;
+
+    public DedupKeySet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of keys the set should hold without resizing
+     */
+    public DedupKeySet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        slots = new long[capacity * 2];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds a hashed key.
+     *
+     * @return {@code true} if the key was not in the set
+     */
+    public boolean add(long hi, long lo) {
+        if (hi == 0 && lo == 0) {
+            boolean added = !containsZero;
+            containsZero = true;
+            if (added) {
+                size++;
+            }
+            return added;
+        }
+        int slot = (int) lo & mask;
+        while (true) {
+            int i = slot << 1;
+            if (slots[i] == 0 && slots[i + 1] == 0) {
+                slots[i] = hi;
+                slots[i + 1] = lo;
+                if (++size * 2 > mask + 1) {
+                    grow();
+                }
+                return true;
+            }
+            if (slots[i] == hi && slots[i + 1] == lo) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Adds the hash of a dedup key string.
+     *
+     * @return {@code true} if the key was not in the set
+     */
+    public boolean add(String key) {
+        long[] h = DedupKeyHash.hash(key);
+        return add(h[0], h[1]);
+    }
+
+    /**
+     * Adds every key of another set.
+     */
+    public void addAll(DedupKeySet other) {
+        if (other.containsZero) {
+            add(0, 0);
+        }
+        for (int i = 0; i < other.slots.length; i += 2) {
+            if (other.slots[i] != 0 || other.slots[i + 1] != 0) {
+                add(other.slots[i], other.slots[i + 1]);
+            }
+        }
+    }
+
+    /**
+     * Returns whether a hashed key is in the set.
+     */
+    public boolean contains(long hi, long lo) {
+        if (hi == 0 && lo == 0) {
+            return containsZero;
+        }
+        int slot = (int) lo & mask;
+        while (true) {
+            int i = slot << 1;
+            if (slots[i] == hi && slots[i + 1] == lo) {
+                return true;
+            }
+            if (slots[i] == 0 && slots[i + 1] == 0) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns whether the hash of a dedup key string is in the set.
+     */
+    public boolean contains(String key) {
+        long[] h = DedupKeyHash.hash(key);
+        return contains(h[0], h[1]);
+    }
+
+    /**
+     * Returns the number of keys in the set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the approximate heap footprint of the set in bytes.
+     */
+    public long memoryBytes() {
+        return 16L + 16 + slots.length * 8L;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        int capacity = (mask + 1) << 1;
+        slots = new long[capacity * 2];
+        mask = capacity - 1;
+        for (int i = 0; i < old.length; i += 2) {
+            long hi = old[i];
+            long lo = old[i + 1];
+            if (hi != 0 || lo != 0) {
+                int slot = (int) lo & mask;
+                while (slots[slot << 1] != 0 || slots[(slot << 1) + 1] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot << 1] = hi;
+                slots[(slot << 1) + 1] = lo;
+            }
+        }
+    }
+}
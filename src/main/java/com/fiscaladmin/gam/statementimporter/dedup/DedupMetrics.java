@@ -0,0 +1,176 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import java.util.Locale;
+
+/**
+ * Phase timings and counters of one de-duplication check.
+ * <p>
+ * Filled in by {@link DeduplicationChecker} while it runs: finding the overlapping
+ * statements (level 1), looking up or loading existing keys (level 2), hashing or
+ * building the keys of the incoming rows, and classifying them. Read it from the
+ * {@link DeduplicationResult}, or from a {@link DeduplicatingRowCursor} once it is
+ * drained; {@link DeduplicationStats} aggregates it across checks. Not thread-safe;
+ * a check updates its metrics from one thread.
+ */
+public final class DedupMetrics {
+
+    private long rowsChecked;
+    private long duplicates;
+    private long overlappingStatements;
+    private long primaryKeysLoaded;
+    private long compositeKeysLoaded;
+    private long keysLookedUp;
+    private long bloomRejected;
+    private long overlapNanos;
+    private long lookupNanos;
+    private long hashNanos;
+    private long classifyNanos;
+
+    /**
+     * Returns the number of incoming rows classified.
+     */
+    public long getRowsChecked() {
+        return rowsChecked;
+    }
+
+    /**
+     * Returns the number of incoming rows classified as duplicates.
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Returns the share of checked rows that were duplicates, or 0 if none were checked.
+     */
+    public double getHitRatio() {
+        return (rowsChecked > 0) ? (double) duplicates / rowsChecked : 0;
+    }
+
+    /**
+     * Returns the number of overlapping statements found by level 1.
+     */
+    public long getOverlappingStatements() {
+        return overlappingStatements;
+    }
+
+    /**
+     * Returns the number of existing primary keys (references) loaded from raw rows.
+     */
+    public long getPrimaryKeysLoaded() {
+        return primaryKeysLoaded;
+    }
+
+    /**
+     * Returns the number of existing composite keys loaded from raw rows.
+     */
+    public long getCompositeKeysLoaded() {
+        return compositeKeysLoaded;
+    }
+
+    /**
+     * Returns the number of candidate keys looked up in the {@link DedupKeyIndex}
+     * or pushed down to the database ({@link CandidateKeyPushdown}).
+     */
+    public long getKeysLookedUp() {
+        return keysLookedUp;
+    }
+
+    /**
+     * Returns the number of candidate keys the {@link DedupBloomFilters} ruled out
+     * before a lookup.
+     */
+    public long getBloomRejected() {
+        return bloomRejected;
+    }
+
+    /**
+     * Returns the time spent finding the overlapping statements.
+     */
+    public long getOverlapNanos() {
+        return overlapNanos;
+    }
+
+    /**
+     * Returns the time spent looking up or loading existing keys, excluding level 1.
+     */
+    public long getLookupNanos() {
+        return lookupNanos;
+    }
+
+    /**
+     * Returns the time spent hashing, or building the key strings of, the incoming rows.
+     */
+    public long getHashNanos() {
+        return hashNanos;
+    }
+
+    /**
+     * Returns the time spent classifying the incoming rows against the existing keys.
+     */
+    public long getClassifyNanos() {
+        return classifyNanos;
+    }
+
+    /**
+     * Returns the time of all phases together.
+     */
+    public long getTotalNanos() {
+        return overlapNanos + lookupNanos + hashNanos + classifyNanos;
+    }
+
+    void addRows(long checked, long duplicateRows) {
+        rowsChecked += checked;
+        duplicates += duplicateRows;
+    }
+
+    void addOverlap(long statements, long nanos) {
+        overlappingStatements += statements;
+        overlapNanos += nanos;
+    }
+
+    void addKeysLoaded(long primary, long composite) {
+        primaryKeysLoaded += primary;
+        compositeKeysLoaded += composite;
+    }
+
+    void addKeysLookedUp(long lookedUp, long rejected) {
+        keysLookedUp += lookedUp;
+        bloomRejected += rejected;
+    }
+
+    void addLookupNanos(long nanos) {
+        lookupNanos += nanos;
+    }
+
+    void addHashNanos(long nanos) {
+        hashNanos += nanos;
+    }
+
+    void addClassifyNanos(long nanos) {
+        classifyNanos += nanos;
+    }
+
+    /**
+     * Adds every counter and timing of {@code other} to these metrics.
+     */
+    void add(DedupMetrics other) {
+        addRows(other.rowsChecked, other.duplicates);
+        addOverlap(other.overlappingStatements, other.overlapNanos);
+        addKeysLoaded(other.primaryKeysLoaded, other.compositeKeysLoaded);
+        addKeysLookedUp(other.keysLookedUp, other.bloomRejected);
+        lookupNanos += other.lookupNanos;
+        hashNanos += other.hashNanos;
+        classifyNanos += other.classifyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d rows, %d duplicates (%.1f%%), %d overlapping statements,"
+                        + " keys loaded %d primary / %d composite, %d looked up, %d Bloom-rejected;"
+                        + " overlap %.1f ms, lookup %.1f ms, hash %.1f ms, classify %.1f ms",
+                rowsChecked, duplicates, 100 * getHitRatio(), overlappingStatements,
+                primaryKeysLoaded, compositeKeysLoaded, keysLookedUp, bloomRejected,
+                overlapNanos / 1e6, lookupNanos / 1e6, hashNanos / 1e6, classifyNanos / 1e6);
+    }
+}
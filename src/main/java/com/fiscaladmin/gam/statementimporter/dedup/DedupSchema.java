@@ -0,0 +1,244 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.joget.commons.util.LogUtil;
+
+import java.sql.*;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Explicit migration of the de-duplication schema: the {@link DedupKeyIndex}
+ * table, its {@link DedupBloomFilters} table, and the stored {@link DedupKeyColumn}
+ * and statement/date index of both raw transaction tables.
+ * <p>
+ * Imports never change the schema. An administrator runs {@link #migrate} once
+ * (for example from a BeanShell tool with a {@code setupDataSource} connection),
+ * after Joget has created the raw tables; until then imports skip what is missing
+ * and de-duplication loads the existing keys from the raw rows. Migrating again is
+ * harmless: every object is only created if it does not exist.
+ * <p>
+ * Whether an object exists is looked up once per database, and a missing one again
+ * at most every {@value #MISSING_RECHECK_MILLIS} ms, so a migration run from another
+ * node is picked up without a restart.
+ */
+public final class DedupSchema {
+
+    private static final String CLASS_NAME = DedupSchema.class.getName();
+
+    /** Milliseconds before an object found missing is looked at again. */
+    static final long MISSING_RECHECK_MILLIS = 60_000;
+
+    private static final String CREATE_KEY_INDEX_SQL = "CREATE TABLE " + DedupKeyIndex.TABLE + " ("
+            + "account_type VARCHAR(10) NOT NULL, "
+            + "account VARCHAR(64) NOT NULL, "
+            + "period INT NOT NULL, "
+            + "key_hi BIGINT NOT NULL, "
+            + "key_lo BIGINT NOT NULL, "
+            + "statement_id VARCHAR(255) NOT NULL)";
+
+    private static final String[] CREATE_KEY_INDEX_INDEXES_SQL = {
+            "CREATE INDEX idx_stmt_dedup_key_hash ON " + DedupKeyIndex.TABLE + " (account_type, key_hi)",
+            "CREATE INDEX idx_stmt_dedup_key_stmt ON " + DedupKeyIndex.TABLE + " (statement_id)"
+    };
+
+    private static final String CREATE_BLOOM_SQL = "CREATE TABLE " + DedupBloomFilters.TABLE + " ("
+            + "account_type VARCHAR(10) NOT NULL, "
+            + "account VARCHAR(64) NOT NULL, "
+            + "period INT NOT NULL, "
+            + "filter_data %s NOT NULL, "
+            + "PRIMARY KEY (account_type, account, period))";
+
+    /** Lets filters be rebuilt from the index entries of one month. */
+    private static final String CREATE_BUCKET_INDEX_SQL = "CREATE INDEX idx_stmt_dedup_key_bucket ON "
+            + DedupKeyIndex.TABLE + " (account_type, account, period)";
+
+    /** Raw table indexes serving date-bounded key loads. */
+    static final String BANK_DATE_INDEX = "idx_bank_trx_statement_date";
+    static final String SECU_DATE_INDEX = "idx_sec_trx_statement_date";
+
+    /** Index prefix length of a MySQL {@code TEXT} column, within the 3072-byte key limit. */
+    private static final int TEXT_PREFIX_LENGTH = 191;
+
+    /** Objects known to exist, as {@code url/object}. */
+    private static final Set<String> PRESENT = ConcurrentHashMap.newKeySet();
+
+    /** When each object was last found missing, as {@code url/object}. */
+    private static final Map<String, Long> MISSING_CHECKED = new ConcurrentHashMap<>();
+
+    private DedupSchema() {
+        // utility class
+    }
+
+    /**
+     * Creates the de-duplication tables and indexes, and adds the stored key column
+     * and the statement/date index to both raw tables, where they do not exist yet. Follow it with
+     * {@link DedupKeyColumn#backfill} for the rows imported before.
+     *
+     * @param con JDBC connection
+     * @throws SQLException if an object cannot be created
+     */
+    public static void migrate(Connection con) throws SQLException {
+        if (!tableExists(con, DedupKeyIndex.TABLE)) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute(CREATE_KEY_INDEX_SQL);
+                for (String sql : CREATE_KEY_INDEX_INDEXES_SQL) {
+                    stmt.execute(sql);
+                }
+            }
+            LogUtil.info(CLASS_NAME, "Created dedup key index table " + DedupKeyIndex.TABLE);
+        }
+        present(con, DedupKeyIndex.TABLE);
+
+        if (!tableExists(con, DedupBloomFilters.TABLE)) {
+            String product = con.getMetaData().getDatabaseProductName();
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute(String.format(CREATE_BLOOM_SQL, binaryType(product)));
+                stmt.execute(CREATE_BUCKET_INDEX_SQL);
+            }
+            LogUtil.info(CLASS_NAME, "Created dedup Bloom filter table " + DedupBloomFilters.TABLE);
+        }
+        present(con, DedupBloomFilters.TABLE);
+
+        DedupKeyColumn.migrate(con, "bank");
+        DedupKeyColumn.migrate(con, "secu");
+
+        createIndex(con, "app_fd_bank_account_trx", BANK_DATE_INDEX, "c_statement_id", "c_payment_date");
+        createIndex(con, "app_fd_sec_account_trx", SECU_DATE_INDEX,
+                "c_statement_id", "c_value_date", "c_transaction_date");
+    }
+
+    /**
+     * Creates an index on a raw table unless one of that name exists. Joget's
+     * MySQL form columns are {@code LONGTEXT}, which are indexed by prefix.
+     */
+    private static void createIndex(Connection con, String table, String index, String... columns)
+            throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase()}) {
+            try (ResultSet rs = meta.getIndexInfo(con.getCatalog(), null, name, false, true)) {
+                while (rs.next()) {
+                    if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                        return;
+                    }
+                }
+            }
+        }
+        String product = meta.getDatabaseProductName();
+        boolean mySql = product != null && (product.contains("MySQL") || product.contains("MariaDB"));
+        StringJoiner parts = new StringJoiner(", ");
+        for (String column : columns) {
+            parts.add(mySql && isText(meta, table, column) ? column + "(" + TEXT_PREFIX_LENGTH + ")" : column);
+        }
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE INDEX " + index + " ON " + table + " (" + parts + ")");
+        }
+        LogUtil.info(CLASS_NAME, "Created index " + index + " on " + table);
+    }
+
+    private static boolean isText(DatabaseMetaData meta, String table, String column) throws SQLException {
+        try (ResultSet rs = meta.getColumns(meta.getConnection().getCatalog(), null, table, column)) {
+            return rs.next() && rs.getString("TYPE_NAME").toUpperCase().contains("TEXT");
+        }
+    }
+
+    /**
+     * Returns whether a table exists, from the cached lookup.
+     *
+     * @param con   JDBC connection
+     * @param table table name
+     * @return {@code true} if it exists, {@code false} if it does not or cannot be checked
+     */
+    public static boolean exists(Connection con, String table) {
+        return exists(con, table, () -> tableExists(con, table));
+    }
+
+    /**
+     * Returns whether a schema object exists, running {@code lookup} only when the
+     * cache does not tell.
+     *
+     * @param object name the object is cached under
+     */
+    static boolean exists(Connection con, String object, Lookup lookup) {
+        try {
+            String key = cacheKey(con, object);
+            if (PRESENT.contains(key)) {
+                return true;
+            }
+            Long checked = MISSING_CHECKED.get(key);
+            long now = System.currentTimeMillis();
+            if (checked != null && now - checked < MISSING_RECHECK_MILLIS) {
+                return false;
+            }
+            if (lookup.exists()) {
+                PRESENT.add(key);
+                MISSING_CHECKED.remove(key);
+                return true;
+            }
+            MISSING_CHECKED.put(key, now);
+            return false;
+        } catch (SQLException e) {
+            LogUtil.warn(CLASS_NAME, "Could not check for " + object + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Records that a migration has created a schema object.
+     */
+    static void present(Connection con, String object) throws SQLException {
+        String key = cacheKey(con, object);
+        PRESENT.add(key);
+        MISSING_CHECKED.remove(key);
+    }
+
+    /**
+     * Returns the column type for serialised filters, which outgrow a MySQL
+     * {@code BLOB} (64 KB) from about 50,000 keys.
+     *
+     * @param product database product name
+     */
+    static String binaryType(String product) {
+        if (product == null) {
+            return "BLOB";
+        }
+        if (product.contains("MySQL") || product.contains("MariaDB")) {
+            return "LONGBLOB";
+        }
+        if (product.contains("PostgreSQL")) {
+            return "BYTEA";
+        }
+        if (product.contains("Microsoft SQL Server")) {
+            return "VARBINARY(MAX)";
+        }
+        return "BLOB";
+    }
+
+    /**
+     * Looks a table up in the database metadata, as given and in upper case.
+     */
+    static boolean tableExists(Connection con, String table) throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase()}) {
+            try (ResultSet rs = meta.getTables(con.getCatalog(), null, name, new String[]{"TABLE"})) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String cacheKey(Connection con, String object) throws SQLException {
+        return con.getMetaData().getURL() + "/" + object;
+    }
+
+    /**
+     * Looks up whether a schema object exists.
+     */
+    @FunctionalInterface
+    interface Lookup {
+        boolean exists() throws SQLException;
+    }
+}
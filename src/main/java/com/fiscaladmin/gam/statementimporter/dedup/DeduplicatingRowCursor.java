@@ -0,0 +1,269 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import com.fiscaladmin.gam.statementimporter.parser.RowCursor;
+import org.joget.commons.util.LogUtil;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Streaming counterpart of {@link DeduplicationResult}.
+ * <p>
+ * Wraps a source {@link RowCursor} and yields only the rows whose dedup key is not
+ * in the existing key set. Duplicate and total counts are accumulated as rows are
+ * pulled, so they are final once the cursor has been drained.
+ * <p>
+ * Source rows are read ahead in chunks of {@value #LOOKUP_CHUNK_SIZE}, and the keys
+ * of each chunk are looked up together (in the {@link DedupKeyIndex} for imports),
+ * so an empty statement never touches the database. The counts include the rows
+ * of the current chunk. Keys are matched either as strings or, in hashed mode, as
+ * {@link DedupKeyHash} values computed from the row fields without building a
+ * key string per row.
+ * <p>
+ * With a carried key set (statements imported earlier from the same archive), rows
+ * matching those keys are duplicates too, and the keys of the yielded rows are added
+ * to the carried set on {@link #close()} — so each statement is checked against the
+ * ones before it, but not against itself, exactly as separate uploads would be.
+ * Carried keys are held as {@link DedupKeyHash} values in a {@link DedupKeySet}
+ * (16 bytes per key), in either comparison mode.
+ * <p>
+ * Each chunk is hashed, looked up and classified in turn, and the time of each phase
+ * goes into the cursor's {@link DedupMetrics}, which are complete once the cursor is
+ * drained and are recorded in {@link DeduplicationStats} on {@link #close()}.
+ */
+public class DeduplicatingRowCursor implements RowCursor {
+
+    /** Source rows read ahead and looked up together. */
+    static final int LOOKUP_CHUNK_SIZE = 1000;
+
+    /**
+     * Finds which of a chunk of candidate keys already exist. The returned set is
+     * only probed with those candidates, so it may also hold other keys.
+     */
+    @FunctionalInterface
+    interface KeyLookup {
+        Set<String> findExisting(List<String> candidateKeys);
+    }
+
+    /**
+     * Hashed counterpart of {@link KeyLookup}: candidates are the {@link DedupKeyHash}
+     * values {@code (his[i], los[i])} of the rows {@code rows[i]}, for {@code i < count}
+     * (only the dedup key fields of the rows need to be set). The returned set is only
+     * probed with those candidates.
+     */
+    @FunctionalInterface
+    interface HashedKeyLookup {
+        DedupKeySet findExisting(String[][] rows, long[] his, long[] los, int count);
+    }
+
+    private final RowCursor source;
+    private final KeyLookup lookup;
+    private final HashedKeyLookup hashedLookup;
+    private final int primaryKeyIndex;
+    private final int[] compositeKeyIndices;
+    private final DedupKeySet carriedKeys;
+    private DedupKeySet yieldedKeys;
+
+    private final DedupKeyHash.Hasher hasher;
+
+    private final String[][] chunkRows = new String[LOOKUP_CHUNK_SIZE][];
+    private final String[] chunkKeys;
+    private final long[] chunkHis;
+    private final long[] chunkLos;
+    private final boolean[] chunkDuplicate = new boolean[LOOKUP_CHUNK_SIZE];
+    private final long[] hash = new long[2];
+    private final DedupMetrics metrics;
+    private boolean closed;
+    private int chunkSize;
+    private int chunkPos;
+    private Set<String> existingKeys;
+    private DedupKeySet existingHashes;
+    private int duplicateCount;
+    private int totalCount;
+
+    DeduplicatingRowCursor(RowCursor source, String accountType,
+                           Supplier<Set<String>> existingKeysLoader) {
+        this(source, accountType, existingKeysLoader, null);
+    }
+
+    DeduplicatingRowCursor(RowCursor source, String accountType,
+                           Supplier<Set<String>> existingKeysLoader, DedupKeySet carriedKeys) {
+        this(source, accountType, preloaded(existingKeysLoader), carriedKeys);
+    }
+
+    DeduplicatingRowCursor(RowCursor source, String accountType, KeyLookup lookup, DedupKeySet carriedKeys) {
+        this(source, accountType, lookup, carriedKeys, new DedupMetrics());
+    }
+
+    /**
+     * Matches rows by key string.
+     *
+     * @param metrics receives the hashing and classification time and row counts
+     *                (shared with {@code lookup}, which adds its own)
+     */
+    DeduplicatingRowCursor(RowCursor source, String accountType, KeyLookup lookup, DedupKeySet carriedKeys,
+                           DedupMetrics metrics) {
+        this(source, accountType, lookup, null, carriedKeys, metrics);
+    }
+
+    /**
+     * Matches rows by {@link DedupKeyHash}; no key strings are built.
+     */
+    DeduplicatingRowCursor(RowCursor source, String accountType, HashedKeyLookup lookup,
+                           DedupKeySet carriedKeys) {
+        this(source, accountType, lookup, carriedKeys, new DedupMetrics());
+    }
+
+    /**
+     * Matches rows by {@link DedupKeyHash}, recording into {@code metrics}.
+     */
+    DeduplicatingRowCursor(RowCursor source, String accountType, HashedKeyLookup lookup,
+                           DedupKeySet carriedKeys, DedupMetrics metrics) {
+        this(source, accountType, null, lookup, carriedKeys, metrics);
+    }
+
+    private DeduplicatingRowCursor(RowCursor source, String accountType, KeyLookup lookup,
+                                   HashedKeyLookup hashedLookup, DedupKeySet carriedKeys, DedupMetrics metrics) {
+        boolean hashed = hashedLookup != null || carriedKeys != null;
+        this.source = source;
+        this.metrics = metrics;
+        this.lookup = lookup;
+        this.hashedLookup = hashedLookup;
+        this.primaryKeyIndex = DeduplicationChecker.primaryKeyIndex(accountType);
+        this.compositeKeyIndices = DeduplicationChecker.compositeKeyIndices(accountType);
+        this.carriedKeys = carriedKeys;
+        this.yieldedKeys = (carriedKeys != null) ? new DedupKeySet() : null;
+        this.hasher = hashed ? new DedupKeyHash.Hasher(primaryKeyIndex, compositeKeyIndices) : null;
+        this.chunkHis = hashed ? new long[LOOKUP_CHUNK_SIZE] : null;
+        this.chunkLos = hashed ? new long[LOOKUP_CHUNK_SIZE] : null;
+        this.chunkKeys = (hashedLookup == null) ? new String[LOOKUP_CHUNK_SIZE] : null;
+    }
+
+    @Override
+    public String[] nextRow() throws IOException {
+        while (chunkPos < chunkSize || readChunk()) {
+            String[] row = chunkRows[chunkPos];
+            boolean duplicate = chunkDuplicate[chunkPos];
+            chunkRows[chunkPos] = null;
+            chunkPos++;
+            if (duplicate) {
+                duplicateCount++;
+            } else {
+                if (yieldedKeys != null) {
+                    yieldedKeys.add(chunkHis[chunkPos - 1], chunkLos[chunkPos - 1]);
+                }
+                return row;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads up to {@value #LOOKUP_CHUNK_SIZE} source rows, looks up their keys and
+     * classifies them.
+     *
+     * @return {@code false} if the source is exhausted
+     */
+    private boolean readChunk() throws IOException {
+        chunkSize = 0;
+        chunkPos = 0;
+        String[] row;
+        while (chunkSize < LOOKUP_CHUNK_SIZE && (row = source.nextRow()) != null) {
+            chunkRows[chunkSize++] = row;
+        }
+        if (chunkSize == 0) {
+            return false;
+        }
+        totalCount += chunkSize;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < chunkSize; i++) {
+            if (hasher != null) {
+                hasher.hash(chunkRows[i], hash);
+                chunkHis[i] = hash[0];
+                chunkLos[i] = hash[1];
+            }
+            if (chunkKeys != null) {
+                chunkKeys[i] = DeduplicationChecker.extractKey(chunkRows[i], primaryKeyIndex, compositeKeyIndices);
+            }
+        }
+        metrics.addHashNanos(System.nanoTime() - start);
+
+        if (hashedLookup != null) {
+            existingHashes = hashedLookup.findExisting(chunkRows, chunkHis, chunkLos, chunkSize);
+        } else {
+            existingKeys = lookup.findExisting(Arrays.asList(chunkKeys).subList(0, chunkSize));
+        }
+
+        start = System.nanoTime();
+        int duplicates = 0;
+        for (int i = 0; i < chunkSize; i++) {
+            boolean existing = (hashedLookup != null)
+                    ? existingHashes.contains(chunkHis[i], chunkLos[i])
+                    : existingKeys.contains(chunkKeys[i]);
+            chunkDuplicate[i] = existing || (carriedKeys != null && carriedKeys.contains(chunkHis[i], chunkLos[i]));
+            if (chunkDuplicate[i]) {
+                duplicates++;
+            }
+        }
+        metrics.addClassifyNanos(System.nanoTime() - start);
+        metrics.addRows(chunkSize, duplicates);
+        return true;
+    }
+
+    /**
+     * Returns the number of rows skipped as duplicates so far.
+     */
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Returns the number of source rows pulled so far (duplicates + non-duplicates).
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the phase timings and counters of the rows read so far (row counts
+     * include the whole current chunk).
+     */
+    public DedupMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            DeduplicationStats.record(metrics);
+            LogUtil.info(DeduplicatingRowCursor.class.getName(), "De-duplication metrics: " + metrics);
+        }
+        if (yieldedKeys != null) {
+            carriedKeys.addAll(yieldedKeys);
+            yieldedKeys = null;
+        }
+        source.close();
+    }
+
+    /**
+     * Adapts a loader of the complete existing key set, called at most once.
+     */
+    private static KeyLookup preloaded(Supplier<Set<String>> loader) {
+        return new KeyLookup() {
+            private Set<String> keys;
+
+            @Override
+            public Set<String> findExisting(List<String> candidateKeys) {
+                if (keys == null) {
+                    keys = loader.get();
+                }
+                return keys;
+            }
+        };
+    }
+}
@@ -1,11 +1,15 @@
 package com.fiscaladmin.gam.statementimporter.dedup;
 
+import com.fiscaladmin.gam.statementimporter.parser.RowCursor;
+import com.fiscaladmin.gam.statementimporter.parser.StatementBatch;
 import org.joget.apps.app.service.AppUtil;
 import org.joget.commons.util.LogUtil;
 
 import javax.sql.DataSource;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Checks which parsed CSV rows already exist in the database
@@ -24,10 +28,23 @@ import java.util.*;
  * The check is performed in two levels:
  * <ol>
  *   <li>Find overlapping statements by date range</li>
- *   <li>Collect dedup keys from raw rows of those overlapping statements</li>
+ *   <li>Look up the keys of the incoming rows in the {@link DedupKeyIndex} entries
+ *       of those statements (back-filling statements imported before the index
+ *       existed). Exact key comparisons, and databases the index has not been
+ *       migrated on, use a {@link RawKeyLookup} over the overlapping statements'
+ *       raw rows instead</li>
  * </ol>
  * Rows whose dedup key matches an existing key are classified as duplicates
  * and excluded from the result.
+ * <p>
+ * A list-based API returning a {@link DeduplicationResult} and a streaming API
+ * ({@link DeduplicatingRowCursor} over a {@link RowCursor}) are provided; they
+ * classify rows identically. The list check can hash and classify ranges of rows
+ * in parallel ({@link DeduplicationOptions.Classification#PARALLEL}).
+ * <p>
+ * Each database-backed check records the time and counters of its phases in a
+ * {@link DedupMetrics}, returned with its result and added to the process-wide
+ * {@link DeduplicationStats}.
  */
 public class DeduplicationChecker {
 
@@ -43,12 +60,14 @@ public class DeduplicationChecker {
     static final int[] SECU_COMPOSITE_INDICES = {0, 1, 2, 3, 8, 7};
     // value_date, transaction_date, type, ticker, amount, currency
 
+    /** Rows per fork-join task of a parallel classification; smaller row sets run sequentially. */
+    static final int PARALLEL_LEAF_ROWS = 16384;
+
     /**
      * Checks which parsed CSV rows already exist in the database.
      * <p>
-     * This is the public entry point called by {@code StatementImporter}.
-     * It loads existing dedup keys from overlapping statements via JDBC,
-     * then delegates to the testable overload.
+     * It looks up the rows' dedup keys among those of overlapping statements
+     * via JDBC, then delegates to the testable overload.
      *
      * @param rows        all parsed CSV rows
      * @param statementId current statement ID (excluded from overlap search)
@@ -72,8 +91,131 @@ public class DeduplicationChecker {
             return new DeduplicationResult(Collections.emptyList(), 0, 0);
         }
 
-        Set<String> existingKeys = loadExistingKeys(statementId, fromDate, toDate, accountType);
-        return check(rows, accountType, existingKeys);
+        return check(rows, statementId, fromDate, toDate, accountType, new DeduplicationOptions(), null);
+    }
+
+    /**
+     * As {@link #check(List, String, String, String, String)}, with tuning options,
+     * on the given data source ({@code null} for Joget's {@code setupDataSource}).
+     */
+    static DeduplicationResult check(
+            List<String[]> rows,
+            String statementId,
+            String fromDate,
+            String toDate,
+            String accountType,
+            DeduplicationOptions options,
+            DataSource dataSource) {
+
+        if (rows.isEmpty()) {
+            return new DeduplicationResult(Collections.emptyList(), 0, 0);
+        }
+
+        DedupMetrics metrics = new DedupMetrics();
+        IndexKeyLookup lookup = new IndexKeyLookup(statementId, fromDate, toDate, accountType, options, metrics,
+                dataSource);
+        boolean parallel = options.getClassification() == DeduplicationOptions.Classification.PARALLEL;
+        long start = System.nanoTime();
+        if (options.getKeyComparison() == DeduplicationOptions.KeyComparison.EXACT) {
+            int primaryKeyIndex = primaryKeyIndex(accountType);
+            int[] compositeKeyIndices = compositeKeyIndices(accountType);
+            Set<String> candidateKeys = new LinkedHashSet<>();
+            for (String[] row : rows) {
+                candidateKeys.add(extractKey(row, primaryKeyIndex, compositeKeyIndices));
+            }
+            metrics.addHashNanos(System.nanoTime() - start);
+            return recorded(check(rows, accountType, lookup.findExisting(new ArrayList<>(candidateKeys)), parallel),
+                    metrics);
+        }
+
+        String[][] rowArray = rows.toArray(new String[0][]);
+        long[] his = new long[rowArray.length];
+        long[] los = new long[rowArray.length];
+        forEachRange(rowArray.length, parallel, (from, to) -> {
+            DedupKeyHash.Hasher hasher = hasher(accountType);
+            long[] hash = new long[2];
+            for (int r = from; r < to; r++) {
+                hasher.hash(rowArray[r], hash);
+                his[r] = hash[0];
+                los[r] = hash[1];
+            }
+        });
+        metrics.addHashNanos(System.nanoTime() - start);
+        DedupKeySet existing = lookup.findExisting(rowArray, his, los, rowArray.length);
+        return recorded(check(rows, his, los, existing, parallel), metrics);
+    }
+
+    /**
+     * Adds the lookup and hashing metrics of a check to its classification metrics,
+     * and records them in {@link DeduplicationStats}.
+     */
+    private static DeduplicationResult recorded(DeduplicationResult result, DedupMetrics metrics) {
+        result.getMetrics().add(metrics);
+        DeduplicationStats.record(result.getMetrics());
+        LogUtil.info(CLASS_NAME, "De-duplication metrics: " + result.getMetrics());
+        return result;
+    }
+
+    /**
+     * Streaming variant of {@link #check(List, String, String, String, String)}.
+     * <p>
+     * Returns a cursor that yields only non-duplicate rows from {@code rows}.
+     * Overlapping statements are found when the first row is pulled, and each
+     * chunk of rows is looked up in their key index. Counts are available from the
+     * returned cursor once drained; closing it closes {@code rows}.
+     * <p>
+     * When one statement record is imported from several statements, e.g. the
+     * entries of a zip archive, rows whose key is in {@code carriedKeys} (rows
+     * yielded for earlier entries) are duplicates too. Keys of the rows this cursor
+     * yields are added to {@code carriedKeys} when it is closed.
+     *
+     * @param rows        cursor over parsed CSV rows
+     * @param statementId current statement ID (excluded from overlap search)
+     * @param fromDate    statement period start (yyyy-MM-dd)
+     * @param toDate      statement period end (yyyy-MM-dd)
+     * @param accountType "bank" or "secu"
+     * @param carriedKeys dedup keys of rows yielded for earlier entries (updated on close), or {@code null}
+     * @param options     de-duplication options
+     * @return cursor over non-duplicate rows
+     */
+    public static DeduplicatingRowCursor checkStream(
+            RowCursor rows,
+            String statementId,
+            String fromDate,
+            String toDate,
+            String accountType,
+            DedupKeySet carriedKeys,
+            DeduplicationOptions options) {
+
+        boolean hashed = options.getKeyComparison() == DeduplicationOptions.KeyComparison.HASHED;
+        LogUtil.info(CLASS_NAME, "Streaming de-duplication check: accountType=" + accountType
+                + ", statementId=" + statementId + ", keys=" + options.getKeyComparison()
+                + (carriedKeys != null ? ", carried keys=" + carriedKeys.size() : ""));
+
+        DedupMetrics metrics = new DedupMetrics();
+        IndexKeyLookup lookup = new IndexKeyLookup(statementId, fromDate, toDate, accountType, options, metrics,
+                null);
+        return hashed
+                ? new DeduplicatingRowCursor(rows, accountType, (DeduplicatingRowCursor.HashedKeyLookup) lookup,
+                        carriedKeys, metrics)
+                : new DeduplicatingRowCursor(rows, accountType, (DeduplicatingRowCursor.KeyLookup) lookup,
+                        carriedKeys, metrics);
+    }
+
+    /**
+     * Streaming check against a pre-loaded set of existing dedup keys.
+     * <p>
+     * Package-private for unit testing without a database.
+     *
+     * @param rows         cursor over parsed CSV rows
+     * @param accountType  "bank" or "secu"
+     * @param existingKeys set of dedup keys already present in the database
+     * @param carriedKeys  dedup keys of rows yielded for earlier entries (updated on close), or {@code null}
+     * @return cursor over non-duplicate rows
+     */
+    static DeduplicatingRowCursor checkStream(RowCursor rows, String accountType, Set<String> existingKeys,
+                                              DedupKeySet carriedKeys) {
+        return new DeduplicatingRowCursor(rows, accountType, () -> existingKeys, carriedKeys);
     }
 
     /**
@@ -90,34 +232,305 @@ public class DeduplicationChecker {
             List<String[]> rows,
             String accountType,
             Set<String> existingKeys) {
+        return check(rows, accountType, existingKeys, false);
+    }
 
-        int primaryKeyIndex;
-        int[] compositeKeyIndices;
+    /**
+     * As {@link #check(List, String, Set)}, classifying ranges of rows on the
+     * common fork-join pool if {@code parallel}. {@code existingKeys} is only read.
+     */
+    static DeduplicationResult check(
+            List<String[]> rows,
+            String accountType,
+            Set<String> existingKeys,
+            boolean parallel) {
+
+        long start = System.nanoTime();
+        int primaryKeyIndex = primaryKeyIndex(accountType);
+        int[] compositeKeyIndices = compositeKeyIndices(accountType);
+
+        List<String[]> list = randomAccess(rows);
+        boolean[] duplicate = new boolean[list.size()];
+        forEachRange(list.size(), parallel, (from, to) -> {
+            for (int r = from; r < to; r++) {
+                duplicate[r] = existingKeys.contains(extractKey(list.get(r), primaryKeyIndex, compositeKeyIndices));
+            }
+        });
+        return result(list, duplicate, start);
+    }
 
-        if ("bank".equals(accountType)) {
-            primaryKeyIndex = BANK_PRIMARY_KEY_INDEX;
-            compositeKeyIndices = BANK_COMPOSITE_INDICES;
-        } else {
-            primaryKeyIndex = SECU_PRIMARY_KEY_INDEX;
-            compositeKeyIndices = SECU_COMPOSITE_INDICES;
-        }
+    /**
+     * Checks a columnar batch against a pre-loaded set of existing dedup keys.
+     * Rows are classified exactly as by {@link #check(List, String, Set)}.
+     * <p>
+     * Package-private for unit testing without a database.
+     *
+     * @param batch        all parsed CSV rows
+     * @param accountType  "bank" or "secu"
+     * @param existingKeys set of dedup keys already present in the database, only read
+     * @param parallel     whether to classify ranges of rows on the common fork-join pool
+     * @return DeduplicationResult with non-duplicate rows and duplicate count
+     */
+    static DeduplicationResult check(
+            StatementBatch batch,
+            String accountType,
+            Set<String> existingKeys,
+            boolean parallel) {
+
+        long start = System.nanoTime();
+        int primaryKeyIndex = primaryKeyIndex(accountType);
+        int[] compositeKeyIndices = compositeKeyIndices(accountType);
+        int[] keyColumns = keyIndices(accountType);
+
+        boolean[] duplicate = new boolean[batch.size()];
+        forEachRange(batch.size(), parallel, (from, to) -> {
+            // Only the key columns are read, into a sparse row reused within the range
+            String[] keyRow = new String[batch.width()];
+            for (int r = from; r < to; r++) {
+                for (int idx : keyColumns) {
+                    if (idx < keyRow.length) {
+                        keyRow[idx] = batch.get(r, idx);
+                    }
+                }
+                duplicate[r] = existingKeys.contains(extractKey(keyRow, primaryKeyIndex, compositeKeyIndices));
+            }
+        });
+        return result(batch, duplicate, start);
+    }
+
+    /**
+     * Checks parsed rows against a pre-loaded set of hashed dedup keys, without
+     * building a key string per row. Rows are classified as by
+     * {@link #check(List, String, Set)} with the same keys as strings.
+     * <p>
+     * Package-private for unit testing without a database.
+     *
+     * @param rows         all parsed CSV rows
+     * @param accountType  "bank" or "secu"
+     * @param existingKeys hashes of the dedup keys already present in the database, only read
+     * @param parallel     whether to classify ranges of rows on the common fork-join pool
+     * @return DeduplicationResult with non-duplicate rows and duplicate count
+     */
+    static DeduplicationResult check(
+            List<String[]> rows,
+            String accountType,
+            DedupKeySet existingKeys,
+            boolean parallel) {
+
+        long start = System.nanoTime();
+        List<String[]> list = randomAccess(rows);
+        boolean[] duplicate = new boolean[list.size()];
+        forEachRange(list.size(), parallel, (from, to) -> {
+            DedupKeyHash.Hasher hasher = hasher(accountType);
+            long[] hash = new long[2];
+            for (int r = from; r < to; r++) {
+                hasher.hash(list.get(r), hash);
+                duplicate[r] = existingKeys.contains(hash[0], hash[1]);
+            }
+        });
+        return result(list, duplicate, start);
+    }
+
+    /**
+     * Checks a columnar batch against a pre-loaded set of hashed dedup keys.
+     * <p>
+     * Package-private for unit testing without a database.
+     *
+     * @param batch        all parsed CSV rows
+     * @param accountType  "bank" or "secu"
+     * @param existingKeys hashes of the dedup keys already present in the database, only read
+     * @param parallel     whether to classify ranges of rows on the common fork-join pool
+     * @return DeduplicationResult with non-duplicate rows and duplicate count
+     */
+    static DeduplicationResult check(
+            StatementBatch batch,
+            String accountType,
+            DedupKeySet existingKeys,
+            boolean parallel) {
+
+        long start = System.nanoTime();
+        int[] keyColumns = keyIndices(accountType);
+
+        boolean[] duplicate = new boolean[batch.size()];
+        forEachRange(batch.size(), parallel, (from, to) -> {
+            DedupKeyHash.Hasher hasher = hasher(accountType);
+            long[] hash = new long[2];
+            String[] keyRow = new String[batch.width()];
+            for (int r = from; r < to; r++) {
+                for (int idx : keyColumns) {
+                    if (idx < keyRow.length) {
+                        keyRow[idx] = batch.get(r, idx);
+                    }
+                }
+                hasher.hash(keyRow, hash);
+                duplicate[r] = existingKeys.contains(hash[0], hash[1]);
+            }
+        });
+        return result(batch, duplicate, start);
+    }
+
+    /**
+     * As {@link #check(List, String, DedupKeySet, boolean)}, with the rows' key
+     * hashes already computed ({@code his[r]}, {@code los[r]} for row {@code r}).
+     */
+    static DeduplicationResult check(
+            List<String[]> rows,
+            long[] his,
+            long[] los,
+            DedupKeySet existingKeys,
+            boolean parallel) {
+
+        long start = System.nanoTime();
+        return result(randomAccess(rows), duplicates(his, los, existingKeys, parallel), start);
+    }
 
+    /**
+     * Flags the rows whose precomputed key hashes are in {@code existingKeys}.
+     */
+    private static boolean[] duplicates(long[] his, long[] los, DedupKeySet existingKeys, boolean parallel) {
+        boolean[] duplicate = new boolean[his.length];
+        forEachRange(his.length, parallel, (from, to) -> {
+            for (int r = from; r < to; r++) {
+                duplicate[r] = existingKeys.contains(his[r], los[r]);
+            }
+        });
+        return duplicate;
+    }
+
+    /**
+     * Collects the rows not flagged as duplicates, in their original order; the
+     * classification began at {@code start} ({@link System#nanoTime()}).
+     */
+    private static DeduplicationResult result(List<String[]> rows, boolean[] duplicate, long start) {
         List<String[]> nonDuplicateRows = new ArrayList<>();
         int duplicateCount = 0;
-
-        for (String[] row : rows) {
-            String key = extractKey(row, primaryKeyIndex, compositeKeyIndices);
-            if (existingKeys.contains(key)) {
+        for (int r = 0; r < duplicate.length; r++) {
+            if (duplicate[r]) {
                 duplicateCount++;
             } else {
-                nonDuplicateRows.add(row);
+                nonDuplicateRows.add(rows.get(r));
             }
         }
 
         LogUtil.info(CLASS_NAME, "De-duplication result: " + duplicateCount + " duplicates, "
                 + nonDuplicateRows.size() + " new rows out of " + rows.size() + " total");
 
-        return new DeduplicationResult(nonDuplicateRows, duplicateCount, rows.size());
+        return new DeduplicationResult(nonDuplicateRows, duplicateCount, rows.size(),
+                classified(rows.size(), duplicateCount, start));
+    }
+
+    /**
+     * Selects the rows of a batch not flagged as duplicates, in their original order.
+     */
+    private static DeduplicationResult result(StatementBatch batch, boolean[] duplicate, long start) {
+        int[] kept = new int[batch.size()];
+        int keptCount = 0;
+        for (int r = 0; r < duplicate.length; r++) {
+            if (!duplicate[r]) {
+                kept[keptCount++] = r;
+            }
+        }
+
+        int duplicateCount = batch.size() - keptCount;
+        LogUtil.info(CLASS_NAME, "De-duplication result: " + duplicateCount + " duplicates, "
+                + keptCount + " new rows out of " + batch.size() + " total");
+
+        return new DeduplicationResult(batch.select(kept, keptCount), duplicateCount, batch.size(),
+                classified(batch.size(), duplicateCount, start));
+    }
+
+    private static DedupMetrics classified(int rows, int duplicateCount, long start) {
+        DedupMetrics metrics = new DedupMetrics();
+        metrics.addRows(rows, duplicateCount);
+        metrics.addClassifyNanos(System.nanoTime() - start);
+        return metrics;
+    }
+
+    /**
+     * Work on the rows {@code [from, to)} of a classification. Runs once per range,
+     * possibly concurrently with other ranges; per-range state (hashers, buffers) is
+     * created inside it, and it writes only to its own rows' slots.
+     */
+    @FunctionalInterface
+    interface RangeTask {
+        void run(int from, int to);
+    }
+
+    /**
+     * Runs {@code task} over the rows {@code [0, size)}: in one call, or — if
+     * {@code parallel} and there is more than one leaf of rows — split into ranges of
+     * at most {@value #PARALLEL_LEAF_ROWS} rows on the common fork-join pool. Returns
+     * once every range is done; their writes are then visible to the caller.
+     */
+    static void forEachRange(int size, boolean parallel, RangeTask task) {
+        if (!parallel || size <= PARALLEL_LEAF_ROWS) {
+            task.run(0, size);
+            return;
+        }
+        ForkJoinPool.commonPool().invoke(new RangeAction(0, size, task));
+    }
+
+    private static final class RangeAction extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+        private final RangeTask task;
+
+        RangeAction(int from, int to, RangeTask task) {
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_LEAF_ROWS) {
+                task.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeAction(from, mid, task), new RangeAction(mid, to, task));
+        }
+    }
+
+    private static <T> List<T> randomAccess(List<T> rows) {
+        return (rows instanceof RandomAccess) ? rows : new ArrayList<>(rows);
+    }
+
+    /**
+     * Returns a dedup key hasher for the account type.
+     */
+    static DedupKeyHash.Hasher hasher(String accountType) {
+        return new DedupKeyHash.Hasher(primaryKeyIndex(accountType), compositeKeyIndices(accountType));
+    }
+
+    /**
+     * Returns every parsed-row index read by the dedup key (primary and composite)
+     * for the account type. Used to build the parser's column projection.
+     *
+     * @param accountType "bank" or "secu"
+     * @return primary key index followed by the composite key indices
+     */
+    public static int[] keyIndices(String accountType) {
+        int[] composite = compositeKeyIndices(accountType);
+        int[] indices = new int[composite.length + 1];
+        indices[0] = primaryKeyIndex(accountType);
+        System.arraycopy(composite, 0, indices, 1, composite.length);
+        return indices;
+    }
+
+    /**
+     * Returns the primary dedup key index for the account type.
+     */
+    static int primaryKeyIndex(String accountType) {
+        return "bank".equals(accountType) ? BANK_PRIMARY_KEY_INDEX : SECU_PRIMARY_KEY_INDEX;
+    }
+
+    /**
+     * Returns the composite dedup key indices for the account type.
+     */
+    static int[] compositeKeyIndices(String accountType) {
+        return "bank".equals(accountType) ? BANK_COMPOSITE_INDICES : SECU_COMPOSITE_INDICES;
     }
 
     /**
@@ -152,59 +565,240 @@ public class DeduplicationChecker {
     }
 
     /**
-     * Loads existing dedup keys from the database for overlapping statements.
+     * Looks up candidate keys among the keys of the statements overlapping an import.
      * <p>
-     * Level 1: Find statement IDs with overlapping date ranges.<br>
-     * Level 2: Collect primary and composite dedup keys from raw rows
-     * belonging to those statements.
-     *
-     * @return set of existing dedup keys; empty set if no overlaps found
+     * Level 1 (finding the overlapping statements and back-filling their index
+     * entries) runs once, on the first lookup; every lookup then queries the
+     * {@link DedupKeyIndex} for the given candidates only — after dropping those the
+     * {@link DedupBloomFilters} of the overlapping statements' months rule out (loaded
+     * once, with level 1), so a chunk of new rows needs no database access.
+     * <p>
+     * String lookups ({@link DeduplicationOptions.KeyComparison#EXACT}) never use
+     * the index, so that an audit run does not depend on hashes. They, and every
+     * lookup while the index table has not been migrated, go to the
+     * {@link RawKeyLookup} of the options' {@link DeduplicationOptions.LookupStrategy}.
+     * <p>
+     * The time and counters of level 1 and of every lookup go into the check's
+     * {@link DedupMetrics}.
      */
-    private static Set<String> loadExistingKeys(
-            String statementId, String fromDate, String toDate, String accountType) {
-
-        Set<String> existingKeys = new HashSet<>();
+    private static final class IndexKeyLookup
+            implements DeduplicatingRowCursor.KeyLookup, DeduplicatingRowCursor.HashedKeyLookup {
+
+        private final String statementId;
+        private final String fromDate;
+        private final String toDate;
+        private final String accountType;
+        private final boolean bank;
+        private final DeduplicationOptions options;
+        private final DedupMetrics metrics;
+        private final DataSource dataSource;
+
+        private List<String> overlappingIds;
+        private final Set<String> partialIds = new HashSet<>();
+        /** Lookup in the raw rows, once the overlapping statements are known. */
+        private RawKeyLookup rawKeys;
+        private boolean indexAvailable = true;
+        private boolean bloomAvailable = true;
+        /** Filters of every month and account the overlapping statements have index entries in. */
+        private Map<DedupBloomFilters.Bucket, DedupBloomFilter> bloomFilters;
+
+        IndexKeyLookup(String statementId, String fromDate, String toDate, String accountType,
+                       DeduplicationOptions options, DedupMetrics metrics, DataSource dataSource) {
+            this.statementId = statementId;
+            this.fromDate = fromDate;
+            this.toDate = toDate;
+            this.accountType = accountType;
+            this.bank = "bank".equals(accountType);
+            this.options = options;
+            this.metrics = metrics;
+            this.dataSource = dataSource;
+        }
 
-        DataSource ds = (DataSource) AppUtil.getApplicationContext().getBean("setupDataSource");
+        @Override
+        public Set<String> findExisting(List<String> candidateKeys) {
+            long start = System.nanoTime();
+            long overlapNanos = metrics.getOverlapNanos();
+            try {
+                return lookUp(candidateKeys);
+            } finally {
+                metrics.addLookupNanos(System.nanoTime() - start - (metrics.getOverlapNanos() - overlapNanos));
+            }
+        }
 
-        try (Connection con = ds.getConnection()) {
+        @Override
+        public DedupKeySet findExisting(String[][] rows, long[] his, long[] los, int count) {
+            long start = System.nanoTime();
+            long overlapNanos = metrics.getOverlapNanos();
+            try {
+                return lookUp(rows, his, los, count);
+            } finally {
+                metrics.addLookupNanos(System.nanoTime() - start - (metrics.getOverlapNanos() - overlapNanos));
+            }
+        }
 
-            // Level 1 — Find overlapping statement IDs
-            List<String> overlappingIds = findOverlappingStatements(
-                    con, statementId, fromDate, toDate, accountType);
+        private Set<String> lookUp(List<String> candidateKeys) {
+            if (overlappingIds != null && overlappingIds.isEmpty()) {
+                return Collections.emptySet();
+            }
+            try (Connection con = connection()) {
+                if (overlappingIds(con, false).isEmpty()) {
+                    return Collections.emptySet();
+                }
+                return rawKeys.findExisting(con, candidateKeys);
 
-            if (overlappingIds.isEmpty()) {
-                LogUtil.info(CLASS_NAME, "No overlapping statements found — all rows are new");
-                return existingKeys;
+            } catch (SQLException e) {
+                LogUtil.error(CLASS_NAME, e, "Database error during de-duplication key lookup");
+                throw new RuntimeException("De-duplication failed: " + e.getMessage(), e);
             }
+        }
 
-            LogUtil.info(CLASS_NAME, "Found " + overlappingIds.size() + " overlapping statements");
+        private DedupKeySet lookUp(String[][] rows, long[] his, long[] los, int count) {
+            Connection con = null;
+            try {
+                if (overlappingIds == null) {
+                    con = connection();
+                    overlappingIds(con, true);
+                }
+                if (overlappingIds.isEmpty()) {
+                    return new DedupKeySet();
+                }
+                if (!indexAvailable) {
+                    if (con == null) {
+                        con = connection();
+                    }
+                    return rawKeys.findExisting(con, rows, count);
+                }
 
-            // Level 2 — Collect dedup keys from overlapping statement rows
-            if ("bank".equals(accountType)) {
-                collectBankKeys(con, overlappingIds, existingKeys);
-            } else {
-                collectSecuKeys(con, overlappingIds, existingKeys);
+                // Bloom pre-check — only keys the overlapping statements' filters may hold go to the index
+                int candidates = count;
+                if (bloomAvailable) {
+                    if (bloomFilters == null) {
+                        if (con == null) {
+                            con = connection();
+                        }
+                        try {
+                            bloomFilters = DedupBloomFilters.load(con, accountType,
+                                    DedupKeyIndex.bucketsOf(con, overlappingIds, accountType));
+                        } catch (SQLException e) {
+                            LogUtil.warn(CLASS_NAME, "Dedup Bloom filters unavailable, looking up every key: "
+                                    + e.getMessage());
+                            bloomAvailable = false;
+                        }
+                    }
+                    if (bloomAvailable) {
+                        int primaryKeyIndex = primaryKeyIndex(accountType);
+                        long[] maybeHis = new long[count];
+                        long[] maybeLos = new long[count];
+                        candidates = 0;
+                        for (int i = 0; i < count; i++) {
+                            if (mightExist(rows[i], primaryKeyIndex, his[i], los[i])) {
+                                maybeHis[candidates] = his[i];
+                                maybeLos[candidates++] = los[i];
+                            }
+                        }
+                        LogUtil.debug(CLASS_NAME, "Bloom pre-check: " + (count - candidates) + " of " + count
+                                + " keys are new");
+                        metrics.addKeysLookedUp(0, count - candidates);
+                        if (candidates == 0) {
+                            return new DedupKeySet();
+                        }
+                        his = maybeHis;
+                        los = maybeLos;
+                    }
+                }
+
+                // Level 2 — Indexed lookup of just the candidate keys
+                if (con == null) {
+                    con = connection();
+                }
+                metrics.addKeysLookedUp(candidates, 0);
+                return DedupKeyIndex.findExisting(con, overlappingIds, accountType, his, los, candidates);
+
+            } catch (SQLException e) {
+                LogUtil.error(CLASS_NAME, e, "Database error during de-duplication key lookup");
+                throw new RuntimeException("De-duplication failed: " + e.getMessage(), e);
+            } finally {
+                if (con != null) {
+                    try {
+                        con.close();
+                    } catch (SQLException e) {
+                        LogUtil.warn(CLASS_NAME, "Could not close connection: " + e.getMessage());
+                    }
+                }
             }
+        }
 
-            LogUtil.info(CLASS_NAME, "Loaded " + existingKeys.size() + " existing dedup keys");
+        /**
+         * Returns whether the Bloom filters may hold a hashed key. A primary key can
+         * match a row of any month and account of the overlapping statements; a
+         * composite key holds the account and date, so only its own month's filter
+         * can hold it.
+         */
+        private boolean mightExist(String[] row, int primaryKeyIndex, long hi, long lo) {
+            String primaryKey = (primaryKeyIndex < row.length) ? row[primaryKeyIndex] : null;
+            if (primaryKey != null && !primaryKey.trim().isEmpty()) {
+                for (DedupBloomFilter filter : bloomFilters.values()) {
+                    if (filter.mightContain(hi, lo)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            DedupBloomFilter filter = bloomFilters.get(DedupKeyIndex.bucketOf(bank, row));
+            return filter != null && filter.mightContain(hi, lo);
+        }
 
-        } catch (SQLException e) {
-            LogUtil.error(CLASS_NAME, e, "Database error during de-duplication key loading");
-            throw new RuntimeException("De-duplication failed: " + e.getMessage(), e);
+        private Connection connection() throws SQLException {
+            DataSource ds = (dataSource != null)
+                    ? dataSource : (DataSource) AppUtil.getApplicationContext().getBean("setupDataSource");
+            return ds.getConnection();
         }
 
-        return existingKeys;
+        /**
+         * Level 1 — finds the overlapping statements once and, when {@code useIndex}
+         * is set, back-fills their index entries.
+         */
+        private List<String> overlappingIds(Connection con, boolean useIndex) throws SQLException {
+            if (overlappingIds == null) {
+                long start = System.nanoTime();
+                overlappingIds = findOverlappingStatements(con, statementId, fromDate, toDate, accountType,
+                        partialIds);
+                metrics.addOverlap(overlappingIds.size(), System.nanoTime() - start);
+                if (overlappingIds.isEmpty()) {
+                    LogUtil.info(CLASS_NAME, "No overlapping statements found — all rows are new");
+                    return overlappingIds;
+                }
+                LogUtil.info(CLASS_NAME, "Found " + overlappingIds.size() + " overlapping statements");
+                rawKeys = RawKeyLookup.of(options, accountType, overlappingIds, partialIds, fromDate, toDate,
+                        metrics);
+
+                if (useIndex && !DedupKeyIndex.exists(con)) {
+                    LogUtil.info(CLASS_NAME, "Dedup key index not migrated, loading all keys");
+                    indexAvailable = false;
+                } else if (useIndex) {
+                    try {
+                        DedupKeyIndex.backfillMissing(con, overlappingIds, accountType);
+                    } catch (SQLException e) {
+                        LogUtil.warn(CLASS_NAME, "Dedup key index unavailable, loading all keys: "
+                                + e.getMessage());
+                        indexAvailable = false;
+                    }
+                }
+            }
+            return overlappingIds;
+        }
     }
 
     /**
      * Finds statement IDs that overlap with the given date range.
+     *
+     * @param partialIds receives the IDs of statements that extend beyond the range
      */
     private static List<String> findOverlappingStatements(
             Connection con, String statementId, String fromDate, String toDate,
-            String accountType) throws SQLException {
+            String accountType, Set<String> partialIds) throws SQLException {
 
-        String sql = "SELECT id FROM app_fd_bank_statement "
+        String sql = "SELECT id, c_from_date, c_to_date FROM app_fd_bank_statement "
                 + "WHERE c_account_type = ? "
                 + "AND c_status NOT IN ('error', 'new') "
                 + "AND c_from_date <= ? "
@@ -219,139 +813,23 @@ public class DeduplicationChecker {
             ps.setString(4, statementId);
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    ids.add(rs.getString("id"));
-                }
-            }
-        }
-        return ids;
-    }
-
-    /**
-     * Collects bank dedup keys: primary keys (provider_reference) and
-     * composite keys (for rows where provider_reference is empty).
-     */
-    private static void collectBankKeys(
-            Connection con, List<String> overlappingIds, Set<String> keys) throws SQLException {
-
-        String inClause = buildInClause(overlappingIds.size());
-
-        // Primary keys
-        String sqlPrimary = "SELECT c_provider_reference FROM app_fd_bank_account_trx "
-                + "WHERE c_statement_id IN (" + inClause + ") "
-                + "AND c_provider_reference IS NOT NULL "
-                + "AND c_provider_reference != ''";
-
-        try (PreparedStatement ps = con.prepareStatement(sqlPrimary)) {
-            setInParams(ps, overlappingIds, 1);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    String val = rs.getString(1);
-                    if (val != null) {
-                        keys.add(val.trim());
-                    }
-                }
-            }
-        }
-
-        // Composite keys (for rows missing provider_reference)
-        String sqlComposite = "SELECT CONCAT("
-                + "IFNULL(c_account_number,''), '|', "
-                + "IFNULL(c_document_nr,''), '|', "
-                + "IFNULL(c_payment_date,''), '|', "
-                + "IFNULL(c_payment_amount,''), '|', "
-                + "IFNULL(c_currency,''), '|') "
-                + "FROM app_fd_bank_account_trx "
-                + "WHERE c_statement_id IN (" + inClause + ") "
-                + "AND (c_provider_reference IS NULL OR c_provider_reference = '')";
-
-        try (PreparedStatement ps = con.prepareStatement(sqlComposite)) {
-            setInParams(ps, overlappingIds, 1);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    String val = rs.getString(1);
-                    if (val != null) {
-                        keys.add(val);
-                    }
-                }
-            }
-        }
-    }
-
-    /**
-     * Collects securities dedup keys: primary keys (reference) and
-     * composite keys (for rows where reference is empty).
-     */
-    private static void collectSecuKeys(
-            Connection con, List<String> overlappingIds, Set<String> keys) throws SQLException {
-
-        String inClause = buildInClause(overlappingIds.size());
-
-        // Primary keys
-        String sqlPrimary = "SELECT c_reference FROM app_fd_sec_account_trx "
-                + "WHERE c_statement_id IN (" + inClause + ") "
-                + "AND c_reference IS NOT NULL "
-                + "AND c_reference != ''";
-
-        try (PreparedStatement ps = con.prepareStatement(sqlPrimary)) {
-            setInParams(ps, overlappingIds, 1);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    String val = rs.getString(1);
-                    if (val != null) {
-                        keys.add(val.trim());
+                    String id = rs.getString("id");
+                    ids.add(id);
+                    if (!within(rs.getString("c_from_date"), rs.getString("c_to_date"), fromDate, toDate)) {
+                        partialIds.add(id);
                     }
                 }
             }
         }
-
-        // Composite keys (for rows missing reference)
-        String sqlComposite = "SELECT CONCAT("
-                + "IFNULL(c_value_date,''), '|', "
-                + "IFNULL(c_transaction_date,''), '|', "
-                + "IFNULL(c_type,''), '|', "
-                + "IFNULL(c_ticker,''), '|', "
-                + "IFNULL(c_amount,''), '|', "
-                + "IFNULL(c_currency,''), '|') "
-                + "FROM app_fd_sec_account_trx "
-                + "WHERE c_statement_id IN (" + inClause + ") "
-                + "AND (c_reference IS NULL OR c_reference = '')";
-
-        try (PreparedStatement ps = con.prepareStatement(sqlComposite)) {
-            setInParams(ps, overlappingIds, 1);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    String val = rs.getString(1);
-                    if (val != null) {
-                        keys.add(val);
-                    }
-                }
-            }
-        }
-    }
-
-    /**
-     * Builds a SQL IN clause placeholder string: "?, ?, ?" for the given count.
-     */
-    private static String buildInClause(int count) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < count; i++) {
-            if (i > 0) sb.append(", ");
-            sb.append("?");
-        }
-        return sb.toString();
+        return ids;
     }
 
     /**
-     * Sets parameter values for an IN clause in a PreparedStatement.
-     *
-     * @param ps         the prepared statement
-     * @param values     the values to bind
-     * @param startIndex the 1-based parameter index to start at
+     * Returns whether a statement period lies within {@code fromDate..toDate}; a
+     * period that cannot be compared does not.
      */
-    private static void setInParams(PreparedStatement ps, List<String> values, int startIndex)
-            throws SQLException {
-        for (int i = 0; i < values.size(); i++) {
-            ps.setString(startIndex + i, values.get(i));
-        }
+    static boolean within(String periodFrom, String periodTo, String fromDate, String toDate) {
+        return periodFrom != null && periodTo != null && fromDate != null && toDate != null
+                && periodFrom.trim().compareTo(fromDate) >= 0 && periodTo.trim().compareTo(toDate) <= 0;
     }
 }
@@ -0,0 +1,123 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+/**
+ * Tuning options of a database-backed de-duplication check, set from the
+ * Statement Importer plugin properties. The defaults suit normal imports.
+ */
+public class DeduplicationOptions {
+
+    /**
+     * How dedup keys are compared.
+     */
+    public enum KeyComparison {
+        /**
+         * 128-bit hashes ({@link DedupKeyHash}) computed straight from the row fields,
+         * matched in a {@link DedupKeySet} or through the {@link DedupKeyIndex}.
+         */
+        HASHED,
+        /**
+         * Key strings, matched against every key of the overlapping statements loaded
+         * from their raw rows. Slower; for audits of the hashed path.
+         */
+        EXACT
+    }
+
+    /**
+     * How existing keys are found when they are not looked up in the
+     * {@link DedupKeyIndex} (exact comparison, or the index is unavailable).
+     */
+    public enum LookupStrategy {
+        /**
+         * {@link #PUSHDOWN} when the overlapping statements hold more raw rows than
+         * the statement has incoming rows ({@link #getExpectedRows()}, or the first
+         * lookup's candidates if unknown), otherwise {@link #LOAD_ALL}. Decided once
+         * per check.
+         */
+        AUTO,
+        /**
+         * Load every key of the overlapping statements into memory once.
+         */
+        LOAD_ALL,
+        /**
+         * Join the candidate keys against the raw rows in the database
+         * ({@link CandidateKeyPushdown}); only colliding keys are transferred.
+         */
+        PUSHDOWN
+    }
+
+    /**
+     * How the list and columnar checks hash and classify their rows. Streaming
+     * checks classify each chunk as it is read and are always sequential.
+     */
+    public enum Classification {
+        /**
+         * One row after the other on the calling thread.
+         */
+        SEQUENTIAL,
+        /**
+         * Ranges of rows on the common {@link java.util.concurrent.ForkJoinPool},
+         * against the read-only set of existing keys, merged back in row order.
+         * For large row sets such as history back-fills; the result is identical.
+         */
+        PARALLEL
+    }
+
+    /** Default number of rows a key query fetches per round trip. */
+    public static final int DEFAULT_KEY_FETCH_SIZE = 1000;
+
+    private KeyComparison keyComparison = KeyComparison.HASHED;
+    private LookupStrategy lookupStrategy = LookupStrategy.AUTO;
+    private Classification classification = Classification.SEQUENTIAL;
+    private int keyFetchSize = DEFAULT_KEY_FETCH_SIZE;
+    private long expectedRows;
+
+    public KeyComparison getKeyComparison() {
+        return keyComparison;
+    }
+
+    public void setKeyComparison(KeyComparison keyComparison) {
+        this.keyComparison = keyComparison;
+    }
+
+    public LookupStrategy getLookupStrategy() {
+        return lookupStrategy;
+    }
+
+    public void setLookupStrategy(LookupStrategy lookupStrategy) {
+        this.lookupStrategy = lookupStrategy;
+    }
+
+    public Classification getClassification() {
+        return classification;
+    }
+
+    public void setClassification(Classification classification) {
+        this.classification = classification;
+    }
+
+    /**
+     * Rows fetched per round trip when existing keys are loaded from the raw rows;
+     * 0 or less leaves the driver's default (on MySQL: the whole result buffered).
+     */
+    public int getKeyFetchSize() {
+        return keyFetchSize;
+    }
+
+    public void setKeyFetchSize(int keyFetchSize) {
+        this.keyFetchSize = keyFetchSize;
+    }
+
+    /**
+     * Estimated number of rows of the statement being checked, which
+     * {@link LookupStrategy#AUTO} weighs against the existing rows; 0 if unknown.
+     * A streaming check only sees one chunk at a time, so it needs the estimate to
+     * choose for the whole statement.
+     */
+    public long getExpectedRows() {
+        return expectedRows;
+    }
+
+    public void setExpectedRows(long expectedRows) {
+        this.expectedRows = expectedRows;
+    }
+}
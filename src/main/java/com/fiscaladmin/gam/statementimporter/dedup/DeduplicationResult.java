@@ -1,32 +1,91 @@
 package com.fiscaladmin.gam.statementimporter.dedup;
 
+import com.fiscaladmin.gam.statementimporter.parser.StatementBatch;
+
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Immutable result of a de-duplication check.
  * <p>
- * Contains the list of non-duplicate rows that should be inserted,
- * plus counts for reporting and metadata updates.
+ * Contains the non-duplicate rows that should be inserted, plus counts for
+ * reporting and metadata updates. The rows are held either as a list or, for
+ * the columnar {@code check(StatementBatch, ...)},
+ * as a columnar {@link StatementBatch}; the other view is built on first request.
+ * {@link #getMetrics()} tells where the check spent its time.
  */
 public class DeduplicationResult {
 
-    private final List<String[]> nonDuplicateRows;
+    private List<String[]> nonDuplicateRows;
+    private StatementBatch nonDuplicateBatch;
     private final int duplicateCount;
     private final int totalCount;
+    private final DedupMetrics metrics;
 
     public DeduplicationResult(List<String[]> nonDuplicateRows, int duplicateCount, int totalCount) {
+        this(nonDuplicateRows, duplicateCount, totalCount, null);
+    }
+
+    public DeduplicationResult(StatementBatch nonDuplicateBatch, int duplicateCount, int totalCount) {
+        this(nonDuplicateBatch, duplicateCount, totalCount, null);
+    }
+
+    /**
+     * @param metrics metrics of the check, or {@code null} for just the row counts
+     */
+    public DeduplicationResult(List<String[]> nonDuplicateRows, int duplicateCount, int totalCount,
+                               DedupMetrics metrics) {
         this.nonDuplicateRows = nonDuplicateRows;
         this.duplicateCount = duplicateCount;
         this.totalCount = totalCount;
+        this.metrics = (metrics != null) ? metrics : counts(duplicateCount, totalCount);
+    }
+
+    /**
+     * @param metrics metrics of the check, or {@code null} for just the row counts
+     */
+    public DeduplicationResult(StatementBatch nonDuplicateBatch, int duplicateCount, int totalCount,
+                               DedupMetrics metrics) {
+        this.nonDuplicateBatch = nonDuplicateBatch;
+        this.duplicateCount = duplicateCount;
+        this.totalCount = totalCount;
+        this.metrics = (metrics != null) ? metrics : counts(duplicateCount, totalCount);
+    }
+
+    private static DedupMetrics counts(int duplicateCount, int totalCount) {
+        DedupMetrics metrics = new DedupMetrics();
+        metrics.addRows(totalCount, duplicateCount);
+        return metrics;
     }
 
     /**
      * Returns the rows that are not duplicates and should be inserted.
      */
-    public List<String[]> getNonDuplicateRows() {
+    public synchronized List<String[]> getNonDuplicateRows() {
+        if (nonDuplicateRows == null) {
+            List<String[]> rows = new ArrayList<>(nonDuplicateBatch.size());
+            for (int r = 0; r < nonDuplicateBatch.size(); r++) {
+                rows.add(nonDuplicateBatch.row(r));
+            }
+            nonDuplicateRows = rows;
+        }
         return nonDuplicateRows;
     }
 
+    /**
+     * Returns the rows that are not duplicates as a columnar batch.
+     */
+    public synchronized StatementBatch getNonDuplicateBatch() {
+        if (nonDuplicateBatch == null) {
+            StatementBatch batch = new StatementBatch();
+            for (String[] row : nonDuplicateRows) {
+                batch.add(row);
+            }
+            nonDuplicateBatch = batch;
+        }
+        return nonDuplicateBatch;
+    }
+
     /**
      * Returns the number of rows identified as duplicates.
      */
@@ -40,4 +99,11 @@ public class DeduplicationResult {
     public int getTotalCount() {
         return totalCount;
     }
+
+    /**
+     * Returns the phase timings and counters of the check.
+     */
+    public DedupMetrics getMetrics() {
+        return metrics;
+    }
 }
@@ -0,0 +1,197 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.joget.commons.util.LogUtil;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Process-wide totals of the {@link DedupMetrics} of every de-duplication check,
+ * published as the MBean {@value #OBJECT_NAME} on the platform MBean server so
+ * trends across imports can be watched from JConsole or any JMX collector.
+ * <p>
+ * The MBean is registered on the first recorded check and unregistered by
+ * {@link #unregister()} when the plugin bundle stops, so the platform MBean server
+ * does not keep the stopped bundle's classes reachable. If registration fails (for example
+ * under a security manager) the totals are still kept, and a warning is logged
+ * once. Thread-safe.
+ */
+public final class DeduplicationStats implements DeduplicationStatsMBean {
+
+    private static final String CLASS_NAME = DeduplicationStats.class.getName();
+
+    /** JMX object name of the statistics. */
+    public static final String OBJECT_NAME = "com.fiscaladmin.gam.statementimporter:type=Deduplication";
+
+    private static final DeduplicationStats INSTANCE = new DeduplicationStats();
+
+    private static volatile boolean registered;
+
+    private DedupMetrics totals = new DedupMetrics();
+    private DedupMetrics last;
+    private long checks;
+
+    private DeduplicationStats() {
+    }
+
+    /**
+     * Returns the statistics of this plugin instance.
+     */
+    public static DeduplicationStats get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds the metrics of a completed check to the totals.
+     */
+    static void record(DedupMetrics metrics) {
+        register();
+        INSTANCE.add(metrics);
+    }
+
+    private synchronized void add(DedupMetrics metrics) {
+        totals.add(metrics);
+        checks++;
+        last = metrics;
+    }
+
+    /**
+     * Registers the MBean if it is not registered yet.
+     */
+    static void register() {
+        if (registered) {
+            return;
+        }
+        synchronized (DeduplicationStats.class) {
+            if (registered) {
+                return;
+            }
+            registered = true;
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                try {
+                    server.registerMBean(INSTANCE, name);
+                } catch (InstanceAlreadyExistsException e) {
+                    // Left by the previous instance of a redeployed plugin
+                    server.unregisterMBean(name);
+                    server.registerMBean(INSTANCE, name);
+                }
+            } catch (JMException | RuntimeException e) {
+                LogUtil.warn(CLASS_NAME, "De-duplication statistics not published over JMX: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Unregisters the MBean if this instance registered it; the next recorded
+     * check registers it again.
+     */
+    public static void unregister() {
+        synchronized (DeduplicationStats.class) {
+            if (!registered) {
+                return;
+            }
+            registered = false;
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException | RuntimeException e) {
+                LogUtil.warn(CLASS_NAME, "De-duplication statistics MBean not unregistered: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized long getChecks() {
+        return checks;
+    }
+
+    @Override
+    public synchronized long getRowsChecked() {
+        return totals.getRowsChecked();
+    }
+
+    @Override
+    public synchronized long getDuplicates() {
+        return totals.getDuplicates();
+    }
+
+    @Override
+    public synchronized double getHitRatio() {
+        return totals.getHitRatio();
+    }
+
+    @Override
+    public synchronized long getOverlappingStatements() {
+        return totals.getOverlappingStatements();
+    }
+
+    @Override
+    public synchronized long getPrimaryKeysLoaded() {
+        return totals.getPrimaryKeysLoaded();
+    }
+
+    @Override
+    public synchronized long getCompositeKeysLoaded() {
+        return totals.getCompositeKeysLoaded();
+    }
+
+    @Override
+    public synchronized long getKeysLookedUp() {
+        return totals.getKeysLookedUp();
+    }
+
+    @Override
+    public synchronized long getBloomRejected() {
+        return totals.getBloomRejected();
+    }
+
+    @Override
+    public synchronized double getOverlapMillis() {
+        return totals.getOverlapNanos() / 1e6;
+    }
+
+    @Override
+    public synchronized double getLookupMillis() {
+        return totals.getLookupNanos() / 1e6;
+    }
+
+    @Override
+    public synchronized double getHashMillis() {
+        return totals.getHashNanos() / 1e6;
+    }
+
+    @Override
+    public synchronized double getClassifyMillis() {
+        return totals.getClassifyNanos() / 1e6;
+    }
+
+    @Override
+    public synchronized double getMeanCheckMillis() {
+        return (checks > 0) ? totals.getTotalNanos() / 1e6 / checks : 0;
+    }
+
+    @Override
+    public synchronized double getLastCheckMillis() {
+        return (last != null) ? last.getTotalNanos() / 1e6 : 0;
+    }
+
+    @Override
+    public synchronized String getLastCheck() {
+        return (last != null) ? last.toString() : "";
+    }
+
+    @Override
+    public synchronized void reset() {
+        totals = new DedupMetrics();
+        last = null;
+        checks = 0;
+    }
+}
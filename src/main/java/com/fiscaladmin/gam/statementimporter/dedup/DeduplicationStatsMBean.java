@@ -0,0 +1,59 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+/**
+ * JMX view of {@link DeduplicationStats}: totals over every de-duplication check
+ * since the plugin was loaded or the statistics were reset.
+ */
+public interface DeduplicationStatsMBean {
+
+    /** Completed de-duplication checks. */
+    long getChecks();
+
+    /** Incoming rows classified. */
+    long getRowsChecked();
+
+    /** Incoming rows classified as duplicates. */
+    long getDuplicates();
+
+    /** Duplicates per row checked. */
+    double getHitRatio();
+
+    /** Overlapping statements found, summed over the checks. */
+    long getOverlappingStatements();
+
+    /** Existing primary keys loaded from raw rows. */
+    long getPrimaryKeysLoaded();
+
+    /** Existing composite keys loaded from raw rows. */
+    long getCompositeKeysLoaded();
+
+    /** Candidate keys looked up in the key index or pushed down to the database. */
+    long getKeysLookedUp();
+
+    /** Candidate keys ruled out by the Bloom filters. */
+    long getBloomRejected();
+
+    /** Total time finding overlapping statements, in milliseconds. */
+    double getOverlapMillis();
+
+    /** Total time looking up or loading existing keys, in milliseconds. */
+    double getLookupMillis();
+
+    /** Total time hashing incoming rows, in milliseconds. */
+    double getHashMillis();
+
+    /** Total time classifying incoming rows, in milliseconds. */
+    double getClassifyMillis();
+
+    /** Mean time of a check over all its phases, in milliseconds. */
+    double getMeanCheckMillis();
+
+    /** Time of the last check over all its phases, in milliseconds. */
+    double getLastCheckMillis();
+
+    /** Summary of the last check. */
+    String getLastCheck();
+
+    /** Clears the totals. */
+    void reset();
+}
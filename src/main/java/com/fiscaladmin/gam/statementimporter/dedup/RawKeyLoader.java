@@ -0,0 +1,353 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.joget.commons.util.LogUtil;
+
+import java.sql.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * {@link DeduplicationOptions.LookupStrategy#LOAD_ALL}: loads every dedup key of the
+ * overlapping statements' raw rows on the first lookup and answers every lookup of
+ * the check from that set. Of a statement that extends beyond the new one's period
+ * only the rows dated within that period are read (see {@link #collectKeys}).
+ */
+final class RawKeyLoader implements RawKeyLookup {
+
+    private static final String CLASS_NAME = RawKeyLoader.class.getName();
+
+    private final String accountType;
+    private final List<String> statementIds;
+    private final Set<String> partialIds;
+    private final String fromDate;
+    private final String toDate;
+    private final int fetchSize;
+    private final DedupMetrics metrics;
+
+    private Set<String> loadedKeys;
+    private DedupKeySet loadedHashes;
+
+    /**
+     * @param statementIds overlapping statements
+     * @param partialIds   those of them not contained in {@code fromDate..toDate}
+     * @param fetchSize    rows per driver fetch (see {@link DeduplicationOptions#getKeyFetchSize()})
+     * @param metrics      receives the loaded key counts
+     */
+    RawKeyLoader(String accountType, List<String> statementIds, Set<String> partialIds,
+                 String fromDate, String toDate, int fetchSize, DedupMetrics metrics) {
+        this.accountType = accountType;
+        this.statementIds = statementIds;
+        this.partialIds = partialIds;
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+        this.fetchSize = fetchSize;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the dedup key strings of the overlapping statements' raw rows, loaded
+     * on the first call.
+     */
+    @Override
+    public Set<String> findExisting(Connection con, List<String> candidateKeys) throws SQLException {
+        if (loadedKeys == null) {
+            Set<String> keys = new HashSet<>();
+            collectKeys(con, statementIds, partialIds, fromDate, toDate, accountType, fetchSize, metrics,
+                    keys::add);
+            LogUtil.info(CLASS_NAME, "Loaded " + keys.size() + " existing dedup keys");
+            loadedKeys = keys;
+        }
+        return loadedKeys;
+    }
+
+    /**
+     * Hashed counterpart of {@link #findExisting(Connection, List)}: the key strings
+     * are hashed in Java as they are read, exactly as the keys of incoming rows are.
+     */
+    @Override
+    public DedupKeySet findExisting(Connection con, String[][] rows, int count) throws SQLException {
+        if (loadedHashes == null) {
+            DedupKeySet keys = new DedupKeySet();
+            collectKeys(con, statementIds, partialIds, fromDate, toDate, accountType, fetchSize, metrics,
+                    keys::add);
+            LogUtil.info(CLASS_NAME, "Loaded " + keys.size() + " existing dedup keys");
+            loadedHashes = keys;
+        }
+        return loadedHashes;
+    }
+
+    /**
+     * Reads the dedup keys of the given statements' raw rows: every row of the
+     * statements contained in {@code fromDate..toDate}, and of the others only the
+     * rows dated within it. A duplicate is the same transaction, so it carries the
+     * same date, and level 1 already assumes a statement's rows lie within its
+     * period. Rows whose date is missing or not in {@code yyyy-MM-dd} form cannot be
+     * compared in SQL and are always read.
+     * <p>
+     * Keys are read from {@link DedupKeyColumn#COLUMN} once every row of the
+     * statements has it (back-filling those that do not), otherwise built by the
+     * composite key expression. Keys are passed on as the driver delivers the rows
+     * (see {@link #streamKeys}), never buffered as a whole result set.
+     *
+     * @param fetchSize rows per driver fetch
+     * @param metrics   receives the number of primary and composite keys read
+     * @param keys      receives each dedup key
+     */
+    private static void collectKeys(
+            Connection con, List<String> statementIds, Set<String> partialIds,
+            String fromDate, String toDate, String accountType, int fetchSize,
+            DedupMetrics metrics, Consumer<String> keys) throws SQLException {
+
+        List<String> whole = new ArrayList<>();
+        List<String> partial = new ArrayList<>();
+        for (String id : statementIds) {
+            (partialIds.contains(id) ? partial : whole).add(id);
+        }
+        boolean bank = "bank".equals(accountType);
+        if (DedupKeyColumn.keyed(con, accountType, statementIds)) {
+            if (!whole.isEmpty()) {
+                collectStoredKeys(con, whole, null, null, accountType, fetchSize, metrics, keys);
+            }
+            if (!partial.isEmpty()) {
+                collectStoredKeys(con, partial, fromDate, toDate, accountType, fetchSize, metrics, keys);
+            }
+            return;
+        }
+        if (!whole.isEmpty()) {
+            if (bank) {
+                collectBankKeys(con, whole, null, null, fetchSize, metrics, keys);
+            } else {
+                collectSecuKeys(con, whole, null, null, fetchSize, metrics, keys);
+            }
+        }
+        if (!partial.isEmpty()) {
+            if (bank) {
+                collectBankKeys(con, partial, fromDate, toDate, fetchSize, metrics, keys);
+            } else {
+                collectSecuKeys(con, partial, fromDate, toDate, fetchSize, metrics, keys);
+            }
+        }
+    }
+
+    /**
+     * Collects the stored dedup keys ({@link DedupKeyColumn#COLUMN}) of the rows of
+     * the given statements whose date is within {@code fromDate..toDate} if a range
+     * is given.
+     */
+    private static void collectStoredKeys(
+            Connection con, List<String> statementIds, String fromDate, String toDate, String accountType,
+            int fetchSize, DedupMetrics metrics, Consumer<String> keys) throws SQLException {
+
+        boolean bank = "bank".equals(accountType);
+        String primaryColumn = bank ? "c_provider_reference" : "c_reference";
+        // Second column: 1 for a composite key, for the metrics
+        String sql = "SELECT " + DedupKeyColumn.COLUMN + ", "
+                + "CASE WHEN " + primaryColumn + " IS NULL OR " + primaryColumn + " = '' THEN 1 ELSE 0 END FROM "
+                + DedupKeyColumn.rawTable(accountType) + " "
+                + "WHERE c_statement_id IN (" + buildInClause(statementIds.size()) + ")"
+                + ((fromDate != null) ? dateClause(bank) : "");
+
+        streamKeys(con, sql, statementIds, fromDate, toDate, bank ? 1 : 2, false, null, fetchSize, metrics, keys);
+    }
+
+    /**
+     * Collects bank dedup keys: primary keys (provider_reference) and
+     * composite keys (for rows where provider_reference is empty), of the rows
+     * whose payment date is within {@code fromDate..toDate} if a range is given.
+     */
+    private static void collectBankKeys(
+            Connection con, List<String> overlappingIds, String fromDate, String toDate, int fetchSize,
+            DedupMetrics metrics, Consumer<String> keys) throws SQLException {
+
+        String inClause = buildInClause(overlappingIds.size());
+        String dateClause = (fromDate != null) ? dateClause(true) : "";
+
+        // Primary keys
+        String sqlPrimary = "SELECT c_provider_reference FROM app_fd_bank_account_trx "
+                + "WHERE c_statement_id IN (" + inClause + ") "
+                + "AND c_provider_reference IS NOT NULL "
+                + "AND c_provider_reference != ''" + dateClause;
+
+        streamKeys(con, sqlPrimary, overlappingIds, fromDate, toDate, 1, true, false, fetchSize, metrics, keys);
+
+        // Composite keys (for rows missing provider_reference)
+        String sqlComposite = "SELECT CONCAT("
+                + "IFNULL(c_account_number,''), '|', "
+                + "IFNULL(c_document_nr,''), '|', "
+                + "IFNULL(c_payment_date,''), '|', "
+                + "IFNULL(c_payment_amount,''), '|', "
+                + "IFNULL(c_currency,''), '|') "
+                + "FROM app_fd_bank_account_trx "
+                + "WHERE c_statement_id IN (" + inClause + ") "
+                + "AND (c_provider_reference IS NULL OR c_provider_reference = '')" + dateClause;
+
+        streamKeys(con, sqlComposite, overlappingIds, fromDate, toDate, 1, false, true, fetchSize, metrics,
+                keys);
+    }
+
+    /**
+     * Collects securities dedup keys: primary keys (reference) and
+     * composite keys (for rows where reference is empty), of the rows whose value
+     * or transaction date is within {@code fromDate..toDate} if a range is given.
+     */
+    private static void collectSecuKeys(
+            Connection con, List<String> overlappingIds, String fromDate, String toDate, int fetchSize,
+            DedupMetrics metrics, Consumer<String> keys) throws SQLException {
+
+        String inClause = buildInClause(overlappingIds.size());
+        String dateClause = (fromDate != null) ? dateClause(false) : "";
+
+        // Primary keys
+        String sqlPrimary = "SELECT c_reference FROM app_fd_sec_account_trx "
+                + "WHERE c_statement_id IN (" + inClause + ") "
+                + "AND c_reference IS NOT NULL "
+                + "AND c_reference != ''" + dateClause;
+
+        streamKeys(con, sqlPrimary, overlappingIds, fromDate, toDate, 2, true, false, fetchSize, metrics, keys);
+
+        // Composite keys (for rows missing reference)
+        String sqlComposite = "SELECT CONCAT("
+                + "IFNULL(c_value_date,''), '|', "
+                + "IFNULL(c_transaction_date,''), '|', "
+                + "IFNULL(c_type,''), '|', "
+                + "IFNULL(c_ticker,''), '|', "
+                + "IFNULL(c_amount,''), '|', "
+                + "IFNULL(c_currency,''), '|') "
+                + "FROM app_fd_sec_account_trx "
+                + "WHERE c_statement_id IN (" + inClause + ") "
+                + "AND (c_reference IS NULL OR c_reference = '')" + dateClause;
+
+        streamKeys(con, sqlComposite, overlappingIds, fromDate, toDate, 2, false, true, fetchSize, metrics,
+                keys);
+    }
+
+    /**
+     * Runs a key query selecting a dedup key, bound to the statement IDs and, if
+     * {@code fromDate} is set, to the date range repeated {@code dateRepeat} times. Each non-null key (trimmed if {@code trim}) is passed
+     * to {@code keys} as the driver delivers its row: the result set is forward-only
+     * and read {@code fetchSize} rows at a time (see {@link #driverFetchSize}), so
+     * loading a long history does not hold every row in the driver while the keys
+     * are copied into their set. Nothing else may use {@code con} while the rows
+     * stream.
+     *
+     * @param composite whether the keys are composite keys, or {@code null} if the
+     *                  query's second column tells (1 for a composite key)
+     */
+    private static void streamKeys(
+            Connection con, String sql, List<String> statementIds, String fromDate, String toDate,
+            int dateRepeat, boolean trim, Boolean composite, int fetchSize, DedupMetrics metrics,
+            Consumer<String> keys) throws SQLException {
+
+        String product = con.getMetaData().getDatabaseProductName();
+        int driverFetchSize = driverFetchSize(product, con.getMetaData().getURL(), fetchSize);
+        // PostgreSQL only fetches in batches inside a transaction
+        boolean transaction = driverFetchSize != 0 && product != null && product.contains("PostgreSQL")
+                && con.getAutoCommit();
+        if (transaction) {
+            con.setAutoCommit(false);
+        }
+        try (PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(driverFetchSize);
+            setInParams(ps, statementIds, 1);
+            if (fromDate != null) {
+                setDateParams(ps, fromDate, toDate, statementIds.size() + 1, dateRepeat);
+            }
+            long primaryKeys = 0;
+            long compositeKeys = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String val = rs.getString(1);
+                    if (val != null) {
+                        keys.accept(trim ? val.trim() : val);
+                        if ((composite != null) ? composite : rs.getInt(2) == 1) {
+                            compositeKeys++;
+                        } else {
+                            primaryKeys++;
+                        }
+                    }
+                }
+            }
+            metrics.addKeysLoaded(primaryKeys, compositeKeys);
+        } finally {
+            if (transaction) {
+                con.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Returns the JDBC fetch size that makes a driver stream a key query in batches
+     * of {@code fetchSize} rows; 0 (driver default) for a {@code fetchSize} of 0 or
+     * less. MySQL Connector/J buffers every row unless the fetch size is
+     * {@link Integer#MIN_VALUE} (row-by-row streaming) or the URL enables
+     * {@code useCursorFetch}, which honours a positive size.
+     */
+    static int driverFetchSize(String product, String url, int fetchSize) {
+        if (fetchSize <= 0) {
+            return 0;
+        }
+        boolean mysql = product != null && (product.contains("MySQL") || product.contains("MariaDB"));
+        if (mysql && (url == null || !url.contains("useCursorFetch=true"))) {
+            return Integer.MIN_VALUE;
+        }
+        return fetchSize;
+    }
+
+    /**
+     * Returns the {@code AND} clause restricting raw rows to a date range: by payment
+     * date for bank rows, by value or transaction date for securities rows.
+     */
+    private static String dateClause(boolean bank) {
+        return bank
+                ? " AND " + dateWithin("c_payment_date")
+                : " AND (" + dateWithin("c_value_date") + " OR " + dateWithin("c_transaction_date") + ")";
+    }
+
+    /**
+     * Returns a predicate that is true for a row whose date column lies within the
+     * two bound parameters, or is missing or not an ISO date (and so cannot be
+     * compared).
+     */
+    private static String dateWithin(String column) {
+        return "(" + column + " IS NULL OR " + column + " NOT LIKE '____-__-__%' OR "
+                + column + " BETWEEN ? AND ?)";
+    }
+
+    /**
+     * Binds the bounds of {@code repeat} consecutive {@link #dateWithin} predicates.
+     */
+    private static void setDateParams(PreparedStatement ps, String fromDate, String toDate,
+                                      int startIndex, int repeat) throws SQLException {
+        for (int i = 0; i < repeat; i++) {
+            ps.setString(startIndex + 2 * i, fromDate);
+            ps.setString(startIndex + 2 * i + 1, toDate);
+        }
+    }
+
+    /**
+     * Builds a SQL IN clause placeholder string: "?, ?, ?" for the given count.
+     */
+    private static String buildInClause(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append("?");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sets parameter values for an IN clause in a PreparedStatement.
+     *
+     * @param ps         the prepared statement
+     * @param values     the values to bind
+     * @param startIndex the 1-based parameter index to start at
+     */
+    private static void setInParams(PreparedStatement ps, List<String> values, int startIndex)
+            throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            ps.setString(startIndex + i, values.get(i));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.joget.commons.util.LogUtil;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds existing dedup keys in the raw rows of the statements overlapping an
+ * import, for the lookups that do not use the {@link DedupKeyIndex}: exact key
+ * comparisons, and databases the index has not been migrated on.
+ * <p>
+ * One lookup serves every chunk of a check, as chosen by
+ * {@link #of} from the check's {@link DeduplicationOptions.LookupStrategy}:
+ * {@link RawKeyLoader} loads every key once, {@link Pushdown} joins each chunk's
+ * candidates against the raw rows, and {@link Auto} picks one of them on the first
+ * lookup. Like {@link DeduplicatingRowCursor.KeyLookup}, the returned sets are only
+ * probed with the lookup's candidates, so they may hold other keys.
+ */
+interface RawKeyLookup {
+
+    /**
+     * Returns the existing keys among {@code candidateKeys}.
+     *
+     * @param con JDBC connection
+     * @throws SQLException if a database error occurs
+     */
+    Set<String> findExisting(Connection con, List<String> candidateKeys) throws SQLException;
+
+    /**
+     * Returns the hashes of the existing keys among those of {@code rows[i]}, for
+     * {@code i < count} (only the dedup key fields of the rows need to be set).
+     *
+     * @param con JDBC connection
+     * @throws SQLException if a database error occurs
+     */
+    DedupKeySet findExisting(Connection con, String[][] rows, int count) throws SQLException;
+
+    /**
+     * Returns the lookup of the options' strategy over the overlapping statements.
+     *
+     * @param statementIds overlapping statements
+     * @param partialIds   those of them not contained in {@code fromDate..toDate}
+     * @param metrics      receives the looked-up and loaded key counts
+     */
+    static RawKeyLookup of(DeduplicationOptions options, String accountType, List<String> statementIds,
+                           Set<String> partialIds, String fromDate, String toDate, DedupMetrics metrics) {
+        switch (options.getLookupStrategy()) {
+            case PUSHDOWN:
+                return new Pushdown(accountType, statementIds, metrics);
+            case LOAD_ALL:
+                return new RawKeyLoader(accountType, statementIds, partialIds, fromDate, toDate,
+                        options.getKeyFetchSize(), metrics);
+            default:
+                return new Auto(accountType, statementIds, options.getExpectedRows(),
+                        new Pushdown(accountType, statementIds, metrics),
+                        new RawKeyLoader(accountType, statementIds, partialIds, fromDate, toDate,
+                                options.getKeyFetchSize(), metrics));
+        }
+    }
+
+    /**
+     * Joins each lookup's candidates against the raw rows ({@link CandidateKeyPushdown}).
+     */
+    final class Pushdown implements RawKeyLookup {
+
+        private final String accountType;
+        private final List<String> statementIds;
+        private final DedupMetrics metrics;
+        private Boolean keyed;
+
+        Pushdown(String accountType, List<String> statementIds, DedupMetrics metrics) {
+            this.accountType = accountType;
+            this.statementIds = statementIds;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Set<String> findExisting(Connection con, List<String> candidateKeys) throws SQLException {
+            if (keyed == null) {
+                keyed = DedupKeyColumn.keyed(con, accountType, statementIds);
+            }
+            metrics.addKeysLookedUp(candidateKeys.size(), 0);
+            return CandidateKeyPushdown.findExisting(con, statementIds, accountType, candidateKeys, keyed);
+        }
+
+        @Override
+        public DedupKeySet findExisting(Connection con, String[][] rows, int count) throws SQLException {
+            int primaryKeyIndex = DeduplicationChecker.primaryKeyIndex(accountType);
+            int[] compositeKeyIndices = DeduplicationChecker.compositeKeyIndices(accountType);
+            List<String> candidateKeys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                candidateKeys.add(DeduplicationChecker.extractKey(rows[i], primaryKeyIndex, compositeKeyIndices));
+            }
+            DedupKeySet found = new DedupKeySet();
+            for (String key : findExisting(con, candidateKeys)) {
+                found.add(key);
+            }
+            return found;
+        }
+    }
+
+    /**
+     * {@link DeduplicationOptions.LookupStrategy#AUTO}: pushes lookups down while the
+     * overlapping statements hold more raw rows than the statement has incoming
+     * rows — the expected rows, or the first lookup's candidates if unknown —
+     * and loads every key otherwise. Decided once, on the first lookup.
+     */
+    final class Auto implements RawKeyLookup {
+
+        private final String accountType;
+        private final List<String> statementIds;
+        private final long expectedRows;
+        private final RawKeyLookup pushdown;
+        private final RawKeyLookup load;
+        private RawKeyLookup chosen;
+
+        Auto(String accountType, List<String> statementIds, long expectedRows,
+             RawKeyLookup pushdown, RawKeyLookup load) {
+            this.accountType = accountType;
+            this.statementIds = statementIds;
+            this.expectedRows = expectedRows;
+            this.pushdown = pushdown;
+            this.load = load;
+        }
+
+        @Override
+        public Set<String> findExisting(Connection con, List<String> candidateKeys) throws SQLException {
+            return choose(con, candidateKeys.size()).findExisting(con, candidateKeys);
+        }
+
+        @Override
+        public DedupKeySet findExisting(Connection con, String[][] rows, int count) throws SQLException {
+            return choose(con, count).findExisting(con, rows, count);
+        }
+
+        private RawKeyLookup choose(Connection con, int candidates) throws SQLException {
+            if (chosen == null) {
+                long incoming = (expectedRows > 0) ? expectedRows : candidates;
+                long existing = CandidateKeyPushdown.countExistingRows(con, statementIds, accountType);
+                chosen = (existing > incoming) ? pushdown : load;
+                LogUtil.info(RawKeyLookup.class.getName(), "Overlapping statements hold " + existing
+                        + " raw rows, about " + incoming + " incoming: "
+                        + ((chosen == pushdown) ? "pushing down lookups" : "loading all keys"));
+            }
+            return chosen;
+        }
+    }
+}
@@ -3,13 +3,20 @@ package com.fiscaladmin.gam.statementimporter.lib;
 import com.fiscaladmin.gam.framework.status.EntityType;
 import com.fiscaladmin.gam.framework.status.Status;
 import com.fiscaladmin.gam.framework.status.StatusManager;
+import com.fiscaladmin.gam.statementimporter.dedup.AccountLocks;
+import com.fiscaladmin.gam.statementimporter.dedup.DedupKeyIndex;
+import com.fiscaladmin.gam.statementimporter.dedup.DedupKeySet;
+import com.fiscaladmin.gam.statementimporter.dedup.DeduplicatingRowCursor;
 import com.fiscaladmin.gam.statementimporter.dedup.DeduplicationChecker;
-import com.fiscaladmin.gam.statementimporter.dedup.DeduplicationResult;
+import com.fiscaladmin.gam.statementimporter.dedup.DeduplicationOptions;
 import com.fiscaladmin.gam.statementimporter.mapping.MappingConfig;
-import com.fiscaladmin.gam.statementimporter.mapping.MappingConfigurations;
-import com.fiscaladmin.gam.statementimporter.parser.CsvFormatDetector;
-import com.fiscaladmin.gam.statementimporter.parser.Format;
-import com.fiscaladmin.gam.statementimporter.parser.StatementParser;
+import com.fiscaladmin.gam.statementimporter.parser.ColumnProjection;
+import com.fiscaladmin.gam.statementimporter.parser.FormatDefinition;
+import com.fiscaladmin.gam.statementimporter.parser.FormatRegistry;
+import com.fiscaladmin.gam.statementimporter.parser.RowCursor;
+import com.fiscaladmin.gam.statementimporter.parser.StatementArchive;
+import com.fiscaladmin.gam.statementimporter.parser.StatementSession;
+import com.fiscaladmin.gam.statementimporter.persister.PersistOptions;
 import com.fiscaladmin.gam.statementimporter.persister.RawTransactionPersister;
 import org.joget.apps.app.service.AppUtil;
 import org.joget.apps.form.dao.FormDataDao;
@@ -23,12 +30,13 @@ import org.joget.workflow.model.service.WorkflowManager;
 
 import javax.sql.DataSource;
 import java.io.File;
+import java.nio.charset.Charset;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -49,10 +57,16 @@ import java.util.Map;
  *   <li>Resolve physical CSV file via FileUtil.getFile()</li>
  *   <li>Idempotency — delete any existing raw rows for this statement</li>
  *   <li>Transition status: NEW → IMPORTING</li>
- *   <li>Detect CSV format</li>
- *   <li>Parse CSV rows</li>
- *   <li>De-duplication check</li>
- *   <li>Batch-insert non-duplicate rows</li>
+ *   <li>Open the CSV file once ({@code StatementSession}) and detect its format;
+ *       gzip and zip attachments are inflated on the fly ({@code StatementArchive}) and
+ *       steps 7–10 run once per statement in them. The entries of a zip share the
+ *       statement record: its date range, used to find overlapping statements for
+ *       every entry, and its counts, totalled over the entries. Each entry is also
+ *       checked against the rows of the entries before it, whose keys are carried
+ *       as hashes in a {@code DedupKeySet}</li>
+ *   <li>Parse CSV rows (streamed through a {@code RowCursor})</li>
+ *   <li>De-duplication check (filters the stream)</li>
+ *   <li>Batch-insert non-duplicate rows (drains the stream)</li>
  *   <li>Update statement metadata</li>
  *   <li>Transition status: IMPORTING → IMPORTED</li>
  *   <li>Set workflow variable statementStatus = "imported"</li>
@@ -159,6 +173,10 @@ public class StatementImporter extends DefaultApplicationPlugin {
             String fromDate = statementRow.getProperty("from_date");
             String toDate = statementRow.getProperty("to_date");
             String fileName = statementRow.getProperty("statement_file");
+            Charset knownCharset = resolveCharset(statementRow.getProperty("charset"));
+            DeduplicationOptions dedupOptions = resolveDedupOptions(properties);
+            PersistOptions persistOptions = resolvePersistOptions(properties);
+            AccountLocks.Scope lockScope = resolveLockScope(properties);
 
             LogUtil.info(CLASS_NAME, "Loaded form data - accountType: " + accountType
                 + ", bank: " + bank + ", file: " + fileName);
@@ -185,43 +203,93 @@ public class StatementImporter extends DefaultApplicationPlugin {
             statusManager.transition(dao, EntityType.STATEMENT, recordId,
                 Status.IMPORTING, "statement-importer", "Starting CSV import");
 
-            // Step 7: Detect CSV format
-            Format format = CsvFormatDetector.detect(csvFile);
-            LogUtil.info(CLASS_NAME, "Detected CSV format: " + format
-                + " (accountType=" + format.getAccountType() + ")");
-
-            // Validate format matches the declared account type
-            if (!format.getAccountType().equals(accountType)) {
-                throw new IllegalStateException("Format mismatch: detected "
-                    + format.getAccountType() + " but statement has account_type=" + accountType);
+            // Steps 7-10 share one open of the file: detect the format from the header,
+            // then parse, de-duplicate and batch-insert as one streaming pipeline, so only
+            // the current row (plus one insert batch) is ever held in memory. A .csv.gz or
+            // .zip attachment is inflated on the fly; each zip entry is its own statement
+            int totalCount = 0;
+            int duplicateCount = 0;
+            int insertedCount = 0;
+            int statementCount = 0;
+            String targetTable = null;
+            Charset charset = null;
+            boolean mixedCharsets = false;
+            try (StatementArchive archive = StatementArchive.open(
+                    csvFile, FormatRegistry.getDefault(), knownCharset)) {
+
+                // Keys of rows imported from earlier entries of the same archive
+                DedupKeySet carriedKeys = (archive.getCompression() == StatementArchive.Compression.ZIP)
+                        ? new DedupKeySet() : null;
+
+                StatementSession next;
+                while ((next = archive.nextStatement()) != null) {
+                    try (StatementSession session = next) {
+                        statementCount++;
+
+                        // Step 7: Detect CSV format (and charset, unless recorded by an earlier import)
+                        FormatDefinition format = session.getFormat();
+                        LogUtil.info(CLASS_NAME, "Detected CSV format: " + format
+                            + " (accountType=" + format.getAccountType()
+                            + ", charset=" + session.getCharset().name()
+                            + (knownCharset != null ? ", recorded" : "")
+                            + ", entry=" + archive.getEntryName() + ")");
+
+                        // Validate format matches the declared account type
+                        if (!format.getAccountType().equals(accountType)) {
+                            throw new IllegalStateException("Format mismatch in " + archive.getEntryName()
+                                + ": detected " + format.getAccountType()
+                                + " but statement has account_type=" + accountType);
+                        }
+
+                        if (charset == null) {
+                            charset = session.getCharset();
+                        } else if (!charset.equals(session.getCharset())) {
+                            mixedCharsets = true;
+                        }
+
+                        // Steps 8-10: Parse, de-duplicate and batch-insert
+                        MappingConfig mappingConfig = format.getMappingConfig();
+                        targetTable = mappingConfig.getTargetTable();
+                        ColumnProjection projection = ColumnProjection.of(format,
+                                mappingConfig.getCsvIndices(), DeduplicationChecker.keyIndices(accountType));
+                        // Imports for the same account are de-duplicated and persisted one at a
+                        // time, so neither misses the other's uncommitted rows
+                        RowCursor parsed = session.rows(projection);
+                        String[] first = parsed.nextRow();
+                        RowCursor rows = RowCursor.prepend(first, parsed);
+                        dedupOptions.setExpectedRows(estimateRows(archive.getEntrySize(), first));
+                        try (AccountLocks.Handle accountLock = lockAccount(accountType, bank, first, lockScope);
+                             DeduplicatingRowCursor newRows = DeduplicationChecker.checkStream(
+                                rows, recordId, fromDate, toDate, accountType, carriedKeys, dedupOptions)) {
+                            // Transaction IDs continue across entries of one archive
+                            int seqOffset = totalCount - duplicateCount;
+                            insertedCount += RawTransactionPersister.persistStream(
+                                    newRows, recordId, mappingConfig, seqOffset, persistOptions);
+                            totalCount += newRows.getTotalCount();
+                            duplicateCount += newRows.getDuplicateCount();
+                        }
+                    }
+                }
             }
 
-            // Step 8: Parse CSV rows
-            List<String[]> allRows = StatementParser.parse(csvFile, format);
-            LogUtil.info(CLASS_NAME, "Parsed " + allRows.size() + " rows from CSV");
-
-            // Step 9: De-duplication check
-            DeduplicationResult dedupResult = DeduplicationChecker.check(
-                allRows, recordId, fromDate, toDate, accountType);
-            List<String[]> newRows = dedupResult.getNonDuplicateRows();
-            int duplicateCount = dedupResult.getDuplicateCount();
-
-            LogUtil.info(CLASS_NAME, "De-duplication: " + newRows.size() + " new rows, "
-                + duplicateCount + " duplicates out of " + allRows.size() + " total");
+            if (statementCount == 0) {
+                throw new IllegalStateException("No statement files found in archive: " + fileName);
+            }
 
-            // Step 10: Batch-insert non-duplicate rows
-            MappingConfig mappingConfig = MappingConfigurations.getConfig(format);
-            int insertedCount = RawTransactionPersister.persist(newRows, recordId, mappingConfig);
-            LogUtil.info(CLASS_NAME, "Inserted " + insertedCount + " rows into "
-                + mappingConfig.getTargetTable());
+            LogUtil.info(CLASS_NAME, "Parsed " + totalCount + " rows from " + statementCount + " CSV statement(s)");
+            LogUtil.info(CLASS_NAME, "De-duplication: " + (totalCount - duplicateCount) + " new rows, "
+                + duplicateCount + " duplicates out of " + totalCount + " total");
+            LogUtil.info(CLASS_NAME, "Inserted " + insertedCount + " rows into " + targetTable);
 
             // Step 11: Update statement metadata
-            updateStatementMetadata(dao, recordId, allRows.size(), duplicateCount);
+            // (a charset is only recorded if every statement in the attachment shares it)
+            updateStatementMetadata(dao, recordId, totalCount, duplicateCount,
+                mixedCharsets ? null : charset);
 
             // Step 12: Status IMPORTING → IMPORTED
             statusManager.transition(dao, EntityType.STATEMENT, recordId,
                 Status.IMPORTED, "statement-importer",
-                "Import completed: " + allRows.size() + " rows, " + duplicateCount + " duplicates");
+                "Import completed: " + totalCount + " rows, " + duplicateCount + " duplicates");
 
             // Step 13: Set workflow variable for gateway
             setWorkflowVariable(properties, "statementStatus", "imported");
@@ -276,7 +344,8 @@ public class StatementImporter extends DefaultApplicationPlugin {
     // ─────────────────────────────────────────────────────────────────
 
     /**
-     * Deletes any existing raw transaction rows for this statement ID.
+     * Deletes any existing raw transaction rows for this statement ID, and their
+     * dedup key index entries.
      * Provides idempotency for safe re-processing after error recovery.
      */
     private void deleteExistingRawRows(String statementId, String accountType) {
@@ -288,14 +357,24 @@ public class StatementImporter extends DefaultApplicationPlugin {
         }
 
         DataSource ds = (DataSource) AppUtil.getApplicationContext().getBean("setupDataSource");
-        try (Connection con = ds.getConnection();
-             PreparedStatement ps = con.prepareStatement(
-                 "DELETE FROM " + rawTable + " WHERE c_statement_id = ?")) {
-            ps.setString(1, statementId);
-            int deleted = ps.executeUpdate();
-            if (deleted > 0) {
-                LogUtil.info(CLASS_NAME, "Idempotency: deleted " + deleted
-                    + " existing raw rows from " + rawTable + " for statement " + statementId);
+        try (Connection con = ds.getConnection()) {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "DELETE FROM " + rawTable + " WHERE c_statement_id = ?")) {
+                ps.setString(1, statementId);
+                int deleted = ps.executeUpdate();
+                if (deleted > 0) {
+                    LogUtil.info(CLASS_NAME, "Idempotency: deleted " + deleted
+                        + " existing raw rows from " + rawTable + " for statement " + statementId);
+                }
+            }
+
+            // Their dedup key index entries go with them
+            if (DedupKeyIndex.exists(con)) {
+                try {
+                    DedupKeyIndex.delete(con, statementId);
+                } catch (SQLException e) {
+                    LogUtil.warn(CLASS_NAME, "Warning: could not delete dedup key index entries: " + e.getMessage());
+                }
             }
         } catch (SQLException e) {
             LogUtil.warn(CLASS_NAME, "Warning: could not delete existing raw rows: " + e.getMessage());
@@ -303,15 +382,159 @@ public class StatementImporter extends DefaultApplicationPlugin {
         }
     }
 
+    /**
+     * Takes the import lock of the statement's account: the account number of its
+     * first row for bank statements, the statement's bank for securities statements
+     * (their rows carry no account). An empty statement needs no lock.
+     */
+    private AccountLocks.Handle lockAccount(String accountType, String bank, String[] firstRow,
+                                            AccountLocks.Scope scope) {
+        if (firstRow == null) {
+            return null;
+        }
+        String account = lockAccountOf(accountType, bank, firstRow);
+        DataSource lockSource = (scope == AccountLocks.Scope.DATABASE)
+                ? (DataSource) AppUtil.getApplicationContext().getBean("setupDataSource") : null;
+        return AccountLocks.acquire(accountType, account, lockSource, AccountLocks.DEFAULT_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Returns the account an import is serialised on. Package-private for testing.
+     */
+    String lockAccountOf(String accountType, String bank, String[] firstRow) {
+        if ("bank".equals(accountType) && firstRow.length > 0 && firstRow[0] != null
+                && !firstRow[0].trim().isEmpty()) {
+            return firstRow[0].trim();
+        }
+        return (bank != null) ? bank : "";
+    }
+
+    /**
+     * Estimates the rows of a statement from its uncompressed size and the width of
+     * its first row; 0 if either is unknown. Package-private for testing.
+     */
+    long estimateRows(long statementBytes, String[] firstRow) {
+        if (statementBytes <= 0 || firstRow == null) {
+            return 0;
+        }
+        // Field text, plus a separator (or the line end) per field
+        long rowBytes = firstRow.length;
+        for (String field : firstRow) {
+            rowBytes += (field != null) ? field.length() : 0;
+        }
+        return statementBytes / rowBytes;
+    }
+
+    /**
+     * Reads the import lock scope from the plugin properties ({@code local} unless set).
+     */
+    AccountLocks.Scope resolveLockScope(Map properties) {
+        AccountLocks.Scope scope = enumProperty(properties, "importLock", AccountLocks.Scope.class);
+        return (scope != null) ? scope : AccountLocks.Scope.LOCAL;
+    }
+
+    /**
+     * Returns the charset recorded on the statement by an earlier import, or
+     * {@code null} if none is recorded or the name is not supported (sniff instead).
+     */
+    private Charset resolveCharset(String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            LogUtil.warn(CLASS_NAME, "Ignoring unsupported recorded charset: " + name);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the de-duplication options from the plugin properties; unset or
+     * unknown values keep the defaults.
+     */
+    DeduplicationOptions resolveDedupOptions(Map properties) {
+        DeduplicationOptions options = new DeduplicationOptions();
+        DeduplicationOptions.KeyComparison keyComparison = enumProperty(properties, "dedupKeyComparison",
+                DeduplicationOptions.KeyComparison.class);
+        if (keyComparison != null) {
+            options.setKeyComparison(keyComparison);
+        }
+        DeduplicationOptions.LookupStrategy lookupStrategy = enumProperty(properties, "dedupLookupStrategy",
+                DeduplicationOptions.LookupStrategy.class);
+        if (lookupStrategy != null) {
+            options.setLookupStrategy(lookupStrategy);
+        }
+        Integer keyFetchSize = intProperty(properties, "dedupKeyFetchSize");
+        if (keyFetchSize != null) {
+            options.setKeyFetchSize(keyFetchSize);
+        }
+        return options;
+    }
+
+    /**
+     * Reads the raw row insert options from the plugin properties; unset or
+     * non-numeric values keep the defaults.
+     */
+    PersistOptions resolvePersistOptions(Map properties) {
+        PersistOptions options = new PersistOptions();
+        Integer batchSize = intProperty(properties, "persistBatchSize");
+        if (batchSize != null) {
+            options.setBatchSize(batchSize);
+        }
+        Integer commitInterval = intProperty(properties, "persistCommitInterval");
+        if (commitInterval != null) {
+            options.setCommitInterval(commitInterval);
+        }
+        return options;
+    }
+
+    /**
+     * Returns the integer value of a plugin property, or {@code null} if the
+     * property is unset or not a number.
+     */
+    private Integer intProperty(Map properties, String name) {
+        Object value = properties.get(name);
+        if (value == null || value.toString().trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.toString().trim());
+        } catch (NumberFormatException e) {
+            LogUtil.warn(CLASS_NAME, "Ignoring non-numeric " + name + ": " + value);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the enum constant named by a plugin property (case-insensitive), or
+     * {@code null} if the property is unset or unknown.
+     */
+    private <E extends Enum<E>> E enumProperty(Map properties, String name, Class<E> type) {
+        Object value = properties.get(name);
+        if (value == null || value.toString().trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, value.toString().trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LogUtil.warn(CLASS_NAME, "Ignoring unknown " + name + ": " + value);
+            return null;
+        }
+    }
+
     /**
      * Updates the statement record with processing results metadata.
      */
     private void updateStatementMetadata(FormDataDao dao, String recordId,
-                                          int rowCount, int duplicateCount) {
+                                          int rowCount, int duplicateCount, Charset charset) {
         FormRow row = new FormRow();
         row.setId(recordId);
         row.setProperty("row_count", String.valueOf(rowCount));
         row.setProperty("duplicate_count", String.valueOf(duplicateCount));
+        if (charset != null) {
+            row.setProperty("charset", charset.name());
+        }
         row.setProperty("processing_timestamp",
             new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
 
@@ -35,4 +35,16 @@ public class MappingConfig {
     public List<FieldMapping> getFieldMappings() {
         return fieldMappings;
     }
+
+    /**
+     * Returns the CSV indices read by the field mappings, in mapping order.
+     * Used to build the parser's column projection.
+     */
+    public int[] getCsvIndices() {
+        int[] indices = new int[fieldMappings.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = fieldMappings.get(i).getCsvIndex();
+        }
+        return indices;
+    }
 }
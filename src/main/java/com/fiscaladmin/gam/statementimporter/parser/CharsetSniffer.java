@@ -0,0 +1,170 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Guesses the encoding of a statement file from its BOM and the byte statistics of
+ * its first block.
+ * <p>
+ * Decision order:
+ * <ol>
+ *   <li>UTF-8 BOM ({@code EF BB BF}) → UTF-8</li>
+ *   <li>Block is well-formed UTF-8 (including pure ASCII) → UTF-8. Non-ASCII bytes in
+ *       Baltic single-byte exports almost never form valid multi-byte sequences, so a
+ *       single malformed sequence rules UTF-8 out</li>
+ *   <li>Any byte in 0x80–0x9F → {@link #WINDOWS_1257} (C1 controls in ISO-8859-13,
+ *       punctuation such as € „ ” in Windows-1257)</li>
+ *   <li>Bytes 0xA1, 0xA5 or 0xFF (” „ ’ in ISO-8859-13, unassigned or rare in
+ *       Windows-1257) → {@link #ISO_8859_13}</li>
+ *   <li>Otherwise → {@link #WINDOWS_1257}; the two agree on every Estonian letter</li>
+ * </ol>
+ */
+public final class CharsetSniffer {
+
+    /** Baltic Windows code page used by Estonian desktop bank exports. */
+    public static final Charset WINDOWS_1257 = Charset.forName("windows-1257");
+
+    /** Baltic Latin-7 ISO charset. */
+    public static final Charset ISO_8859_13 = Charset.forName("ISO-8859-13");
+
+    /** Number of leading bytes inspected. */
+    static final int SNIFF_BYTES = 64 * 1024;
+
+    private CharsetSniffer() {
+        // utility class
+    }
+
+    /**
+     * Sniffs the charset of a file from its first {@value #SNIFF_BYTES} bytes.
+     *
+     * @param file the file to inspect
+     * @return the detected charset
+     * @throws IOException if the file cannot be read
+     */
+    public static Charset sniff(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return sniffBlock(in);
+        }
+    }
+
+    /**
+     * Sniffs the charset of a stream (e.g. a decompressed archive entry) from its
+     * first {@value #SNIFF_BYTES} bytes, then resets it so no bytes are consumed.
+     *
+     * @param in a stream that supports {@code mark}
+     * @return the detected charset
+     * @throws IOException if the stream cannot be read or reset
+     */
+    public static Charset sniff(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("Stream must support mark/reset");
+        }
+        in.mark(SNIFF_BYTES);
+        Charset charset = sniffBlock(in);
+        in.reset();
+        return charset;
+    }
+
+    private static Charset sniffBlock(InputStream in) throws IOException {
+        byte[] block = new byte[SNIFF_BYTES];
+        int len = 0;
+        int n;
+        while (len < block.length && (n = in.read(block, len, block.length - len)) > 0) {
+            len += n;
+        }
+        return sniff(ByteBuffer.wrap(block, 0, len));
+    }
+
+    /**
+     * Sniffs the charset from the first {@value #SNIFF_BYTES} bytes of a buffer,
+     * starting at index 0.
+     *
+     * @param buf file contents
+     * @return the detected charset
+     */
+    public static Charset sniff(ByteBuffer buf) {
+        int limit = Math.min(buf.limit(), SNIFF_BYTES);
+        boolean truncated = buf.limit() >= SNIFF_BYTES; // a full block may end mid-sequence
+
+        if (limit >= 3
+                && (buf.get(0) & 0xFF) == 0xEF
+                && (buf.get(1) & 0xFF) == 0xBB
+                && (buf.get(2) & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+
+        if (isWellFormedUtf8(buf, limit, truncated)) {
+            return StandardCharsets.UTF_8;
+        }
+
+        boolean c1 = false;
+        boolean isoPunctuation = false;
+        for (int i = 0; i < limit; i++) {
+            int b = buf.get(i) & 0xFF;
+            if (b >= 0x80 && b <= 0x9F) {
+                c1 = true;
+                break;
+            }
+            if (b == 0xA1 || b == 0xA5 || b == 0xFF) {
+                isoPunctuation = true;
+            }
+        }
+        if (c1) {
+            return WINDOWS_1257;
+        }
+        return isoPunctuation ? ISO_8859_13 : WINDOWS_1257;
+    }
+
+    /**
+     * Checks UTF-8 well-formedness of {@code [0, limit)}. A multi-byte sequence cut off
+     * by the end of a truncated block is accepted.
+     */
+    static boolean isWellFormedUtf8(ByteBuffer buf, int limit, boolean truncated) {
+        int i = 0;
+        while (i < limit) {
+            int b = buf.get(i) & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+
+            int len;
+            int min;
+            if (b >= 0xC2 && b <= 0xDF) {
+                len = 2;
+                min = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                len = 3;
+                min = 0x800;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                len = 4;
+                min = 0x10000;
+            } else {
+                return false; // continuation byte, overlong lead or out of range
+            }
+
+            if (i + len > limit) {
+                return truncated;
+            }
+            int cp = b & (0xFF >> (len + 1));
+            for (int k = 1; k < len; k++) {
+                int c = buf.get(i + k) & 0xFF;
+                if ((c & 0xC0) != 0x80) {
+                    return false;
+                }
+                cp = (cp << 6) | (c & 0x3F);
+            }
+            if (cp < min || cp > 0x10FFFF || (cp >= 0xD800 && cp <= 0xDFFF)) {
+                return false;
+            }
+            i += len;
+        }
+        return true;
+    }
+}
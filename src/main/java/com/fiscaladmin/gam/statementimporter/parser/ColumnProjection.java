@@ -0,0 +1,158 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import java.util.Arrays;
+
+/**
+ * Plan for turning a raw CSV record into a parsed row in a single pass.
+ * <p>
+ * Positions in the plan are <b>parsed-row</b> indices — the indices used by
+ * {@code MappingConfig} and {@code DeduplicationChecker}. Raw columns listed in
+ * {@link FormatDefinition#getIgnoredColumns()} (e.g. the empty LHV column 6, "Tühi")
+ * have no parsed index, so dropping them is part of the plan rather than a second
+ * copy of every row.
+ * <p>
+ * Tokenizers ask {@link #isNeeded(int)} per raw column and skip decoding the rest;
+ * {@link #project(String[], int)} then places the kept values at their parsed
+ * positions. Parsed positions not in the plan are {@code null}, exactly as an
+ * out-of-range index reads for the persister and dedup key extraction.
+ */
+public final class ColumnProjection {
+
+    private final int[] ignoredRaw;
+    private final int[] rawToParsed;
+    private final int width;
+
+    private ColumnProjection(int[] ignoredRaw, int[] rawToParsed, int width) {
+        this.ignoredRaw = ignoredRaw;
+        this.rawToParsed = rawToParsed;
+        this.width = width;
+    }
+
+    /**
+     * Returns a plan that keeps every column, i.e. the full parsed row as returned by
+     * {@link StatementParser#parse(java.io.File, Format)}.
+     *
+     * @param format the built-in CSV format
+     * @return projection of all columns
+     */
+    public static ColumnProjection all(Format format) {
+        return all(FormatRegistry.builtIn(format));
+    }
+
+    /**
+     * Returns a plan that keeps every column except the format's ignored columns.
+     *
+     * @param format the format definition
+     * @return projection of all columns
+     */
+    public static ColumnProjection all(FormatDefinition format) {
+        return new ColumnProjection(format.ignoredColumnsUnsafe(), null, -1);
+    }
+
+    /**
+     * Returns a plan that materialises only the given parsed-row indices.
+     * Index groups may overlap (e.g. mapped columns and dedup key columns).
+     *
+     * @param format        the CSV format
+     * @param parsedIndices groups of parsed-row indices to keep
+     * @return projection of the union of the given indices
+     */
+    public static ColumnProjection of(Format format, int[]... parsedIndices) {
+        return of(FormatRegistry.builtIn(format), parsedIndices);
+    }
+
+    /**
+     * Returns a plan that materialises only the given parsed-row indices.
+     *
+     * @param format        the format definition
+     * @param parsedIndices groups of parsed-row indices to keep
+     * @return projection of the union of the given indices
+     */
+    public static ColumnProjection of(FormatDefinition format, int[]... parsedIndices) {
+        int[] ignored = format.ignoredColumnsUnsafe();
+        int maxParsed = -1;
+        for (int[] group : parsedIndices) {
+            for (int idx : group) {
+                if (idx < 0) {
+                    throw new IllegalArgumentException("Negative column index: " + idx);
+                }
+                maxParsed = Math.max(maxParsed, idx);
+            }
+        }
+
+        int[] rawToParsed = new int[(maxParsed < 0) ? 0 : toRaw(maxParsed, ignored) + 1];
+        Arrays.fill(rawToParsed, -1);
+        for (int[] group : parsedIndices) {
+            for (int idx : group) {
+                rawToParsed[toRaw(idx, ignored)] = idx;
+            }
+        }
+        return new ColumnProjection(ignored, rawToParsed, maxParsed + 1);
+    }
+
+    /**
+     * Returns {@code true} if the raw column must be decoded.
+     *
+     * @param rawIndex zero-based column index in the CSV record
+     */
+    public boolean isNeeded(int rawIndex) {
+        if (rawToParsed == null) {
+            return Arrays.binarySearch(ignoredRaw, rawIndex) < 0;
+        }
+        return rawIndex < rawToParsed.length && rawToParsed[rawIndex] >= 0;
+    }
+
+    /**
+     * Builds the parsed row from the first {@code count} raw values. Only values at
+     * needed raw indices are read; {@code raw} may be a reused buffer.
+     *
+     * @param raw   raw field values, indexed by raw column
+     * @param count number of fields in the record
+     * @return a new parsed row
+     */
+    public String[] project(String[] raw, int count) {
+        if (rawToParsed == null) {
+            int dropped = 0;
+            while (dropped < ignoredRaw.length && ignoredRaw[dropped] < count) {
+                dropped++;
+            }
+            if (dropped == 0) {
+                return Arrays.copyOf(raw, count);
+            }
+            String[] row = new String[count - dropped];
+            int from = 0;
+            int to = 0;
+            for (int i = 0; i < dropped; i++) {
+                int len = ignoredRaw[i] - from;
+                System.arraycopy(raw, from, row, to, len);
+                to += len;
+                from = ignoredRaw[i] + 1;
+            }
+            System.arraycopy(raw, from, row, to, count - from);
+            return row;
+        }
+
+        String[] row = new String[width];
+        int n = Math.min(count, rawToParsed.length);
+        for (int r = 0; r < n; r++) {
+            int p = rawToParsed[r];
+            if (p >= 0) {
+                row[p] = raw[r];
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Maps a parsed-row index to its raw column by stepping over ignored columns.
+     */
+    private static int toRaw(int parsedIndex, int[] ignoredRaw) {
+        int raw = parsedIndex;
+        for (int ignored : ignoredRaw) {
+            if (ignored <= raw) {
+                raw++;
+            }
+        }
+        return raw;
+    }
+}
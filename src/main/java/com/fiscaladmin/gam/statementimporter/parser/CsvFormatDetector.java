@@ -1,7 +1,7 @@
 package com.fiscaladmin.gam.statementimporter.parser;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.charset.Charset;
 
 /**
  * Detects the CSV format by inspecting the first line (header) of a file.
@@ -13,10 +13,19 @@ import java.nio.charset.StandardCharsets;
  *   <li>Contains "dok nr" → {@link Format#SWEDBANK}</li>
  *   <li>Otherwise → throws {@link UnrecognisedFormatException}</li>
  * </ul>
- * Strips UTF-8 BOM (bytes EF BB BF) if present before inspection.
+ * Strips UTF-8 BOM (bytes EF BB BF) if present before inspection. The header is decoded
+ * in the charset sniffed by {@link CharsetSniffer}, so Windows-1257 / ISO-8859-13
+ * exports match the same keywords as UTF-8 ones.
+ * <p>
+ * The rules are the built-in signatures of {@link FormatRegistry}, matched in one pass
+ * by its precompiled header matcher. {@link #detect(File, FormatRegistry)} detects
+ * against any registry, including formats registered at runtime.
  */
 public class CsvFormatDetector {
 
+    /** Built-in formats only, so {@link #detect(File)} always maps to a {@link Format}. */
+    private static final FormatRegistry BUILT_INS = FormatRegistry.withBuiltIns();
+
     private CsvFormatDetector() {
         // utility class
     }
@@ -30,38 +39,40 @@ public class CsvFormatDetector {
      * @throws IOException                 if file cannot be read
      */
     public static Format detect(File file) throws IOException, UnrecognisedFormatException {
-        String headerLine;
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
-            headerLine = reader.readLine();
-        }
-
-        if (headerLine == null) {
-            throw new UnrecognisedFormatException("(empty file)");
-        }
-
-        // Strip UTF-8 BOM if present
-        if (headerLine.startsWith("\uFEFF")) {
-            headerLine = headerLine.substring(1);
-        }
+        return detectHeader(readHeaderLine(file));
+    }
 
-        // Keep the raw header (after BOM strip) for diagnostics
-        String rawHeader = headerLine;
+    /**
+     * Detects the CSV format from an already read header line.
+     *
+     * @param headerLine the first line of the file (may start with a BOM), or
+     *                   {@code null} for an empty file
+     * @return the detected Format
+     * @throws UnrecognisedFormatException if format cannot be determined
+     */
+    static Format detectHeader(String headerLine) throws UnrecognisedFormatException {
+        return BUILT_INS.detect(headerLine).getBuiltIn();
+    }
 
-        // Normalise: remove quotes, lowercase
-        String normalised = headerLine.replaceAll("[\"']", "").toLowerCase();
+    /**
+     * Detects the format of a file against any registry, including formats that are
+     * not {@link Format} constants.
+     *
+     * @param file     the CSV file to inspect
+     * @param registry the formats to match against
+     * @return the detected format definition
+     * @throws UnrecognisedFormatException if format cannot be determined
+     * @throws IOException                 if file cannot be read
+     */
+    public static FormatDefinition detect(File file, FormatRegistry registry)
+            throws IOException, UnrecognisedFormatException {
+        return registry.detect(readHeaderLine(file));
+    }
 
-        // Match in priority order: Securities → LHV → Swedbank
-        if (normalised.contains("väärtuspäev") && normalised.contains("tehingupäev")) {
-            return Format.SECURITIES;
-        }
-        if (normalised.contains("dokumendi number")) {
-            return Format.LHV_BANK;
+    private static String readHeaderLine(File file) throws IOException {
+        Charset charset = CharsetSniffer.sniff(file);
+        try (BufferedReader reader = StatementParser.newReader(new FileInputStream(file), charset)) {
+            return reader.readLine();
         }
-        if (normalised.contains("dok nr")) {
-            return Format.SWEDBANK;
-        }
-
-        throw new UnrecognisedFormatException(rawHeader);
     }
 }
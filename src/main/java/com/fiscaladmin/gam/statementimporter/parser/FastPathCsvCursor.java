@@ -0,0 +1,338 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Character-level cursor that splits plain statement lines directly and hands only
+ * the rest to Commons CSV.
+ * <p>
+ * Each physical line is scanned once for its end and for the quote character:
+ * <ul>
+ *   <li>No quote — split on the separator and trim each field</li>
+ *   <li>Every quote just wraps a whole field ({@code "EE123","100.00"}, the usual
+ *       LHV export) — split the same way, dropping the quotes</li>
+ *   <li>Anything else ({@code ""} escapes, separators or line breaks inside quotes,
+ *       stray quotes, text after a closing quote) — the raw record, which may span
+ *       several lines, is parsed by Commons CSV with the same RFC 4180 settings as
+ *       {@link StatementParser}, so such records and their errors come out exactly
+ *       as before</li>
+ * </ul>
+ * The header record goes through Commons CSV with the header-reading format, so
+ * header validation is unchanged. Rows are identical to the plain Commons CSV cursor.
+ */
+final class FastPathCsvCursor implements RowCursor {
+
+    private static final char QUOTE = '"';
+    private static final char CR = '\r';
+    private static final char LF = '\n';
+
+    private final Reader reader;
+    private final char separator;
+    private final ColumnProjection projection;
+    private final CSVFormat recordFormat;
+
+    private char[] buf = new char[8192];
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    private String[] fields = new String[32];
+    private long fastRows;
+    private long fallbackRows;
+
+    /**
+     * Reads and validates the header record; the cursor is then positioned before
+     * the first data row. Takes ownership of {@code reader}.
+     *
+     * @param reader       character source, positioned after any BOM
+     * @param separator    field separator
+     * @param projection   parsed-row columns to materialise
+     * @param headerFormat Commons CSV format that reads the header record
+     * @param recordFormat Commons CSV format for single data records (no header)
+     */
+    FastPathCsvCursor(Reader reader, char separator, ColumnProjection projection,
+                      CSVFormat headerFormat, CSVFormat recordFormat) throws IOException {
+        if (separator == QUOTE || separator == CR || separator == LF) {
+            throw new IllegalArgumentException("Unsupported separator: " + separator);
+        }
+        this.reader = reader;
+        this.separator = separator;
+        this.projection = projection;
+        this.recordFormat = recordFormat;
+
+        if (skipEmptyLines()) {
+            int length = recordLength();
+            String header = new String(buf, pos, length);
+            consume(length);
+            CSVParser.parse(header, headerFormat).close();
+        }
+    }
+
+    @Override
+    public String[] nextRow() throws IOException {
+        if (buf == null) {
+            throw new IOException("Cursor is closed");
+        }
+        if (!skipEmptyLines()) {
+            return null;
+        }
+
+        int lineLength = lineLength();
+        int count = split(pos, pos + lineLength);
+        if (count >= 0) {
+            fastRows++;
+            consume(lineLength);
+        } else {
+            fallbackRows++;
+            int length = recordLength();
+            String record = new String(buf, pos, length);
+            consume(length);
+            count = parseRecord(record);
+        }
+        return projection.project(fields, count);
+    }
+
+    /**
+     * Returns the number of data rows split directly so far.
+     */
+    long getFastRowCount() {
+        return fastRows;
+    }
+
+    /**
+     * Returns the number of data rows parsed by Commons CSV so far.
+     */
+    long getFallbackRowCount() {
+        return fallbackRows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buf = null;
+        reader.close();
+    }
+
+    // ── Fast path ───────────────────────────────────────────────────────
+
+    /**
+     * Splits the line {@code [start, end)} into {@link #fields}. Returns the field
+     * count, or -1 if the line needs the full RFC 4180 path.
+     */
+    private int split(int start, int end) {
+        int count = 0;
+        int f = start;
+        while (true) {
+            int valueStart;
+            int valueEnd;
+            int next;
+            if (f < end && buf[f] == QUOTE) {
+                int close = f + 1;
+                while (close < end && buf[close] != QUOTE) {
+                    close++;
+                }
+                if (close == end || (close + 1 < end && buf[close + 1] == QUOTE)) {
+                    return -1; // quoted line break or "" escape
+                }
+                next = close + 1;
+                while (next < end && buf[next] != separator) {
+                    if (!Character.isWhitespace(buf[next])) {
+                        return -1; // text after the closing quote
+                    }
+                    next++;
+                }
+                valueStart = f + 1;
+                valueEnd = close;
+            } else {
+                next = f;
+                while (next < end && buf[next] != separator) {
+                    if (buf[next] == QUOTE) {
+                        return -1; // quote inside an unquoted field
+                    }
+                    next++;
+                }
+                valueStart = f;
+                valueEnd = next;
+            }
+
+            if (count == fields.length) {
+                fields = Arrays.copyOf(fields, count * 2);
+            }
+            fields[count] = projection.isNeeded(count) ? trimmed(valueStart, valueEnd) : null;
+            count++;
+
+            if (next >= end) {
+                return count;
+            }
+            f = next + 1; // past the separator
+        }
+    }
+
+    private String trimmed(int start, int end) {
+        while (start < end && buf[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buf[end - 1] <= ' ') {
+            end--;
+        }
+        return (start == end) ? "" : new String(buf, start, end - start);
+    }
+
+    // ── RFC 4180 fallback ───────────────────────────────────────────────
+
+    private int parseRecord(String record) throws IOException {
+        try (CSVParser parser = CSVParser.parse(record, recordFormat)) {
+            Iterator<CSVRecord> records = parser.iterator();
+            if (!records.hasNext()) {
+                return 0;
+            }
+            CSVRecord csvRecord = records.next();
+            int size = csvRecord.size();
+            if (fields.length < size) {
+                fields = new String[size];
+            }
+            for (int i = 0; i < size; i++) {
+                if (projection.isNeeded(i)) {
+                    String value = csvRecord.get(i);
+                    fields[i] = (value != null) ? value : "";
+                } else {
+                    fields[i] = null;
+                }
+            }
+            return size;
+        } catch (UncheckedIOException e) {
+            // Commons CSV wraps parse errors raised during iteration
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the length of the record starting at {@link #pos}, following quoted
+     * fields across line breaks. An unterminated quote runs to EOF, where Commons
+     * CSV reports it.
+     */
+    private int recordLength() throws IOException {
+        int k = 0;
+        boolean fieldStart = true;
+        while (true) {
+            if (pos + k >= limit && !fill()) {
+                return k;
+            }
+            char c = buf[pos + k];
+            if (fieldStart && c == QUOTE) {
+                k++;
+                while (true) {
+                    if (pos + k >= limit && !fill()) {
+                        return k;
+                    }
+                    if (buf[pos + k] == QUOTE) {
+                        if (pos + k + 1 >= limit) {
+                            fill();
+                        }
+                        if (pos + k + 1 < limit && buf[pos + k + 1] == QUOTE) {
+                            k += 2;
+                            continue;
+                        }
+                        k++;
+                        break;
+                    }
+                    k++;
+                }
+                fieldStart = false;
+                continue;
+            }
+            if (c == CR || c == LF) {
+                return k;
+            }
+            fieldStart = (c == separator);
+            k++;
+        }
+    }
+
+    // ── Buffer ──────────────────────────────────────────────────────────
+
+    /**
+     * Returns the length of the line starting at {@link #pos}, excluding its break.
+     */
+    private int lineLength() throws IOException {
+        int k = 0;
+        while (true) {
+            if (pos + k >= limit && !fill()) {
+                return k;
+            }
+            char c = buf[pos + k];
+            if (c == CR || c == LF) {
+                return k;
+            }
+            k++;
+        }
+    }
+
+    /**
+     * Skips {@code length} characters and the line break after them (CR, LF or CRLF).
+     */
+    private void consume(int length) throws IOException {
+        pos += length;
+        if (pos >= limit && !fill()) {
+            return;
+        }
+        char c = buf[pos];
+        if (c == CR) {
+            pos++;
+            if ((pos < limit || fill()) && buf[pos] == LF) {
+                pos++;
+            }
+        } else if (c == LF) {
+            pos++;
+        }
+    }
+
+    /**
+     * Skips line breaks. Returns {@code false} at EOF.
+     */
+    private boolean skipEmptyLines() throws IOException {
+        while (true) {
+            if (pos >= limit && !fill()) {
+                return false;
+            }
+            char c = buf[pos];
+            if (c != CR && c != LF) {
+                return true;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Moves the unread characters to the front of the buffer (growing it when full)
+     * and reads more. Offsets relative to {@link #pos} stay valid. Returns
+     * {@code false} if no characters were added.
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int n = reader.read(buf, limit, buf.length - limit);
+        if (n <= 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+}
@@ -1,29 +1,36 @@
 package com.fiscaladmin.gam.statementimporter.parser;
 
 /**
- * Supported CSV statement formats.
+ * Built-in CSV statement formats.
+ * <p>
+ * Each constant is also registered in {@link FormatRegistry} as a
+ * {@link FormatDefinition}, together with its header signatures and mapping.
+ * Additional formats are added to the registry, not to this enum.
  * <p>
  * Each format defines:
  * <ul>
  *   <li>{@code accountType} — "bank" or "secu", determines which processing branch</li>
  *   <li>{@code separator} — the CSV delimiter character</li>
  *   <li>{@code targetTable} — the bare Joget table name for raw row storage</li>
+ *   <li>{@code parseEngine} — the {@link ParseEngine} used by {@link StatementParser}</li>
  * </ul>
  */
 public enum Format {
 
-    LHV_BANK("bank", ',', "bank_account_trx"),
-    SWEDBANK("bank", ';', "bank_account_trx"),
-    SECURITIES("secu", ',', "sec_account_trx");
+    LHV_BANK("bank", ',', "bank_account_trx", ParseEngine.COMMONS_CSV),
+    SWEDBANK("bank", ';', "bank_account_trx", ParseEngine.COMMONS_CSV),
+    SECURITIES("secu", ',', "sec_account_trx", ParseEngine.MAPPED);
 
     private final String accountType;
     private final char separator;
     private final String targetTable;
+    private final ParseEngine parseEngine;
 
-    Format(String accountType, char separator, String targetTable) {
+    Format(String accountType, char separator, String targetTable, ParseEngine parseEngine) {
         this.accountType = accountType;
         this.separator = separator;
         this.targetTable = targetTable;
+        this.parseEngine = parseEngine;
     }
 
     /**
@@ -46,4 +53,11 @@ public enum Format {
     public String getTargetTable() {
         return targetTable;
     }
+
+    /**
+     * Returns the tokenizer engine used to parse files of this format.
+     */
+    public ParseEngine getParseEngine() {
+        return parseEngine;
+    }
 }
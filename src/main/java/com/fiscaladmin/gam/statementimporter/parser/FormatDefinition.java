@@ -0,0 +1,166 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything the importer needs to know about one statement format, registered in a
+ * {@link FormatRegistry}.
+ * <p>
+ * Each definition declares:
+ * <ul>
+ *   <li>{@code name} — unique registry key (the enum name for built-in formats)</li>
+ *   <li>{@code accountType} — "bank" or "secu", determines which processing branch</li>
+ *   <li>{@code separator} — the CSV delimiter character</li>
+ *   <li>{@code targetTable} — the bare Joget table name for raw row storage</li>
+ *   <li>{@code parseEngine} — the {@link ParseEngine} used by {@link StatementParser}</li>
+ *   <li>{@code ignoredColumns} — raw column indices with no parsed index (e.g. LHV "Tühi")</li>
+ *   <li>{@code headerSignatures} — keyword groups; the header matches if every keyword
+ *       of any one group occurs in it (after quote removal and lowercasing)</li>
+ *   <li>{@code mappingConfig} — the column mapping used by the raw persister</li>
+ * </ul>
+ * The three {@link Format} constants are registered as built-in definitions; new
+ * formats only need a new definition, not a new enum constant.
+ */
+public final class FormatDefinition {
+
+    private final String name;
+    private final String accountType;
+    private final char separator;
+    private final String targetTable;
+    private final ParseEngine parseEngine;
+    private final int[] ignoredColumns;
+    private final List<List<String>> headerSignatures;
+    private final MappingConfig mappingConfig;
+    private final Format builtIn;
+
+    /**
+     * @param name             unique format name
+     * @param accountType      "bank" or "secu"
+     * @param separator        CSV delimiter character
+     * @param targetTable      bare table name (without {@code app_fd_} prefix)
+     * @param parseEngine      default tokenizer engine
+     * @param ignoredColumns   raw column indices dropped from parsed rows (may be empty)
+     * @param headerSignatures keyword groups identifying the header; keywords are
+     *                         normalised like the header (quotes removed, lowercased)
+     * @param mappingConfig    column mapping for the raw persister
+     */
+    public FormatDefinition(String name, String accountType, char separator, String targetTable,
+                            ParseEngine parseEngine, int[] ignoredColumns,
+                            List<List<String>> headerSignatures, MappingConfig mappingConfig) {
+        this(name, accountType, separator, targetTable, parseEngine, ignoredColumns,
+                headerSignatures, mappingConfig, null);
+    }
+
+    FormatDefinition(String name, String accountType, char separator, String targetTable,
+                     ParseEngine parseEngine, int[] ignoredColumns,
+                     List<List<String>> headerSignatures, MappingConfig mappingConfig, Format builtIn) {
+        if (headerSignatures.isEmpty()) {
+            throw new IllegalArgumentException("Format " + name + " declares no header signature");
+        }
+        List<List<String>> signatures = new ArrayList<>();
+        for (List<String> group : headerSignatures) {
+            if (group.isEmpty()) {
+                throw new IllegalArgumentException("Format " + name + " has an empty header signature");
+            }
+            List<String> normalised = new ArrayList<>();
+            for (String keyword : group) {
+                String k = FormatRegistry.normalise(keyword);
+                if (k.isEmpty()) {
+                    throw new IllegalArgumentException("Format " + name + " has an empty header keyword");
+                }
+                normalised.add(k);
+            }
+            signatures.add(Collections.unmodifiableList(normalised));
+        }
+
+        int[] ignored = ignoredColumns.clone();
+        Arrays.sort(ignored);
+
+        this.name = name;
+        this.accountType = accountType;
+        this.separator = separator;
+        this.targetTable = targetTable;
+        this.parseEngine = parseEngine;
+        this.ignoredColumns = ignored;
+        this.headerSignatures = Collections.unmodifiableList(signatures);
+        this.mappingConfig = mappingConfig;
+        this.builtIn = builtIn;
+    }
+
+    /**
+     * Returns the unique format name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the account type: "bank" or "secu".
+     */
+    public String getAccountType() {
+        return accountType;
+    }
+
+    /**
+     * Returns the CSV field separator character.
+     */
+    public char getSeparator() {
+        return separator;
+    }
+
+    /**
+     * Returns the bare Joget table name (without app_fd_ prefix) for raw row storage.
+     */
+    public String getTargetTable() {
+        return targetTable;
+    }
+
+    /**
+     * Returns the tokenizer engine used to parse files of this format.
+     */
+    public ParseEngine getParseEngine() {
+        return parseEngine;
+    }
+
+    /**
+     * Returns the raw column indices that have no parsed index, ascending.
+     */
+    public int[] getIgnoredColumns() {
+        return ignoredColumns.clone();
+    }
+
+    /**
+     * Returns the normalised header keyword groups.
+     */
+    public List<List<String>> getHeaderSignatures() {
+        return headerSignatures;
+    }
+
+    /**
+     * Returns the column mapping for the raw persister.
+     */
+    public MappingConfig getMappingConfig() {
+        return mappingConfig;
+    }
+
+    /**
+     * Returns the {@link Format} constant for built-in definitions, or {@code null}.
+     */
+    public Format getBuiltIn() {
+        return builtIn;
+    }
+
+    int[] ignoredColumnsUnsafe() {
+        return ignoredColumns;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
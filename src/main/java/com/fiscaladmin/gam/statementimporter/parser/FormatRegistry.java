@@ -0,0 +1,244 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfigurations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of statement formats with a precompiled header matcher.
+ * <p>
+ * Every keyword of every registered signature is compiled into one
+ * {@link HeaderMatcher}. Detection normalises the header (BOM and quotes removed,
+ * lowercased), runs the matcher once, and counts distinct keywords per signature;
+ * the first registered format with a complete signature wins. Registration order is
+ * therefore priority order — the built-ins keep the original
+ * Securities → LHV → Swedbank precedence.
+ * <p>
+ * {@link #getDefault()} is the process-wide registry used by the importer and starts
+ * with the three {@link Format} built-ins. Registration swaps in a new immutable
+ * snapshot, so detection never blocks.
+ */
+public final class FormatRegistry {
+
+    /** Built-in formats in detection priority order. */
+    private static final Format[] BUILT_IN_PRIORITY = {Format.SECURITIES, Format.LHV_BANK, Format.SWEDBANK};
+
+    private static final Map<Format, FormatDefinition> BUILT_INS = createBuiltIns();
+    private static final FormatRegistry DEFAULT = withBuiltIns();
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList());
+
+    /**
+     * Returns the process-wide registry.
+     */
+    public static FormatRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Creates a new registry containing only the built-in formats.
+     */
+    public static FormatRegistry withBuiltIns() {
+        FormatRegistry registry = new FormatRegistry();
+        for (Format format : BUILT_IN_PRIORITY) {
+            registry.register(BUILT_INS.get(format));
+        }
+        return registry;
+    }
+
+    /**
+     * Returns the built-in definition for a {@link Format} constant.
+     */
+    public static FormatDefinition builtIn(Format format) {
+        return BUILT_INS.get(format);
+    }
+
+    /**
+     * Adds a format after all existing ones (lowest priority) and recompiles the matcher.
+     *
+     * @param definition the format to add
+     * @throws IllegalArgumentException if a format with the same name is registered
+     */
+    public synchronized void register(FormatDefinition definition) {
+        List<FormatDefinition> definitions = new ArrayList<>(snapshot.definitions);
+        for (FormatDefinition existing : definitions) {
+            if (existing.getName().equals(definition.getName())) {
+                throw new IllegalArgumentException("Format already registered: " + definition.getName());
+            }
+        }
+        definitions.add(definition);
+        snapshot = new Snapshot(definitions);
+    }
+
+    /**
+     * Returns the registered formats in priority order.
+     */
+    public List<FormatDefinition> getDefinitions() {
+        return snapshot.definitions;
+    }
+
+    /**
+     * Returns the format with the given name, or {@code null}.
+     */
+    public FormatDefinition find(String name) {
+        for (FormatDefinition definition : snapshot.definitions) {
+            if (definition.getName().equals(name)) {
+                return definition;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Detects the format from a header line.
+     *
+     * @param headerLine the first line of the file (may start with a BOM), or
+     *                   {@code null} for an empty file
+     * @return the highest-priority matching format
+     * @throws UnrecognisedFormatException if no format matches
+     */
+    public FormatDefinition detect(String headerLine) throws UnrecognisedFormatException {
+        if (headerLine == null) {
+            throw new UnrecognisedFormatException("(empty file)");
+        }
+
+        // Strip UTF-8 BOM if present; keep the raw header for diagnostics
+        String rawHeader = headerLine.startsWith("\uFEFF") ? headerLine.substring(1) : headerLine;
+
+        FormatDefinition match = snapshot.detect(normalise(rawHeader));
+        if (match == null) {
+            throw new UnrecognisedFormatException(rawHeader);
+        }
+        return match;
+    }
+
+    /**
+     * Removes single and double quotes and lowercases, as applied to headers and
+     * signature keywords alike.
+     */
+    static String normalise(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '"' && c != '\'') {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Map<Format, FormatDefinition> createBuiltIns() {
+        Map<Format, FormatDefinition> builtIns = new EnumMap<>(Format.class);
+        builtIns.put(Format.SECURITIES, builtInDefinition(Format.SECURITIES, new int[0],
+                Collections.singletonList(Arrays.asList("väärtuspäev", "tehingupäev"))));
+        builtIns.put(Format.LHV_BANK, builtInDefinition(Format.LHV_BANK, new int[]{6},
+                Collections.singletonList(Collections.singletonList("dokumendi number"))));
+        builtIns.put(Format.SWEDBANK, builtInDefinition(Format.SWEDBANK, new int[0],
+                Collections.singletonList(Collections.singletonList("dok nr"))));
+        return builtIns;
+    }
+
+    private static FormatDefinition builtInDefinition(Format format, int[] ignoredColumns,
+                                                      List<List<String>> signatures) {
+        return new FormatDefinition(format.name(), format.getAccountType(), format.getSeparator(),
+                format.getTargetTable(), format.getParseEngine(), ignoredColumns, signatures,
+                MappingConfigurations.getConfig(format), format);
+    }
+
+    /**
+     * Immutable compiled view of the registered formats.
+     */
+    private static final class Snapshot {
+
+        final List<FormatDefinition> definitions;
+        final HeaderMatcher matcher;
+        /** Signatures that contain each keyword id. */
+        final int[][] keywordSignatures;
+        /** Number of distinct keywords in each signature. */
+        final int[] signatureSizes;
+        /** Owning definition index for each signature. */
+        final int[] signatureOwners;
+
+        Snapshot(List<FormatDefinition> definitions) {
+            this.definitions = Collections.unmodifiableList(new ArrayList<>(definitions));
+
+            Map<String, Integer> keywordIds = new HashMap<>();
+            List<List<Integer>> keywordToSignatures = new ArrayList<>();
+            List<Integer> sizes = new ArrayList<>();
+            List<Integer> owners = new ArrayList<>();
+
+            for (int d = 0; d < definitions.size(); d++) {
+                for (List<String> group : definitions.get(d).getHeaderSignatures()) {
+                    int signature = sizes.size();
+                    int distinct = 0;
+                    for (String keyword : group) {
+                        Integer id = keywordIds.get(keyword);
+                        if (id == null) {
+                            id = keywordIds.size();
+                            keywordIds.put(keyword, id);
+                            keywordToSignatures.add(new ArrayList<>());
+                        }
+                        List<Integer> signatures = keywordToSignatures.get(id);
+                        if (!signatures.contains(signature)) {
+                            signatures.add(signature);
+                            distinct++;
+                        }
+                    }
+                    sizes.add(distinct);
+                    owners.add(d);
+                }
+            }
+
+            String[] keywords = new String[keywordIds.size()];
+            for (Map.Entry<String, Integer> entry : keywordIds.entrySet()) {
+                keywords[entry.getValue()] = entry.getKey();
+            }
+            this.matcher = new HeaderMatcher(Arrays.asList(keywords));
+
+            this.keywordSignatures = new int[keywords.length][];
+            for (int k = 0; k < keywords.length; k++) {
+                List<Integer> signatures = keywordToSignatures.get(k);
+                keywordSignatures[k] = new int[signatures.size()];
+                for (int i = 0; i < signatures.size(); i++) {
+                    keywordSignatures[k][i] = signatures.get(i);
+                }
+            }
+            this.signatureSizes = new int[sizes.size()];
+            this.signatureOwners = new int[owners.size()];
+            for (int s = 0; s < sizes.size(); s++) {
+                signatureSizes[s] = sizes.get(s);
+                signatureOwners[s] = owners.get(s);
+            }
+        }
+
+        /**
+         * Returns the highest-priority definition whose signature is complete in the
+         * normalised header, or {@code null}.
+         */
+        FormatDefinition detect(String normalisedHeader) {
+            boolean[] seen = new boolean[keywordSignatures.length];
+            int[] remaining = signatureSizes.clone();
+            int[] best = {Integer.MAX_VALUE};
+
+            matcher.match(normalisedHeader, id -> {
+                if (seen[id]) {
+                    return;
+                }
+                seen[id] = true;
+                for (int signature : keywordSignatures[id]) {
+                    if (--remaining[signature] == 0) {
+                        best[0] = Math.min(best[0], signatureOwners[signature]);
+                    }
+                }
+            });
+
+            return (best[0] == Integer.MAX_VALUE) ? null : definitions.get(best[0]);
+        }
+    }
+}
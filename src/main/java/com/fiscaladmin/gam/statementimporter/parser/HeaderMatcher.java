@@ -0,0 +1,149 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over a fixed set of keywords.
+ * <p>
+ * Built once from all header signature keywords; {@link #match(CharSequence, KeywordListener)}
+ * then reports every keyword occurrence in a single left-to-right pass, so the cost of
+ * scanning a header does not grow with the number of registered formats.
+ * <p>
+ * Transitions are stored per node as parallel sorted {@code char[]} / {@code int[]}
+ * arrays (binary-searched); failure links are precomputed breadth-first and each node
+ * carries the keyword ids that end at it or at any node on its failure chain.
+ */
+final class HeaderMatcher {
+
+    /** Receives keyword ids as they are found. */
+    interface KeywordListener {
+        void found(int keywordId);
+    }
+
+    private static final int ROOT = 0;
+
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    private final int[][] outputs;
+
+    /**
+     * @param keywords keywords to match; the id reported for a keyword is its index
+     */
+    HeaderMatcher(List<String> keywords) {
+        List<char[]> nodeLabels = new ArrayList<>();
+        List<int[]> nodeTargets = new ArrayList<>();
+        List<int[]> nodeOutputs = new ArrayList<>();
+        nodeLabels.add(new char[0]);
+        nodeTargets.add(new int[0]);
+        nodeOutputs.add(new int[0]);
+
+        // 1. Trie
+        for (int id = 0; id < keywords.size(); id++) {
+            int node = ROOT;
+            for (char c : keywords.get(id).toCharArray()) {
+                int next = find(nodeLabels.get(node), nodeTargets.get(node), c);
+                if (next < 0) {
+                    next = nodeLabels.size();
+                    nodeLabels.add(new char[0]);
+                    nodeTargets.add(new int[0]);
+                    nodeOutputs.add(new int[0]);
+                    insert(nodeLabels, nodeTargets, node, c, next);
+                }
+                node = next;
+            }
+            nodeOutputs.set(node, append(nodeOutputs.get(node), id));
+        }
+
+        int size = nodeLabels.size();
+        this.labels = nodeLabels.toArray(new char[0][]);
+        this.targets = nodeTargets.toArray(new int[0][]);
+        this.outputs = nodeOutputs.toArray(new int[0][]);
+        this.fail = new int[size];
+
+        // 2. Failure links, breadth-first so parents are resolved before children
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[ROOT]) {
+            fail[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < labels[node].length; i++) {
+                char c = labels[node][i];
+                int child = targets[node][i];
+                int f = fail[node];
+                while (f != ROOT && find(labels[f], targets[f], c) < 0) {
+                    f = fail[f];
+                }
+                int via = find(labels[f], targets[f], c);
+                fail[child] = (via >= 0 && via != child) ? via : ROOT;
+                outputs[child] = concat(outputs[child], outputs[fail[child]]);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Scans {@code text} once and reports every keyword occurrence.
+     *
+     * @param text     normalised header text
+     * @param listener receives the id of each keyword found (once per occurrence)
+     */
+    void match(CharSequence text, KeywordListener listener) {
+        int node = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = find(labels[node], targets[node], c)) < 0 && node != ROOT) {
+                node = fail[node];
+            }
+            node = Math.max(next, ROOT);
+            for (int id : outputs[node]) {
+                listener.found(id);
+            }
+        }
+    }
+
+    private static int find(char[] nodeLabels, int[] nodeTargets, char c) {
+        int i = Arrays.binarySearch(nodeLabels, c);
+        return (i >= 0) ? nodeTargets[i] : -1;
+    }
+
+    private static void insert(List<char[]> nodeLabels, List<int[]> nodeTargets, int node, char c, int target) {
+        char[] oldLabels = nodeLabels.get(node);
+        int[] oldTargets = nodeTargets.get(node);
+        int at = -(Arrays.binarySearch(oldLabels, c) + 1);
+
+        char[] newLabels = new char[oldLabels.length + 1];
+        int[] newTargets = new int[oldTargets.length + 1];
+        System.arraycopy(oldLabels, 0, newLabels, 0, at);
+        System.arraycopy(oldTargets, 0, newTargets, 0, at);
+        newLabels[at] = c;
+        newTargets[at] = target;
+        System.arraycopy(oldLabels, at, newLabels, at + 1, oldLabels.length - at);
+        System.arraycopy(oldTargets, at, newTargets, at + 1, oldTargets.length - at);
+
+        nodeLabels.set(node, newLabels);
+        nodeTargets.set(node, newTargets);
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
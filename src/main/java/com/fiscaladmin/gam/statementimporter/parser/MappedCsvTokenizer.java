@@ -0,0 +1,330 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Byte-level RFC 4180 tokenizer over a memory-mapped UTF-8 (or ASCII-compatible
+ * single-byte) file.
+ * <p>
+ * Produces the same records as the Commons CSV configuration used by
+ * {@link StatementParser} ({@code RFC4180}, trim, ignore empty lines, {@code "} quote):
+ * <ul>
+ *   <li>A field is quoted only if its first byte is {@code "}; {@code ""} inside a
+ *       quoted field is a literal quote, and separators / line breaks are kept</li>
+ *   <li>Only whitespace may follow a closing quote before the next separator or EOL</li>
+ *   <li>CRLF, LF and lone CR all end a record; empty lines are skipped</li>
+ *   <li>Values are trimmed (bytes {@code <= 0x20}, as {@link String#trim()})</li>
+ *   <li>A leading UTF-8 BOM is skipped</li>
+ * </ul>
+ * Structural bytes (separator, quote, CR, LF) are all ASCII, so scanning never has to
+ * decode; each field value is decoded exactly once, straight from its byte range —
+ * as UTF-8, or through a {@link SingleByteDecoder} table when one is set.
+ * <p>
+ * Returns raw records (no per-format post-processing) — the first call returns the
+ * header record, unless it is read with {@link #skipHeader()}. With a {@link ColumnProjection} set, columns outside the plan are
+ * still validated but never decoded, and rows come back in parsed-row layout.
+ */
+final class MappedCsvTokenizer implements RowCursor {
+
+    private static final byte QUOTE = '"';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private ByteBuffer buf;
+    private ByteBuffer view;
+    private final int limit;
+    private final byte separator;
+    private int pos;
+    private boolean bareQuote;
+    private ColumnProjection projection;
+    private SingleByteDecoder decoder;
+
+    private byte[] scratch = new byte[256];
+    private String[] fields = new String[32];
+
+    /**
+     * @param buf       bytes to tokenize, from {@code buf.position()} to {@code buf.limit()}
+     * @param separator ASCII field separator
+     */
+    MappedCsvTokenizer(ByteBuffer buf, char separator) {
+        if (separator > 0x7F || separator == '"' || separator == '\r' || separator == '\n') {
+            throw new IllegalArgumentException("Unsupported separator for byte tokenizer: " + separator);
+        }
+        this.buf = buf;
+        this.view = buf.duplicate();
+        this.limit = buf.limit();
+        this.separator = (byte) separator;
+        this.pos = buf.position();
+
+        // Skip UTF-8 BOM (EF BB BF) at the start of the file
+        if (pos == 0 && limit >= 3
+                && (buf.get(pos) & 0xFF) == 0xEF
+                && (buf.get(pos + 1) & 0xFF) == 0xBB
+                && (buf.get(pos + 2) & 0xFF) == 0xBF) {
+            pos += 3;
+        }
+    }
+
+    /**
+     * Memory-maps a whole file read-only.
+     *
+     * @param file the file to map
+     * @return buffer over the file contents, positioned at 0
+     * @throws IOException if the file cannot be mapped (including files over 2 GB)
+     */
+    static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return map(channel);
+        }
+    }
+
+    /**
+     * Memory-maps the whole of an open channel read-only. The mapping stays valid
+     * after the channel is closed.
+     *
+     * @param channel the channel to map
+     * @return buffer over the channel contents, positioned at 0
+     * @throws IOException if the channel cannot be mapped (including files over 2 GB)
+     */
+    static ByteBuffer map(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File too large to map in one piece: " + size + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    /**
+     * Applies a projection to all subsequent rows ({@code null} returns raw records).
+     */
+    void setProjection(ColumnProjection projection) {
+        this.projection = projection;
+    }
+
+    /**
+     * Decodes all subsequent fields through {@code decoder} ({@code null} decodes UTF-8).
+     */
+    void setDecoder(SingleByteDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    /**
+     * Reads the header record and validates its names as Commons CSV does when it
+     * reads a header ({@link StatementParser#headerFormat}), so a header rejected by
+     * the {@link ParseEngine#COMMONS_CSV} engine is rejected here too. Call before
+     * setting a projection.
+     *
+     * @throws IllegalArgumentException if the header is invalid (e.g. a name is missing)
+     */
+    void skipHeader() throws IOException {
+        String[] header = nextRow();
+        if (header != null) {
+            CSVFormat headerFormat = StatementParser.headerFormat((char) separator).builder()
+                    .setHeader(header)
+                    .build();
+            CSVParser.parse("", headerFormat).close();
+        }
+    }
+
+    @Override
+    public String[] nextRow() throws IOException {
+        if (buf == null) {
+            throw new IOException("Tokenizer is closed");
+        }
+
+        // Skip empty lines
+        while (pos < limit) {
+            byte b = buf.get(pos);
+            if (b != CR && b != LF) {
+                break;
+            }
+            pos++;
+        }
+        if (pos >= limit) {
+            return null;
+        }
+
+        int count = 0;
+        while (true) {
+            boolean decode = projection == null || projection.isNeeded(count);
+            String value = (pos < limit && buf.get(pos) == QUOTE) ? readQuoted(decode) : readSimple(decode);
+            if (count == fields.length) {
+                fields = Arrays.copyOf(fields, count * 2);
+            }
+            fields[count++] = value;
+
+            if (pos >= limit) {
+                break; // EOF ends the record
+            }
+            byte b = buf.get(pos++);
+            if (b == separator) {
+                continue;
+            }
+            // CR, LF or CRLF
+            if (b == CR && pos < limit && buf.get(pos) == LF) {
+                pos++;
+            }
+            break;
+        }
+        return (projection != null) ? projection.project(fields, count) : Arrays.copyOf(fields, count);
+    }
+
+    /**
+     * Returns the byte offset of the next unread record.
+     */
+    int position() {
+        return pos;
+    }
+
+    /**
+     * Returns {@code true} if a quote appeared inside an unquoted field so far.
+     * Such quotes are literal text, so quote counting no longer tracks whether a
+     * byte is inside a quoted field (see {@link ParallelCsvCursor}).
+     */
+    boolean sawBareQuote() {
+        return bareQuote;
+    }
+
+    /**
+     * Reads an unquoted field up to (not including) the next separator, CR, LF or EOF.
+     * Returns {@code null} without decoding when {@code decode} is false.
+     */
+    private String readSimple(boolean decode) {
+        int start = pos;
+        while (pos < limit) {
+            byte b = buf.get(pos);
+            if (b == separator || b == CR || b == LF) {
+                break;
+            }
+            if (b == QUOTE) {
+                bareQuote = true;
+            }
+            pos++;
+        }
+        return decode ? decodeTrimmed(start, pos) : null;
+    }
+
+    /**
+     * Reads a quoted field starting at the opening quote. Leaves {@code pos} at the
+     * separator, line break or EOF that follows the closing quote. Returns {@code null}
+     * without decoding when {@code decode} is false.
+     */
+    private String readQuoted(boolean decode) throws IOException {
+        int open = pos;
+        int start = pos + 1;
+        int p = start;
+        boolean escaped = false;
+
+        // Find the closing quote
+        while (true) {
+            if (p >= limit) {
+                throw new IOException("EOF reached before encapsulated token finished (byte offset " + open + ")");
+            }
+            if (buf.get(p) == QUOTE) {
+                if (p + 1 < limit && buf.get(p + 1) == QUOTE) {
+                    escaped = true;
+                    p += 2;
+                    continue;
+                }
+                break;
+            }
+            p++;
+        }
+        int end = p;
+        p++; // past closing quote
+
+        // Only whitespace may follow the closing quote
+        while (p < limit) {
+            byte b = buf.get(p);
+            if (b == separator || b == CR || b == LF) {
+                break;
+            }
+            if (!isWhitespace(b)) {
+                throw new IOException("Invalid char between encapsulated token and delimiter (byte offset " + p + ")");
+            }
+            p++;
+        }
+        pos = p;
+
+        if (!decode) {
+            return null;
+        }
+        if (!escaped) {
+            return decodeTrimmed(start, end);
+        }
+
+        // Collapse "" to " while copying into the scratch buffer
+        int len = 0;
+        ensureScratch(end - start);
+        for (int i = start; i < end; i++) {
+            byte b = buf.get(i);
+            scratch[len++] = b;
+            if (b == QUOTE) {
+                i++; // skip the second quote of the pair
+            }
+        }
+        int from = 0;
+        while (from < len && (scratch[from] & 0xFF) <= 0x20) {
+            from++;
+        }
+        while (len > from && (scratch[len - 1] & 0xFF) <= 0x20) {
+            len--;
+        }
+        return decode(from, len - from);
+    }
+
+    /**
+     * Decodes {@code [start, end)} after trimming bytes {@code <= 0x20} at both ends.
+     */
+    private String decodeTrimmed(int start, int end) {
+        while (start < end && (buf.get(start) & 0xFF) <= 0x20) {
+            start++;
+        }
+        while (end > start && (buf.get(end - 1) & 0xFF) <= 0x20) {
+            end--;
+        }
+        int len = end - start;
+        if (len == 0) {
+            return "";
+        }
+        ensureScratch(len);
+        view.position(start);
+        view.get(scratch, 0, len);
+        return decode(0, len);
+    }
+
+    private String decode(int off, int len) {
+        return (decoder != null)
+                ? decoder.decode(scratch, off, len)
+                : new String(scratch, off, len, StandardCharsets.UTF_8);
+    }
+
+    private void ensureScratch(int len) {
+        if (scratch.length < len) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+    }
+
+    /**
+     * ASCII subset of {@link Character#isWhitespace(char)}.
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x1F);
+    }
+
+    @Override
+    public void close() {
+        // Drop references so the mapping can be released by the GC
+        buf = null;
+        view = null;
+    }
+}
@@ -0,0 +1,303 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Tokenizes a memory-mapped CSV file in byte-range chunks on a {@link ForkJoinPool}
+ * and yields the rows in original file order.
+ * <p>
+ * Splitting works in two passes:
+ * <ol>
+ *   <li>The data area is cut into nominal chunks of {@code chunkBytes}. Each chunk is
+ *       scanned in parallel to count its quote bytes and to find its first LF at even
+ *       and at odd local quote parity.</li>
+ *   <li>A prefix XOR of the counts gives the quote state at each nominal start, which
+ *       selects the first LF that lies outside a quoted field. The byte after it is
+ *       the chunk boundary, so every chunk starts on a record.</li>
+ * </ol>
+ * Quote parity only tracks quoted fields while every quote is structural (opening,
+ * closing or an escaped {@code ""} pair). A quote inside an unquoted field is literal
+ * text to Commons CSV, so when a chunk reports one (or fails to parse) its start is
+ * still trustworthy but later boundaries are not: the cursor drops that chunk's rows
+ * and tokenizes sequentially from its start to the end of the file.
+ * <p>
+ * Only a bounded window of chunks is in flight, so memory stays proportional to
+ * {@code chunkBytes * window} rather than file size.
+ */
+final class ParallelCsvCursor implements RowCursor {
+
+    /** Default nominal chunk size in bytes. */
+    static final int DEFAULT_CHUNK_BYTES = 4 * 1024 * 1024;
+
+    private static final byte QUOTE = '"';
+    private static final byte LF = '\n';
+
+    private ByteBuffer buf;
+    private final char separator;
+    private final ColumnProjection projection;
+    private final SingleByteDecoder decoder;
+    private final ForkJoinPool pool;
+    private final int[] bounds;
+    private final int window;
+    private final Deque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+    private int nextChunk;
+
+    private List<String[]> current = Collections.emptyList();
+    private int currentIndex;
+    private MappedCsvTokenizer sequential;
+
+    /**
+     * @param buf        mapped file contents
+     * @param dataStart  byte offset of the first data record (after the header)
+     * @param separator  ASCII field separator
+     * @param projection column plan applied to every row ({@code null} for raw records)
+     * @param chunkBytes nominal chunk size
+     * @param pool       pool to tokenize on
+     * @param decoder    single-byte decoder for field values ({@code null} for UTF-8)
+     */
+    ParallelCsvCursor(ByteBuffer buf, int dataStart, char separator, ColumnProjection projection,
+                      int chunkBytes, ForkJoinPool pool, SingleByteDecoder decoder) {
+        this.buf = buf;
+        this.separator = separator;
+        this.projection = projection;
+        this.decoder = decoder;
+        this.pool = pool;
+        this.bounds = splitPoints(buf, dataStart, buf.limit(), chunkBytes, pool);
+        this.window = pool.getParallelism() + 1;
+    }
+
+    /**
+     * Maps the file, reads and validates the header and returns a cursor over the data rows
+     * using the common pool and {@link #DEFAULT_CHUNK_BYTES}.
+     *
+     * @param file       the CSV file
+     * @param separator  ASCII field separator
+     * @param projection column plan applied to every row ({@code null} for raw records)
+     * @return cursor positioned before the first data row
+     * @throws IOException if the file cannot be mapped or the header cannot be read
+     * @throws IllegalArgumentException if the header is invalid (as Commons CSV rejects it)
+     */
+    static ParallelCsvCursor open(File file, char separator, ColumnProjection projection) throws IOException {
+        return open(file, separator, projection, DEFAULT_CHUNK_BYTES, ForkJoinPool.commonPool());
+    }
+
+    static ParallelCsvCursor open(File file, char separator, ColumnProjection projection,
+                                  int chunkBytes, ForkJoinPool pool) throws IOException {
+        return open(MappedCsvTokenizer.map(file), separator, projection, chunkBytes, pool);
+    }
+
+    /**
+     * Reads and validates the header in an already mapped file and returns a cursor over the
+     * data rows.
+     */
+    static ParallelCsvCursor open(ByteBuffer buf, char separator, ColumnProjection projection,
+                                  int chunkBytes, ForkJoinPool pool) throws IOException {
+        return open(buf, separator, projection, chunkBytes, pool, null);
+    }
+
+    /**
+     * As {@link #open(ByteBuffer, char, ColumnProjection, int, ForkJoinPool)}, decoding
+     * field values through {@code decoder} ({@code null} for UTF-8).
+     */
+    static ParallelCsvCursor open(ByteBuffer buf, char separator, ColumnProjection projection,
+                                  int chunkBytes, ForkJoinPool pool, SingleByteDecoder decoder)
+            throws IOException {
+        MappedCsvTokenizer header = new MappedCsvTokenizer(buf.duplicate(), separator);
+        header.setDecoder(decoder);
+        header.skipHeader();
+        return new ParallelCsvCursor(buf, header.position(), separator, projection, chunkBytes, pool, decoder);
+    }
+
+    @Override
+    public String[] nextRow() throws IOException {
+        if (buf == null) {
+            throw new IOException("Cursor is closed");
+        }
+        while (true) {
+            if (sequential != null) {
+                return sequential.nextRow();
+            }
+            if (currentIndex < current.size()) {
+                return current.get(currentIndex++);
+            }
+            fillWindow();
+            if (inFlight.isEmpty()) {
+                return null;
+            }
+            Chunk chunk = inFlight.removeFirst().join();
+            if (chunk.clean) {
+                current = chunk.rows;
+                currentIndex = 0;
+            } else {
+                fallBackToSequential(chunk.start);
+            }
+        }
+    }
+
+    /**
+     * Returns the chunk boundaries in use (first = data start, last = end of file).
+     */
+    int[] getBounds() {
+        return bounds.clone();
+    }
+
+    /**
+     * Returns {@code true} once the cursor has abandoned parallel tokenization.
+     */
+    boolean isSequential() {
+        return sequential != null;
+    }
+
+    private void fillWindow() {
+        while (inFlight.size() < window && nextChunk < bounds.length - 1) {
+            int start = bounds[nextChunk];
+            int end = bounds[nextChunk + 1];
+            nextChunk++;
+            inFlight.addLast(pool.submit(() -> tokenize(start, end)));
+        }
+    }
+
+    private Chunk tokenize(int start, int end) {
+        ByteBuffer slice = buf.duplicate();
+        slice.limit(end);
+        slice.position(start);
+        MappedCsvTokenizer tokenizer = new MappedCsvTokenizer(slice, separator);
+        tokenizer.setProjection(projection);
+        tokenizer.setDecoder(decoder);
+        List<String[]> rows = new ArrayList<>();
+        try {
+            String[] row;
+            while ((row = tokenizer.nextRow()) != null) {
+                rows.add(row);
+            }
+        } catch (IOException e) {
+            // Either a malformed file or a wrong boundary; the sequential pass decides
+            return new Chunk(start, null, false);
+        }
+        return new Chunk(start, rows, !tokenizer.sawBareQuote());
+    }
+
+    private void fallBackToSequential(int start) {
+        cancelInFlight();
+        nextChunk = bounds.length - 1;
+        current = Collections.emptyList();
+        ByteBuffer rest = buf.duplicate();
+        rest.position(start);
+        sequential = new MappedCsvTokenizer(rest, separator);
+        sequential.setProjection(projection);
+        sequential.setDecoder(decoder);
+    }
+
+    private void cancelInFlight() {
+        for (ForkJoinTask<Chunk> task : inFlight) {
+            task.cancel(false);
+        }
+        inFlight.clear();
+    }
+
+    @Override
+    public void close() {
+        cancelInFlight();
+        if (sequential != null) {
+            sequential.close();
+        }
+        buf = null;
+        current = Collections.emptyList();
+    }
+
+    // ── Boundary computation ────────────────────────────────────────────
+
+    /**
+     * Computes record-aligned chunk boundaries for {@code [start, end)}.
+     *
+     * @return ascending offsets beginning with {@code start} and ending with {@code end}
+     */
+    static int[] splitPoints(ByteBuffer buf, int start, int end, int chunkBytes, ForkJoinPool pool) {
+        int n = (int) Math.max(1, ((long) end - start + chunkBytes - 1) / chunkBytes);
+        if (n == 1) {
+            return new int[]{start, end};
+        }
+
+        List<ForkJoinTask<ChunkScan>> scans = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int from = start + i * chunkBytes;
+            int to = (i == n - 1) ? end : from + chunkBytes;
+            scans.add(pool.submit(() -> scan(buf.duplicate(), from, to)));
+        }
+
+        List<Integer> bounds = new ArrayList<>(n + 1);
+        bounds.add(start);
+        int parity = 0; // quote parity at the start of chunk i
+        for (int i = 0; i < n; i++) {
+            ChunkScan s = scans.get(i).join();
+            if (i > 0) {
+                int lf = (parity == 0) ? s.firstEvenLf : s.firstOddLf;
+                if (lf >= 0 && lf + 1 < end && lf + 1 > bounds.get(bounds.size() - 1)) {
+                    bounds.add(lf + 1);
+                }
+            }
+            parity ^= s.quotes & 1;
+        }
+        bounds.add(end);
+
+        int[] result = new int[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static ChunkScan scan(ByteBuffer buf, int from, int to) {
+        int quotes = 0;
+        int firstEvenLf = -1;
+        int firstOddLf = -1;
+        for (int p = from; p < to; p++) {
+            byte b = buf.get(p);
+            if (b == QUOTE) {
+                quotes++;
+            } else if (b == LF) {
+                if ((quotes & 1) == 0) {
+                    if (firstEvenLf < 0) {
+                        firstEvenLf = p;
+                    }
+                } else if (firstOddLf < 0) {
+                    firstOddLf = p;
+                }
+            }
+        }
+        return new ChunkScan(quotes, firstEvenLf, firstOddLf);
+    }
+
+    private static final class ChunkScan {
+        final int quotes;
+        final int firstEvenLf;
+        final int firstOddLf;
+
+        ChunkScan(int quotes, int firstEvenLf, int firstOddLf) {
+            this.quotes = quotes;
+            this.firstEvenLf = firstEvenLf;
+            this.firstOddLf = firstOddLf;
+        }
+    }
+
+    private static final class Chunk {
+        final int start;
+        final List<String[]> rows;
+        final boolean clean;
+
+        Chunk(int start, List<String[]> rows, boolean clean) {
+            this.start = start;
+            this.rows = rows;
+            this.clean = clean;
+        }
+    }
+}
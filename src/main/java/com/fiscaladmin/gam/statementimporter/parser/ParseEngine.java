@@ -0,0 +1,35 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+/**
+ * CSV tokenizer implementations available behind {@link StatementParser}.
+ * <p>
+ * Both engines produce identical rows for RFC 4180 input; they differ only in cost.
+ * The engine is chosen per {@link Format} (see {@link Format#getParseEngine()}) and
+ * can be overridden with {@link StatementParser#open(java.io.File, Format, ParseEngine)}.
+ */
+public enum ParseEngine {
+
+    /**
+     * Apache Commons CSV over a UTF-8 {@code Reader}. Decodes every character of
+     * the file. Lines whose quotes only wrap whole fields are split directly by
+     * {@link FastPathCsvCursor}; only the rest allocate a {@code CSVRecord}.
+     */
+    COMMONS_CSV,
+
+    /**
+     * {@link MappedCsvTokenizer}: memory-maps the file and tokenizes UTF-8 bytes
+     * directly, decoding only the byte ranges that become field values.
+     * Falls back to {@link #COMMONS_CSV} for files that cannot be mapped in one
+     * piece (larger than 2 GB).
+     */
+    MAPPED,
+
+    /**
+     * {@link ParallelCsvCursor}: the {@link #MAPPED} tokenizer run over record-aligned
+     * byte ranges on the common {@code ForkJoinPool}, with rows returned in file order.
+     * Chosen automatically for files of at least
+     * {@link StatementParser#PARALLEL_THRESHOLD_BYTES}; below that the split and
+     * hand-off cost outweighs the gain. Same 2 GB fallback as {@link #MAPPED}.
+     */
+    PARALLEL
+}
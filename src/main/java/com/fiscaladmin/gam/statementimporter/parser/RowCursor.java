@@ -0,0 +1,78 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Pull-based, one-row-at-a-time view over parsed statement rows.
+ * <p>
+ * Unlike {@link StatementParser#parse(java.io.File, Format)}, a cursor never holds
+ * more than the current row, so heap use stays flat regardless of file size.
+ * Rows have the same layout as the list-based API (e.g. 18 elements for
+ * {@link Format#LHV_BANK} after field-6 stripping).
+ * <p>
+ * Cursors are single-pass and must be closed to release the underlying file handle.
+ */
+public interface RowCursor extends Closeable {
+
+    /**
+     * Returns the next row, or {@code null} when the cursor is exhausted.
+     *
+     * @return the next row of field values
+     * @throws IOException if the underlying source cannot be read
+     */
+    String[] nextRow() throws IOException;
+
+    /**
+     * Returns a cursor over an already materialised list of rows.
+     * Closing it is a no-op.
+     *
+     * @param rows the rows to iterate
+     * @return cursor yielding {@code rows} in order
+     */
+    static RowCursor fromList(List<String[]> rows) {
+        Iterator<String[]> it = rows.iterator();
+        return new RowCursor() {
+            @Override
+            public String[] nextRow() {
+                return it.hasNext() ? it.next() : null;
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    /**
+     * Returns a cursor that yields {@code first}, then the rows of {@code rest};
+     * used to put back a row read ahead. Closing it closes {@code rest}.
+     *
+     * @param first the row read ahead (may be {@code null} for an exhausted cursor)
+     * @param rest  the cursor it was read from
+     * @return cursor yielding {@code first} followed by {@code rest}
+     */
+    static RowCursor prepend(String[] first, RowCursor rest) {
+        return new RowCursor() {
+            private String[] pending = first;
+
+            @Override
+            public String[] nextRow() throws IOException {
+                if (pending != null) {
+                    String[] row = pending;
+                    pending = null;
+                    return row;
+                }
+                return rest.nextRow();
+            }
+
+            @Override
+            public void close() throws IOException {
+                rest.close();
+            }
+        };
+    }
+}
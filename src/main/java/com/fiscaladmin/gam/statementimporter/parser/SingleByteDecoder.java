@@ -0,0 +1,127 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table-driven decoder for ASCII-compatible single-byte charsets
+ * (e.g. Windows-1257, ISO-8859-13).
+ * <p>
+ * The 256-entry byte → char table is built once per charset with a JDK
+ * {@link CharsetDecoder} (unmappable bytes become U+FFFD, as in {@code new String(bytes, cs)});
+ * after that each byte is a single array lookup, with no decoder state, buffers or
+ * coder-result checks per call.
+ * <p>
+ * Only charsets whose bytes 0x00–0x7F decode to themselves are supported, so the
+ * byte-level tokenizers can keep scanning for ASCII separators, quotes and line breaks.
+ */
+final class SingleByteDecoder {
+
+    private static final Map<String, SingleByteDecoder> CACHE = new ConcurrentHashMap<>();
+
+    private final Charset charset;
+    private final char[] table;
+
+    private SingleByteDecoder(Charset charset, char[] table) {
+        this.charset = charset;
+        this.table = table;
+    }
+
+    /**
+     * Returns the decoder for {@code charset}, or {@code null} if it is not an
+     * ASCII-compatible single-byte charset (e.g. UTF-8).
+     */
+    static SingleByteDecoder forCharset(Charset charset) {
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1.0f) {
+            return null;
+        }
+        SingleByteDecoder cached = CACHE.get(charset.name());
+        if (cached != null) {
+            return cached;
+        }
+
+        char[] table = new char[256];
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        for (int b = 0; b < 256; b++) {
+            CharBuffer out = CharBuffer.allocate(2);
+            decoder.reset();
+            decoder.decode(ByteBuffer.wrap(new byte[]{(byte) b}), out, true);
+            decoder.flush(out);
+            table[b] = (out.position() == 1) ? out.get(0) : '\uFFFD';
+            if (b < 0x80 && table[b] != b) {
+                return null; // not ASCII-compatible
+            }
+        }
+
+        SingleByteDecoder created = new SingleByteDecoder(charset, table);
+        CACHE.putIfAbsent(charset.name(), created);
+        return created;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Decodes {@code len} bytes starting at {@code off}.
+     */
+    String decode(byte[] bytes, int off, int len) {
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++) {
+            chars[i] = table[bytes[off + i] & 0xFF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns a reader that decodes {@code in} through the table.
+     */
+    Reader newReader(InputStream in) {
+        return new TableReader(in, table);
+    }
+
+    /**
+     * {@code Reader} that maps each byte through the decode table.
+     */
+    private static final class TableReader extends Reader {
+
+        private final InputStream in;
+        private final char[] table;
+        private byte[] bytes = new byte[8192];
+
+        TableReader(InputStream in, char[] table) {
+            this.in = in;
+            this.table = table;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (bytes.length < len) {
+                bytes = new byte[len];
+            }
+            int n = in.read(bytes, 0, len);
+            for (int i = 0; i < n; i++) {
+                cbuf[off + i] = table[bytes[i] & 0xFF];
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens a statement attachment that may be compressed and yields one
+ * {@link StatementSession} per logical statement in it.
+ * <p>
+ * The compression is recognised from the leading magic bytes, not the file name:
+ * <ul>
+ *   <li><b>Plain CSV</b> — one statement, opened with {@link StatementSession#open(File, FormatRegistry, Charset)}
+ *       (memory-mapped as before)</li>
+ *   <li><b>gzip</b> ({@code 1F 8B}) — one statement, decompressed on the fly</li>
+ *   <li><b>zip</b> ({@code 50 4B}) — one statement per file entry, in archive order.
+ *       Directories and metadata entries ({@code __MACOSX/}, dot files) are skipped</li>
+ * </ul>
+ * Compressed data is inflated straight into the parser; nothing is written to disk.
+ * Each statement is detected, sniffed and parsed on its own, so a bundle may mix
+ * formats and charsets.
+ * <p>
+ * Statements must be consumed in order: opening the next one skips whatever is left
+ * of the previous zip entry.
+ */
+public final class StatementArchive implements Closeable {
+
+    /** How an attachment is compressed. */
+    public enum Compression {
+        NONE, GZIP, ZIP
+    }
+
+    private static final int INFLATE_BUFFER = 64 * 1024;
+
+    private final File file;
+    private final FormatRegistry registry;
+    private final Charset charset;
+    private final Compression compression;
+    private ZipInputStream zip;
+    private boolean opened;
+    private String entryName;
+    private long entrySize = -1;
+
+    private StatementArchive(File file, FormatRegistry registry, Charset charset, Compression compression) {
+        this.file = file;
+        this.registry = registry;
+        this.charset = charset;
+        this.compression = compression;
+    }
+
+    /**
+     * Opens an attachment for reading its statements.
+     *
+     * @param file     the uploaded file (plain, gzip or zip)
+     * @param registry the formats to match each statement against
+     * @param charset  charset of every statement, or {@code null} to sniff each one
+     * @return an open archive positioned before the first statement
+     * @throws IOException if the file cannot be read
+     */
+    public static StatementArchive open(File file, FormatRegistry registry, Charset charset) throws IOException {
+        return new StatementArchive(file, registry, charset, detectCompression(file));
+    }
+
+    /**
+     * Recognises the compression of a file from its first bytes.
+     *
+     * @param file the file to inspect
+     * @return the compression, {@link Compression#NONE} for anything unrecognised
+     * @throws IOException if the file cannot be read
+     */
+    public static Compression detectCompression(File file) throws IOException {
+        byte[] magic = new byte[2];
+        int len = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while (len < magic.length && (n = in.read(magic, len, magic.length - len)) > 0) {
+                len += n;
+            }
+        }
+        if (len == 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            return Compression.GZIP;
+        }
+        if (len == 2 && magic[0] == 'P' && magic[1] == 'K') {
+            return Compression.ZIP;
+        }
+        return Compression.NONE;
+    }
+
+    /**
+     * Returns the compression of this attachment.
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Opens the next statement.
+     *
+     * @return a session over the next statement, or {@code null} when there are no more
+     * @throws UnrecognisedFormatException if the statement's header does not match a
+     *                                     registered format
+     * @throws IOException                 if the attachment cannot be read
+     */
+    public StatementSession nextStatement() throws IOException, UnrecognisedFormatException {
+        switch (compression) {
+            case ZIP:
+                return nextZipEntry();
+            case GZIP:
+                if (opened) {
+                    return null;
+                }
+                opened = true;
+                entryName = stripSuffix(file.getName(), ".gz");
+                entrySize = gzipSize(file);
+                return StatementSession.open(
+                        new GZIPInputStream(new FileInputStream(file), INFLATE_BUFFER), registry, charset);
+            default:
+                if (opened) {
+                    return null;
+                }
+                opened = true;
+                entryName = file.getName();
+                entrySize = file.length();
+                return StatementSession.open(file, registry, charset);
+        }
+    }
+
+    /**
+     * Returns the name of the statement last returned by {@link #nextStatement()}:
+     * the zip entry name, the file name without {@code .gz}, or the file name.
+     */
+    public String getEntryName() {
+        return entryName;
+    }
+
+    /**
+     * Returns the uncompressed size in bytes of the statement last returned by
+     * {@link #nextStatement()}, or -1 if the archive does not record it (zip
+     * entries streamed without sizes in their local header).
+     */
+    public long getEntrySize() {
+        return entrySize;
+    }
+
+    /**
+     * Reads the uncompressed size from a gzip file's trailer (ISIZE, modulo 2^32;
+     * the last member's only, for a multi-member file), or -1 if it cannot be read.
+     */
+    static long gzipSize(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < 18) {
+                return -1;
+            }
+            raf.seek(raf.length() - 4);
+            long size = 0;
+            for (int i = 0; i < 4; i++) {
+                size |= (long) raf.read() << (8 * i);
+            }
+            return size;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private StatementSession nextZipEntry() throws IOException, UnrecognisedFormatException {
+        if (!opened) {
+            opened = true;
+            zip = new ZipInputStream(new BufferedInputStream(new FileInputStream(file), INFLATE_BUFFER));
+        }
+        if (zip == null) {
+            return null;
+        }
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (!isMetadata(entry)) {
+                entryName = entry.getName();
+                entrySize = entry.getSize();
+                return StatementSession.open(new EntryInputStream(zip), registry, charset);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns {@code true} for entries that are not statements: directories and the
+     * resource-fork / hidden files added by desktop archivers.
+     */
+    static boolean isMetadata(ZipEntry entry) {
+        String name = entry.getName();
+        String baseName = name.substring(name.lastIndexOf('/') + 1);
+        return entry.isDirectory() || name.startsWith("__MACOSX/") || baseName.startsWith(".");
+    }
+
+    private static String stripSuffix(String name, String suffix) {
+        return name.toLowerCase().endsWith(suffix) ? name.substring(0, name.length() - suffix.length()) : name;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (zip != null) {
+            zip.close();
+            zip = null;
+        }
+    }
+
+    /**
+     * View of the current zip entry. Closing it leaves the archive open for the
+     * next entry.
+     */
+    private static final class EntryInputStream extends FilterInputStream {
+
+        EntryInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // the archive owns the underlying stream
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Column-oriented store of parsed statement rows.
+ * <p>
+ * A {@code List<String[]>} pays for an array per row and a {@code String} per field.
+ * Most statement columns repeat a handful of values (currency, D/C, account number,
+ * transaction type), so a batch keeps each column in one of two encodings:
+ * <ul>
+ *   <li><b>Dictionary</b> — an {@code int} code per row into the column's distinct
+ *       values; every row with the same value shares one {@code String}</li>
+ *   <li><b>Text</b> — an offset and length per row into one {@code char[]} buffer
+ *       shared by all text columns, for free-text columns such as names and
+ *       descriptions</li>
+ * </ul>
+ * Every column starts dictionary-encoded and switches to text once it has more than
+ * {@value #MAX_DICTIONARY_SIZE} distinct values, or once more than half of the first
+ * {@value #DICTIONARY_PROBE_ROWS} rows are distinct. Values are read back with
+ * {@link #get(int, int)}, which for dictionary columns returns the shared instance.
+ * <p>
+ * Row widths are kept, so {@link #row(int)} returns exactly the array that was added
+ * ({@code null} fields included).
+ */
+public final class StatementBatch {
+
+    /** Distinct values above which a column is text-encoded. */
+    static final int MAX_DICTIONARY_SIZE = 1024;
+
+    /** Rows after which a column with mostly distinct values is text-encoded. */
+    static final int DICTIONARY_PROBE_ROWS = 64;
+
+    private Column[] columns = new Column[0];
+    private int[] rowWidths = new int[64];
+    private int size;
+    private int width;
+
+    private char[] text = new char[4096];
+    private int textLength;
+    private final boolean readOnly;
+
+    /**
+     * Creates an empty batch.
+     */
+    public StatementBatch() {
+        this(false);
+    }
+
+    private StatementBatch(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Drains a cursor into a new batch. The cursor is not closed — the caller owns it.
+     *
+     * @param rows cursor over parsed rows
+     * @return a batch holding every row, in order
+     * @throws IOException if the cursor cannot be read
+     */
+    public static StatementBatch read(RowCursor rows) throws IOException {
+        StatementBatch batch = new StatementBatch();
+        String[] row;
+        while ((row = rows.nextRow()) != null) {
+            batch.add(row);
+        }
+        return batch;
+    }
+
+    /**
+     * Appends a row. The array is not retained.
+     *
+     * @param row parsed field values ({@code null} elements allowed)
+     * @throws IllegalStateException if this batch is a {@link #select(int[], int)} view
+     */
+    public void add(String[] row) {
+        if (readOnly) {
+            throw new IllegalStateException("Batch is read-only");
+        }
+        if (row.length > columns.length) {
+            widen(row.length);
+        }
+        if (size == rowWidths.length) {
+            rowWidths = Arrays.copyOf(rowWidths, size * 2);
+        }
+        rowWidths[size] = row.length;
+        width = Math.max(width, row.length);
+
+        for (int c = 0; c < columns.length; c++) {
+            columns[c].append(this, size, (c < row.length) ? row[c] : null);
+        }
+        size++;
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the widest row's field count.
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Returns a field value, or {@code null} if it was {@code null} or beyond the
+     * row's width.
+     *
+     * @param row    zero-based row index
+     * @param column zero-based field index
+     */
+    public String get(int row, int column) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        if (column >= rowWidths[row]) {
+            return null;
+        }
+        return columns[column].get(this, row);
+    }
+
+    /**
+     * Materialises one row as a new array of its original width.
+     *
+     * @param row zero-based row index
+     */
+    public String[] row(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        String[] values = new String[rowWidths[row]];
+        for (int c = 0; c < values.length; c++) {
+            values[c] = columns[c].get(this, row);
+        }
+        return values;
+    }
+
+    /**
+     * Returns a cursor that materialises the rows in order.
+     */
+    public RowCursor cursor() {
+        return new RowCursor() {
+            private int next;
+
+            @Override
+            public String[] nextRow() {
+                return (next < size) ? row(next++) : null;
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    /**
+     * Returns a read-only batch of the given rows, in the given order. Dictionaries
+     * and the text buffer are shared; only the per-row codes and offsets are copied.
+     *
+     * @param rows  row indices to keep
+     * @param count number of leading entries of {@code rows} to use
+     * @return the selected rows
+     */
+    public StatementBatch select(int[] rows, int count) {
+        StatementBatch view = new StatementBatch(true);
+        view.columns = new Column[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            view.columns[c] = columns[c].select(rows, count);
+        }
+        view.rowWidths = new int[Math.max(count, 1)];
+        for (int i = 0; i < count; i++) {
+            view.rowWidths[i] = rowWidths[rows[i]];
+            view.width = Math.max(view.width, view.rowWidths[i]);
+        }
+        view.size = count;
+        view.text = text;
+        return view;
+    }
+
+    /**
+     * Returns {@code true} if the column is dictionary-encoded.
+     */
+    boolean isDictionaryEncoded(int column) {
+        return columns[column].codes != null;
+    }
+
+    private void widen(int newWidth) {
+        int old = columns.length;
+        columns = Arrays.copyOf(columns, newWidth);
+        for (int c = old; c < newWidth; c++) {
+            Column column = new Column(Math.max(rowWidths.length, 64));
+            for (int r = 0; r < size; r++) {
+                column.append(this, r, null);
+            }
+            columns[c] = column;
+        }
+    }
+
+    /**
+     * Copies {@code value} into the shared text buffer and returns its offset.
+     */
+    private int appendText(String value) {
+        int len = value.length();
+        if (textLength + len > text.length) {
+            text = Arrays.copyOf(text, Math.max(textLength + len, text.length * 2));
+        }
+        value.getChars(0, len, text, textLength);
+        int start = textLength;
+        textLength += len;
+        return start;
+    }
+
+    /**
+     * One column in dictionary or text encoding. Code / start {@code -1} is {@code null}.
+     */
+    private static final class Column {
+
+        int[] codes;
+        String[] dictionary;
+        int dictionarySize;
+        Map<String, Integer> lookup;
+
+        int[] starts;
+        int[] lengths;
+
+        Column(int capacity) {
+            codes = new int[capacity];
+            dictionary = new String[16];
+            lookup = new HashMap<>();
+        }
+
+        private Column() {
+        }
+
+        void append(StatementBatch batch, int row, String value) {
+            if (codes != null) {
+                if (row == codes.length) {
+                    codes = Arrays.copyOf(codes, row * 2);
+                }
+                codes[row] = encode(value);
+                if (dictionarySize > MAX_DICTIONARY_SIZE
+                        || (row + 1 == DICTIONARY_PROBE_ROWS && dictionarySize * 2 > DICTIONARY_PROBE_ROWS)) {
+                    toText(batch, row + 1);
+                }
+                return;
+            }
+            if (row == starts.length) {
+                starts = Arrays.copyOf(starts, row * 2);
+                lengths = Arrays.copyOf(lengths, row * 2);
+            }
+            if (value == null) {
+                starts[row] = -1;
+                lengths[row] = 0;
+            } else {
+                starts[row] = batch.appendText(value);
+                lengths[row] = value.length();
+            }
+        }
+
+        String get(StatementBatch batch, int row) {
+            if (codes != null) {
+                int code = codes[row];
+                return (code < 0) ? null : dictionary[code];
+            }
+            int start = starts[row];
+            return (start < 0) ? null : new String(batch.text, start, lengths[row]);
+        }
+
+        Column select(int[] rows, int count) {
+            Column view = new Column();
+            if (codes != null) {
+                view.codes = new int[count];
+                for (int i = 0; i < count; i++) {
+                    view.codes[i] = codes[rows[i]];
+                }
+                view.dictionary = dictionary;
+                view.dictionarySize = dictionarySize;
+            } else {
+                view.starts = new int[count];
+                view.lengths = new int[count];
+                for (int i = 0; i < count; i++) {
+                    view.starts[i] = starts[rows[i]];
+                    view.lengths[i] = lengths[rows[i]];
+                }
+            }
+            return view;
+        }
+
+        private int encode(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = lookup.get(value);
+            if (code != null) {
+                return code;
+            }
+            if (dictionarySize == dictionary.length) {
+                dictionary = Arrays.copyOf(dictionary, dictionarySize * 2);
+            }
+            dictionary[dictionarySize] = value;
+            lookup.put(value, dictionarySize);
+            return dictionarySize++;
+        }
+
+        /**
+         * Re-encodes the first {@code rows} rows as text and drops the dictionary.
+         */
+        private void toText(StatementBatch batch, int rows) {
+            starts = new int[codes.length];
+            lengths = new int[codes.length];
+            int[] dictionaryStarts = new int[dictionarySize];
+            for (int d = 0; d < dictionarySize; d++) {
+                dictionaryStarts[d] = batch.appendText(dictionary[d]);
+            }
+            for (int r = 0; r < rows; r++) {
+                int code = codes[r];
+                if (code < 0) {
+                    starts[r] = -1;
+                } else {
+                    starts[r] = dictionaryStarts[code];
+                    lengths[r] = dictionary[code].length();
+                }
+            }
+            codes = null;
+            dictionary = null;
+            lookup = null;
+        }
+    }
+}
@@ -5,26 +5,46 @@ import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 /**
  * Parses a CSV file using the detected format and returns all data rows.
  * <p>
- * Uses Apache Commons CSV internally. Key behaviours:
+ * Uses Apache Commons CSV or the memory-mapped {@link MappedCsvTokenizer}, as selected
+ * by {@link Format#getParseEngine()}. Key behaviours:
  * <ul>
  *   <li>Uses the format's separator character</li>
  *   <li>Skips the header row</li>
  *   <li>Handles UTF-8 BOM ({@code EF BB BF}) transparently</li>
- *   <li>For {@link Format#LHV_BANK}: strips the empty 6th field (index 6, "Tühi") from each row,
- *       so the returned arrays have 18 elements aligned with
- *       {@code MappingConfigurations.LHV_BANK_CONFIG}</li>
+ *   <li>Decodes UTF-8, Windows-1257 or ISO-8859-13 as sniffed by {@link CharsetSniffer},
+ *       unless a charset is given explicitly</li>
+ *   <li>Drops the format's ignored columns. For {@link Format#LHV_BANK}: strips the empty
+ *       6th field (index 6, "Tühi") from each row, so the returned arrays have 18 elements aligned with
+ *       {@code MappingConfigurations.LHV_BANK_CONFIG}. The drop is part of the
+ *       {@link ColumnProjection}, applied while the row is built</li>
  *   <li>Returns {@code List<String[]>} — each array is one row of raw field values</li>
  * </ul>
+ * Formats beyond the {@link Format} built-ins are parsed through the
+ * {@link FormatDefinition} overloads; the built-in overloads delegate to them.
+ * For large files, {@link #open(File, Format)} returns a {@link RowCursor} that
+ * yields the same rows one at a time without materialising the whole file.
+ * Files of at least {@link #PARALLEL_THRESHOLD_BYTES} are tokenized in parallel
+ * ({@link ParseEngine#PARALLEL}); rows still come back in file order.
  */
 public class StatementParser {
 
+    /**
+     * File size from which {@link #open(File, Format)} switches to
+     * {@link ParseEngine#PARALLEL}. Typical bank statements are far below this and
+     * parse faster on a single thread.
+     */
+    public static final long PARALLEL_THRESHOLD_BYTES = 16L * 1024 * 1024;
+
     /**
      * Parses a CSV file using the detected format and returns all data rows.
      *
@@ -34,60 +54,281 @@ public class StatementParser {
      * @throws IOException if file cannot be read
      */
     public static List<String[]> parse(File file, Format format) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (RowCursor cursor = open(file, format)) {
+            String[] row;
+            while ((row = cursor.nextRow()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Opens a streaming cursor over the data rows of a CSV file.
+     * <p>
+     * Rows are identical to those returned by {@link #parse(File, Format)}, but are
+     * read lazily from disk. The caller must close the cursor.
+     * <p>
+     * Uses {@link ParseEngine#PARALLEL} for files of at least
+     * {@link #PARALLEL_THRESHOLD_BYTES}, otherwise the format's default engine.
+     *
+     * @param file   the CSV file to parse
+     * @param format the detected CSV format
+     * @return an open cursor positioned before the first data row
+     * @throws IOException if file cannot be opened
+     */
+    public static RowCursor open(File file, Format format) throws IOException {
+        return open(file, format, ColumnProjection.all(format));
+    }
+
+    /**
+     * Opens a streaming cursor that materialises only the columns in {@code projection}.
+     * Engine selection is the same as {@link #open(File, Format)}.
+     *
+     * @param file       the CSV file to parse
+     * @param format     the detected CSV format
+     * @param projection parsed-row columns to materialise
+     * @return an open cursor positioned before the first data row
+     * @throws IOException if file cannot be opened
+     */
+    public static RowCursor open(File file, Format format, ColumnProjection projection) throws IOException {
+        return open(file, FormatRegistry.builtIn(format), projection);
+    }
+
+    /**
+     * Opens a streaming cursor for any registered format definition.
+     * Engine selection is the same as {@link #open(File, Format)}.
+     *
+     * @param file       the CSV file to parse
+     * @param format     the format definition (from a {@link FormatRegistry})
+     * @param projection parsed-row columns to materialise
+     * @return an open cursor positioned before the first data row
+     * @throws IOException if file cannot be opened
+     */
+    public static RowCursor open(File file, FormatDefinition format, ColumnProjection projection)
+            throws IOException {
+        ParseEngine engine = (file.length() >= PARALLEL_THRESHOLD_BYTES)
+                ? ParseEngine.PARALLEL
+                : format.getParseEngine();
+        return open(file, format, engine, projection);
+    }
+
+    /**
+     * Opens a streaming cursor using an explicit tokenizer engine instead of the
+     * format's default. Both engines yield identical rows.
+     *
+     * @param file   the CSV file to parse
+     * @param format the detected CSV format
+     * @param engine the tokenizer engine to use
+     * @return an open cursor positioned before the first data row
+     * @throws IOException if file cannot be opened
+     */
+    public static RowCursor open(File file, Format format, ParseEngine engine) throws IOException {
+        return open(file, format, engine, ColumnProjection.all(format));
+    }
+
+    /**
+     * Opens a streaming cursor with an explicit engine and column projection.
+     * Each raw record is turned into its parsed row in one step; columns outside the
+     * plan are never decoded.
+     *
+     * @param file       the CSV file to parse
+     * @param format     the detected CSV format
+     * @param engine     the tokenizer engine to use
+     * @param projection parsed-row columns to materialise
+     * @return an open cursor positioned before the first data row
+     * @throws IOException if file cannot be opened
+     */
+    public static RowCursor open(File file, Format format, ParseEngine engine, ColumnProjection projection)
+            throws IOException {
+        return open(file, FormatRegistry.builtIn(format), engine, projection);
+    }
+
+    /**
+     * Opens a streaming cursor for a format definition with an explicit engine and
+     * column projection.
+     *
+     * @param file       the CSV file to parse
+     * @param format     the format definition (from a {@link FormatRegistry})
+     * @param engine     the tokenizer engine to use
+     * @param projection parsed-row columns to materialise
+     * @return an open cursor positioned before the first data row
+     * @throws IOException if file cannot be opened
+     */
+    public static RowCursor open(File file, FormatDefinition format, ParseEngine engine,
+                                 ColumnProjection projection) throws IOException {
+        return open(file, format, engine, projection, null);
+    }
+
+    /**
+     * Opens a streaming cursor with an explicit engine, column projection and charset.
+     * A known charset (e.g. recorded on an earlier import) skips sniffing.
+     *
+     * @param file       the CSV file to parse
+     * @param format     the format definition (from a {@link FormatRegistry})
+     * @param engine     the tokenizer engine to use
+     * @param projection parsed-row columns to materialise
+     * @param charset    the file's charset, or {@code null} to sniff it
+     * @return an open cursor positioned before the first data row
+     * @throws IOException if file cannot be opened
+     */
+    public static RowCursor open(File file, FormatDefinition format, ParseEngine engine,
+                                 ColumnProjection projection, Charset charset) throws IOException {
+        boolean mappable = file.length() <= Integer.MAX_VALUE;
+        if ((engine == ParseEngine.PARALLEL || engine == ParseEngine.MAPPED) && mappable) {
+            ByteBuffer buf = MappedCsvTokenizer.map(file);
+            SingleByteDecoder decoder = SingleByteDecoder.forCharset(
+                    (charset != null) ? charset : CharsetSniffer.sniff(buf));
+            if (engine == ParseEngine.PARALLEL) {
+                return ParallelCsvCursor.open(buf, format.getSeparator(), projection,
+                        ParallelCsvCursor.DEFAULT_CHUNK_BYTES, ForkJoinPool.commonPool(), decoder);
+            }
+            return openMapped(buf, format, projection, decoder);
+        }
+        if (charset == null) {
+            charset = CharsetSniffer.sniff(file);
+        }
+        return openCommonsCsv(newReader(new FileInputStream(file), charset), format, projection);
+    }
+
+    /**
+     * Returns a buffered reader decoding {@code in} in {@code charset}, through the
+     * lookup table for single-byte charsets.
+     */
+    static BufferedReader newReader(InputStream in, Charset charset) {
+        SingleByteDecoder decoder = SingleByteDecoder.forCharset(charset);
+        Reader reader = (decoder != null) ? decoder.newReader(in) : new InputStreamReader(in, charset);
+        return new BufferedReader(reader);
+    }
+
+    /**
+     * Opens a Commons CSV backed cursor over the data records (header skipped), with
+     * the quote-free fast path of {@link FastPathCsvCursor}.
+     * Takes ownership of {@code reader}, which must support {@code mark}.
+     */
+    static RowCursor openCommonsCsv(Reader reader, FormatDefinition format, ColumnProjection projection)
+            throws IOException {
+        return openCommonsCsv(reader, format, projection, true);
+    }
+
+    /**
+     * Opens a Commons CSV backed cursor over the data records (header skipped).
+     * With {@code fastPath}, lines without escaped or multi-line quoted fields are
+     * split directly and only the rest go through Commons CSV; rows are identical
+     * either way. Takes ownership of {@code reader}, which must support {@code mark}.
+     */
+    static RowCursor openCommonsCsv(Reader reader, FormatDefinition format, ColumnProjection projection,
+                                    boolean fastPath) throws IOException {
         // 1. Build CSVFormat using the 1.10.0 builder pattern
-        CSVFormat csvFormat = CSVFormat.RFC4180.builder()
-                .setDelimiter(format.getSeparator())
-                .setHeader()
-                .setSkipHeaderRecord(true)
+        CSVFormat recordFormat = recordFormat(format.getSeparator());
+        CSVFormat csvFormat = headerFormat(format.getSeparator());
+
+        // 2. Skip a UTF-8 BOM on the reader
+        try {
+            reader.mark(1);
+            int firstChar = reader.read();
+            if (firstChar != '\uFEFF' && firstChar != -1) {
+                reader.reset(); // not a BOM — put the character back
+            }
+            if (fastPath) {
+                return new FastPathCsvCursor(reader, format.getSeparator(), projection, csvFormat, recordFormat);
+            }
+            return new CsvRowCursor(new CSVParser(reader, csvFormat), projection);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the Commons CSV format of single data records (no header).
+     */
+    static CSVFormat recordFormat(char separator) {
+        return CSVFormat.RFC4180.builder()
+                .setDelimiter(separator)
                 .setIgnoreEmptyLines(true)
                 .setTrim(true)
                 .setQuote('"')
                 .build();
+    }
+
+    /**
+     * Returns the Commons CSV format that reads and validates the header record,
+     * then skips it.
+     */
+    static CSVFormat headerFormat(char separator) {
+        return recordFormat(separator).builder()
+                .setHeader()
+                .setSkipHeaderRecord(true)
+                .build();
+    }
 
-        // 2. Open reader with UTF-8 encoding and BOM handling
-        Reader reader = new BufferedReader(
-                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
-        reader.mark(1);
-        int firstChar = reader.read();
-        if (firstChar != '\uFEFF' && firstChar != -1) {
-            reader.reset(); // not a BOM — put the character back
+    /**
+     * Opens a byte tokenizer over a mapped file's data records (header validated
+     * and skipped), decoding through {@code decoder} ({@code null} for UTF-8).
+     */
+    static RowCursor openMapped(ByteBuffer buf, FormatDefinition format, ColumnProjection projection,
+                                SingleByteDecoder decoder) throws IOException {
+        MappedCsvTokenizer tokenizer = new MappedCsvTokenizer(buf, format.getSeparator());
+        tokenizer.setDecoder(decoder);
+        tokenizer.skipHeader();
+        tokenizer.setProjection(projection);
+        return tokenizer;
+    }
+
+    /**
+     * {@link RowCursor} over a Commons CSV parser. Reads the needed values of each
+     * record into a reused buffer, replacing {@code null} with "", and projects it
+     * into the returned row.
+     */
+    private static class CsvRowCursor implements RowCursor {
+
+        private final CSVParser csvParser;
+        private final Iterator<CSVRecord> records;
+        private final ColumnProjection projection;
+        private String[] fields = new String[32];
+
+        CsvRowCursor(CSVParser csvParser, ColumnProjection projection) {
+            this.csvParser = csvParser;
+            this.records = csvParser.iterator();
+            this.projection = projection;
         }
 
-        // 3. Parse all rows
-        List<String[]> rows = new ArrayList<>();
-        try (CSVParser csvParser = new CSVParser(reader, csvFormat)) {
-            for (CSVRecord record : csvParser) {
-                String[] fields = new String[record.size()];
-                for (int i = 0; i < record.size(); i++) {
+        @Override
+        public String[] nextRow() throws IOException {
+            CSVRecord record;
+            try {
+                if (!records.hasNext()) {
+                    return null;
+                }
+                record = records.next();
+            } catch (UncheckedIOException e) {
+                // Commons CSV wraps read errors raised during iteration
+                throw e.getCause();
+            }
+
+            // 3. Copy needed field values
+            int size = record.size();
+            if (fields.length < size) {
+                fields = new String[size];
+            }
+            for (int i = 0; i < size; i++) {
+                if (projection.isNeeded(i)) {
                     String value = record.get(i);
                     fields[i] = (value != null) ? value : "";
+                } else {
+                    fields[i] = null;
                 }
-                rows.add(fields);
             }
-        }
 
-        // 4. Strip the empty field at index 6 for LHV Bank
-        if (format == Format.LHV_BANK) {
-            for (int i = 0; i < rows.size(); i++) {
-                rows.set(i, removeElement(rows.get(i), 6));
-            }
+            // 4. Place them at their parsed positions (drops LHV field 6)
+            return projection.project(fields, size);
         }
 
-        // 5. Return parsed rows
-        return rows;
-    }
-
-    /**
-     * Removes the element at the given index from a String array,
-     * returning a new array with length {@code array.length - 1}.
-     */
-    private static String[] removeElement(String[] array, int indexToRemove) {
-        String[] result = new String[array.length - 1];
-        for (int i = 0, j = 0; i < array.length; i++) {
-            if (i != indexToRemove) {
-                result[j++] = array[i];
-            }
+        @Override
+        public void close() throws IOException {
+            csvParser.close();
         }
-        return result;
     }
 }
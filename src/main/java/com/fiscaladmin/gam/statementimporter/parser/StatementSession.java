@@ -0,0 +1,297 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Detects the format of a statement file and parses its rows from a single open.
+ * <p>
+ * {@link CsvFormatDetector#detect(File)} followed by {@link StatementParser#open(File, Format)}
+ * opens and cold-reads the file twice, which is noticeable on network-mounted file
+ * storage. A session opens the file once:
+ * <ul>
+ *   <li>Files up to 2 GB are memory-mapped; the header is sniffed from the mapping
+ *       and every {@link ParseEngine} tokenizes the same buffer</li>
+ *   <li>Larger files, and streams such as decompressed archive entries
+ *       ({@link #open(InputStream, FormatRegistry, Charset)}), are read through one
+ *       buffered {@code Reader}; the header line is read under a mark and the reader
+ *       is reset before Commons CSV takes over</li>
+ * </ul>
+ * The charset is sniffed from the first block by {@link CharsetSniffer} unless given
+ * (e.g. recorded on an earlier import of the same file), and both the header and the
+ * rows are decoded in it.
+ * <p>
+ * Detection uses a {@link FormatRegistry} (the default one unless given), and rows are
+ * exactly those of {@link StatementParser}, including {@link UnrecognisedFormatException}
+ * for an unknown header.
+ * <p>
+ * Rows can be opened once per session. The returned cursor owns the file resources;
+ * closing the session only releases them if rows were never opened.
+ */
+public final class StatementSession implements Closeable {
+
+    /** Longest header line the stream path can read and still reset. */
+    private static final int HEADER_MARK_LIMIT = 1024 * 1024;
+
+    private final FormatDefinition format;
+    private final Charset charset;
+    /** File size for engine selection, or -1 for a stream. */
+    private final long size;
+    private ByteBuffer mapped;
+    private BufferedReader reader;
+    private boolean rowsOpened;
+
+    private StatementSession(FormatDefinition format, Charset charset, long size, ByteBuffer mapped,
+                             BufferedReader reader) {
+        this.format = format;
+        this.charset = charset;
+        this.size = size;
+        this.mapped = mapped;
+        this.reader = reader;
+    }
+
+    /**
+     * Opens the file and detects its format from the header against
+     * {@link FormatRegistry#getDefault()}.
+     *
+     * @param file the CSV file
+     * @return an open session
+     * @throws UnrecognisedFormatException if the header does not match a known format
+     * @throws IOException                 if the file cannot be read
+     */
+    public static StatementSession open(File file) throws IOException, UnrecognisedFormatException {
+        return open(file, FormatRegistry.getDefault());
+    }
+
+    /**
+     * Opens the file and detects its format from the header against {@code registry}.
+     *
+     * @param file     the CSV file
+     * @param registry the formats to match against
+     * @return an open session
+     * @throws UnrecognisedFormatException if the header does not match a registered format
+     * @throws IOException                 if the file cannot be read
+     */
+    public static StatementSession open(File file, FormatRegistry registry)
+            throws IOException, UnrecognisedFormatException {
+        return open(file, registry, null);
+    }
+
+    /**
+     * Opens the file in a known charset, skipping charset sniffing, and detects its
+     * format from the header against {@code registry}.
+     *
+     * @param file     the CSV file
+     * @param registry the formats to match against
+     * @param charset  the file's charset, or {@code null} to sniff it
+     * @return an open session
+     * @throws UnrecognisedFormatException if the header does not match a registered format
+     * @throws IOException                 if the file cannot be read
+     */
+    public static StatementSession open(File file, FormatRegistry registry, Charset charset)
+            throws IOException, UnrecognisedFormatException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+
+            if (size <= Integer.MAX_VALUE) {
+                ByteBuffer buf = MappedCsvTokenizer.map(channel);
+                in.close(); // the mapping outlives the channel
+                if (charset == null) {
+                    charset = CharsetSniffer.sniff(buf);
+                }
+                FormatDefinition format = registry.detect(readFirstLine(buf, charset));
+                return new StatementSession(format, charset, size, buf, null);
+            }
+
+            return openStream(in, registry, charset);
+        } catch (IOException | UnrecognisedFormatException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a session over a stream that cannot be mapped, such as a decompressed
+     * gzip or zip entry. The charset and header are read under marks, so the
+     * stream is read exactly once; rows are parsed with {@link ParseEngine#COMMONS_CSV}.
+     * <p>
+     * The session takes ownership of {@code in}: it is closed with the row cursor,
+     * or by {@link #close()} if rows are never opened.
+     *
+     * @param in       the statement bytes
+     * @param registry the formats to match against
+     * @param charset  the stream's charset, or {@code null} to sniff it
+     * @return an open session
+     * @throws UnrecognisedFormatException if the header does not match a registered format
+     * @throws IOException                 if the stream cannot be read
+     */
+    public static StatementSession open(InputStream in, FormatRegistry registry, Charset charset)
+            throws IOException, UnrecognisedFormatException {
+        try {
+            return openStream(in, registry, charset);
+        } catch (IOException | UnrecognisedFormatException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static StatementSession openStream(InputStream in, FormatRegistry registry, Charset charset)
+            throws IOException, UnrecognisedFormatException {
+        if (charset == null) {
+            BufferedInputStream buffered = new BufferedInputStream(in, CharsetSniffer.SNIFF_BYTES);
+            charset = CharsetSniffer.sniff(buffered);
+            in = buffered;
+        }
+        BufferedReader reader = StatementParser.newReader(in, charset);
+        reader.mark(HEADER_MARK_LIMIT);
+        String headerLine = reader.readLine();
+        reader.reset();
+        FormatDefinition format = registry.detect(headerLine);
+        return new StatementSession(format, charset, -1, null, reader);
+    }
+
+    /**
+     * Returns the detected format.
+     */
+    public FormatDefinition getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns the charset the file is decoded in (sniffed or given).
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Opens a cursor over all data rows, as {@link StatementParser#open(File, Format)}.
+     *
+     * @return an open cursor positioned before the first data row
+     * @throws IOException if the rows cannot be read
+     */
+    public RowCursor rows() throws IOException {
+        return rows(ColumnProjection.all(format));
+    }
+
+    /**
+     * Opens a cursor over the projected data rows, as
+     * {@link StatementParser#open(File, Format, ColumnProjection)}.
+     *
+     * @param projection parsed-row columns to materialise
+     * @return an open cursor positioned before the first data row
+     * @throws IOException if the rows cannot be read
+     */
+    public RowCursor rows(ColumnProjection projection) throws IOException {
+        if (rowsOpened) {
+            throw new IllegalStateException("Rows already opened for this session");
+        }
+        rowsOpened = true;
+
+        if (mapped == null) {
+            return StatementParser.openCommonsCsv(reader, format, projection);
+        }
+
+        ParseEngine engine = (size >= StatementParser.PARALLEL_THRESHOLD_BYTES)
+                ? ParseEngine.PARALLEL
+                : format.getParseEngine();
+        SingleByteDecoder decoder = SingleByteDecoder.forCharset(charset);
+        switch (engine) {
+            case PARALLEL:
+                return ParallelCsvCursor.open(mapped, format.getSeparator(), projection,
+                        ParallelCsvCursor.DEFAULT_CHUNK_BYTES, ForkJoinPool.commonPool(), decoder);
+            case MAPPED:
+                return StatementParser.openMapped(mapped.duplicate(), format, projection, decoder);
+            default:
+                return StatementParser.openCommonsCsv(
+                        StatementParser.newReader(new ByteBufferInputStream(mapped.duplicate()), charset),
+                        format, projection);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        if (reader != null && !rowsOpened) {
+            reader.close();
+        }
+        reader = null;
+    }
+
+    /**
+     * Decodes the bytes before the first CR or LF as UTF-8, mirroring
+     * {@code BufferedReader.readLine()}.
+     *
+     * @return the first line, or {@code null} for an empty file
+     */
+    static String readFirstLine(ByteBuffer buf) {
+        return readFirstLine(buf, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes the bytes before the first CR or LF in {@code charset}.
+     *
+     * @return the first line, or {@code null} for an empty file
+     */
+    static String readFirstLine(ByteBuffer buf, Charset charset) {
+        int limit = buf.limit();
+        if (limit == 0) {
+            return null;
+        }
+        int end = 0;
+        while (end < limit) {
+            byte b = buf.get(end);
+            if (b == '\r' || b == '\n') {
+                break;
+            }
+            end++;
+        }
+        byte[] bytes = new byte[end];
+        ByteBuffer view = buf.duplicate();
+        view.position(0);
+        view.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    /**
+     * {@code InputStream} over a mapped buffer, so Commons CSV can read the mapping
+     * instead of reopening the file.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? (buf.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import com.fiscaladmin.gam.statementimporter.mapping.FieldMapping;
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Optional decode stage that adds typed amounts and dates to a {@link RowCursor}.
+ * <p>
+ * Rows pass through unchanged — the same {@code String[]} the source returned — so
+ * the persister still stores the original text. For each row the configured amount
+ * columns are decoded with {@link TypedValues#parseMinorUnits(CharSequence, int)}
+ * and the date columns with {@link TypedValues#parseEpochDay(CharSequence)}, into
+ * primitive slots read back with {@link #getAmount(int)} and {@link #getEpochDay(int)}.
+ * Nothing is allocated per row.
+ * <p>
+ * {@link #forFormat(RowCursor, FormatDefinition)} picks the columns from the format's
+ * mapping by target column name: {@code c_payment_amount}, {@code c_transaction_fee}
+ * for bank formats and {@code c_amount}, {@code c_fee}, {@code c_total_amount} for
+ * securities (all at scale 2, matching the {@code DECIMAL(15,2)} casts in the
+ * consolidation queries), and {@code c_payment_date}, {@code c_value_date},
+ * {@code c_transaction_date} as dates.
+ */
+public final class TypedRowCursor implements RowCursor {
+
+    /** Target columns decoded as amounts at {@link #AMOUNT_SCALE}. */
+    static final List<String> AMOUNT_COLUMNS = Arrays.asList(
+            "c_payment_amount", "c_transaction_fee", "c_amount", "c_fee", "c_total_amount");
+
+    /** Target columns decoded as dates. */
+    static final List<String> DATE_COLUMNS = Arrays.asList(
+            "c_payment_date", "c_value_date", "c_transaction_date");
+
+    /** Fraction digits of amount minor units. */
+    public static final int AMOUNT_SCALE = 2;
+
+    private final RowCursor source;
+    private final int[] amountColumns;
+    private final int[] dateColumns;
+    private final int scale;
+
+    /** Parsed-row index → slot in {@link #amounts} / {@link #dates}, or -1. */
+    private final int[] amountSlot;
+    private final int[] dateSlot;
+    private final long[] amounts;
+    private final int[] dates;
+
+    private String[] current;
+    private long invalidAmounts;
+    private long invalidDates;
+
+    /**
+     * Wraps a cursor with explicit typed columns.
+     *
+     * @param source        the row cursor to decode; closed with this cursor
+     * @param amountColumns parsed-row indices decoded as amounts
+     * @param scale         fraction digits of an amount minor unit
+     * @param dateColumns   parsed-row indices decoded as dates
+     */
+    public TypedRowCursor(RowCursor source, int[] amountColumns, int scale, int[] dateColumns) {
+        this.source = source;
+        this.amountColumns = amountColumns.clone();
+        this.dateColumns = dateColumns.clone();
+        this.scale = scale;
+        this.amountSlot = slots(this.amountColumns);
+        this.dateSlot = slots(this.dateColumns);
+        this.amounts = new long[amountColumns.length];
+        this.dates = new int[dateColumns.length];
+    }
+
+    /**
+     * Wraps a cursor with the amount and date columns of a format's mapping.
+     *
+     * @param source the row cursor to decode; closed with this cursor
+     * @param format the format whose mapping names the typed columns
+     * @return the typed cursor
+     */
+    public static TypedRowCursor forFormat(RowCursor source, FormatDefinition format) {
+        MappingConfig config = format.getMappingConfig();
+        return new TypedRowCursor(source, columnsNamed(config, AMOUNT_COLUMNS), AMOUNT_SCALE,
+                columnsNamed(config, DATE_COLUMNS));
+    }
+
+    @Override
+    public String[] nextRow() throws IOException {
+        String[] row = source.nextRow();
+        current = row;
+        if (row == null) {
+            return null;
+        }
+        for (int i = 0; i < amountColumns.length; i++) {
+            String value = field(row, amountColumns[i]);
+            long amount = TypedValues.parseMinorUnits(value, scale);
+            if (amount == TypedValues.NO_AMOUNT && value != null && !value.trim().isEmpty()) {
+                invalidAmounts++;
+            }
+            amounts[i] = amount;
+        }
+        for (int i = 0; i < dateColumns.length; i++) {
+            String value = field(row, dateColumns[i]);
+            int day = TypedValues.parseEpochDay(value);
+            if (day == TypedValues.NO_DATE && value != null && !value.trim().isEmpty()) {
+                invalidDates++;
+            }
+            dates[i] = day;
+        }
+        return row;
+    }
+
+    /**
+     * Returns the current row's amount in minor units, or {@link TypedValues#NO_AMOUNT}
+     * if it is empty or not a valid amount.
+     *
+     * @param column parsed-row index of a configured amount column
+     * @throws IllegalArgumentException if the column is not an amount column
+     * @throws IllegalStateException    if there is no current row
+     */
+    public long getAmount(int column) {
+        return amounts[slot(amountSlot, column, "amount")];
+    }
+
+    /**
+     * Returns the current row's date as days since 1970-01-01, or
+     * {@link TypedValues#NO_DATE} if it is empty or not a valid date.
+     *
+     * @param column parsed-row index of a configured date column
+     * @throws IllegalArgumentException if the column is not a date column
+     * @throws IllegalStateException    if there is no current row
+     */
+    public int getEpochDay(int column) {
+        return dates[slot(dateSlot, column, "date")];
+    }
+
+    /**
+     * Returns the parsed-row indices decoded as amounts.
+     */
+    public int[] getAmountColumns() {
+        return amountColumns.clone();
+    }
+
+    /**
+     * Returns the parsed-row indices decoded as dates.
+     */
+    public int[] getDateColumns() {
+        return dateColumns.clone();
+    }
+
+    /**
+     * Returns the number of non-empty amount values that could not be decoded so far.
+     */
+    public long getInvalidAmountCount() {
+        return invalidAmounts;
+    }
+
+    /**
+     * Returns the number of non-empty date values that could not be decoded so far.
+     */
+    public long getInvalidDateCount() {
+        return invalidDates;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private int slot(int[] slots, int column, String kind) {
+        if (current == null) {
+            throw new IllegalStateException("No current row");
+        }
+        int slot = (column >= 0 && column < slots.length) ? slots[column] : -1;
+        if (slot < 0) {
+            throw new IllegalArgumentException("Column " + column + " is not a typed " + kind + " column");
+        }
+        return slot;
+    }
+
+    private static String field(String[] row, int column) {
+        return (column < row.length) ? row[column] : null;
+    }
+
+    private static int[] slots(int[] columns) {
+        int max = -1;
+        for (int column : columns) {
+            if (column < 0) {
+                throw new IllegalArgumentException("Negative column index: " + column);
+            }
+            max = Math.max(max, column);
+        }
+        int[] slots = new int[max + 1];
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < columns.length; i++) {
+            slots[columns[i]] = i;
+        }
+        return slots;
+    }
+
+    private static int[] columnsNamed(MappingConfig config, List<String> names) {
+        List<Integer> indices = new ArrayList<>();
+        for (FieldMapping mapping : config.getFieldMappings()) {
+            if (names.contains(mapping.getDbColumnName())) {
+                indices.add(mapping.getCsvIndex());
+            }
+        }
+        int[] result = new int[indices.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = indices.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,312 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+/**
+ * Allocation-free decoding of statement amounts and dates.
+ * <p>
+ * Amounts are decoded to {@code long} minor units at a fixed scale (cents for
+ * scale 2) and dates to epoch days, as {@code LocalDate.toEpochDay()} would return.
+ * Both are single character scans — no regex, {@code BigDecimal} or formatter —
+ * so they can run on every row of a large import. Values that cannot be decoded
+ * exactly return {@link #NO_AMOUNT} / {@link #NO_DATE} instead of throwing; the
+ * original string is the source of truth and is always persisted unchanged.
+ */
+public final class TypedValues {
+
+    /** Returned by {@link #parseMinorUnits(CharSequence, int)} for a missing or malformed amount. */
+    public static final long NO_AMOUNT = Long.MIN_VALUE;
+
+    /** Returned by {@link #parseEpochDay(CharSequence)} for a missing or malformed date. */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
+    /** Digits that always fit in a {@code long}. */
+    private static final int MAX_DIGITS = 18;
+
+    /** Days from 0000-03-01 based reckoning to 1970-01-01, as in {@code java.time.LocalDate}. */
+    private static final int DAYS_0000_TO_1970 = 719528;
+
+    private TypedValues() {
+        // utility class
+    }
+
+    /**
+     * Decodes an amount into minor units.
+     * <p>
+     * Accepted forms: optional sign ({@code -}, {@code +} or U+2212), digits with
+     * optional grouping and one decimal separator, surrounded by optional whitespace.
+     * <ul>
+     *   <li>Spaces, no-break spaces (U+00A0, U+202F) and apostrophes group digits:
+     *       {@code "1 234,56"}</li>
+     *   <li>If both {@code .} and {@code ,} occur, the last one is the decimal
+     *       separator and the other groups digits: {@code "1.234,56"}, {@code "1,234.56"}</li>
+     *   <li>A single {@code .} or {@code ,} is the decimal separator: {@code "-12.50"},
+     *       {@code "12,5"}; a repeated one groups digits: {@code "1.234.567"}</li>
+     *   <li>A single {@code .} or {@code ,} with one to three digits before it (other
+     *       than a lone {@code 0}) and exactly three after it is ambiguous, and rejected:
+     *       {@code "1,000"} may be a thousand or one, {@code "1.234"} either 1234 or 1.234</li>
+     * </ul>
+     * Fraction digits beyond {@code scale} are accepted only if they are zeros, so the
+     * result is always exact.
+     *
+     * @param text  the amount text, e.g. {@code "1 234,56"}
+     * @param scale number of fraction digits in a minor unit (2 for cents)
+     * @return the amount times 10<sup>scale</sup>, or {@link #NO_AMOUNT}
+     */
+    public static long parseMinorUnits(CharSequence text, int scale) {
+        if (text == null) {
+            return NO_AMOUNT;
+        }
+        int start = 0;
+        int end = text.length();
+        while (start < end && isSpace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && isSpace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return NO_AMOUNT;
+        }
+
+        boolean negative = false;
+        char first = text.charAt(start);
+        if (first == '-' || first == '\u2212') {
+            negative = true;
+            start++;
+        } else if (first == '+') {
+            start++;
+        }
+
+        // The decimal separator is the last '.' or ','; it is grouping if it repeats
+        int lastDot = -1;
+        int lastComma = -1;
+        int dots = 0;
+        int commas = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                lastDot = i;
+                dots++;
+            } else if (c == ',') {
+                lastComma = i;
+                commas++;
+            }
+        }
+        int decimalAt = Math.max(lastDot, lastComma);
+        if (decimalAt >= 0 && (decimalAt == lastDot ? dots : commas) > 1) {
+            if (dots > 0 && commas > 0) {
+                return NO_AMOUNT; // "1,2.3.4" — no single decimal separator
+            }
+            decimalAt = -1; // "1.234.567" — every separator groups
+        } else if (dots + commas == 1 && isAmbiguousSeparator(text, start, decimalAt, end)) {
+            return NO_AMOUNT; // "1,000" — a thousand, or one
+        }
+
+        long value = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean lastWasDigit = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int d = c - '0';
+                if (i > decimalAt && decimalAt >= 0) {
+                    if (fractionDigits == scale) {
+                        if (d != 0) {
+                            return NO_AMOUNT; // not exact at this scale
+                        }
+                        continue;
+                    }
+                    fractionDigits++;
+                }
+                if (digits == 0 && d == 0 && (decimalAt < 0 || i < decimalAt)) {
+                    lastWasDigit = true;
+                    continue; // leading zero
+                }
+                if (++digits > MAX_DIGITS) {
+                    return NO_AMOUNT;
+                }
+                value = value * 10 + d;
+                lastWasDigit = true;
+            } else if (i == decimalAt) {
+                if (!lastWasDigit && i > start) {
+                    return NO_AMOUNT; // "12 ,50"
+                }
+                lastWasDigit = false;
+            } else if ((c == '.' || c == ',' || isGrouping(c)) && lastWasDigit
+                    && (decimalAt < 0 || i < decimalAt)) {
+                lastWasDigit = false; // grouping only between integer digits
+            } else {
+                return NO_AMOUNT;
+            }
+        }
+        if (!lastWasDigit && (decimalAt < 0 || decimalAt != end - 1)) {
+            return NO_AMOUNT; // trailing grouping character
+        }
+        if (digits == 0 && !hasDigit(text, start, end)) {
+            return NO_AMOUNT;
+        }
+
+        for (int f = fractionDigits; f < scale; f++) {
+            if (++digits > MAX_DIGITS) {
+                return NO_AMOUNT;
+            }
+            value *= 10;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decodes a date in {@code yyyy-MM-dd} or {@code dd.MM.yyyy} form (day and month
+     * may have one digit in the dotted form) into days since 1970-01-01.
+     *
+     * @param text the date text, e.g. {@code "01.06.2024"}
+     * @return the epoch day, or {@link #NO_DATE} for a missing, malformed or
+     *         non-existent date
+     */
+    public static int parseEpochDay(CharSequence text) {
+        if (text == null) {
+            return NO_DATE;
+        }
+        int start = 0;
+        int end = text.length();
+        while (start < end && isSpace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && isSpace(text.charAt(end - 1))) {
+            end--;
+        }
+
+        int year;
+        int month;
+        int day;
+        if (end - start == 10 && text.charAt(start + 4) == '-' && text.charAt(start + 7) == '-') {
+            year = digits(text, start, start + 4);
+            month = digits(text, start + 5, start + 7);
+            day = digits(text, start + 8, start + 10);
+        } else {
+            int firstDot = indexOf(text, '.', start, end);
+            int secondDot = (firstDot < 0) ? -1 : indexOf(text, '.', firstDot + 1, end);
+            if (secondDot < 0 || firstDot - start > 2 || secondDot - firstDot - 1 > 2 || end - secondDot - 1 != 4) {
+                return NO_DATE;
+            }
+            day = digits(text, start, firstDot);
+            month = digits(text, firstDot + 1, secondDot);
+            year = digits(text, secondDot + 1, end);
+        }
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return NO_DATE;
+        }
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * Same result as {@code LocalDate.of(year, month, day).toEpochDay()} for years 0–9999.
+     */
+    static int toEpochDay(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y + (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return (int) (total - DAYS_0000_TO_1970);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Parses {@code [from, to)} as a non-empty run of ASCII digits, or returns -1.
+     */
+    private static int digits(CharSequence text, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int indexOf(CharSequence text, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether the lone separator at {@code at} could group thousands as well
+     * as separate decimals: three digits follow it, and one to three digits that do
+     * not form a lone {@code 0} precede it.
+     */
+    private static boolean isAmbiguousSeparator(CharSequence text, int start, int at, int end) {
+        if (end - at - 1 != 3 || !isDigits(text, at + 1, end)) {
+            return false;
+        }
+        int from = at;
+        while (from > start && isDigit(text.charAt(from - 1))) {
+            from--;
+        }
+        int lead = at - from;
+        return lead >= 1 && lead <= 3 && !(lead == 1 && text.charAt(from) == '0');
+    }
+
+    private static boolean isDigits(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean hasDigit(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSpace(char c) {
+        return c <= ' ' || c == '\u00A0' || c == '\u202F';
+    }
+
+    private static boolean isGrouping(char c) {
+        return c == ' ' || c == '\u00A0' || c == '\u202F' || c == '\'';
+    }
+}
@@ -0,0 +1,41 @@
+package com.fiscaladmin.gam.statementimporter.persister;
+
+/**
+ * Tuning options of a raw row insert, set from the Statement Importer plugin
+ * properties. The defaults suit normal imports.
+ */
+public class PersistOptions {
+
+    /** Default rows per {@code executeBatch()} round trip. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int commitInterval;
+
+    /**
+     * Rows added to the JDBC batch before it is executed.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the rows per executed batch; values below 1 are taken as 1.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Rows inserted between commits, taken at the end of the batch that reaches
+     * them; 0 (default) leaves transactions to the connection (auto-commit for the
+     * Joget data source), so the insert commits as one unit or per statement.
+     */
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    public void setCommitInterval(int commitInterval) {
+        this.commitInterval = Math.max(0, commitInterval);
+    }
+}
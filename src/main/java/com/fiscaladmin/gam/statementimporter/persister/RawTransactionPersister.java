@@ -1,15 +1,21 @@
 package com.fiscaladmin.gam.statementimporter.persister;
 
+import com.fiscaladmin.gam.statementimporter.dedup.DedupKeyColumn;
+import com.fiscaladmin.gam.statementimporter.dedup.DedupKeyIndex;
 import com.fiscaladmin.gam.statementimporter.mapping.FieldMapping;
 import com.fiscaladmin.gam.statementimporter.mapping.MappingConfig;
+import com.fiscaladmin.gam.statementimporter.parser.RowCursor;
+import com.fiscaladmin.gam.statementimporter.parser.StatementBatch;
 import org.joget.apps.app.service.AppUtil;
 import org.joget.commons.util.LogUtil;
 
 import javax.sql.DataSource;
+import java.io.IOException;
 import java.sql.*;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
 
 /**
@@ -18,10 +24,15 @@ import java.util.UUID;
  * <p>
  * Design decision (from {@code preprocessing-architecture.md} §6.5):
  * Uses JDBC batch insert (not FormDataDao) for raw transaction row tables.
- * These are bulk staging operations where performance matters — 161 rows
- * in one batch for bank, 45 for securities. Raw rows are never edited
- * after creation, so the audit trail benefit of FormDataDao is less
- * important here.
+ * These are bulk staging operations where performance matters. Rows are
+ * added to one {@code PreparedStatement} and executed in chunks of
+ * {@code persistBatchSize} rows ({@link PersistOptions#getBatchSize()}), so
+ * neither the JVM nor the JDBC driver holds a whole file; with a
+ * {@code persistCommitInterval} ({@link PersistOptions#getCommitInterval()}) the
+ * chunks are also committed every that many rows, and the Bloom filter keys of
+ * the committed rows' {@link DedupKeyIndex} entries are published in the same
+ * transaction. Raw rows are never edited after creation, so the audit trail
+ * benefit of FormDataDao is less important here.
  * <p>
  * Key behaviours:
  * <ul>
@@ -31,6 +42,14 @@ import java.util.UUID;
  *   <li>Sets {@code c_transaction_id} as sequential row number (zero-padded to 3 digits)</li>
  *   <li>Sets {@code dateCreated} and {@code createdBy} for Joget audit fields</li>
  *   <li>Target table from MappingConfig (e.g., {@code app_fd_bank_account_trx})</li>
+ *   <li>Every input is executed in chunks ({@value #STREAM_BATCH_SIZE} rows by
+ *       default). The time of each chunk is logged at debug level, and a summary
+ *       at info level</li>
+ *   <li>List, columnar {@link StatementBatch} and cursor input all go through
+ *       {@link #persistStream(RowCursor, String, MappingConfig, Connection, int, PersistOptions)}</li>
+ *   <li>Rows of the bank and securities raw tables also get a {@link DedupKeyIndex}
+ *       entry, batched and flushed together with the raw rows, and their dedup key
+ *       stored in {@link DedupKeyColumn#COLUMN}</li>
  * </ul>
  */
 public class RawTransactionPersister {
@@ -38,23 +57,69 @@ public class RawTransactionPersister {
     private static final String CLASS_NAME = RawTransactionPersister.class.getName();
     private static final String CREATED_BY = "system";
 
+    /** Default rows per {@code executeBatch()} round trip. */
+    static final int STREAM_BATCH_SIZE = PersistOptions.DEFAULT_BATCH_SIZE;
+
     /**
      * Batch-inserts parsed CSV rows into the target raw transaction table.
-     * Obtains a JDBC connection from Joget's {@code setupDataSource}.
+     * Accepts any JDBC Connection (including in-memory H2 for unit tests).
      *
      * @param rows        parsed CSV rows (each row is String[] of field values)
      * @param statementId the parent statement record ID
      * @param config      the mapping configuration for the CSV format
+     * @param con         JDBC connection to use
      * @return number of rows inserted
-     * @throws RuntimeException if the batch insert fails
+     * @throws SQLException if a database error occurs
      */
-    public static int persist(List<String[]> rows, String statementId, MappingConfig config) {
+    public static int persist(List<String[]> rows, String statementId, MappingConfig config, Connection con)
+            throws SQLException {
         if (rows == null || rows.isEmpty()) {
             return 0;
         }
+        return persistInMemory(RowCursor.fromList(rows), statementId, config, con);
+    }
+
+    /**
+     * Batch-inserts the rows of a columnar {@link StatementBatch} into the target
+     * raw transaction table. Each row is materialised only while it is bound; its
+     * values are the batch's own strings. The result is identical to
+     * {@link #persist(List, String, MappingConfig, Connection)} for the same rows.
+     *
+     * @param batch       parsed CSV rows in columnar form
+     * @param statementId the parent statement record ID
+     * @param config      the mapping configuration for the CSV format
+     * @param con         JDBC connection to use
+     * @return number of rows inserted
+     * @throws SQLException if a database error occurs
+     */
+    public static int persistBatch(StatementBatch batch, String statementId, MappingConfig config, Connection con)
+            throws SQLException {
+        if (batch == null || batch.size() == 0) {
+            return 0;
+        }
+        return persistInMemory(batch.cursor(), statementId, config, con);
+    }
+
+    /**
+     * Streams rows from a cursor into the target raw transaction table.
+     * Obtains a JDBC connection from Joget's {@code setupDataSource}.
+     * <p>
+     * The cursor is drained but not closed — the caller owns it.
+     *
+     * @param rows        cursor over parsed CSV rows
+     * @param statementId the parent statement record ID
+     * @param config      the mapping configuration for the CSV format
+     * @param seqOffset   number of rows already persisted for this statement
+     * @param options     chunk size and commit interval
+     * @return number of rows inserted
+     * @throws IOException      if the cursor cannot be read
+     * @throws RuntimeException if the batch insert fails
+     */
+    public static int persistStream(RowCursor rows, String statementId, MappingConfig config, int seqOffset,
+                                    PersistOptions options) throws IOException {
         DataSource ds = (DataSource) AppUtil.getApplicationContext().getBean("setupDataSource");
         try (Connection con = ds.getConnection()) {
-            return persist(rows, statementId, config, con);
+            return persistStream(rows, statementId, config, con, seqOffset, options);
         } catch (SQLException e) {
             LogUtil.error(CLASS_NAME, e, "Batch insert failed for table: " + config.getTargetTable());
             throw new RuntimeException("Batch insert failed: " + e.getMessage(), e);
@@ -62,63 +127,48 @@ public class RawTransactionPersister {
     }
 
     /**
-     * Overload for testability and internal use — accepts any JDBC Connection
-     * (including in-memory H2 for unit tests).
+     * Streams rows from a cursor into the target raw transaction table; every
+     * other overload inserts through this one.
+     * <p>
+     * Rows are bound and added to the batch one at a time, and executed and
+     * committed in chunks as set by {@code options}. Transaction IDs are numbered
+     * after {@code seqOffset}, so several statements (archive entries) imported
+     * under one statement record do not collide, and continue across chunks.
      *
-     * @param rows        parsed CSV rows
+     * @param rows        cursor over parsed CSV rows (drained, not closed)
      * @param statementId the parent statement record ID
      * @param config      the mapping configuration
      * @param con         JDBC connection to use
+     * @param seqOffset   number of rows already persisted for this statement
+     * @param options     chunk size and commit interval
      * @return number of rows inserted
+     * @throws IOException  if the cursor cannot be read
      * @throws SQLException if a database error occurs
      */
-    public static int persist(List<String[]> rows, String statementId, MappingConfig config, Connection con)
-            throws SQLException {
-        if (rows == null || rows.isEmpty()) {
-            return 0;
-        }
-
-        LogUtil.info(CLASS_NAME, "Batch insert: " + rows.size() + " rows into " + config.getTargetTable());
-
-        String sql = buildInsertSql(config);
+    public static int persistStream(RowCursor rows, String statementId, MappingConfig config, Connection con,
+                                    int seqOffset, PersistOptions options) throws IOException, SQLException {
+        DedupKeyColumn.Extractor keyColumn = openKeyColumn(con, config);
+        String sql = buildInsertSql(config, keyColumn != null);
         String now = getCurrentTimestamp();
 
-        int seqId = 0;
-        int totalInserted = 0;
+        int seqId = seqOffset;
+        int totalInserted;
 
-        try (PreparedStatement stmt = con.prepareStatement(sql)) {
-            for (String[] row : rows) {
+        try (PreparedStatement stmt = con.prepareStatement(sql);
+             DedupKeyIndex.Writer keys = openKeyIndex(con, statementId, config);
+             ChunkWriter chunks = new ChunkWriter(con, stmt, keys, config.getTargetTable(), options)) {
+            String[] row;
+            while ((row = rows.nextRow()) != null) {
                 seqId++;
-                int paramIndex = 1;
-
-                // Set mapped field values from the parsed CSV row
-                List<FieldMapping> mappings = config.getFieldMappings();
-                for (FieldMapping mapping : mappings) {
-                    int csvIdx = mapping.getCsvIndex();
-                    String value = (csvIdx >= 0 && csvIdx < row.length) ? row[csvIdx] : null;
-                    stmt.setString(paramIndex++, value);
-                }
-
-                // System fields
-                stmt.setString(paramIndex++, UUID.randomUUID().toString());   // id
-                stmt.setString(paramIndex++, formatTransactionId(seqId));     // c_transaction_id
-                stmt.setString(paramIndex++, statementId);                    // c_statement_id
-
-                // Joget audit fields
-                stmt.setString(paramIndex++, now);          // dateCreated
-                stmt.setString(paramIndex++, CREATED_BY);   // createdBy
-
+                bindRow(stmt, row, config, seqId, statementId, now, keyColumn);
                 stmt.addBatch();
-            }
-
-            int[] results = stmt.executeBatch();
-            for (int r : results) {
-                if (r >= 0) {
-                    totalInserted += r;
-                } else if (r == Statement.SUCCESS_NO_INFO) {
-                    totalInserted++;
+                if (keys != null) {
+                    keys.add(row);
                 }
+                chunks.added();
             }
+
+            totalInserted = chunks.finish();
         }
 
         LogUtil.info(CLASS_NAME, "Batch insert completed: " + totalInserted
@@ -131,12 +181,251 @@ public class RawTransactionPersister {
     // Private helpers
     // -------------------------------------------------------------------------
 
+    /**
+     * Inserts the rows of an in-memory cursor with the default options.
+     */
+    private static int persistInMemory(RowCursor rows, String statementId, MappingConfig config, Connection con)
+            throws SQLException {
+        try {
+            return persistStream(rows, statementId, config, con, 0, new PersistOptions());
+        } catch (IOException e) {
+            // in-memory cursors are not read from a file
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Binds one parsed row plus system/audit values to the INSERT parameters.
+     */
+    private static void bindRow(PreparedStatement stmt, String[] row, MappingConfig config,
+                                int seqId, String statementId, String now,
+                                DedupKeyColumn.Extractor keyColumn) throws SQLException {
+        int paramIndex = 1;
+
+        // Set mapped field values from the parsed CSV row
+        List<FieldMapping> mappings = config.getFieldMappings();
+        for (FieldMapping mapping : mappings) {
+            int csvIdx = mapping.getCsvIndex();
+            String value = (csvIdx >= 0 && csvIdx < row.length) ? row[csvIdx] : null;
+            stmt.setString(paramIndex++, value);
+        }
+
+        paramIndex = bindSystemFields(stmt, paramIndex, seqId, statementId, now);
+        if (keyColumn != null) {
+            stmt.setString(paramIndex, keyColumn.of(row));  // c_dedup_key
+        }
+    }
+
+    /**
+     * Binds the system and audit values that follow the mapped fields.
+     *
+     * @return the next parameter index
+     */
+    private static int bindSystemFields(PreparedStatement stmt, int paramIndex,
+                                        int seqId, String statementId, String now) throws SQLException {
+        // System fields
+        stmt.setString(paramIndex++, UUID.randomUUID().toString());   // id
+        stmt.setString(paramIndex++, formatTransactionId(seqId));     // c_transaction_id
+        stmt.setString(paramIndex++, statementId);                    // c_statement_id
+
+        // Joget audit fields
+        stmt.setString(paramIndex++, now);          // dateCreated
+        stmt.setString(paramIndex++, CREATED_BY);   // createdBy
+        return paramIndex;
+    }
+
+    /**
+     * Opens the dedup key index writer for a raw transaction table, or returns
+     * {@code null} if the target table is not one or the index has not been
+     * migrated ({@code null} is allowed in try-with-resources). A statement left
+     * unindexed is back-filled by the next dedup check it overlaps.
+     */
+    private static DedupKeyIndex.Writer openKeyIndex(Connection con, String statementId, MappingConfig config) {
+        String accountType = DedupKeyIndex.accountTypeOf(config.getTargetTable());
+        if (accountType == null || !DedupKeyIndex.exists(con)) {
+            return null;
+        }
+        try {
+            return DedupKeyIndex.openWriter(con, statementId, accountType);
+        } catch (SQLException e) {
+            LogUtil.warn(CLASS_NAME, "Dedup key index unavailable, not indexing statement "
+                    + statementId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the dedup key extractor for a raw transaction table, or {@code null}
+     * if the target table is not one or has no {@link DedupKeyColumn#COLUMN} (not
+     * migrated yet); rows persisted without the key are back-filled by the migration.
+     */
+    private static DedupKeyColumn.Extractor openKeyColumn(Connection con, MappingConfig config) {
+        String accountType = DedupKeyIndex.accountTypeOf(config.getTargetTable());
+        if (accountType == null || !DedupKeyColumn.exists(con, accountType)) {
+            return null;
+        }
+        return new DedupKeyColumn.Extractor(accountType);
+    }
+
+    /**
+     * Executes the raw rows added to an insert, with their index entries, in chunks
+     * of {@link PersistOptions#getBatchSize()} rows, and commits every
+     * {@link PersistOptions#getCommitInterval()} rows, timing each chunk: filling
+     * it (binding its rows, and for a cursor reading them), executing it with its
+     * index entries, and committing.
+     * <p>
+     * With a commit interval an auto-commit connection is switched to manual commits
+     * for the insert. {@link #finish()} commits the last rows; {@link #close()}
+     * restores auto-commit, rolling back rows after the last commit if the insert
+     * did not finish. Earlier commits stand, and the importer's idempotency delete
+     * removes them on the next import of the statement.
+     * <p>
+     * The Bloom filter keys of the index entries are published just before each
+     * commit, in the committing transaction, and discarded on rollback.
+     */
+    private static final class ChunkWriter implements AutoCloseable {
+
+        private final Connection con;
+        private final PreparedStatement stmt;
+        private final DedupKeyIndex.Writer keys;
+        private final String table;
+        private final int batchSize;
+        private final int commitInterval;
+        private final boolean restoreAutoCommit;
+
+        private int pending;
+        private int uncommitted;
+        private int inserted;
+        private int chunks;
+        private boolean finished;
+        private long chunkStart;
+        private long fillNanos;
+        private long executeNanos;
+        private long maxExecuteNanos;
+        private long commitNanos;
+
+        ChunkWriter(Connection con, PreparedStatement stmt, DedupKeyIndex.Writer keys, String table,
+                    PersistOptions options) throws SQLException {
+            this.con = con;
+            this.stmt = stmt;
+            this.keys = keys;
+            this.table = table;
+            this.batchSize = options.getBatchSize();
+            this.commitInterval = options.getCommitInterval();
+            this.restoreAutoCommit = commitInterval > 0 && con.getAutoCommit();
+            if (restoreAutoCommit) {
+                con.setAutoCommit(false);
+            }
+            this.chunkStart = System.nanoTime();
+        }
+
+        /**
+         * Counts a row added to the batch, executing the chunk once it is full.
+         */
+        void added() throws SQLException {
+            if (++pending == batchSize) {
+                flush(false);
+            }
+        }
+
+        /**
+         * Executes and commits the rows still pending.
+         *
+         * @return number of raw rows inserted
+         */
+        int finish() throws SQLException {
+            if (pending > 0 || uncommitted > 0) {
+                flush(true);
+            }
+            finished = true;
+            if (chunks > 0) {
+                LogUtil.info(CLASS_NAME, String.format(Locale.ROOT, "Inserted %d rows into %s in %d chunks of up"
+                                + " to %d rows: fill %.1f ms, execute %.1f ms (max %.1f ms per chunk)%s",
+                        inserted, table, chunks, batchSize, fillNanos / 1e6, executeNanos / 1e6,
+                        maxExecuteNanos / 1e6,
+                        (commitInterval > 0) ? String.format(Locale.ROOT, ", commit %.1f ms", commitNanos / 1e6) : ""));
+            }
+            return inserted;
+        }
+
+        private void flush(boolean last) throws SQLException {
+            long start = System.nanoTime();
+            int rows = pending;
+            if (rows > 0) {
+                inserted += countInserted(stmt.executeBatch());
+                if (keys != null) {
+                    keys.flush();
+                }
+            }
+            long executed = System.nanoTime();
+            uncommitted += rows;
+            pending = 0;
+            boolean commit = commitInterval > 0 && uncommitted > 0 && (last || uncommitted >= commitInterval);
+            if (commit) {
+                if (keys != null) {
+                    keys.publish();
+                }
+                con.commit();
+                uncommitted = 0;
+            }
+            long end = System.nanoTime();
+
+            if (rows > 0) {
+                chunks++;
+                fillNanos += start - chunkStart;
+                executeNanos += executed - start;
+                maxExecuteNanos = Math.max(maxExecuteNanos, executed - start);
+            }
+            commitNanos += end - executed;
+            LogUtil.debug(CLASS_NAME, String.format(Locale.ROOT, "Chunk %d of %s: %d rows, fill %.1f ms,"
+                            + " execute %.1f ms%s", chunks, table, rows, (start - chunkStart) / 1e6,
+                    (executed - start) / 1e6, commit ? String.format(Locale.ROOT, ", commit %.1f ms",
+                            (end - executed) / 1e6) : ""));
+            chunkStart = end;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (commitInterval == 0) {
+                return;
+            }
+            try {
+                if (!finished) {
+                    con.rollback();
+                    if (keys != null) {
+                        keys.discard();
+                    }
+                }
+            } finally {
+                if (restoreAutoCommit) {
+                    con.setAutoCommit(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sums the update counts returned by {@code executeBatch()}.
+     */
+    private static int countInserted(int[] results) {
+        int inserted = 0;
+        for (int r : results) {
+            if (r >= 0) {
+                inserted += r;
+            } else if (r == Statement.SUCCESS_NO_INFO) {
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
     /**
      * Builds the INSERT SQL dynamically from MappingConfig field mappings.
      * <p>
      * Columns: [mapped CSV fields...], id, c_transaction_id, c_statement_id, dateCreated, createdBy
+     * [, c_dedup_key]
      */
-    private static String buildInsertSql(MappingConfig config) {
+    private static String buildInsertSql(MappingConfig config, boolean withDedupKey) {
         List<FieldMapping> mappings = config.getFieldMappings();
         StringBuilder sql = new StringBuilder("INSERT INTO ");
         sql.append(config.getTargetTable());
@@ -150,10 +439,13 @@ public class RawTransactionPersister {
 
         // System + audit columns (no c_ prefix on id, dateCreated, createdBy)
         sql.append("id, c_transaction_id, c_statement_id, dateCreated, createdBy");
+        if (withDedupKey) {
+            sql.append(", ").append(DedupKeyColumn.COLUMN);
+        }
         sql.append(") VALUES (");
 
-        // Placeholders: mapped fields + 5 system/audit columns
-        int totalParams = mappings.size() + 5;
+        // Placeholders: mapped fields + 5 system/audit columns (+ dedup key)
+        int totalParams = mappings.size() + (withDedupKey ? 6 : 5);
         for (int i = 0; i < totalParams; i++) {
             sql.append('?');
             if (i < totalParams - 1) {
@@ -0,0 +1,108 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link AccountLocks} (in-JVM locks).
+ */
+public class AccountLocksTest {
+
+    /** Returns an account whose lock is on a different stripe than {@code other}'s. */
+    private static String accountOnOtherStripe(String other) {
+        int stripe = AccountLocks.stripeOf(AccountLocks.lockName("bank", other));
+        for (int i = 0; ; i++) {
+            String account = "EE" + i;
+            if (AccountLocks.stripeOf(AccountLocks.lockName("bank", account)) != stripe) {
+                return account;
+            }
+        }
+    }
+
+    @Test
+    public void lockNamesFitMySqlAndIgnorePadding() {
+        String name = AccountLocks.lockName("bank", " EE382200221020145680 ");
+        assertEquals(name, AccountLocks.lockName("bank", "EE382200221020145680"));
+        assertNotEquals(name, AccountLocks.lockName("secu", "EE382200221020145680"));
+        assertTrue(name.length() <= 64);
+    }
+
+    @Test
+    public void sameAccountWaitsForTheHolder() throws Exception {
+        CountDownLatch acquired = new CountDownLatch(1);
+        AtomicBoolean holderDone = new AtomicBoolean();
+        AtomicBoolean waiterSawHolderDone = new AtomicBoolean();
+
+        try (AccountLocks.Handle held = AccountLocks.acquire("bank", "EE1")) {
+            Thread waiter = new Thread(() -> {
+                try (AccountLocks.Handle lock = AccountLocks.acquire("bank", "EE1")) {
+                    waiterSawHolderDone.set(holderDone.get());
+                    acquired.countDown();
+                }
+            });
+            waiter.start();
+            assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+            holderDone.set(true);
+        }
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertTrue(waiterSawHolderDone.get());
+    }
+
+    @Test
+    public void otherAccountsDoNotWait() throws Exception {
+        String other = accountOnOtherStripe("EE1");
+        CountDownLatch acquired = new CountDownLatch(1);
+        try (AccountLocks.Handle held = AccountLocks.acquire("bank", "EE1")) {
+            Thread parallel = new Thread(() -> {
+                try (AccountLocks.Handle lock = AccountLocks.acquire("bank", other)) {
+                    acquired.countDown();
+                }
+            });
+            parallel.start();
+            assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void closingTwiceReleasesOnce() throws Exception {
+        AccountLocks.Handle lock = AccountLocks.acquire("bank", "EE2");
+        lock.close();
+        lock.close();
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            try (AccountLocks.Handle again = AccountLocks.acquire("bank", "EE2")) {
+                acquired.countDown();
+            }
+        });
+        other.start();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void timesOutWhileAnotherThreadHoldsTheLock() throws Throwable {
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            try (AccountLocks.Handle lock = AccountLocks.acquire("bank", "EE3")) {
+                held.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        holder.start();
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+        try {
+            AccountLocks.acquire("bank", "EE3", null, 0);
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfigurations;
+import com.fiscaladmin.gam.statementimporter.persister.RawTransactionPersister;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link CandidateKeyPushdown}, on an in-memory H2 database in MySQL mode.
+ */
+public class CandidateKeyPushdownTest extends DedupTestBase {
+
+    @Before
+    public void setUp() throws Exception {
+        setUpDatabase("dedupPushdown");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tearDownDatabase();
+    }
+
+    // -------------------------------------------------------------------------
+    // Tests
+    // -------------------------------------------------------------------------
+
+    @Test
+    public void returnsOnlyCollidingBankKeys() throws SQLException {
+        String[] primary = bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", " REF001 ");
+        String[] composite = bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", "");
+        RawTransactionPersister.persist(Arrays.asList(primary, composite), "STMT-1",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        String[] fresh = bankRow("EE1234", "003", "2024-06-03", "300.00", "EUR", "REF003");
+        List<String> candidates = Arrays.asList(key(primary, "bank"), key(composite, "bank"), key(fresh, "bank"));
+
+        Set<String> found = CandidateKeyPushdown.findExisting(con, Collections.singletonList("STMT-1"),
+                "bank", candidates);
+        assertEquals(new HashSet<>(Arrays.asList("REF001", "EE1234|002|2024-06-02|200.00|EUR|")), found);
+
+        // Only the given statements are matched
+        assertTrue(CandidateKeyPushdown.findExisting(con, Collections.singletonList("STMT-2"),
+                "bank", candidates).isEmpty());
+    }
+
+    @Test
+    public void matchesTheFullKeyLoad() throws SQLException {
+        List<String[]> rows = new ArrayList<>();
+        List<String> candidates = new ArrayList<>();
+        for (int i = 0; i < CandidateKeyPushdown.INSERT_BATCH_SIZE + 5; i++) {
+            String reference = (i % 3 == 0) ? "" : "R" + i;
+            String[] row = secuRow("2024-06-01", "2024-06-01", "ost", "T" + i, "10.00", "USD", reference);
+            candidates.add(key(row, "secu"));
+            if (i % 2 == 0) {
+                rows.add(row);
+            }
+        }
+        RawTransactionPersister.persist(rows, "STMT-1", MappingConfigurations.SECU_CONFIG, con);
+
+        Set<String> found = CandidateKeyPushdown.findExisting(con, Collections.singletonList("STMT-1"),
+                "secu", candidates);
+        assertEquals(rows.size(), found.size());
+        for (String[] row : rows) {
+            assertTrue(found.contains(key(row, "secu")));
+        }
+    }
+
+    @Test
+    public void canRunRepeatedlyOnOneConnection() throws SQLException {
+        String[] row = bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF001");
+        RawTransactionPersister.persist(Collections.singletonList(row), "STMT-1",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Collections.singleton("REF001"), CandidateKeyPushdown.findExisting(con,
+                    Collections.singletonList("STMT-1"), "bank", Arrays.asList("REF001", "REF002")));
+        }
+    }
+
+    @Test
+    public void countsExistingRowsOfTheGivenStatements() throws SQLException {
+        RawTransactionPersister.persist(Arrays.asList(
+                bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF001"),
+                bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", "REF002")),
+                "STMT-1", MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        assertEquals(2, CandidateKeyPushdown.countExistingRows(con, Collections.singletonList("STMT-1"), "bank"));
+        assertEquals(0, CandidateKeyPushdown.countExistingRows(con, Collections.singletonList("STMT-2"), "bank"));
+        assertEquals(0, CandidateKeyPushdown.countExistingRows(con, Collections.emptyList(), "bank"));
+    }
+
+    @Test
+    public void readsKeysOfUnstorableRowsThroughTheKeyExpression() throws SQLException {
+        char[] longDocNr = new char[DedupKeyColumn.MAX_KEY_LENGTH - 10];
+        Arrays.fill(longDocNr, '9');
+        String[] unkeyed = bankRow("EE1234", new String(longDocNr), "2024-06-01", "100.00", "EUR", "");
+        String[] keyed = bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", "");
+        RawTransactionPersister.persist(Arrays.asList(unkeyed, keyed), "STMT-1",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        Set<String> found = CandidateKeyPushdown.findExisting(con, Collections.singletonList("STMT-1"), "bank",
+                Arrays.asList(key(unkeyed, "bank"), key(keyed, "bank"), "REF003"));
+        assertEquals(new HashSet<>(Arrays.asList(key(unkeyed, "bank"), key(keyed, "bank"))), found);
+    }
+
+    @Test
+    public void trimsPrimaryKeysLikeJava() throws SQLException {
+        char[] longDocNr = new char[DedupKeyColumn.MAX_KEY_LENGTH - 10];
+        Arrays.fill(longDocNr, '9');
+        // The unstorable row keeps the statement on the key expressions
+        String[] unkeyed = bankRow("EE1234", new String(longDocNr), "2024-06-01", "100.00", "EUR", "");
+        String[] tabbed = bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", " \tREF002\r\n");
+        RawTransactionPersister.persist(Arrays.asList(unkeyed, tabbed), "STMT-1",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        Set<String> found = CandidateKeyPushdown.findExisting(con, Collections.singletonList("STMT-1"), "bank",
+                Arrays.asList(key(tabbed, "bank"), "REF002 ", "ref002"));
+        assertEquals(Collections.singleton("REF002"), found);
+    }
+}
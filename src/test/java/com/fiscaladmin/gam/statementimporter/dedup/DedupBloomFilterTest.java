@@ -0,0 +1,72 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DedupBloomFilter}.
+ */
+public class DedupBloomFilterTest {
+
+    @Test
+    public void neverReportsAnAddedKeyAsAbsent() {
+        DedupBloomFilter filter = new DedupBloomFilter(1000);
+        for (int i = 0; i < 1000; i++) {
+            long[] h = DedupKeyHash.hash("REF-" + i);
+            filter.put(h[0], h[1]);
+        }
+        for (int i = 0; i < 1000; i++) {
+            long[] h = DedupKeyHash.hash("REF-" + i);
+            assertTrue(filter.mightContain(h[0], h[1]));
+        }
+        assertEquals(1000, filter.count());
+        assertFalse(filter.isSaturated());
+    }
+
+    @Test
+    public void falsePositiveRateStaysNearOnePercent() {
+        DedupBloomFilter filter = new DedupBloomFilter(5000);
+        for (int i = 0; i < 5000; i++) {
+            long[] h = DedupKeyHash.hash("REF-" + i);
+            filter.put(h[0], h[1]);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            long[] h = DedupKeyHash.hash("NEW-" + i);
+            if (filter.mightContain(h[0], h[1])) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 2000);
+    }
+
+    @Test
+    public void roundTripsThroughBytes() {
+        DedupBloomFilter filter = new DedupBloomFilter(10);
+        long[] h = DedupKeyHash.hash("REF-1");
+        filter.put(h[0], h[1]);
+
+        DedupBloomFilter restored = DedupBloomFilter.fromBytes(filter.toBytes());
+        assertTrue(restored.mightContain(h[0], h[1]));
+        assertEquals(1, restored.count());
+        assertEquals(filter.capacity(), restored.capacity());
+        assertArrayEquals(filter.toBytes(), restored.toBytes());
+    }
+
+    @Test
+    public void reportsSaturationPastCapacity() {
+        DedupBloomFilter filter = new DedupBloomFilter(0);
+        assertEquals(DedupBloomFilter.MIN_CAPACITY, filter.capacity());
+        for (int i = 0; i <= DedupBloomFilter.MIN_CAPACITY; i++) {
+            filter.put(i, i);
+        }
+        assertTrue(filter.isSaturated());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedBytes() {
+        byte[] bytes = new DedupBloomFilter(10).toBytes();
+        DedupBloomFilter.fromBytes(java.util.Arrays.copyOf(bytes, bytes.length - 1));
+    }
+}
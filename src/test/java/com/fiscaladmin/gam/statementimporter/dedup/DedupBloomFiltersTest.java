@@ -0,0 +1,277 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfigurations;
+import com.fiscaladmin.gam.statementimporter.parser.RowCursor;
+import com.fiscaladmin.gam.statementimporter.persister.PersistOptions;
+import com.fiscaladmin.gam.statementimporter.persister.RawTransactionPersister;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DedupBloomFilters}, on an in-memory H2 database in MySQL mode.
+ */
+public class DedupBloomFiltersTest extends DedupTestBase {
+
+    @Before
+    public void setUp() throws Exception {
+        setUpDatabase("dedupbloom");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tearDownDatabase();
+    }
+
+    // -------------------------------------------------------------------------
+    // Helper methods
+    // -------------------------------------------------------------------------
+
+    private static long[] hash(String[] row) {
+        long[] h = new long[2];
+        DeduplicationChecker.hasher("bank").hash(row, h);
+        return h;
+    }
+
+    private DedupBloomFilter load(String account, int period) throws SQLException {
+        DedupBloomFilters.Bucket bucket = new DedupBloomFilters.Bucket(account, period);
+        return DedupBloomFilters.load(con, "bank", Collections.singleton(bucket)).get(bucket);
+    }
+
+    // -------------------------------------------------------------------------
+    // Tests
+    // -------------------------------------------------------------------------
+
+    @Test
+    public void persistAddsKeysToTheFilterOfTheirMonth() throws SQLException {
+        String[] june = bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF001");
+        String[] july = bankRow("EE1234", "002", "2024-07-01", "200.00", "EUR", "");
+        RawTransactionPersister.persist(Arrays.asList(june, july), "STMT-1",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        long[] h = hash(june);
+        assertTrue(load("EE1234", 202406).mightContain(h[0], h[1]));
+        assertFalse(load("EE1234", 202407).mightContain(h[0], h[1]));
+        h = hash(july);
+        assertTrue(load("EE1234", 202407).mightContain(h[0], h[1]));
+        assertEquals(0, load("EE9999", 202406).count());
+    }
+
+    @Test
+    public void laterImportsUpdateTheStoredFilter() throws SQLException {
+        String[] first = bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF001");
+        String[] second = bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", "REF002");
+        RawTransactionPersister.persist(Collections.singletonList(first), "STMT-1",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+        assertEquals(1, load("EE1234", 202406).count());
+
+        RawTransactionPersister.persist(Collections.singletonList(second), "STMT-2",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+        DedupBloomFilter filter = load("EE1234", 202406);
+        assertEquals(2, filter.count());
+        long[] h = hash(second);
+        assertTrue(filter.mightContain(h[0], h[1]));
+    }
+
+    @Test
+    public void deleteRebuildsTheFilterWithoutTheStatementsKeys() throws SQLException {
+        String[] kept = bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF001");
+        String[] deleted = bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", "REF002");
+        RawTransactionPersister.persist(Collections.singletonList(kept), "STMT-1",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+        RawTransactionPersister.persist(Collections.singletonList(deleted), "STMT-2",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        DedupKeyIndex.delete(con, "STMT-2");
+
+        DedupBloomFilter filter = load("EE1234", 202406);
+        assertEquals(1, filter.count());
+        long[] h = hash(kept);
+        assertTrue(filter.mightContain(h[0], h[1]));
+    }
+
+    @Test
+    public void missingFiltersAreRebuiltFromTheIndex() throws SQLException {
+        String[] row = bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF001");
+        RawTransactionPersister.persist(Collections.singletonList(row), "STMT-1",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("DELETE FROM " + DedupBloomFilters.TABLE); // as if indexed before the filters
+        }
+
+        DedupBloomFilter filter = load("EE1234", 202406);
+        long[] h = hash(row);
+        assertTrue(filter.mightContain(h[0], h[1]));
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + DedupBloomFilters.TABLE)) {
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void saturatedFiltersAreRebuiltLarger() throws SQLException {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i <= DedupBloomFilter.MIN_CAPACITY; i++) {
+            rows.add(bankRow("EE1234", String.valueOf(i), "2024-06-01", "1.00", "EUR", "REF" + i));
+        }
+        RawTransactionPersister.persist(rows.subList(0, 1), "STMT-1", MappingConfigurations.LHV_BANK_CONFIG, con);
+        RawTransactionPersister.persist(rows.subList(1, rows.size()), "STMT-2",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        DedupBloomFilter filter = load("EE1234", 202406);
+        assertEquals(rows.size(), filter.count());
+        assertFalse(filter.isSaturated());
+        for (String[] row : rows) {
+            long[] h = hash(row);
+            assertTrue(filter.mightContain(h[0], h[1]));
+        }
+    }
+
+    @Test
+    public void concurrentUpdatesOfOneFilterKeepEveryKey() throws Exception {
+        String[] first = bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF001");
+        String[] second = bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", "REF002");
+        RawTransactionPersister.persist(Collections.singletonList(first), "STMT-1",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+        DedupBloomFilters.Bucket bucket = new DedupBloomFilters.Bucket("EE1234", 202406);
+        long[] h1 = hash(first);
+        long[] h2 = hash(second);
+
+        // An update holding the filter row in an open transaction...
+        con.setAutoCommit(false);
+        DedupBloomFilters.add(con, "bank", Collections.singletonMap(bucket, new long[]{h1[0], h1[1]}));
+
+        // ...makes a second writer wait for it instead of overwriting its result
+        Throwable[] failure = new Throwable[1];
+        Thread other = new Thread(() -> {
+            try (Connection con2 = connect("dedupbloom")) {
+                DedupBloomFilters.add(con2, "bank", Collections.singletonMap(bucket, new long[]{h2[0], h2[1]}));
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        });
+        other.start();
+        other.join(200);
+        assertTrue("second writer must wait for the row lock", other.isAlive());
+        con.commit();
+        con.setAutoCommit(true);
+        other.join();
+        assertNull(failure[0]);
+
+        DedupBloomFilter filter = load("EE1234", 202406);
+        assertTrue(filter.mightContain(h1[0], h1[1]));
+        assertTrue(filter.mightContain(h2[0], h2[1]));
+    }
+
+    @Test
+    public void uncommittedChunksLeaveTheFilterUnlocked() throws Exception {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            rows.add(bankRow("EE1234", String.valueOf(i), "2024-06-01", "1.00", "EUR", "REF" + i));
+        }
+        String[] other = bankRow("EE1234", "X", "2024-06-02", "2.00", "EUR", "REF_OTHER");
+        PersistOptions options = new PersistOptions();
+        options.setBatchSize(5);
+        options.setCommitInterval(100);
+
+        try (Connection con2 = connect("dedupbloom")) {
+            try (Statement stmt = con2.createStatement()) {
+                stmt.execute("SET LOCK_TIMEOUT 500");
+            }
+            RowCursor source = RowCursor.fromList(rows);
+            RowCursor cursor = new RowCursor() {
+                private int read;
+
+                @Override
+                public String[] nextRow() throws IOException {
+                    if (++read == 8) {
+                        // Two chunks executed, not committed: another import of the month proceeds
+                        try {
+                            RawTransactionPersister.persist(Collections.singletonList(other), "STMT-OTHER",
+                                    MappingConfigurations.LHV_BANK_CONFIG, con2);
+                        } catch (SQLException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                    return source.nextRow();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            RawTransactionPersister.persistStream(cursor, "STMT-1", MappingConfigurations.LHV_BANK_CONFIG, con,
+                    0, options);
+        }
+
+        DedupBloomFilter filter = load("EE1234", 202406);
+        assertEquals(rows.size() + 1, filter.count());
+        long[] h = hash(other);
+        assertTrue(filter.mightContain(h[0], h[1]));
+        h = hash(rows.get(11));
+        assertTrue(filter.mightContain(h[0], h[1]));
+    }
+
+    @Test
+    public void rolledBackChunksLeaveNoKeys() throws Exception {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            rows.add(bankRow("EE1234", String.valueOf(i), "2024-06-01", "1.00", "EUR", "REF" + i));
+        }
+        RowCursor source = RowCursor.fromList(rows);
+        RowCursor failing = new RowCursor() {
+            private int read;
+
+            @Override
+            public String[] nextRow() throws IOException {
+                if (++read > 8) {
+                    throw new IOException("truncated file");
+                }
+                return source.nextRow();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        PersistOptions options = new PersistOptions();
+        options.setBatchSize(2);
+        options.setCommitInterval(6);
+
+        try {
+            RawTransactionPersister.persistStream(failing, "STMT-1", MappingConfigurations.LHV_BANK_CONFIG, con,
+                    0, options);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // rows 7-8 were executed but never committed
+        }
+
+        assertEquals(6, load("EE1234", 202406).count());
+    }
+
+    @Test
+    public void placeholderRowsAreRebuiltFromTheIndex() throws SQLException {
+        String[] row = bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF001");
+        RawTransactionPersister.persist(Collections.singletonList(row), "STMT-1",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+        try (Statement stmt = con.createStatement()) {
+            // As left by a writer that locked a new month's row
+            stmt.execute("UPDATE " + DedupBloomFilters.TABLE + " SET filter_data = X''");
+        }
+
+        long[] h = hash(row);
+        DedupBloomFilters.add(con, "bank", Collections.singletonMap(
+                new DedupBloomFilters.Bucket("EE1234", 202406), new long[]{h[0], h[1]}));
+        DedupBloomFilter filter = load("EE1234", 202406);
+        assertEquals(1, filter.count());
+        assertTrue(filter.mightContain(h[0], h[1]));
+        assertTrue(con.getAutoCommit());
+    }
+}
@@ -0,0 +1,144 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfigurations;
+import com.fiscaladmin.gam.statementimporter.persister.RawTransactionPersister;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DedupKeyColumn}, on an in-memory H2 database in MySQL mode.
+ */
+public class DedupKeyColumnTest extends DedupTestBase {
+
+    @Before
+    public void setUp() throws Exception {
+        setUpDatabase("dedupKeyColumn");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tearDownDatabase();
+    }
+
+    // -------------------------------------------------------------------------
+    // Helper methods
+    // -------------------------------------------------------------------------
+
+    private static String[] bankRow(String docNr, String providerRef) {
+        return bankRow("EE1234", docNr, "2024-06-01", "100.00", "EUR", providerRef);
+    }
+
+    /** Inserts a raw row the way it was stored before the key column existed. */
+    private void insertUnkeyed(String id, String statementId, String docNr, String providerRef)
+            throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("INSERT INTO app_fd_bank_account_trx "
+                + "(id, c_statement_id, c_account_number, c_document_nr, c_payment_date, c_payment_amount, "
+                + "c_currency, c_provider_reference) VALUES (?, ?, 'EE1234', ?, '2024-06-01', ' 100.00', 'EUR', ?)")) {
+            ps.setString(1, id);
+            ps.setString(2, statementId);
+            ps.setString(3, docNr);
+            ps.setString(4, providerRef);
+            ps.executeUpdate();
+        }
+    }
+
+    private Map<String, String> storedKeys() throws SQLException {
+        Map<String, String> keys = new HashMap<>();
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT c_document_nr, " + DedupKeyColumn.COLUMN
+                     + " FROM app_fd_bank_account_trx")) {
+            while (rs.next()) {
+                keys.put(rs.getString(1), rs.getString(2));
+            }
+        }
+        return keys;
+    }
+
+    // -------------------------------------------------------------------------
+    // Tests
+    // -------------------------------------------------------------------------
+
+    @Test
+    public void persisterStoresTheDedupKey() throws SQLException {
+        RawTransactionPersister.persist(Arrays.asList(bankRow("001", " REF001 "), bankRow("002", "")),
+                "STMT-1", MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        Map<String, String> keys = storedKeys();
+        assertEquals("REF001", keys.get("001"));
+        assertEquals("EE1234|002|2024-06-01|100.00|EUR|", keys.get("002"));
+    }
+
+    @Test
+    public void backfillKeysExistingRowsInBatches() throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            insertUnkeyed("ID-" + i, "STMT-1", "00" + i, (i % 2 == 0) ? "REF" + i : null);
+        }
+
+        assertEquals(5, DedupKeyColumn.backfill(con, "bank", 2));
+        Map<String, String> keys = storedKeys();
+        assertEquals("REF0", keys.get("000"));
+        // Composite keys are built from trimmed fields, as for incoming rows
+        assertEquals("EE1234|001|2024-06-01|100.00|EUR|", keys.get("001"));
+
+        assertEquals(0, DedupKeyColumn.backfill(con, "bank", 2));
+    }
+
+    @Test
+    public void keyedOnlyReportsWithoutBackfilling() throws SQLException {
+        RawTransactionPersister.persist(Collections.singletonList(bankRow("001", "REF1")),
+                "STMT-1", MappingConfigurations.LHV_BANK_CONFIG, con);
+        insertUnkeyed("ID-2", "STMT-2", "002", "REF2");
+
+        assertTrue(DedupKeyColumn.keyed(con, "bank", Collections.singletonList("STMT-1")));
+        assertFalse(DedupKeyColumn.keyed(con, "bank", Arrays.asList("STMT-1", "STMT-2")));
+        assertNull(storedKeys().get("002"));
+
+        DedupKeyColumn.backfill(con, "bank", DedupKeyColumn.BACKFILL_BATCH_SIZE);
+        assertTrue(DedupKeyColumn.keyed(con, "bank", Arrays.asList("STMT-1", "STMT-2")));
+    }
+
+    @Test
+    public void statementWithATooLongKeyIsNotKeyed() throws SQLException {
+        char[] longRef = new char[DedupKeyColumn.MAX_KEY_LENGTH + 1];
+        Arrays.fill(longRef, 'R');
+        insertUnkeyed("ID-1", "STMT-1", "001", new String(longRef));
+        insertUnkeyed("ID-2", "STMT-1", "002", "REF2");
+
+        assertEquals(1, DedupKeyColumn.backfill(con, "bank", DedupKeyColumn.BACKFILL_BATCH_SIZE));
+        assertFalse(DedupKeyColumn.keyed(con, "bank", Collections.singletonList("STMT-1")));
+        Map<String, String> keys = storedKeys();
+        assertNull(keys.get("001"));
+        assertEquals("REF2", keys.get("002"));
+    }
+
+    @Test
+    public void importsLeaveAnUnmigratedTableAlone() throws SQLException {
+        try (Connection plain = connect("dedupKeyColumnPlain")) {
+            createRawTables(plain);
+            try {
+                RawTransactionPersister.persist(Collections.singletonList(bankRow("001", "REF1")),
+                        "STMT-1", MappingConfigurations.LHV_BANK_CONFIG, plain);
+
+                assertFalse(DedupKeyColumn.exists(plain, "bank"));
+                assertFalse(DedupKeyIndex.exists(plain));
+                assertFalse(DedupKeyColumn.keyed(plain, "bank", Collections.singletonList("STMT-1")));
+                try {
+                    DedupKeyColumn.backfill(plain, "bank", DedupKeyColumn.BACKFILL_BATCH_SIZE);
+                    fail("back-fill must require the migration");
+                } catch (SQLException expected) {
+                    // not migrated
+                }
+            } finally {
+                try (Statement stmt = plain.createStatement()) {
+                    stmt.execute("DROP ALL OBJECTS");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DedupKeyHash}.
+ */
+public class DedupKeyHashTest {
+
+    @Test
+    public void matchesMurmurHash3ReferenceVectors() {
+        assertArrayEquals(new long[]{0L, 0L}, DedupKeyHash.hash(""));
+        assertArrayEquals(new long[]{0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L},
+                DedupKeyHash.hash("The quick brown fox jumps over the lazy dog"));
+    }
+
+    @Test
+    public void hashesEveryTailLength() {
+        // 0..33 bytes covers zero, one and two full blocks with every tail length
+        String key = "EE382200221020145680|1001|2024-06-01|";
+        long[] previous = null;
+        for (int length = 1; length <= 33; length++) {
+            long[] h = DedupKeyHash.hash(key.substring(0, length));
+            assertArrayEquals(h, DedupKeyHash.hash(key.substring(0, length)));
+            assertFalse("length " + length, java.util.Arrays.equals(previous, h));
+            previous = h;
+        }
+    }
+
+    @Test
+    public void hashesUtf8Bytes() {
+        // Non-ASCII composite keys (e.g. securities type "müük") hash their UTF-8 encoding
+        assertFalse(java.util.Arrays.equals(
+                DedupKeyHash.hash("2024-06-01|2024-06-01|müük|AAPL|100.00|USD|"),
+                DedupKeyHash.hash("2024-06-01|2024-06-01|muuk|AAPL|100.00|USD|")));
+    }
+
+    @Test
+    public void hasherMatchesHashOfExtractedKey() {
+        String[][] rows = {
+                bankRow("REF-1", "EE12", "2024-06-01"),
+                bankRow("  REF-2\t", "EE12", "2024-06-01"),
+                bankRow("", " EE12 ", "2024-06-01"),
+                bankRow("   ", "EE12", null),
+                bankRow(null, "m\u00fc\u00fck \u20ac", "2024-06-01"),
+                bankRow("", "\ud83d\ude00 emoji", "2024-06-01"),
+                bankRow("", "lone \ud83d surrogate", "2024-06-01"),
+                bankRow("", "reversed \ude00\ud83d pair", "2024-06-01"),
+                bankRow("a reference long enough to span more than two hash blocks", "x", "y"),
+                new String[]{"EE12"}
+        };
+        assertHasherMatches("bank", rows);
+
+        String[][] secuRows = {
+                {"2024-06-01", "2024-06-02", "m\u00fc\u00fck", "AAPL", "", "", "", "USD", "100.00", "", "", "REF"},
+                {"2024-06-01", "2024-06-02", "m\u00fc\u00fck", "AAPL", "", "", "", "USD", "100.00", "", "", ""},
+                {"2024-06-01", "2024-06-02", "ost"}
+        };
+        assertHasherMatches("secu", secuRows);
+    }
+
+    private static void assertHasherMatches(String accountType, String[][] rows) {
+        int primary = DeduplicationChecker.primaryKeyIndex(accountType);
+        int[] composite = DeduplicationChecker.compositeKeyIndices(accountType);
+        DedupKeyHash.Hasher hasher = new DedupKeyHash.Hasher(primary, composite);
+        long[] out = new long[2];
+        for (String[] row : rows) {
+            String key = DeduplicationChecker.extractKey(row, primary, composite);
+            hasher.hash(row, out);
+            assertTrue(key, java.util.Arrays.equals(DedupKeyHash.hash(key), out));
+        }
+    }
+
+    private static String[] bankRow(String reference, String document, String date) {
+        String[] row = new String[18];
+        row[0] = "EE382200221020145680";
+        row[1] = document;
+        row[2] = date;
+        row[7] = "-12.50";
+        row[12] = "EUR";
+        row[17] = reference;
+        return row;
+    }
+}
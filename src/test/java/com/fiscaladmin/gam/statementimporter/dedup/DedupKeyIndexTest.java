@@ -0,0 +1,168 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfigurations;
+import com.fiscaladmin.gam.statementimporter.persister.RawTransactionPersister;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DedupKeyIndex}, on an in-memory H2 database in MySQL mode.
+ */
+public class DedupKeyIndexTest extends DedupTestBase {
+
+    @Before
+    public void setUp() throws Exception {
+        setUpDatabase("dedupkeyindex");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tearDownDatabase();
+    }
+
+    // -------------------------------------------------------------------------
+    // Helper methods
+    // -------------------------------------------------------------------------
+
+    private int countEntries(String statementId) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(
+                "SELECT COUNT(*) FROM " + DedupKeyIndex.TABLE + " WHERE statement_id = ?")) {
+            ps.setString(1, statementId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Tests
+    // -------------------------------------------------------------------------
+
+    @Test
+    public void persistWritesOneEntryPerRawRow() throws SQLException {
+        List<String[]> rows = Arrays.asList(
+                bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF001"),
+                bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", ""));
+        RawTransactionPersister.persist(rows, "STMT-1", MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        assertEquals(2, countEntries("STMT-1"));
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT account_type, account, period FROM "
+                     + DedupKeyIndex.TABLE)) {
+            assertTrue(rs.next());
+            assertEquals("bank", rs.getString(1));
+            assertEquals("EE1234", rs.getString(2));
+            assertEquals(202406, rs.getInt(3));
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    public void findExistingReturnsOnlyIndexedCandidates() throws SQLException {
+        String[] indexed = bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF001");
+        String[] composite = bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", "");
+        RawTransactionPersister.persist(Arrays.asList(indexed, composite), "STMT-1",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        String[] fresh = bankRow("EE1234", "003", "2024-06-03", "300.00", "EUR", "REF003");
+        List<String> candidates = Arrays.asList(key(indexed, "bank"), key(composite, "bank"), key(fresh, "bank"));
+
+        Set<String> found = DedupKeyIndex.findExisting(con, Collections.singletonList("STMT-1"), "bank", candidates);
+        assertEquals(new HashSet<>(Arrays.asList("REF001", "EE1234|002|2024-06-02|200.00|EUR|")), found);
+
+        // Only the given statements and account type are matched
+        assertTrue(DedupKeyIndex.findExisting(con, Collections.singletonList("STMT-2"), "bank", candidates).isEmpty());
+        assertTrue(DedupKeyIndex.findExisting(con, Collections.singletonList("STMT-1"), "secu", candidates).isEmpty());
+    }
+
+    @Test
+    public void findExistingChunksLargeCandidateLists() throws SQLException {
+        List<String[]> rows = new ArrayList<>();
+        List<String> candidates = new ArrayList<>();
+        for (int i = 0; i < DedupKeyIndex.LOOKUP_CHUNK_SIZE * 2 + 7; i++) {
+            String[] row = secuRow("2024-06-01", "2024-06-01", "ost", "AAPL", "10.00", "USD", "R" + i);
+            candidates.add(key(row, "secu"));
+            if (i % 2 == 0) {
+                rows.add(row);
+            }
+        }
+        RawTransactionPersister.persist(rows, "STMT-1", MappingConfigurations.SECU_CONFIG, con);
+
+        Set<String> found = DedupKeyIndex.findExisting(con, Collections.singletonList("STMT-1"), "secu", candidates);
+        assertEquals(rows.size(), found.size());
+        for (String[] row : rows) {
+            assertTrue(found.contains(row[11]));
+        }
+    }
+
+    @Test
+    public void deleteRemovesOnlyTheStatementsEntries() throws SQLException {
+        RawTransactionPersister.persist(Collections.singletonList(
+                bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF001")),
+                "STMT-1", MappingConfigurations.LHV_BANK_CONFIG, con);
+        RawTransactionPersister.persist(Collections.singletonList(
+                bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", "REF002")),
+                "STMT-2", MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        assertEquals(1, DedupKeyIndex.delete(con, "STMT-1"));
+        assertEquals(0, countEntries("STMT-1"));
+        assertEquals(1, countEntries("STMT-2"));
+    }
+
+    @Test
+    public void backfillIndexesStatementsImportedBeforeTheIndex() throws SQLException {
+        String[] primary = secuRow("2024-06-03", "2024-06-01", "ost", "AAPL", "-100.00", "USD", "900001");
+        String[] composite = secuRow("2024-06-03", "2024-06-01", "müük", "TSLA", "50.00", "USD", "");
+        RawTransactionPersister.persist(Arrays.asList(primary, composite), "OLD", MappingConfigurations.SECU_CONFIG, con);
+        DedupKeyIndex.delete(con, "OLD"); // as if imported by an earlier version
+
+        List<String> ids = Collections.singletonList("OLD");
+        assertEquals(2, DedupKeyIndex.backfillMissing(con, ids, "secu"));
+        assertEquals(0, DedupKeyIndex.backfillMissing(con, ids, "secu"));
+
+        // Keys built from the raw columns equal the keys built from parsed rows
+        Set<String> found = DedupKeyIndex.findExisting(con, ids, "secu",
+                Arrays.asList(key(primary, "secu"), key(composite, "secu")));
+        assertEquals(2, found.size());
+    }
+
+    @Test
+    public void backfillReindexesPartiallyIndexedStatements() throws SQLException {
+        List<String[]> rows = Arrays.asList(
+                bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF001"),
+                bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", ""),
+                bankRow("EE1234", "003", "2024-07-01", "300.00", "EUR", "REF003"));
+        RawTransactionPersister.persist(rows, "PART", MappingConfigurations.LHV_BANK_CONFIG, con);
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("DELETE FROM " + DedupKeyIndex.TABLE + " WHERE statement_id = 'PART' AND key_hi = "
+                    + "(SELECT MIN(key_hi) FROM " + DedupKeyIndex.TABLE + " WHERE statement_id = 'PART')");
+        }
+        assertEquals(2, countEntries("PART"));
+
+        List<String> ids = Collections.singletonList("PART");
+        assertEquals(3, DedupKeyIndex.backfillMissing(con, ids, "bank"));
+        assertEquals(3, countEntries("PART"));
+        assertEquals(0, DedupKeyIndex.backfillMissing(con, ids, "bank"));
+
+        List<String> keys = new ArrayList<>();
+        for (String[] row : rows) {
+            keys.add(key(row, "bank"));
+        }
+        assertEquals(3, DedupKeyIndex.findExisting(con, ids, "bank", keys).size());
+    }
+
+    @Test
+    public void periodBucketsIsoAndEstonianDates() {
+        assertEquals(202406, DedupKeyIndex.period("2024-06-30"));
+        assertEquals(202312, DedupKeyIndex.period("31.12.2023"));
+        assertEquals(0, DedupKeyIndex.period(""));
+        assertEquals(0, DedupKeyIndex.period(null));
+    }
+}
@@ -0,0 +1,73 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DedupKeySet}.
+ */
+public class DedupKeySetTest {
+
+    @Test
+    public void addsAndFindsKeys() {
+        DedupKeySet set = new DedupKeySet();
+        assertTrue(set.add("REF-1"));
+        assertTrue(set.add("EE12|1001|2024-06-01|-12.50|EUR|"));
+        assertFalse(set.add("REF-1"));
+
+        assertEquals(2, set.size());
+        assertTrue(set.contains("REF-1"));
+        assertTrue(set.contains("EE12|1001|2024-06-01|-12.50|EUR|"));
+        assertFalse(set.contains("REF-2"));
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity() {
+        DedupKeySet set = new DedupKeySet(4);
+        long before = set.memoryBytes();
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(set.add("REF-" + i));
+        }
+        assertEquals(10_000, set.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(set.contains("REF-" + i));
+        }
+        assertFalse(set.contains("REF-10000"));
+        assertTrue(set.memoryBytes() > before);
+    }
+
+    @Test
+    public void handlesCollidingSlotsAndZeroKey() {
+        DedupKeySet set = new DedupKeySet();
+        // Same low half: all probe from the same slot
+        assertTrue(set.add(1L, 7L));
+        assertTrue(set.add(2L, 7L));
+        assertTrue(set.add(0L, 7L));
+        assertFalse(set.contains(3L, 7L));
+        assertTrue(set.contains(2L, 7L));
+
+        // (0, 0) is the empty-slot marker but still a valid key
+        assertFalse(set.contains(0L, 0L));
+        assertTrue(set.add(0L, 0L));
+        assertFalse(set.add(0L, 0L));
+        assertTrue(set.contains(0L, 0L));
+        assertEquals(4, set.size());
+    }
+
+    @Test
+    public void addAllMergesSets() {
+        DedupKeySet a = new DedupKeySet();
+        a.add("REF-1");
+        a.add(0L, 0L);
+        DedupKeySet b = new DedupKeySet();
+        b.add("REF-1");
+        b.add("REF-2");
+
+        b.addAll(a);
+        assertEquals(3, b.size());
+        assertTrue(b.contains("REF-1"));
+        assertTrue(b.contains("REF-2"));
+        assertTrue(b.contains(0L, 0L));
+    }
+}
@@ -0,0 +1,62 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DedupSchema}, on an in-memory H2 database in MySQL mode.
+ */
+public class DedupSchemaTest extends DedupTestBase {
+
+    @Before
+    public void setUp() throws Exception {
+        con = connect("dedupSchema");
+        createRawTables(con);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tearDownDatabase();
+    }
+
+    private boolean hasIndex(String table, String index) throws SQLException {
+        try (ResultSet rs = con.getMetaData().getIndexInfo(null, null, table, false, true)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void migrateCreatesEveryObjectOnce() throws SQLException {
+        assertFalse(DedupKeyIndex.exists(con));
+
+        DedupSchema.migrate(con);
+        DedupSchema.migrate(con);
+
+        assertTrue(DedupKeyIndex.exists(con));
+        assertTrue(DedupSchema.tableExists(con, DedupBloomFilters.TABLE));
+        assertTrue(DedupKeyColumn.exists(con, "bank"));
+        assertTrue(DedupKeyColumn.exists(con, "secu"));
+        assertTrue(hasIndex("APP_FD_BANK_ACCOUNT_TRX", DedupSchema.BANK_DATE_INDEX));
+        assertTrue(hasIndex("APP_FD_SEC_ACCOUNT_TRX", DedupSchema.SECU_DATE_INDEX));
+    }
+
+    @Test
+    public void filtersAreStoredInTheDialectsBinaryType() {
+        assertEquals("LONGBLOB", DedupSchema.binaryType("MySQL"));
+        assertEquals("LONGBLOB", DedupSchema.binaryType("MariaDB"));
+        assertEquals("BYTEA", DedupSchema.binaryType("PostgreSQL"));
+        assertEquals("VARBINARY(MAX)", DedupSchema.binaryType("Microsoft SQL Server"));
+        assertEquals("BLOB", DedupSchema.binaryType("H2"));
+        assertEquals("BLOB", DedupSchema.binaryType(null));
+    }
+}
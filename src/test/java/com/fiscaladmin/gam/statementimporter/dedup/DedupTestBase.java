@@ -0,0 +1,123 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import java.sql.*;
+import java.util.Arrays;
+
+/**
+ * Base class for de-duplication tests providing H2 database setup and row helpers.
+ * <p>
+ * Uses H2 in MySQL mode, with the two raw transaction tables as Joget creates them:
+ * <ul>
+ *   <li>app_fd_bank_account_trx (raw bank transactions)</li>
+ *   <li>app_fd_sec_account_trx (raw securities transactions)</li>
+ * </ul>
+ */
+public abstract class DedupTestBase {
+
+    protected Connection con;
+
+    /**
+     * Opens the named in-memory database, creates the raw tables and runs
+     * {@link DedupSchema#migrate}. Call this in @Before method.
+     *
+     * @param name database name, distinct per test class
+     */
+    protected void setUpDatabase(String name) throws SQLException {
+        con = connect(name);
+        createRawTables(con);
+        DedupSchema.migrate(con);
+    }
+
+    /**
+     * Drops all objects and closes connection.
+     * Call this in @After method.
+     */
+    protected void tearDownDatabase() throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+        }
+        con.close();
+    }
+
+    /**
+     * Returns the JDBC URL of the named in-memory database.
+     */
+    protected static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+    }
+
+    /**
+     * Opens a connection to the named in-memory database.
+     */
+    protected static Connection connect(String name) throws SQLException {
+        return DriverManager.getConnection(url(name), "sa", "");
+    }
+
+    /**
+     * Creates both raw transaction tables, without the de-duplication schema.
+     * The provider reference is wide enough to hold a reference longer than a
+     * stored dedup key.
+     */
+    protected static void createRawTables(Connection con) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS app_fd_bank_account_trx ("
+                    + "id VARCHAR(255) PRIMARY KEY, c_statement_id VARCHAR(255), c_transaction_id VARCHAR(10), "
+                    + "c_account_number VARCHAR(255), c_document_nr VARCHAR(255), c_payment_date VARCHAR(255), "
+                    + "c_other_side_account VARCHAR(255), c_other_side_name VARCHAR(255), "
+                    + "c_other_side_bank VARCHAR(255), c_d_c VARCHAR(10), c_payment_amount VARCHAR(255), "
+                    + "c_reference_number VARCHAR(255), c_archival_number VARCHAR(255), "
+                    + "c_payment_description TEXT, c_transaction_fee VARCHAR(255), c_currency VARCHAR(255), "
+                    + "c_customer_id VARCHAR(255), c_other_side_bic VARCHAR(255), c_initiator VARCHAR(255), "
+                    + "c_transaction_reference VARCHAR(255), c_provider_reference VARCHAR(1024), "
+                    + "dateCreated VARCHAR(50), createdBy VARCHAR(255))");
+            stmt.execute("CREATE TABLE IF NOT EXISTS app_fd_sec_account_trx ("
+                    + "id VARCHAR(255) PRIMARY KEY, c_statement_id VARCHAR(255), c_transaction_id VARCHAR(10), "
+                    + "c_value_date VARCHAR(255), c_transaction_date VARCHAR(255), c_type VARCHAR(255), "
+                    + "c_ticker VARCHAR(255), c_description TEXT, c_quantity VARCHAR(255), c_price VARCHAR(255), "
+                    + "c_currency VARCHAR(255), c_amount VARCHAR(255), c_fee VARCHAR(255), "
+                    + "c_total_amount VARCHAR(255), c_reference VARCHAR(255), c_comment TEXT, "
+                    + "dateCreated VARCHAR(50), createdBy VARCHAR(255))");
+        }
+    }
+
+    /**
+     * Builds a parsed bank row with the dedup key fields set and every other field empty.
+     */
+    protected static String[] bankRow(String accountNumber, String docNr, String paymentDate,
+                                      String amount, String currency, String providerRef) {
+        String[] row = new String[18];
+        Arrays.fill(row, "");
+        row[0] = accountNumber;
+        row[1] = docNr;
+        row[2] = paymentDate;
+        row[7] = amount;
+        row[12] = currency;
+        row[17] = providerRef;
+        return row;
+    }
+
+    /**
+     * Builds a parsed securities row with the dedup key fields set and every other field empty.
+     */
+    protected static String[] secuRow(String valueDate, String trxDate, String type,
+                                      String ticker, String amount, String currency, String reference) {
+        String[] row = new String[13];
+        Arrays.fill(row, "");
+        row[0] = valueDate;
+        row[1] = trxDate;
+        row[2] = type;
+        row[3] = ticker;
+        row[7] = currency;
+        row[8] = amount;
+        row[11] = reference;
+        return row;
+    }
+
+    /**
+     * Returns a row's dedup key string.
+     */
+    protected static String key(String[] row, String accountType) {
+        return DeduplicationChecker.extractKey(row, DeduplicationChecker.primaryKeyIndex(accountType),
+                DeduplicationChecker.compositeKeyIndices(accountType));
+    }
+}
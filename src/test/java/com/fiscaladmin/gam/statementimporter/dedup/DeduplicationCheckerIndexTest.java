@@ -0,0 +1,127 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfigurations;
+import com.fiscaladmin.gam.statementimporter.persister.RawTransactionPersister;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the database lookups of {@link DeduplicationChecker} (overlapping statements,
+ * {@link DedupKeyIndex} and {@link DedupBloomFilters}) on an in-memory H2 database in
+ * MySQL mode, comparing hashed checks with {@link DeduplicationOptions.KeyComparison#EXACT}.
+ */
+public class DeduplicationCheckerIndexTest extends DedupTestBase {
+
+    private JdbcDataSource dataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL(url("dedupcheckindex"));
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+        setUpDatabase("dedupcheckindex");
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS app_fd_bank_statement ("
+                    + "id VARCHAR(255) PRIMARY KEY, c_account_type VARCHAR(10), c_status VARCHAR(20), "
+                    + "c_from_date VARCHAR(10), c_to_date VARCHAR(10))");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tearDownDatabase();
+    }
+
+
+    // -------------------------------------------------------------------------
+    // Helper methods
+    // -------------------------------------------------------------------------
+
+    private void importStatement(String id, String from, String to, List<String[]> rows) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("INSERT INTO app_fd_bank_statement "
+                + "(id, c_account_type, c_status, c_from_date, c_to_date) VALUES (?, 'bank', 'imported', ?, ?)")) {
+            ps.setString(1, id);
+            ps.setString(2, from);
+            ps.setString(3, to);
+            ps.executeUpdate();
+        }
+        RawTransactionPersister.persist(rows, id, MappingConfigurations.LHV_BANK_CONFIG, con);
+    }
+
+    private DeduplicationResult check(List<String[]> rows, DeduplicationOptions.KeyComparison comparison) {
+        DeduplicationOptions options = new DeduplicationOptions();
+        options.setKeyComparison(comparison);
+        return DeduplicationChecker.check(rows, "STMT-NEW", "2024-06-01", "2024-07-31", "bank", options,
+                dataSource);
+    }
+
+    private static List<String> docNrs(DeduplicationResult result) {
+        List<String> docNrs = new ArrayList<>();
+        for (String[] row : result.getNonDuplicateRows()) {
+            docNrs.add(row[1]);
+        }
+        return docNrs;
+    }
+
+    // -------------------------------------------------------------------------
+    // Tests
+    // -------------------------------------------------------------------------
+
+    @Test
+    public void hashedIndexLookupMatchesExactComparison() throws SQLException {
+        importStatement("STMT-OLD", "2024-06-01", "2024-07-31", Arrays.asList(
+                bankRow("EE1234", "001", "2024-06-10", "100.00", "EUR", "REF001"),
+                bankRow("EE1234", "002", "2024-07-05", "50.00", "EUR", "")));
+
+        List<String[]> incoming = Arrays.asList(
+                // Same provider reference, booked in another month
+                bankRow("EE1234", "101", "2024-07-20", "100.00", "EUR", "REF001"),
+                // Same composite key
+                bankRow("EE1234", "002", "2024-07-05", "50.00", "EUR", ""),
+                bankRow("EE1234", "103", "2024-07-06", "75.00", "EUR", "REF003"),
+                bankRow("EE1234", "104", "2024-06-11", "20.00", "EUR", ""));
+
+        DeduplicationResult exact = check(incoming, DeduplicationOptions.KeyComparison.EXACT);
+        DeduplicationResult hashed = check(incoming, DeduplicationOptions.KeyComparison.HASHED);
+
+        assertEquals(2, exact.getDuplicateCount());
+        assertEquals(Arrays.asList("103", "104"), docNrs(exact));
+        assertEquals(exact.getDuplicateCount(), hashed.getDuplicateCount());
+        assertEquals(docNrs(exact), docNrs(hashed));
+    }
+
+    @Test
+    public void primaryKeyOfAnotherAccountIsFound() throws SQLException {
+        importStatement("STMT-OLD", "2024-06-01", "2024-06-30", Collections.singletonList(
+                bankRow("EE1234", "001", "2024-06-10", "100.00", "EUR", "REF001")));
+
+        List<String[]> incoming = Collections.singletonList(
+                bankRow("EE9999", "001", "2024-07-10", "100.00", "EUR", "REF001"));
+
+        assertEquals(1, check(incoming, DeduplicationOptions.KeyComparison.EXACT).getDuplicateCount());
+        assertEquals(1, check(incoming, DeduplicationOptions.KeyComparison.HASHED).getDuplicateCount());
+    }
+
+    @Test
+    public void rowsOutsideTheOverlappingMonthsAreNew() throws SQLException {
+        importStatement("STMT-OLD", "2024-06-01", "2024-06-30", Collections.singletonList(
+                bankRow("EE1234", "001", "2024-06-10", "100.00", "EUR", "")));
+
+        List<String[]> incoming = Arrays.asList(
+                bankRow("EE1234", "001", "2024-06-10", "100.00", "EUR", ""),
+                bankRow("EE1234", "002", "2024-07-10", "100.00", "EUR", ""));
+
+        DeduplicationResult hashed = check(incoming, DeduplicationOptions.KeyComparison.HASHED);
+        assertEquals(1, hashed.getDuplicateCount());
+        assertEquals(Collections.singletonList("002"), docNrs(hashed));
+        assertEquals(1, hashed.getMetrics().getBloomRejected());
+    }
+}
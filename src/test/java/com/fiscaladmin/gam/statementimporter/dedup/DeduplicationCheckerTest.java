@@ -1,5 +1,7 @@
 package com.fiscaladmin.gam.statementimporter.dedup;
 
+import com.fiscaladmin.gam.statementimporter.parser.RowCursor;
+import com.fiscaladmin.gam.statementimporter.parser.StatementBatch;
 import org.junit.Test;
 
 import java.util.*;
@@ -329,4 +331,313 @@ public class DeduplicationCheckerTest {
         assertEquals(1, result.getNonDuplicateRows().size());
         assertEquals("REF003", result.getNonDuplicateRows().get(0)[17]);
     }
+
+    // -------------------------------------------------------------------------
+    // Streaming (RowCursor) variant
+    // -------------------------------------------------------------------------
+
+    @Test
+    public void cursorCheckMatchesListCheck() throws Exception {
+        List<String[]> rows = Arrays.asList(
+                bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF_0"),
+                bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", ""),       // composite dup
+                bankRow("EE1234", "003", "2024-06-03", "300.00", "EUR", "REF_2"),
+                bankRow("EE1234", "004", "2024-06-04", "400.00", "EUR", "REF_3"),  // primary dup
+                bankRow("EE1234", "005", "2024-06-05", "500.00", "EUR", "REF_4")
+        );
+        Set<String> existingKeys = new HashSet<>(Arrays.asList(
+                "REF_3", "EE1234|002|2024-06-02|200.00|EUR|"));
+
+        DeduplicationResult expected = DeduplicationChecker.check(rows, "bank", existingKeys);
+
+        List<String[]> survivors = new ArrayList<>();
+        try (DeduplicatingRowCursor cursor = DeduplicationChecker.checkStream(
+                RowCursor.fromList(rows), "bank", existingKeys, null)) {
+            String[] row;
+            while ((row = cursor.nextRow()) != null) {
+                survivors.add(row);
+            }
+            assertEquals(expected.getDuplicateCount(), cursor.getDuplicateCount());
+            assertEquals(expected.getTotalCount(), cursor.getTotalCount());
+        }
+
+        assertEquals(expected.getNonDuplicateRows().size(), survivors.size());
+        for (int i = 0; i < survivors.size(); i++) {
+            assertSame(expected.getNonDuplicateRows().get(i), survivors.get(i));
+        }
+    }
+
+    @Test
+    public void cursorCheckDoesNotLoadKeysForEmptyInput() throws Exception {
+        DeduplicatingRowCursor cursor = new DeduplicatingRowCursor(
+                RowCursor.fromList(Collections.emptyList()), "secu",
+                () -> { throw new AssertionError("keys must not be loaded for an empty statement"); });
+
+        assertNull(cursor.nextRow());
+        assertEquals(0, cursor.getTotalCount());
+        assertEquals(0, cursor.getDuplicateCount());
+    }
+
+    @Test
+    public void carriedKeysDedupAcrossEntriesButNotWithinOne() throws Exception {
+        Set<String> existingKeys = new HashSet<>(Collections.singletonList("REF_DB"));
+        DedupKeySet carriedKeys = new DedupKeySet();
+
+        // First entry: the repeated REF_A is kept twice, as in a single-file import
+        List<String[]> first = Arrays.asList(
+                bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF_A"),
+                bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF_A"),
+                bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", "REF_DB"));
+        try (DeduplicatingRowCursor cursor = DeduplicationChecker.checkStream(
+                RowCursor.fromList(first), "bank", existingKeys, carriedKeys)) {
+            assertNotNull(cursor.nextRow());
+            assertNotNull(cursor.nextRow());
+            assertNull(cursor.nextRow());
+            assertEquals(1, cursor.getDuplicateCount());
+            assertEquals("keys are carried on close only", 0, carriedKeys.size());
+        }
+        assertEquals(1, carriedKeys.size());
+        assertTrue(carriedKeys.contains("REF_A"));
+
+        // Second entry overlaps the first
+        List<String[]> second = Arrays.asList(
+                bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF_A"),
+                bankRow("EE1234", "003", "2024-06-03", "300.00", "EUR", "REF_B"));
+        try (DeduplicatingRowCursor cursor = DeduplicationChecker.checkStream(
+                RowCursor.fromList(second), "bank", existingKeys, carriedKeys)) {
+            String[] row = cursor.nextRow();
+            assertEquals("REF_B", row[17]);
+            assertNull(cursor.nextRow());
+            assertEquals(1, cursor.getDuplicateCount());
+        }
+        assertEquals(2, carriedKeys.size());
+        assertTrue(carriedKeys.contains("REF_B"));
+    }
+
+    // -------------------------------------------------------------------------
+    // Columnar (StatementBatch) variant
+    // -------------------------------------------------------------------------
+
+    @Test
+    public void batchCheckMatchesListCheck() {
+        List<String[]> rows = Arrays.asList(
+                bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF_0"),
+                bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", ""),       // composite dup
+                bankRow("EE1234", "003", "2024-06-03", "300.00", "EUR", "REF_2"),
+                bankRow("EE1234", "004", "2024-06-04", "400.00", "EUR", "REF_3"),  // primary dup
+                new String[]{"EE1234", "005", "2024-06-05"}                        // short row
+        );
+        Set<String> existingKeys = new HashSet<>(Arrays.asList(
+                "REF_3", "EE1234|002|2024-06-02|200.00|EUR|"));
+
+        DeduplicationResult expected = DeduplicationChecker.check(rows, "bank", existingKeys);
+
+        StatementBatch batch = new StatementBatch();
+        for (String[] row : rows) {
+            batch.add(row);
+        }
+        DeduplicationResult actual = DeduplicationChecker.check(batch, "bank", existingKeys, false);
+
+        assertEquals(expected.getDuplicateCount(), actual.getDuplicateCount());
+        assertEquals(expected.getTotalCount(), actual.getTotalCount());
+        assertEquals(3, actual.getNonDuplicateBatch().size());
+        for (int i = 0; i < expected.getNonDuplicateRows().size(); i++) {
+            assertArrayEquals(expected.getNonDuplicateRows().get(i), actual.getNonDuplicateRows().get(i));
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Hashed keys
+    // -------------------------------------------------------------------------
+
+    @Test
+    public void hashedCheckMatchesExactCheck() {
+        List<String[]> rows = Arrays.asList(
+                bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF_0"),
+                bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", " "),      // composite dup
+                bankRow("EE1234", "003", "2024-06-03", "300.00", "EUR", "REF_2"),
+                bankRow("EE1234", "004", "2024-06-04", "400.00", "EUR", " REF_3"), // primary dup
+                new String[]{"EE1234", "005", "2024-06-05"}                        // short row
+        );
+        Set<String> existingKeys = new HashSet<>(Arrays.asList(
+                "REF_3", "EE1234|002|2024-06-02|200.00|EUR|", "REF_9"));
+        DedupKeySet existingHashes = new DedupKeySet();
+        for (String key : existingKeys) {
+            existingHashes.add(key);
+        }
+
+        DeduplicationResult expected = DeduplicationChecker.check(rows, "bank", existingKeys);
+        DeduplicationResult hashed = DeduplicationChecker.check(rows, "bank", existingHashes, false);
+
+        StatementBatch batch = new StatementBatch();
+        for (String[] row : rows) {
+            batch.add(row);
+        }
+        DeduplicationResult hashedBatch = DeduplicationChecker.check(batch, "bank", existingHashes, false);
+
+        for (DeduplicationResult actual : Arrays.asList(hashed, hashedBatch)) {
+            assertEquals(2, actual.getDuplicateCount());
+            assertEquals(expected.getTotalCount(), actual.getTotalCount());
+            assertEquals(expected.getNonDuplicateRows().size(), actual.getNonDuplicateRows().size());
+            for (int i = 0; i < expected.getNonDuplicateRows().size(); i++) {
+                assertArrayEquals(expected.getNonDuplicateRows().get(i), actual.getNonDuplicateRows().get(i));
+            }
+        }
+    }
+
+    @Test
+    public void hashedStreamLooksUpRowHashes() throws Exception {
+        List<String[]> rows = Arrays.asList(
+                secuRow("2024-06-01", "2024-06-01", "BUY", "AAPL", "1000.00", "USD", "SREF_A"),
+                secuRow("2024-06-02", "2024-06-02", "SELL", "AAPL", "500.00", "USD", ""),
+                secuRow("2024-06-03", "2024-06-03", "BUY", "MSFT", "700.00", "USD", "SREF_C")
+        );
+        DedupKeySet existingHashes = new DedupKeySet();
+        existingHashes.add("SREF_C");
+        int[] lookedUp = new int[1];
+        DeduplicatingRowCursor.HashedKeyLookup lookup = (chunk, his, los, count) -> {
+            lookedUp[0] += count;
+            return existingHashes;
+        };
+
+        try (DeduplicatingRowCursor cursor = new DeduplicatingRowCursor(
+                RowCursor.fromList(rows), "secu", lookup, null)) {
+            assertEquals("SREF_A", cursor.nextRow()[11]);
+            assertEquals("", cursor.nextRow()[11]);
+            assertNull(cursor.nextRow());
+            assertEquals(1, cursor.getDuplicateCount());
+            assertEquals(3, cursor.getTotalCount());
+        }
+        assertEquals(3, lookedUp[0]);
+    }
+
+    // --- Parallel classification ---
+
+    @Test
+    public void parallelCheckMatchesSequentialCheck() {
+        // Several fork-join leaves, the last one partial
+        int count = 3 * DeduplicationChecker.PARALLEL_LEAF_ROWS + 17;
+        List<String[]> rows = new ArrayList<>(count);
+        Set<String> existingKeys = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            String ref = (i % 3 == 0) ? "" : "REF_" + i;
+            String[] row = bankRow("EE1234", String.valueOf(i), "2024-06-01", i + ".00", "EUR", ref);
+            rows.add(row);
+            if (i % 7 == 0) {
+                existingKeys.add(DeduplicationChecker.extractKey(row, 17, new int[]{0, 1, 2, 7, 12}));
+            }
+        }
+        DedupKeySet existingHashes = new DedupKeySet();
+        for (String key : existingKeys) {
+            existingHashes.add(key);
+        }
+        StatementBatch batch = new StatementBatch();
+        for (String[] row : rows) {
+            batch.add(row);
+        }
+        long[] his = new long[count];
+        long[] los = new long[count];
+        DedupKeyHash.Hasher hasher = DeduplicationChecker.hasher("bank");
+        long[] hash = new long[2];
+        for (int i = 0; i < count; i++) {
+            hasher.hash(rows.get(i), hash);
+            his[i] = hash[0];
+            los[i] = hash[1];
+        }
+
+        DeduplicationResult expected = DeduplicationChecker.check(rows, "bank", existingKeys);
+        assertEquals(existingKeys.size(), expected.getDuplicateCount());
+
+        List<DeduplicationResult> parallel = Arrays.asList(
+                DeduplicationChecker.check(rows, "bank", existingKeys, true),
+                DeduplicationChecker.check(new LinkedList<>(rows), "bank", existingKeys, true),
+                DeduplicationChecker.check(rows, "bank", existingHashes, true),
+                DeduplicationChecker.check(batch, "bank", existingKeys, true),
+                DeduplicationChecker.check(batch, "bank", existingHashes, true),
+                DeduplicationChecker.check(rows, his, los, existingHashes, false),
+                DeduplicationChecker.check(rows, his, los, existingHashes, true));
+        for (DeduplicationResult actual : parallel) {
+            assertEquals(expected.getDuplicateCount(), actual.getDuplicateCount());
+            assertEquals(expected.getTotalCount(), actual.getTotalCount());
+            assertEquals(expected.getNonDuplicateRows().size(), actual.getNonDuplicateRows().size());
+            for (int i = 0; i < expected.getNonDuplicateRows().size(); i++) {
+                assertArrayEquals(expected.getNonDuplicateRows().get(i), actual.getNonDuplicateRows().get(i));
+            }
+        }
+    }
+
+    @Test
+    public void forEachRangeCoversEveryRowOnce() {
+        int count = 2 * DeduplicationChecker.PARALLEL_LEAF_ROWS + 1;
+        int[] visits = new int[count];
+        DeduplicationChecker.forEachRange(count, true, (from, to) -> {
+            assertTrue(to - from <= DeduplicationChecker.PARALLEL_LEAF_ROWS);
+            for (int r = from; r < to; r++) {
+                visits[r]++;
+            }
+        });
+        for (int r = 0; r < count; r++) {
+            assertEquals(1, visits[r]);
+        }
+    }
+
+    // --- Metrics ---
+
+    @Test
+    public void resultCarriesClassificationMetrics() {
+        List<String[]> rows = Arrays.asList(
+                bankRow("EE1234", "001", "2024-06-01", "100.00", "EUR", "REF_0"),
+                bankRow("EE1234", "002", "2024-06-02", "200.00", "EUR", "REF_1"),
+                bankRow("EE1234", "003", "2024-06-03", "300.00", "EUR", "REF_2"),
+                bankRow("EE1234", "004", "2024-06-04", "400.00", "EUR", "REF_3"));
+        Set<String> existingKeys = new HashSet<>(Arrays.asList("REF_1"));
+
+        DedupMetrics metrics = DeduplicationChecker.check(rows, "bank", existingKeys).getMetrics();
+        assertEquals(4, metrics.getRowsChecked());
+        assertEquals(1, metrics.getDuplicates());
+        assertEquals(0.25, metrics.getHitRatio(), 1e-9);
+        assertTrue(metrics.getClassifyNanos() >= 0);
+
+        // Results built directly still report their counts
+        DedupMetrics direct = new DeduplicationResult(Collections.<String[]>emptyList(), 2, 2).getMetrics();
+        assertEquals(1.0, direct.getHitRatio(), 1e-9);
+    }
+
+    @Test
+    public void streamingCursorRecordsMetricsOnClose() throws Exception {
+        DeduplicationStats.get().reset();
+        List<String[]> rows = Arrays.asList(
+                secuRow("2024-06-01", "2024-06-01", "BUY", "AAPL", "100", "USD", "SREF_A"),
+                secuRow("2024-06-02", "2024-06-02", "BUY", "MSFT", "200", "USD", "SREF_B"));
+        Set<String> existingKeys = new HashSet<>(Arrays.asList("SREF_B"));
+
+        DeduplicatingRowCursor cursor = DeduplicationChecker.checkStream(
+                RowCursor.fromList(rows), "secu", existingKeys, null);
+        while (cursor.nextRow() != null) {
+            // drain
+        }
+        cursor.close();
+        cursor.close();
+
+        assertEquals(2, cursor.getMetrics().getRowsChecked());
+        assertEquals(1, cursor.getMetrics().getDuplicates());
+        assertEquals(1, DeduplicationStats.get().getChecks());
+        assertEquals(2, DeduplicationStats.get().getRowsChecked());
+    }
+
+    // --- Date-bounded key loading ---
+
+    @Test
+    public void statementWithinRangeIsLoadedWhole() {
+        assertTrue(DeduplicationChecker.within("2024-06-01", "2024-06-30", "2024-06-01", "2024-06-30"));
+        assertTrue(DeduplicationChecker.within("2024-06-10", "2024-06-20", "2024-06-01", "2024-06-30"));
+    }
+
+    @Test
+    public void statementBeyondRangeIsLoadedByDate() {
+        // A yearly statement next to a monthly upload
+        assertFalse(DeduplicationChecker.within("2024-01-01", "2024-12-31", "2024-06-01", "2024-06-30"));
+        assertFalse(DeduplicationChecker.within("2024-06-01", "2024-07-01", "2024-06-01", "2024-06-30"));
+        assertFalse(DeduplicationChecker.within(null, "2024-06-30", "2024-06-01", "2024-06-30"));
+    }
 }
@@ -0,0 +1,91 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DeduplicationStats} and {@link DedupMetrics}.
+ */
+public class DeduplicationStatsTest {
+
+    @Before
+    public void setUp() {
+        DeduplicationStats.get().reset();
+    }
+
+    private static DedupMetrics metrics(long rows, long duplicates, long primaryKeys, long lookupMillis) {
+        DedupMetrics metrics = new DedupMetrics();
+        metrics.addRows(rows, duplicates);
+        metrics.addOverlap(2, 1_000_000);
+        metrics.addKeysLoaded(primaryKeys, 5);
+        metrics.addLookupNanos(lookupMillis * 1_000_000);
+        return metrics;
+    }
+
+    @Test
+    public void metricsAddUp() {
+        DedupMetrics total = new DedupMetrics();
+        total.add(metrics(100, 25, 40, 3));
+        total.add(metrics(300, 75, 60, 5));
+
+        assertEquals(400, total.getRowsChecked());
+        assertEquals(100, total.getDuplicates());
+        assertEquals(0.25, total.getHitRatio(), 1e-9);
+        assertEquals(4, total.getOverlappingStatements());
+        assertEquals(100, total.getPrimaryKeysLoaded());
+        assertEquals(10, total.getCompositeKeysLoaded());
+        assertEquals(10_000_000L, total.getTotalNanos());
+        assertEquals(0, new DedupMetrics().getHitRatio(), 0);
+    }
+
+    @Test
+    public void recordedChecksAreTotalled() {
+        DeduplicationStats.record(metrics(100, 25, 40, 3));
+        DeduplicationStats.record(metrics(300, 75, 60, 5));
+
+        DeduplicationStats stats = DeduplicationStats.get();
+        assertEquals(2, stats.getChecks());
+        assertEquals(400, stats.getRowsChecked());
+        assertEquals(0.25, stats.getHitRatio(), 1e-9);
+        assertEquals(8.0, stats.getLookupMillis(), 1e-9);
+        assertEquals(5.0, stats.getMeanCheckMillis(), 1e-9);
+        assertEquals(6.0, stats.getLastCheckMillis(), 1e-9);
+        assertTrue(stats.getLastCheck().startsWith("300 rows, 75 duplicates"));
+
+        stats.reset();
+        assertEquals(0, stats.getChecks());
+        assertEquals(0, stats.getRowsChecked());
+        assertEquals("", stats.getLastCheck());
+    }
+
+    @Test
+    public void statsArePublishedOverJmx() throws Exception {
+        DeduplicationStats.record(metrics(10, 4, 1, 1));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(DeduplicationStats.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertEquals(1L, server.getAttribute(name, "Checks"));
+        assertEquals(0.4, (Double) server.getAttribute(name, "HitRatio"), 1e-9);
+    }
+
+    @Test
+    public void unregisterRemovesTheMBean() throws Exception {
+        DeduplicationStats.record(metrics(10, 4, 1, 1));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(DeduplicationStats.OBJECT_NAME);
+
+        DeduplicationStats.unregister();
+        assertFalse(server.isRegistered(name));
+        DeduplicationStats.unregister();
+
+        DeduplicationStats.record(metrics(10, 4, 1, 1));
+        assertTrue(server.isRegistered(name));
+    }
+}
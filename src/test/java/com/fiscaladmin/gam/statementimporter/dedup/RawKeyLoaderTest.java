@@ -0,0 +1,30 @@
+package com.fiscaladmin.gam.statementimporter.dedup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link RawKeyLoader}.
+ */
+public class RawKeyLoaderTest {
+
+    @Test
+    public void mysqlKeyQueriesStreamRowByRow() {
+        assertEquals(Integer.MIN_VALUE,
+                RawKeyLoader.driverFetchSize("MySQL", "jdbc:mysql://db/jwdb", 1000));
+        assertEquals(Integer.MIN_VALUE,
+                RawKeyLoader.driverFetchSize("MariaDB", "jdbc:mariadb://db/jwdb", 1000));
+        // Server-side cursors honour the configured size
+        assertEquals(1000, RawKeyLoader.driverFetchSize("MySQL",
+                "jdbc:mysql://db/jwdb?useCursorFetch=true", 1000));
+    }
+
+    @Test
+    public void keyQueryFetchSizeOtherwisePassesThrough() {
+        assertEquals(500, RawKeyLoader.driverFetchSize("PostgreSQL", "jdbc:postgresql://db/jwdb", 500));
+        assertEquals(500, RawKeyLoader.driverFetchSize("H2", "jdbc:h2:mem:test", 500));
+        assertEquals(0, RawKeyLoader.driverFetchSize("MySQL", "jdbc:mysql://db/jwdb", 0));
+        assertEquals(0, RawKeyLoader.driverFetchSize("H2", "jdbc:h2:mem:test", -1));
+    }
+}
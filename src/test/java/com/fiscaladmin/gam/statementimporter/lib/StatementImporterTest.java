@@ -1,6 +1,9 @@
 package com.fiscaladmin.gam.statementimporter.lib;
 
+import com.fiscaladmin.gam.statementimporter.dedup.AccountLocks;
+import com.fiscaladmin.gam.statementimporter.dedup.DeduplicationOptions;
 import com.fiscaladmin.gam.statementimporter.parser.Format;
+import com.fiscaladmin.gam.statementimporter.persister.PersistOptions;
 import org.junit.Test;
 
 import java.util.HashMap;
@@ -115,6 +118,98 @@ public class StatementImporterTest {
         assertEquals("Unknown error", plugin.truncateErrorMessage(null));
     }
 
+    @Test
+    public void dedupOptionsDefaultToHashedKeys() {
+        StatementImporter plugin = new StatementImporter();
+        Map<String, Object> properties = new HashMap<>();
+        assertEquals(DeduplicationOptions.KeyComparison.HASHED,
+                plugin.resolveDedupOptions(properties).getKeyComparison());
+
+        properties.put("dedupKeyComparison", "exact");
+        assertEquals(DeduplicationOptions.KeyComparison.EXACT,
+                plugin.resolveDedupOptions(properties).getKeyComparison());
+
+        properties.put("dedupKeyComparison", "bogus");
+        assertEquals(DeduplicationOptions.KeyComparison.HASHED,
+                plugin.resolveDedupOptions(properties).getKeyComparison());
+    }
+
+    @Test
+    public void dedupLookupStrategyDefaultsToAuto() {
+        StatementImporter plugin = new StatementImporter();
+        Map<String, Object> properties = new HashMap<>();
+        assertEquals(DeduplicationOptions.LookupStrategy.AUTO,
+                plugin.resolveDedupOptions(properties).getLookupStrategy());
+
+        properties.put("dedupLookupStrategy", "pushdown");
+        assertEquals(DeduplicationOptions.LookupStrategy.PUSHDOWN,
+                plugin.resolveDedupOptions(properties).getLookupStrategy());
+
+        properties.put("dedupLookupStrategy", "load_all");
+        assertEquals(DeduplicationOptions.LookupStrategy.LOAD_ALL,
+                plugin.resolveDedupOptions(properties).getLookupStrategy());
+    }
+
+    @Test
+    public void dedupKeyFetchSizeDefaultsToStreaming() {
+        StatementImporter plugin = new StatementImporter();
+        Map<String, Object> properties = new HashMap<>();
+        assertEquals(DeduplicationOptions.DEFAULT_KEY_FETCH_SIZE,
+                plugin.resolveDedupOptions(properties).getKeyFetchSize());
+
+        properties.put("dedupKeyFetchSize", " 5000 ");
+        assertEquals(5000, plugin.resolveDedupOptions(properties).getKeyFetchSize());
+
+        properties.put("dedupKeyFetchSize", "lots");
+        assertEquals(DeduplicationOptions.DEFAULT_KEY_FETCH_SIZE,
+                plugin.resolveDedupOptions(properties).getKeyFetchSize());
+    }
+
+    @Test
+    public void persistOptionsDefaultToConnectionCommits() {
+        StatementImporter plugin = new StatementImporter();
+        Map<String, Object> properties = new HashMap<>();
+        PersistOptions options = plugin.resolvePersistOptions(properties);
+        assertEquals(PersistOptions.DEFAULT_BATCH_SIZE, options.getBatchSize());
+        assertEquals(0, options.getCommitInterval());
+
+        properties.put("persistBatchSize", "500");
+        properties.put("persistCommitInterval", "50000");
+        options = plugin.resolvePersistOptions(properties);
+        assertEquals(500, options.getBatchSize());
+        assertEquals(50000, options.getCommitInterval());
+    }
+
+    @Test
+    public void importLockDefaultsToLocal() {
+        StatementImporter plugin = new StatementImporter();
+        Map<String, Object> properties = new HashMap<>();
+        assertEquals(AccountLocks.Scope.LOCAL, plugin.resolveLockScope(properties));
+
+        properties.put("importLock", "database");
+        assertEquals(AccountLocks.Scope.DATABASE, plugin.resolveLockScope(properties));
+    }
+
+    @Test
+    public void importsLockOnTheStatementAccount() {
+        StatementImporter plugin = new StatementImporter();
+        String[] bankRow = {" EE382200221020145680 ", "001"};
+        assertEquals("EE382200221020145680", plugin.lockAccountOf("bank", "LHV", bankRow));
+        // Securities rows carry no account number
+        assertEquals("LHV", plugin.lockAccountOf("secu", "LHV", new String[]{"2024-06-01"}));
+        assertEquals("LHV", plugin.lockAccountOf("bank", "LHV", new String[]{""}));
+    }
+
+    @Test
+    public void rowsAreEstimatedFromStatementSize() {
+        StatementImporter plugin = new StatementImporter();
+        String[] row = {"EE1234", "2024-06-01", "100.00", null};
+        // 6 + 10 + 6 characters and 4 separators
+        assertEquals(100, plugin.estimateRows(2600, row));
+        assertEquals(0, plugin.estimateRows(-1, row));
+        assertEquals(0, plugin.estimateRows(2600, null));
+    }
+
     // ─────────────────────────────────────────────────────────────────
     //  Format account type validation contract
     // ─────────────────────────────────────────────────────────────────
@@ -99,4 +99,12 @@ public class MappingConfigurationsTest {
     }
 
     // TODO: T2.3 — Add more specific index→column pair assertions
+
+    @Test
+    public void csvIndicesFollowMappingOrder() {
+        int[] indices = MappingConfigurations.LHV_BANK_CONFIG.getCsvIndices();
+        assertEquals(18, indices.length);
+        assertEquals(0, indices[0]);
+        assertEquals(17, indices[17]);
+    }
 }
@@ -0,0 +1,104 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CharsetSnifferTest {
+
+    private static Charset sniff(byte[] bytes) {
+        return CharsetSniffer.sniff(ByteBuffer.wrap(bytes));
+    }
+
+    // ── Sniffing ────────────────────────────────────────────────────────
+
+    @Test
+    public void bomMeansUtf8() {
+        assertEquals(StandardCharsets.UTF_8, sniff(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a'}));
+    }
+
+    @Test
+    public void asciiAndValidUtf8AreUtf8() {
+        assertEquals(StandardCharsets.UTF_8, sniff("\"Dok nr\";\"Summa\"".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(StandardCharsets.UTF_8, sniff("VÄÄRTUSPÄEV,TEHINGUPÄEV".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(StandardCharsets.UTF_8, sniff(new byte[0]));
+    }
+
+    @Test
+    public void estonianLettersInSingleByteAreWindows1257() {
+        assertEquals(CharsetSniffer.WINDOWS_1257,
+                sniff("VÄÄRTUSPÄEV,TEHINGUPÄEV".getBytes(CharsetSniffer.WINDOWS_1257)));
+    }
+
+    @Test
+    public void c1RangeMeansWindows1257() {
+        // "€" is 0x80 in Windows-1257 and a C1 control in ISO-8859-13
+        assertEquals(CharsetSniffer.WINDOWS_1257, sniff("Summa 5€ õ".getBytes(CharsetSniffer.WINDOWS_1257)));
+    }
+
+    @Test
+    public void isoQuotationMarksMeanIso885913() {
+        // "„" is 0xA5 in ISO-8859-13 (0x84 in Windows-1257)
+        assertEquals(CharsetSniffer.ISO_8859_13, sniff("„Õun”".getBytes(CharsetSniffer.ISO_8859_13)));
+    }
+
+    @Test
+    public void utf8SequenceCutAtBlockEndIsStillUtf8() {
+        byte[] bytes = new byte[CharsetSniffer.SNIFF_BYTES + 10];
+        Arrays.fill(bytes, (byte) 'a');
+        bytes[CharsetSniffer.SNIFF_BYTES - 1] = (byte) 0xC3; // first byte of "ä"
+        bytes[CharsetSniffer.SNIFF_BYTES] = (byte) 0xA4;
+        assertEquals(StandardCharsets.UTF_8, sniff(bytes));
+    }
+
+    @Test
+    public void malformedUtf8IsRejected() {
+        assertFalse(CharsetSniffer.isWellFormedUtf8(ByteBuffer.wrap(new byte[]{(byte) 0xC0, (byte) 0x80}), 2, false));
+        assertFalse(CharsetSniffer.isWellFormedUtf8(ByteBuffer.wrap(new byte[]{(byte) 0xED, (byte) 0xA0, (byte) 0x80}), 3, false));
+        assertFalse(CharsetSniffer.isWellFormedUtf8(ByteBuffer.wrap(new byte[]{'a', (byte) 0xC3}), 2, false));
+    }
+
+    // ── Single-byte decoding ────────────────────────────────────────────
+
+    @Test
+    public void decoderMatchesJdkForEveryByte() {
+        for (Charset charset : new Charset[]{CharsetSniffer.WINDOWS_1257, CharsetSniffer.ISO_8859_13}) {
+            byte[] all = new byte[256];
+            for (int b = 0; b < 256; b++) {
+                all[b] = (byte) b;
+            }
+            SingleByteDecoder decoder = SingleByteDecoder.forCharset(charset);
+            assertNotNull(decoder);
+            assertEquals(charset.name(), new String(all, charset), decoder.decode(all, 0, 256));
+        }
+    }
+
+    @Test
+    public void decoderNotAvailableForMultiByteCharsets() {
+        assertNull(SingleByteDecoder.forCharset(StandardCharsets.UTF_8));
+        assertNull(SingleByteDecoder.forCharset(StandardCharsets.UTF_16));
+    }
+
+    @Test
+    public void decoderReaderDecodesStream() throws IOException {
+        String text = "Õie Šmidt;Žürii\n";
+        SingleByteDecoder decoder = SingleByteDecoder.forCharset(CharsetSniffer.WINDOWS_1257);
+        StringBuilder sb = new StringBuilder();
+        try (Reader reader = decoder.newReader(new ByteArrayInputStream(text.getBytes(CharsetSniffer.WINDOWS_1257)))) {
+            char[] buf = new char[4];
+            int n;
+            while ((n = reader.read(buf, 0, buf.length)) > 0) {
+                sb.append(buf, 0, n);
+            }
+        }
+        assertEquals(text, sb.toString());
+    }
+}
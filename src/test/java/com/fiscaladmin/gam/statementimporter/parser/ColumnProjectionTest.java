@@ -0,0 +1,78 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ColumnProjectionTest {
+
+    private static String[] raw(int count) {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = "v" + i;
+        }
+        return values;
+    }
+
+    @Test
+    public void allKeepsEveryColumnForSecurities() {
+        ColumnProjection projection = ColumnProjection.all(Format.SECURITIES);
+        for (int i = 0; i < 13; i++) {
+            assertTrue(projection.isNeeded(i));
+        }
+        assertArrayEquals(raw(13), projection.project(raw(13), 13));
+    }
+
+    @Test
+    public void allDropsEmptyLhvColumn() {
+        ColumnProjection projection = ColumnProjection.all(Format.LHV_BANK);
+        assertFalse(projection.isNeeded(6));
+
+        String[] row = projection.project(raw(19), 19);
+        assertEquals(18, row.length);
+        assertEquals("v5", row[5]);
+        assertEquals("v7", row[6]);
+        assertEquals("v18", row[17]);
+    }
+
+    @Test
+    public void projectOnlyReadsCountFieldsFromReusedBuffer() {
+        String[] buffer = raw(20);
+        String[] row = ColumnProjection.all(Format.SWEDBANK).project(buffer, 14);
+        assertEquals(14, row.length);
+        assertEquals("v13", row[13]);
+    }
+
+    @Test
+    public void selectedIndicesMapToParsedPositions() {
+        ColumnProjection projection = ColumnProjection.of(Format.LHV_BANK, new int[]{0, 6}, new int[]{6, 17});
+
+        assertTrue(projection.isNeeded(0));
+        assertFalse(projection.isNeeded(6));   // "Tühi"
+        assertTrue(projection.isNeeded(7));    // parsed 6
+        assertTrue(projection.isNeeded(18));   // parsed 17
+        assertFalse(projection.isNeeded(1));
+        assertFalse(projection.isNeeded(19));
+
+        String[] row = projection.project(raw(19), 19);
+        assertEquals(18, row.length);
+        assertEquals("v0", row[0]);
+        assertEquals("v7", row[6]);
+        assertEquals("v18", row[17]);
+        assertNull(row[1]);
+    }
+
+    @Test
+    public void shortRecordLeavesMissingPositionsNull() {
+        ColumnProjection projection = ColumnProjection.of(Format.SECURITIES, new int[]{0, 11});
+        String[] row = projection.project(raw(5), 5);
+        assertEquals(12, row.length);
+        assertEquals("v0", row[0]);
+        assertNull(row[11]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeIndexIsRejected() {
+        ColumnProjection.of(Format.SECURITIES, new int[]{-1});
+    }
+}
@@ -0,0 +1,144 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import com.fiscaladmin.gam.statementimporter.mapping.FieldMapping;
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfig;
+import com.fiscaladmin.gam.statementimporter.mapping.MappingConfigurations;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FormatRegistryTest {
+
+    private static final MappingConfig BROKER_CONFIG = new MappingConfig("app_fd_sec_account_trx",
+            Arrays.asList(
+                    new FieldMapping(0, "c_value_date"),
+                    new FieldMapping(1, "c_ticker"),
+                    new FieldMapping(2, "c_amount")));
+
+    /** Semicolon-separated broker export with two filler columns (raw 1 and 3). */
+    private static FormatDefinition broker() {
+        return new FormatDefinition("TEST_BROKER", "secu", ';', "sec_account_trx",
+                ParseEngine.MAPPED, new int[]{3, 1},
+                Collections.singletonList(Arrays.asList("Trade Date", "ISIN")), BROKER_CONFIG);
+    }
+
+    private File createTempCsv(String content) throws IOException {
+        File tempFile = File.createTempFile("test-csv-registry-", ".csv");
+        tempFile.deleteOnExit();
+        try (OutputStream os = new FileOutputStream(tempFile)) {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return tempFile;
+    }
+
+    @Test
+    public void builtInsDetectInOriginalPriority() throws Exception {
+        FormatRegistry registry = FormatRegistry.withBuiltIns();
+        assertEquals(Format.SECURITIES, registry.detect("\"VÄÄRTUSPÄEV\",\"TEHINGUPÄEV\"").getBuiltIn());
+        assertEquals(Format.LHV_BANK, registry.detect("\"Kliendi konto\",\"Dokumendi number\"").getBuiltIn());
+        assertEquals(Format.SWEDBANK, registry.detect("\"Kliendi konto\";\"Dok nr\"").getBuiltIn());
+
+        // Securities wins over LHV when both signatures are present
+        assertEquals(Format.SECURITIES,
+                registry.detect("väärtuspäev,dokumendi number,tehingupäev").getBuiltIn());
+    }
+
+    @Test
+    public void builtInDefinitionsMirrorEnum() {
+        for (Format format : Format.values()) {
+            FormatDefinition definition = FormatRegistry.builtIn(format);
+            assertEquals(format.name(), definition.getName());
+            assertEquals(format.getSeparator(), definition.getSeparator());
+            assertEquals(format.getTargetTable(), definition.getTargetTable());
+            assertSame(MappingConfigurations.getConfig(format), definition.getMappingConfig());
+            assertSame(format, definition.getBuiltIn());
+        }
+        assertArrayEquals(new int[]{6}, FormatRegistry.builtIn(Format.LHV_BANK).getIgnoredColumns());
+    }
+
+    @Test
+    public void signatureNeedsEveryKeyword() throws Exception {
+        try {
+            FormatRegistry.withBuiltIns().detect("\"VÄÄRTUSPÄEV\",\"SUMMA\"");
+            fail("Expected UnrecognisedFormatException");
+        } catch (UnrecognisedFormatException e) {
+            assertEquals("\"VÄÄRTUSPÄEV\",\"SUMMA\"", e.getHeaderLine());
+        }
+    }
+
+    @Test
+    public void bomIsStrippedBeforeMatchingAndInDiagnostics() throws Exception {
+        FormatRegistry registry = FormatRegistry.withBuiltIns();
+        assertEquals(Format.SWEDBANK, registry.detect("\uFEFF\"Dok nr\"").getBuiltIn());
+        try {
+            registry.detect("\uFEFFfoo");
+            fail("Expected UnrecognisedFormatException");
+        } catch (UnrecognisedFormatException e) {
+            assertEquals("foo", e.getHeaderLine());
+        }
+    }
+
+    @Test(expected = UnrecognisedFormatException.class)
+    public void nullHeaderIsEmptyFile() throws Exception {
+        FormatRegistry.withBuiltIns().detect(null);
+    }
+
+    @Test
+    public void registeredFormatIsDetectedWithoutTouchingBuiltIns() throws Exception {
+        FormatRegistry registry = FormatRegistry.withBuiltIns();
+        registry.register(broker());
+
+        assertEquals(4, registry.getDefinitions().size());
+        assertEquals("TEST_BROKER", registry.detect("\"Trade Date\";\"Filler\";\"ISIN\"").getName());
+        assertNotNull(registry.find("TEST_BROKER"));
+        assertNull(FormatRegistry.withBuiltIns().find("TEST_BROKER"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateNameIsRejected() {
+        FormatRegistry registry = FormatRegistry.withBuiltIns();
+        registry.register(broker());
+        registry.register(broker());
+    }
+
+    @Test
+    public void registeredFormatParsesWithItsIgnoredColumns() throws Exception {
+        FormatRegistry registry = FormatRegistry.withBuiltIns();
+        registry.register(broker());
+        File file = createTempCsv("\"Trade Date\";\"x\";\"ISIN\";\"y\";\"Amount\"\n"
+                + "2024-06-01;-;US0378331005;-;100.50\n");
+
+        try (StatementSession session = StatementSession.open(file, registry)) {
+            FormatDefinition format = session.getFormat();
+            assertEquals("TEST_BROKER", format.getName());
+
+            try (RowCursor rows = session.rows(ColumnProjection.of(format, format.getMappingConfig().getCsvIndices()))) {
+                assertArrayEquals(new String[]{"2024-06-01", "US0378331005", "100.50"}, rows.nextRow());
+                assertNull(rows.nextRow());
+            }
+        }
+
+        List<String[]> allColumns = new ArrayList<>();
+        try (RowCursor rows = StatementParser.open(file, broker(), ParseEngine.COMMONS_CSV,
+                ColumnProjection.all(broker()))) {
+            String[] row;
+            while ((row = rows.nextRow()) != null) {
+                allColumns.add(row);
+            }
+        }
+        assertArrayEquals(new String[]{"2024-06-01", "US0378331005", "100.50"}, allColumns.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void definitionWithoutSignatureIsRejected() {
+        new FormatDefinition("EMPTY", "bank", ',', "bank_account_trx", ParseEngine.COMMONS_CSV,
+                new int[0], Collections.emptyList(), BROKER_CONFIG);
+    }
+}
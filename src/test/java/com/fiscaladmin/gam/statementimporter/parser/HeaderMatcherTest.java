@@ -0,0 +1,52 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HeaderMatcherTest {
+
+    private List<Integer> matches(HeaderMatcher matcher, String text) {
+        List<Integer> found = new ArrayList<>();
+        matcher.match(text, found::add);
+        Collections.sort(found);
+        return found;
+    }
+
+    @Test
+    public void findsOverlappingKeywords() {
+        // Classic Aho-Corasick example: "ushers" contains she, he and hers
+        HeaderMatcher matcher = new HeaderMatcher(Arrays.asList("he", "she", "his", "hers"));
+        assertEquals(Arrays.asList(0, 1, 3), matches(matcher, "ushers"));
+    }
+
+    @Test
+    public void reportsEveryOccurrence() {
+        HeaderMatcher matcher = new HeaderMatcher(Collections.singletonList("ab"));
+        assertEquals(Arrays.asList(0, 0, 0), matches(matcher, "abxabab"));
+    }
+
+    @Test
+    public void followsFailureLinksAcrossPartialMatches() {
+        HeaderMatcher matcher = new HeaderMatcher(Arrays.asList("dokumendi number", "dok nr"));
+        assertEquals(Collections.singletonList(1), matches(matcher, "kliendi konto,dokumendi nr,dok nr"));
+        assertEquals(Collections.singletonList(0), matches(matcher, "konto,dokdokumendi number,summa"));
+    }
+
+    @Test
+    public void handlesNonAsciiKeywords() {
+        HeaderMatcher matcher = new HeaderMatcher(Arrays.asList("väärtuspäev", "tehingupäev"));
+        assertEquals(Arrays.asList(0, 1), matches(matcher, "väärtuspäev,tehingupäev,tehing"));
+    }
+
+    @Test
+    public void noKeywordsMatchesNothing() {
+        HeaderMatcher matcher = new HeaderMatcher(Collections.emptyList());
+        assertTrue(matches(matcher, "anything").isEmpty());
+    }
+}
@@ -0,0 +1,161 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ParallelCsvCursorTest {
+
+    private static final String HEADER = "\"DATE\",\"REF\",\"TEXT\",\"AMOUNT\"";
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    // ── Helpers ──────────────────────────────────────────────────────────
+
+    private File createTempCsv(String content) throws IOException {
+        File tempFile = File.createTempFile("test-csv-parallel-", ".csv");
+        tempFile.deleteOnExit();
+        try (OutputStream os = new FileOutputStream(tempFile)) {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return tempFile;
+    }
+
+    private List<String[]> drain(RowCursor cursor) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (RowCursor c = cursor) {
+            String[] row;
+            while ((row = c.nextRow()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private List<String[]> sequential(File file) throws IOException {
+        return drain(StatementParser.open(file, Format.SECURITIES, ParseEngine.COMMONS_CSV));
+    }
+
+    private void assertSameRows(List<String[]> expected, List<String[]> actual) {
+        assertEquals("row count", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("row " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    /**
+     * Builds rows whose text field alternates between plain values, quoted values
+     * containing separators, escaped quotes and line breaks.
+     */
+    private String buildContent(int rows) {
+        StringBuilder sb = new StringBuilder(HEADER).append("\r\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append("2024-06-").append(String.format("%02d", i % 28 + 1)).append(',')
+                    .append("REF").append(i).append(',');
+            switch (i % 4) {
+                case 0:
+                    sb.append("plain text ").append(i);
+                    break;
+                case 1:
+                    sb.append("\"with, comma ").append(i).append('"');
+                    break;
+                case 2:
+                    sb.append("\"multi\nline \"\"quoted\"\"\n").append(i).append('"');
+                    break;
+                default:
+                    sb.append("\"\"");
+                    break;
+            }
+            sb.append(',').append(i).append(".50").append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        return sb.toString();
+    }
+
+    // ── Tests ────────────────────────────────────────────────────────────
+
+    @Test
+    public void smallChunksMatchSequentialParseInOrder() throws Exception {
+        File file = createTempCsv(buildContent(500));
+
+        ParallelCsvCursor cursor = ParallelCsvCursor.open(file, ',', null, 64, pool);
+        assertTrue("expected many chunks", cursor.getBounds().length > 20);
+        List<String[]> rows = drain(cursor);
+
+        assertSameRows(sequential(file), rows);
+        assertFalse(cursor.isSequential());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals("REF" + i, rows.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void boundariesStartOnRecords() throws Exception {
+        String content = buildContent(200);
+        File file = createTempCsv(content);
+
+        int[] bounds = ParallelCsvCursor.open(file, ',', null, 50, pool).getBounds();
+        for (int i = 1; i < bounds.length - 1; i++) {
+            assertTrue("boundary increasing", bounds[i] > bounds[i - 1]);
+            // Each inner boundary is directly after a record's line break, before a date
+            assertEquals('\n', content.getBytes(StandardCharsets.UTF_8)[bounds[i] - 1]);
+            assertEquals("2024-06-", new String(content.getBytes(StandardCharsets.UTF_8),
+                    bounds[i], 8, StandardCharsets.UTF_8));
+        }
+        assertEquals(content.getBytes(StandardCharsets.UTF_8).length, bounds[bounds.length - 1]);
+    }
+
+    @Test
+    public void singleChunkWhenFileIsSmallerThanChunkSize() throws Exception {
+        File file = createTempCsv(buildContent(3));
+
+        ParallelCsvCursor cursor = ParallelCsvCursor.open(file, ',', null, 1024 * 1024, pool);
+        assertEquals(2, cursor.getBounds().length);
+        assertSameRows(sequential(file), drain(cursor));
+    }
+
+    @Test
+    public void bareQuoteFallsBackToSequentialWithSameRows() throws Exception {
+        // A literal quote inside an unquoted field flips quote parity for every later chunk
+        StringBuilder sb = new StringBuilder(buildContent(40));
+        sb.append("2024-07-01,REF-BARE,5\" screen,1.00\n");
+        sb.append(buildContent(200).substring(HEADER.length() + 2));
+        File file = createTempCsv(sb.toString());
+
+        ParallelCsvCursor cursor = ParallelCsvCursor.open(file, ',', null, 64, pool);
+        List<String[]> rows = drain(cursor);
+
+        assertTrue(cursor.isSequential());
+        assertSameRows(sequential(file), rows);
+        assertEquals("5\" screen", rows.get(40)[2]);
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedFileStillThrows() throws Exception {
+        File file = createTempCsv(buildContent(100) + "2024-07-01,REF-X,\"unterminated,1.00\n");
+        drain(ParallelCsvCursor.open(file, ',', null, 64, pool));
+    }
+
+    @Test
+    public void headerOnlyFileYieldsNoRows() throws Exception {
+        File file = createTempCsv(HEADER + "\n");
+        assertTrue(drain(ParallelCsvCursor.open(file, ',', null, 64, pool)).isEmpty());
+    }
+}
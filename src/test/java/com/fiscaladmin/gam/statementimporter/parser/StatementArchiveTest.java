@@ -0,0 +1,199 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class StatementArchiveTest {
+
+    private static final String SECU_CSV =
+            "\"VÄÄRTUSPÄEV\",\"TEHINGUPÄEV\",\"TEHING\",\"SÜMBOL\",\"VÄÄRTPABER\","
+                    + "\"KOGUS\",\"HIND\",\"VALUUTA\",\"NETOSUMMA\",\"TEENUSTASU\","
+                    + "\"KOKKU\",\"VIIDE\",\"KOMMENTAAR\"\n"
+                    + "2024-06-07,2024-06-05,\"ost\",\"AAPL\",\"Apple Inc\",10,150.50,"
+                    + "\"USD\",-1505.00,-5.00,-1510.00,\"REF001\",\"\"\n"
+                    + "2024-06-08,2024-06-06,\"müük\",\"MSFT\",\"Microsoft\",5,300.00,"
+                    + "\"EUR\",1500.00,-3.00,1497.00,\"\",\"\"\n";
+
+    private static final String SWEDBANK_CSV =
+            "\"Kliendi konto\";\"Dok nr\";\"Makse kuupäev\";\"Saaja/maksja konto\";"
+                    + "\"Saaja/maksja nimi\";\"Saaja/maksja pank\";\"D/C\";\"Summa\";"
+                    + "\"Viitenumber\";\"Arhiveerimistunnus\";\"Selgitus\";\"Teenustasu\";"
+                    + "\"Valuuta\";\"Isikukood/registrikood\"\n"
+                    + "\"EE999\";\"SW001\";\"2024-06-01\";\"EE888\";\"Õie Šmidt\";"
+                    + "\"Swedbank\";\"C\";\"200.00\";\"REF1\";\"ARCH1\";"
+                    + "\"Swedbank payment\";\"1.00\";\"EUR\";\"11223344\"\n";
+
+    // ── Helpers ──────────────────────────────────────────────────────────
+
+    private File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("test-archive-", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private File gzip(String content) throws IOException {
+        File file = tempFile(".csv.gz");
+        try (OutputStream os = new GZIPOutputStream(new FileOutputStream(file))) {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    /** Entries as alternating name / content; {@code null} content makes a directory. */
+    private File zip(Object... entries) throws IOException {
+        File file = tempFile(".zip");
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                zos.putNextEntry(new ZipEntry((String) entries[i]));
+                if (entries[i + 1] != null) {
+                    zos.write((byte[]) entries[i + 1]);
+                }
+                zos.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private List<String[]> drain(RowCursor cursor) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (RowCursor c = cursor) {
+            String[] row;
+            while ((row = c.nextRow()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private File plain(String content) throws IOException {
+        File file = tempFile(".csv");
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    // ── Tests ────────────────────────────────────────────────────────────
+
+    @Test
+    public void compressionIsDetectedFromMagicBytes() throws Exception {
+        assertEquals(StatementArchive.Compression.GZIP, StatementArchive.detectCompression(gzip(SECU_CSV)));
+        assertEquals(StatementArchive.Compression.ZIP,
+                StatementArchive.detectCompression(zip("a.csv", SECU_CSV.getBytes(StandardCharsets.UTF_8))));
+        assertEquals(StatementArchive.Compression.NONE, StatementArchive.detectCompression(plain(SECU_CSV)));
+        assertEquals(StatementArchive.Compression.NONE, StatementArchive.detectCompression(plain("")));
+    }
+
+    @Test
+    public void plainFileIsOneStatement() throws Exception {
+        File file = plain(SECU_CSV);
+        try (StatementArchive archive = StatementArchive.open(file, FormatRegistry.getDefault(), null)) {
+            try (StatementSession session = archive.nextStatement()) {
+                assertEquals(Format.SECURITIES, session.getFormat().getBuiltIn());
+                assertEquals(file.getName(), archive.getEntryName());
+                assertEquals(2, drain(session.rows()).size());
+            }
+            assertNull(archive.nextStatement());
+        }
+    }
+
+    @Test
+    public void gzipRowsMatchPlainFile() throws Exception {
+        List<String[]> expected = StatementParser.parse(plain(SECU_CSV), Format.SECURITIES);
+
+        File file = gzip(SECU_CSV);
+        try (StatementArchive archive = StatementArchive.open(file, FormatRegistry.getDefault(), null)) {
+            List<String[]> rows;
+            try (StatementSession session = archive.nextStatement()) {
+                assertEquals(Format.SECURITIES, session.getFormat().getBuiltIn());
+                rows = drain(session.rows());
+            }
+            assertFalse(archive.getEntryName().endsWith(".gz"));
+            assertNull(archive.nextStatement());
+
+            assertEquals(expected.size(), rows.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), rows.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void entrySizeIsTheUncompressedSize() throws Exception {
+        long size = SECU_CSV.getBytes(StandardCharsets.UTF_8).length;
+        for (File file : new File[]{plain(SECU_CSV), gzip(SECU_CSV)}) {
+            try (StatementArchive archive = StatementArchive.open(file, FormatRegistry.getDefault(), null)) {
+                archive.nextStatement().close();
+                assertEquals(size, archive.getEntrySize());
+            }
+        }
+    }
+
+    @Test
+    public void zipEntriesAreSeparateStatements() throws Exception {
+        File file = zip(
+                "bundle/", null,
+                "bundle/secu.csv", SECU_CSV.getBytes(StandardCharsets.UTF_8),
+                "__MACOSX/bundle/._secu.csv", new byte[]{0, 5, 22, 7},
+                "bundle/.DS_Store", new byte[]{1, 2, 3},
+                "bundle/swedbank.csv", SWEDBANK_CSV.getBytes(CharsetSniffer.WINDOWS_1257));
+
+        try (StatementArchive archive = StatementArchive.open(file, FormatRegistry.getDefault(), null)) {
+            try (StatementSession first = archive.nextStatement()) {
+                assertEquals("bundle/secu.csv", archive.getEntryName());
+                assertEquals(Format.SECURITIES, first.getFormat().getBuiltIn());
+                assertEquals(StandardCharsets.UTF_8, first.getCharset());
+                assertEquals(2, drain(first.rows()).size());
+            }
+            try (StatementSession second = archive.nextStatement()) {
+                assertEquals("bundle/swedbank.csv", archive.getEntryName());
+                assertEquals(Format.SWEDBANK, second.getFormat().getBuiltIn());
+                assertEquals(CharsetSniffer.WINDOWS_1257, second.getCharset());
+                List<String[]> rows = drain(second.rows());
+                assertEquals(1, rows.size());
+                assertEquals("Õie Šmidt", rows.get(0)[4]);
+            }
+            assertNull(archive.nextStatement());
+        }
+    }
+
+    @Test
+    public void unreadZipEntryIsSkipped() throws Exception {
+        File file = zip(
+                "a.csv", SECU_CSV.getBytes(StandardCharsets.UTF_8),
+                "b.csv", SWEDBANK_CSV.getBytes(StandardCharsets.UTF_8));
+
+        try (StatementArchive archive = StatementArchive.open(file, FormatRegistry.getDefault(), null)) {
+            archive.nextStatement().close(); // rows never opened
+            try (StatementSession second = archive.nextStatement()) {
+                assertEquals(Format.SWEDBANK, second.getFormat().getBuiltIn());
+                assertEquals(1, drain(second.rows()).size());
+            }
+        }
+    }
+
+    @Test
+    public void emptyZipHasNoStatements() throws Exception {
+        try (StatementArchive archive = StatementArchive.open(zip("docs/", null),
+                FormatRegistry.getDefault(), null)) {
+            assertNull(archive.nextStatement());
+        }
+    }
+
+    @Test(expected = UnrecognisedFormatException.class)
+    public void unknownEntryHeaderThrows() throws Exception {
+        File file = zip("readme.txt", "Monthly bundle\n".getBytes(StandardCharsets.UTF_8));
+        try (StatementArchive archive = StatementArchive.open(file, FormatRegistry.getDefault(), null)) {
+            archive.nextStatement();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StatementBatchTest {
+
+    private static String[] row(String... values) {
+        return values;
+    }
+
+    private static List<String[]> sampleRows(int count) {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(row("EE12345678", (i % 3 == 0) ? "D" : "C", "Payment no. " + i,
+                    (i % 5 == 0) ? null : "EUR", String.valueOf(i * 7)));
+        }
+        return rows;
+    }
+
+    @Test
+    public void rowsRoundTrip() {
+        List<String[]> rows = sampleRows(500);
+        StatementBatch batch = new StatementBatch();
+        for (String[] r : rows) {
+            batch.add(r);
+        }
+
+        assertEquals(500, batch.size());
+        assertEquals(5, batch.width());
+        for (int i = 0; i < rows.size(); i++) {
+            assertArrayEquals("row " + i, rows.get(i), batch.row(i));
+        }
+    }
+
+    @Test
+    public void lowCardinalityColumnsShareValues() {
+        StatementBatch batch = new StatementBatch();
+        for (String[] r : sampleRows(500)) {
+            batch.add(r);
+        }
+
+        assertTrue(batch.isDictionaryEncoded(0));
+        assertTrue(batch.isDictionaryEncoded(1));
+        assertTrue(batch.isDictionaryEncoded(3));
+        assertFalse("free text", batch.isDictionaryEncoded(2));
+        assertFalse("mostly distinct", batch.isDictionaryEncoded(4));
+
+        assertSame(batch.get(1, 0), batch.get(499, 0));
+        assertSame(batch.get(1, 1), batch.get(2, 1));
+    }
+
+    @Test
+    public void columnSwitchesToTextAfterDictionaryLimit() {
+        StatementBatch batch = new StatementBatch();
+        // Repeats each value so the probe keeps the dictionary, then exceeds its size
+        for (int i = 0; i < (StatementBatch.MAX_DICTIONARY_SIZE + 1) * 2; i++) {
+            batch.add(row("V" + (i / 2)));
+        }
+        assertFalse(batch.isDictionaryEncoded(0));
+        assertEquals("V0", batch.get(0, 0));
+        assertEquals("V" + StatementBatch.MAX_DICTIONARY_SIZE, batch.get(batch.size() - 1, 0));
+    }
+
+    @Test
+    public void rowsOfDifferentWidthKeepTheirWidth() {
+        StatementBatch batch = new StatementBatch();
+        batch.add(row("a", "b"));
+        batch.add(row("c", "d", "e", null));
+        batch.add(row());
+
+        assertEquals(4, batch.width());
+        assertArrayEquals(row("a", "b"), batch.row(0));
+        assertArrayEquals(row("c", "d", "e", null), batch.row(1));
+        assertEquals(0, batch.row(2).length);
+        assertNull(batch.get(0, 2));
+        assertNull(batch.get(0, 10));
+    }
+
+    @Test
+    public void selectKeepsOrderAndIsReadOnly() {
+        List<String[]> rows = sampleRows(100);
+        StatementBatch batch = new StatementBatch();
+        for (String[] r : rows) {
+            batch.add(r);
+        }
+
+        StatementBatch view = batch.select(new int[]{99, 3, 50, 0}, 3);
+        assertEquals(3, view.size());
+        assertArrayEquals(rows.get(99), view.row(0));
+        assertArrayEquals(rows.get(3), view.row(1));
+        assertArrayEquals(rows.get(50), view.row(2));
+
+        // Appending to the source does not disturb the view
+        batch.add(row("X", "Y", "Z", "W", "V"));
+        assertArrayEquals(rows.get(50), view.row(2));
+
+        try {
+            view.add(row("x"));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // read-only
+        }
+    }
+
+    @Test
+    public void readAndCursorMatchSource() throws IOException {
+        List<String[]> rows = sampleRows(70);
+        StatementBatch batch = StatementBatch.read(RowCursor.fromList(rows));
+
+        List<String[]> back = new ArrayList<>();
+        try (RowCursor cursor = batch.cursor()) {
+            String[] r;
+            while ((r = cursor.nextRow()) != null) {
+                back.add(r);
+            }
+        }
+        assertEquals(rows.size(), back.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertTrue("row " + i, Arrays.equals(rows.get(i), back.get(i)));
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.fiscaladmin.gam.statementimporter.parser;
 
+import com.fiscaladmin.gam.statementimporter.dedup.DeduplicationChecker;
 import com.fiscaladmin.gam.statementimporter.mapping.MappingConfigurations;
 import org.junit.Test;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -35,6 +38,40 @@ public class StatementParserTest {
         return tempFile;
     }
 
+    private File createTempCsv(String content, Charset charset) throws IOException {
+        File tempFile = File.createTempFile("test-csv-", ".csv");
+        tempFile.deleteOnExit();
+        try (OutputStream os = new FileOutputStream(tempFile)) {
+            os.write(content.getBytes(charset));
+        }
+        return tempFile;
+    }
+
+    /**
+     * Asserts that every parse engine returns the same rows as Commons CSV for the file.
+     */
+    private void assertEnginesAgree(File file, Format format) throws IOException {
+        List<String[]> expected = readAll(file, format, ParseEngine.COMMONS_CSV);
+        for (ParseEngine engine : new ParseEngine[]{ParseEngine.MAPPED, ParseEngine.PARALLEL}) {
+            List<String[]> actual = readAll(file, format, engine);
+            assertEquals(engine + " row count", expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(engine + " row " + i, expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    private List<String[]> readAll(File file, Format format, ParseEngine engine) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (RowCursor cursor = StatementParser.open(file, format, engine)) {
+            String[] row;
+            while ((row = cursor.nextRow()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
     // ── Header constants ────────────────────────────────────────────────
 
     private static final String LHV_HEADER =
@@ -70,6 +107,7 @@ public class StatementParserTest {
 
         File file = createTempCsv(content);
         List<String[]> rows = StatementParser.parse(file, Format.LHV_BANK);
+        assertEnginesAgree(file, Format.LHV_BANK);
 
         assertEquals(2, rows.size());
         assertEquals(18, rows.get(0).length);   // 19 - 1 stripped
@@ -102,6 +140,7 @@ public class StatementParserTest {
 
         File file = createTempCsv(content);
         List<String[]> rows = StatementParser.parse(file, Format.SECURITIES);
+        assertEnginesAgree(file, Format.SECURITIES);
 
         assertEquals(2, rows.size());
         assertEquals(13, rows.get(0).length);
@@ -128,6 +167,7 @@ public class StatementParserTest {
 
         File file = createTempCsv(content);
         List<String[]> rows = StatementParser.parse(file, Format.SWEDBANK);
+        assertEnginesAgree(file, Format.SWEDBANK);
 
         assertEquals(1, rows.size());
         assertEquals(14, rows.get(0).length);
@@ -155,6 +195,7 @@ public class StatementParserTest {
 
         File file = createTempCsvWithBom(content);
         List<String[]> rows = StatementParser.parse(file, Format.SECURITIES);
+        assertEnginesAgree(file, Format.SECURITIES);
 
         assertEquals(1, rows.size());
         assertEquals(13, rows.get(0).length);
@@ -171,6 +212,7 @@ public class StatementParserTest {
 
         File file = createTempCsv(content);
         List<String[]> rows = StatementParser.parse(file, Format.LHV_BANK);
+        assertEnginesAgree(file, Format.LHV_BANK);
 
         assertEquals(1, rows.size());
         assertEquals(18, rows.get(0).length);
@@ -186,6 +228,284 @@ public class StatementParserTest {
         assertEquals("Interest payment", rows.get(0)[10]); // payment_description
     }
 
+    // ── Streaming cursor tests ──────────────────────────────────────────
+
+    @Test
+    public void openCursorYieldsSameRowsAsParse() throws Exception {
+        String content = LHV_HEADER + "\r\n"
+                + "\"EE123\",\"DOC001\",\"2024-06-01\",\"EE456\",\"John Doe\",\"BANK\",\"\","
+                + "\"C\",\"100.00\",\"REF1\",\"ARCH1\",\"Test payment\","
+                + "\"0.50\",\"EUR\",\"12345678\",\"SWIFT1\",\"Init1\",\"TX001\",\"PROV001\"\r\n"
+                + "\"EE123\",\"DOC002\",\"2024-06-02\",\"EE789\",\"Jane Doe\",\"BANK2\",\"\","
+                + "\"D\",\"-50.00\",\"REF2\",\"ARCH2\",\"Another payment\","
+                + "\"0.25\",\"USD\",\"87654321\",\"SWIFT2\",\"Init2\",\"TX002\",\"PROV002\"\r\n";
+
+        File file = createTempCsv(content);
+        List<String[]> expected = StatementParser.parse(file, Format.LHV_BANK);
+
+        try (RowCursor cursor = StatementParser.open(file, Format.LHV_BANK)) {
+            for (String[] expectedRow : expected) {
+                assertArrayEquals(expectedRow, cursor.nextRow());
+            }
+            assertNull(cursor.nextRow());
+            assertNull("Exhausted cursor stays exhausted", cursor.nextRow());
+        }
+    }
+
+    @Test
+    public void openCursorOnHeaderOnlyFileIsImmediatelyExhausted() throws Exception {
+        File file = createTempCsvWithBom(SECU_HEADER + "\r\n");
+        try (RowCursor cursor = StatementParser.open(file, Format.SECURITIES)) {
+            assertNull(cursor.nextRow());
+        }
+    }
+
+    // ── Engine equivalence ──────────────────────────────────────────────
+
+    @Test
+    public void enginesAgreeOnQuotingEdgeCases() throws Exception {
+        String content = SECU_HEADER + "\n"
+                // escaped quotes, separator and line break inside a quoted field
+                + "2024-06-07,2024-06-05,\"ost\",\"AAPL\",\"Apple \"\"Inc\"\", ltd\nline 2\",10,150.50,"
+                + "\"USD\",-1505.00,-5.00,-1510.00,\"REF001\",\"\"\r\n"
+                // blank lines are skipped
+                + "\r\n\n"
+                // surrounding whitespace, whitespace after closing quote, trailing empty field
+                + "  2024-06-08 ,2024-06-06,\"müük\"  ,MSFT, Microsoft Corp ,5,300.00,"
+                + "EUR,1500.00,-3.00,1497.00,REF002,\n"
+                // last record without a line break
+                + "2024-06-09,2024-06-07,\"ost\",\"TSLA\",\"Tesla\",1,200.00,"
+                + "\"USD\",-200.00,-1.00,-201.00,\"REF003\",\"ülevaade\"";
+
+        File file = createTempCsv(content);
+        assertEnginesAgree(file, Format.SECURITIES);
+
+        List<String[]> rows = readAll(file, Format.SECURITIES, ParseEngine.MAPPED);
+        assertEquals(3, rows.size());
+        assertEquals("Apple \"Inc\", ltd\nline 2", rows.get(0)[4]);
+        assertEquals("2024-06-08", rows.get(1)[0]);
+        assertEquals("müük", rows.get(1)[2]);
+        assertEquals("Microsoft Corp", rows.get(1)[4]);
+        assertEquals("", rows.get(1)[12]);
+        assertEquals("ülevaade", rows.get(2)[12]);
+    }
+
+    @Test
+    public void mappedEngineHandlesBomAndSemicolonSeparator() throws Exception {
+        String content = SWEDBANK_HEADER + "\n"
+                + "\"EE999\";\"SW001\";\"2024-06-01\";\"EE888\";\"Test; Person\";"
+                + "\"Swedbank\";\"C\";\"200.00\";\"REF1\";\"ARCH1\";"
+                + "\"Swedbank payment\";\"1.00\";\"EUR\";\"11223344\"\n";
+
+        File file = createTempCsvWithBom(content);
+        assertEnginesAgree(file, Format.SWEDBANK);
+
+        List<String[]> rows = readAll(file, Format.SWEDBANK, ParseEngine.MAPPED);
+        assertEquals(1, rows.size());
+        assertEquals("EE999", rows.get(0)[0]);
+        assertEquals("Test; Person", rows.get(0)[4]);
+    }
+
+    @Test
+    public void enginesDecodeWindows1257() throws Exception {
+        String content = SWEDBANK_HEADER + "\n"
+                + "\"EE999\";\"SW001\";\"2024-06-01\";\"EE888\";\"Õie Šmidt\";"
+                + "\"Swedbank\";\"C\";\"200.00\";\"REF1\";\"ARCH1\";"
+                + "\"Makse \"\"Žürii\"\"\";\"1.00\";\"EUR\";\"11223344\"\n";
+
+        File file = createTempCsv(content, CharsetSniffer.WINDOWS_1257);
+        assertEnginesAgree(file, Format.SWEDBANK);
+
+        List<String[]> rows = readAll(file, Format.SWEDBANK, ParseEngine.MAPPED);
+        assertEquals(1, rows.size());
+        assertEquals("Õie Šmidt", rows.get(0)[4]);
+        assertEquals("Makse \"Žürii\"", rows.get(0)[10]);
+    }
+
+    @Test
+    public void explicitCharsetOverridesSniffing() throws Exception {
+        String content = SECU_HEADER + "\n"
+                + "2024-06-07,2024-06-05,\"müük\",\"AAPL\",\"Apple Inc\",10,150.50,"
+                + "\"USD\",-1505.00,-5.00,-1510.00,\"REF001\",\"\"\n";
+        File file = createTempCsv(content, StandardCharsets.UTF_8);
+
+        // Decoding UTF-8 bytes as ISO-8859-13 splits each non-ASCII letter in two
+        try (RowCursor cursor = StatementParser.open(file, FormatRegistry.builtIn(Format.SECURITIES),
+                ParseEngine.MAPPED, ColumnProjection.all(Format.SECURITIES), CharsetSniffer.ISO_8859_13)) {
+            assertEquals(new String("müük".getBytes(StandardCharsets.UTF_8), CharsetSniffer.ISO_8859_13),
+                    cursor.nextRow()[2]);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void mappedEngineRejectsUnterminatedQuote() throws Exception {
+        File file = createTempCsv(SECU_HEADER + "\n2024-06-07,\"unterminated\n");
+        readAll(file, Format.SECURITIES, ParseEngine.MAPPED);
+    }
+
+    @Test
+    public void everyEngineRejectsAHeaderWithAMissingName() throws Exception {
+        File file = createTempCsv(SECU_HEADER.replace("\"TEHING\"", "\"\"")
+                + "\n2024-06-07,2024-06-05,ost,AAPL,Apple Inc,10,150.50,USD,-1505.00,-1.00,-1506.00,R1,\n");
+        for (ParseEngine engine : ParseEngine.values()) {
+            try {
+                readAll(file, Format.SECURITIES, engine);
+                fail(engine + " accepted a header with a missing name");
+            } catch (IllegalArgumentException expected) {
+                // as Commons CSV reports it
+            }
+        }
+    }
+
+    // ── Quote-free fast path ────────────────────────────────────────────
+
+    private List<String[]> readCommonsCsv(String content, Format format, boolean fastPath) throws IOException {
+        FormatDefinition definition = FormatRegistry.builtIn(format);
+        List<String[]> rows = new ArrayList<>();
+        try (RowCursor cursor = StatementParser.openCommonsCsv(new BufferedReader(new StringReader(content)),
+                definition, ColumnProjection.all(definition), fastPath)) {
+            String[] row;
+            while ((row = cursor.nextRow()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private void assertFastPathAgrees(String content, Format format) throws IOException {
+        List<String[]> expected = readCommonsCsv(content, format, false);
+        List<String[]> actual = readCommonsCsv(content, format, true);
+        assertEquals("row count", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("row " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void fastPathMatchesCommonsCsv() throws Exception {
+        String content = "\uFEFF" + SECU_HEADER + "\r\n"
+                // unquoted, with surrounding whitespace and a trailing empty field
+                + " 2024-06-08 ,2024-06-06,müük,MSFT, Microsoft Corp ,5,300.00,EUR,1500.00,-3.00,1497.00,REF002,\r\n"
+                // every field quoted, whitespace after a closing quote
+                + "\"2024-06-09\",\"2024-06-07\",\"ost\"  ,\"TSLA\",\"Tesla\",\"1\",\"200.00\","
+                + "\"USD\",\"-200.00\",\"-1.00\",\"-201.00\",\"REF003\",\"\"\r"
+                // escaped quotes, separator and CRLF inside a quoted field
+                + "2024-06-07,2024-06-05,\"ost\",\"AAPL\",\"Apple \"\"Inc\"\", ltd\r\nline 2\",10,150.50,"
+                + "\"USD\",-1505.00,-5.00,-1510.00,\"REF001\",\"\"\n"
+                // blank lines are skipped, a whitespace-only line is a record
+                + "\n\r\n   \n"
+                // quote inside an unquoted field is literal
+                + "2024-06-10,2024-06-08,ost,AAPL,27\" monitor,1,1.00,EUR,1.00,0,1.00,REF004,x\n"
+                // last record without a line break
+                + "2024-06-11,2024-06-09,\"ost\",\"TSLA\",\"Tesla\",1,200.00,USD,-200.00,-1.00,-201.00,REF005,y";
+        assertFastPathAgrees(content, Format.SECURITIES);
+
+        List<String[]> rows = readCommonsCsv(content, Format.SECURITIES, true);
+        assertEquals(6, rows.size());
+        assertEquals("Microsoft Corp", rows.get(0)[4]);
+        assertEquals("", rows.get(0)[12]);
+        assertEquals("ost", rows.get(1)[2]);
+        assertEquals("Apple \"Inc\", ltd\r\nline 2", rows.get(2)[4]);
+        assertEquals("27\" monitor", rows.get(4)[4]);
+        assertEquals("y", rows.get(5)[12]);
+    }
+
+    @Test
+    public void fastPathSplitsPlainLinesWithoutCommonsCsv() throws Exception {
+        String content = SWEDBANK_HEADER + "\n"
+                + "EE999;SW001;2024-06-01;EE888;Test Person;Swedbank;C;200.00;REF1;ARCH1;Pay;1.00;EUR;1\n"
+                + "\"EE999\";\"SW002\";\"2024-06-02\";\"EE888\";\"Test; Person\";\"Swedbank\";\"D\";\"-5.00\";"
+                + "\"REF2\";\"ARCH2\";\"Fee\";\"0.00\";\"EUR\";\"1\"\n"
+                + "\"EE999\";\"SW003\";\"2024-06-03\";\"EE888\";\"Test\";\"Swedbank\";\"D\";\"-5.00\";"
+                + "\"REF3\";\"ARCH3\";\"Quoted \"\"text\"\"\";\"0.00\";\"EUR\";\"1\"\n";
+        assertFastPathAgrees(content, Format.SWEDBANK);
+
+        FormatDefinition definition = FormatRegistry.builtIn(Format.SWEDBANK);
+        try (FastPathCsvCursor cursor = (FastPathCsvCursor) StatementParser.openCommonsCsv(
+                new BufferedReader(new StringReader(content)), definition, ColumnProjection.all(definition))) {
+            assertEquals("Pay", cursor.nextRow()[10]);
+            assertEquals("Test; Person", cursor.nextRow()[4]);
+            assertEquals("Quoted \"text\"", cursor.nextRow()[10]); // "" escape needs Commons CSV
+            assertNull(cursor.nextRow());
+            assertEquals(2, cursor.getFastRowCount());
+            assertEquals(1, cursor.getFallbackRowCount());
+        }
+    }
+
+    @Test
+    public void fastPathHandlesRecordsLongerThanItsBuffer() throws Exception {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            description.append("word").append(i % 10).append(' ');
+        }
+        String content = SECU_HEADER + "\n"
+                + "2024-06-07,2024-06-05,ost,AAPL," + description + ",10,150.50,USD,-1.00,0,-1.00,R1,\n"
+                + "2024-06-07,2024-06-05,ost,AAPL,\"" + description + "\n" + description + "\",10,150.50,USD,"
+                + "-1.00,0,-1.00,R2,\n";
+        assertFastPathAgrees(content, Format.SECURITIES);
+        assertEquals(2, readCommonsCsv(content, Format.SECURITIES, true).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void fastPathRejectsUnterminatedQuote() throws Exception {
+        readCommonsCsv(SECU_HEADER + "\n2024-06-07,\"unterminated\n", Format.SECURITIES, true);
+    }
+
+    // ── Column projection ───────────────────────────────────────────────
+
+    private static final String LHV_TWO_ROWS = LHV_HEADER + "\r\n"
+            + "\"EE123\",\"DOC001\",\"2024-06-01\",\"EE456\",\"John Doe\",\"BANK\",\"\","
+            + "\"C\",\"100.00\",\"REF1\",\"ARCH1\",\"Test payment\","
+            + "\"0.50\",\"EUR\",\"12345678\",\"SWIFT1\",\"Init1\",\"TX001\",\"PROV001\"\r\n"
+            + "\"EE123\",\"DOC002\",\"2024-06-02\",\"EE789\",\"Jane Doe\",\"BANK2\",\"\","
+            + "\"D\",\"-50.00\",\"REF2\",\"ARCH2\",\"Another payment\","
+            + "\"0.25\",\"USD\",\"87654321\",\"SWIFT2\",\"Init2\",\"TX002\",\"PROV002\"\r\n";
+
+    @Test
+    public void importProjectionMatchesFullParseForLhv() throws Exception {
+        File file = createTempCsv(LHV_TWO_ROWS);
+        ColumnProjection projection = ColumnProjection.of(Format.LHV_BANK,
+                MappingConfigurations.LHV_BANK_CONFIG.getCsvIndices(),
+                DeduplicationChecker.keyIndices("bank"));
+
+        List<String[]> expected = StatementParser.parse(file, Format.LHV_BANK);
+        for (ParseEngine engine : ParseEngine.values()) {
+            List<String[]> rows = new ArrayList<>();
+            try (RowCursor cursor = StatementParser.open(file, Format.LHV_BANK, engine, projection)) {
+                String[] row;
+                while ((row = cursor.nextRow()) != null) {
+                    rows.add(row);
+                }
+            }
+            assertEquals(expected.size(), rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                assertArrayEquals(engine + " row " + i, expected.get(i), rows.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void partialProjectionLeavesOtherPositionsNull() throws Exception {
+        File file = createTempCsv(LHV_TWO_ROWS);
+        // Parsed 6 (d_c) is raw 7; parsed 17 (provider_reference) is raw 18
+        ColumnProjection projection = ColumnProjection.of(Format.LHV_BANK, new int[]{2, 6, 17});
+
+        for (ParseEngine engine : ParseEngine.values()) {
+            try (RowCursor cursor = StatementParser.open(file, Format.LHV_BANK, engine, projection)) {
+                String[] row = cursor.nextRow();
+                assertEquals(18, row.length);
+                assertEquals("2024-06-01", row[2]);
+                assertEquals("C", row[6]);
+                assertEquals("PROV001", row[17]);
+                assertNull(engine + " unprojected column", row[0]);
+                assertNull(engine + " unprojected column", row[7]);
+
+                assertEquals("PROV002", cursor.nextRow()[17]);
+                assertNull(cursor.nextRow());
+            }
+        }
+    }
+
     // ── Integration tests (real CSV files) ──────────────────────────────
 
     @Test
@@ -196,6 +516,7 @@ public class StatementParserTest {
         }
 
         List<String[]> rows = StatementParser.parse(realFile, Format.LHV_BANK);
+        assertEnginesAgree(realFile, Format.LHV_BANK);
         assertEquals(161, rows.size());
         assertEquals(18, rows.get(0).length);
 
@@ -225,6 +546,7 @@ public class StatementParserTest {
         }
 
         List<String[]> rows = StatementParser.parse(realFile, Format.SECURITIES);
+        assertEnginesAgree(realFile, Format.SECURITIES);
         assertEquals(45, rows.size());
         assertEquals(13, rows.get(0).length);
 
@@ -0,0 +1,250 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StatementSessionTest {
+
+    // ── Helpers ──────────────────────────────────────────────────────────
+
+    private File createTempCsv(byte[] content) throws IOException {
+        File tempFile = File.createTempFile("test-csv-session-", ".csv");
+        tempFile.deleteOnExit();
+        try (OutputStream os = new FileOutputStream(tempFile)) {
+            os.write(content);
+        }
+        return tempFile;
+    }
+
+    private File createTempCsv(String content) throws IOException {
+        return createTempCsv(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private File createTempCsvWithBom(String content) throws IOException {
+        byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[body.length + 3];
+        bytes[0] = (byte) 0xEF;
+        bytes[1] = (byte) 0xBB;
+        bytes[2] = (byte) 0xBF;
+        System.arraycopy(body, 0, bytes, 3, body.length);
+        return createTempCsv(bytes);
+    }
+
+    private List<String[]> drain(RowCursor cursor) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (RowCursor c = cursor) {
+            String[] row;
+            while ((row = c.nextRow()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Asserts that a session detects the same format and yields the same rows as
+     * the separate detect + parse calls.
+     */
+    private void assertSameAsDetectAndParse(File file) throws Exception {
+        Format expectedFormat = CsvFormatDetector.detect(file);
+        List<String[]> expected = StatementParser.parse(file, expectedFormat);
+
+        List<String[]> rows;
+        try (StatementSession session = StatementSession.open(file)) {
+            assertEquals(expectedFormat, session.getFormat().getBuiltIn());
+            rows = drain(session.rows());
+        }
+
+        assertEquals(expected.size(), rows.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("row " + i, expected.get(i), rows.get(i));
+        }
+    }
+
+    // ── Header constants ────────────────────────────────────────────────
+
+    private static final String LHV_HEADER =
+            "\"Kliendi konto\",\"Dokumendi number\",\"Kuupäev\",\"Saaja/maksja konto\","
+                    + "\"Saaja/maksja nimi\",\"Saaja panga kood\",\"Tühi\",\"Deebet/Kreedit (D/C)\","
+                    + "\"Summa\",\"Viitenumber\",\"Arhiveerimistunnus\",\"Selgitus\","
+                    + "\"Teenustasu\",\"Valuuta\",\"Isikukood või registrikood\","
+                    + "\"Saaja/maksja panga BIC\",\"Makse algataja nimi\","
+                    + "\"Kande viide\",\"Konto teenusepakkuja viide\"";
+
+    private static final String SWEDBANK_HEADER =
+            "\"Kliendi konto\";\"Dok nr\";\"Makse kuupäev\";\"Saaja/maksja konto\";"
+                    + "\"Saaja/maksja nimi\";\"Saaja/maksja pank\";\"D/C\";\"Summa\";"
+                    + "\"Viitenumber\";\"Arhiveerimistunnus\";\"Selgitus\";\"Teenustasu\";"
+                    + "\"Valuuta\";\"Isikukood/registrikood\"";
+
+    private static final String SECU_HEADER =
+            "\"VÄÄRTUSPÄEV\",\"TEHINGUPÄEV\",\"TEHING\",\"SÜMBOL\",\"VÄÄRTPABER\","
+                    + "\"KOGUS\",\"HIND\",\"VALUUTA\",\"NETOSUMMA\",\"TEENUSTASU\","
+                    + "\"KOKKU\",\"VIIDE\",\"KOMMENTAAR\"";
+
+    // ── Unit tests ──────────────────────────────────────────────────────
+
+    @Test
+    public void lhvSessionMatchesDetectAndParse() throws Exception {
+        assertSameAsDetectAndParse(createTempCsv(LHV_HEADER + "\r\n"
+                + "\"EE123\",\"DOC001\",\"2024-06-01\",\"EE456\",\"John Doe\",\"BANK\",\"\","
+                + "\"C\",\"100.00\",\"REF1\",\"ARCH1\",\"Test payment\","
+                + "\"0.50\",\"EUR\",\"12345678\",\"SWIFT1\",\"Init1\",\"TX001\",\"PROV001\"\r\n"));
+    }
+
+    @Test
+    public void swedbankSessionWithBomMatchesDetectAndParse() throws Exception {
+        assertSameAsDetectAndParse(createTempCsvWithBom(SWEDBANK_HEADER + "\n"
+                + "\"EE999\";\"SW001\";\"2024-06-01\";\"EE888\";\"Test Person\";"
+                + "\"Swedbank\";\"C\";\"200.00\";\"REF1\";\"ARCH1\";"
+                + "\"Swedbank payment\";\"1.00\";\"EUR\";\"11223344\"\n"));
+    }
+
+    @Test
+    public void securitiesSessionMatchesDetectAndParse() throws Exception {
+        assertSameAsDetectAndParse(createTempCsv(SECU_HEADER + "\n"
+                + "2024-06-07,2024-06-05,\"ost\",\"AAPL\",\"Apple Inc\",10,150.50,"
+                + "\"USD\",-1505.00,-5.00,-1510.00,\"REF001\",\"\"\n"
+                + "2024-06-08,2024-06-06,\"müük\",\"MSFT\",\"Microsoft\",5,300.00,"
+                + "\"EUR\",1500.00,-3.00,1497.00,\"\",\"\"\n"));
+    }
+
+    @Test
+    public void projectedRowsFromSession() throws Exception {
+        File file = createTempCsv(SECU_HEADER + "\n"
+                + "2024-06-07,2024-06-05,\"ost\",\"AAPL\",\"Apple Inc\",10,150.50,"
+                + "\"USD\",-1505.00,-5.00,-1510.00,\"REF001\",\"\"\n");
+
+        try (StatementSession session = StatementSession.open(file)) {
+            List<String[]> rows = drain(session.rows(ColumnProjection.of(Format.SECURITIES, new int[]{11})));
+            assertEquals(1, rows.size());
+            assertEquals("REF001", rows.get(0)[11]);
+            assertNull(rows.get(0)[0]);
+        }
+    }
+
+    @Test
+    public void windows1257SessionDetectsAndDecodes() throws Exception {
+        File file = createTempCsv((SECU_HEADER + "\n"
+                + "2024-06-07,2024-06-05,\"müük\",\"AAPL\",\"Õun Šokolaad\",10,150.50,"
+                + "\"USD\",-1505.00,-5.00,-1510.00,\"REF001\",\"\"\n").getBytes(CharsetSniffer.WINDOWS_1257));
+
+        assertSameAsDetectAndParse(file);
+        try (StatementSession session = StatementSession.open(file)) {
+            assertEquals(Format.SECURITIES, session.getFormat().getBuiltIn());
+            assertEquals(CharsetSniffer.WINDOWS_1257, session.getCharset());
+            String[] row = drain(session.rows()).get(0);
+            assertEquals("müük", row[2]);
+            assertEquals("Õun Šokolaad", row[4]);
+        }
+    }
+
+    @Test
+    public void windows1257LhvSessionUsesCommonsCsvWithTable() throws Exception {
+        File file = createTempCsv((LHV_HEADER + "\r\n"
+                + "\"EE123\",\"DOC001\",\"2024-06-01\",\"EE456\",\"Jüri Õispuu\",\"BANK\",\"\","
+                + "\"C\",\"100.00\",\"REF1\",\"ARCH1\",\"Makse\","
+                + "\"0.50\",\"EUR\",\"12345678\",\"SWIFT1\",\"Init1\",\"TX001\",\"PROV001\"\r\n")
+                .getBytes(CharsetSniffer.WINDOWS_1257));
+
+        assertSameAsDetectAndParse(file);
+        try (StatementSession session = StatementSession.open(file)) {
+            assertEquals("Jüri Õispuu", drain(session.rows()).get(0)[4]);
+        }
+    }
+
+    @Test
+    public void utf8SessionReportsUtf8() throws Exception {
+        File file = createTempCsvWithBom(SECU_HEADER + "\n");
+        try (StatementSession session = StatementSession.open(file)) {
+            assertEquals(StandardCharsets.UTF_8, session.getCharset());
+        }
+    }
+
+    @Test
+    public void recordedCharsetSkipsSniffing() throws Exception {
+        // Pure ASCII sniffs as UTF-8; a recorded charset is used as given
+        File file = createTempCsv("\"Kliendi konto\";\"Dok nr\"\n\"EE1\";\"1\"\n");
+        try (StatementSession session = StatementSession.open(
+                file, FormatRegistry.getDefault(), CharsetSniffer.ISO_8859_13)) {
+            assertEquals(Format.SWEDBANK, session.getFormat().getBuiltIn());
+            assertEquals(CharsetSniffer.ISO_8859_13, session.getCharset());
+        }
+    }
+
+    @Test
+    public void streamSessionMatchesFileSession() throws Exception {
+        String content = SWEDBANK_HEADER + "\n"
+                + "\"EE999\";\"SW001\";\"2024-06-01\";\"EE888\";\"Õie Šmidt\";"
+                + "\"Swedbank\";\"C\";\"200.00\";\"REF1\";\"ARCH1\";"
+                + "\"Swedbank payment\";\"1.00\";\"EUR\";\"11223344\"\n";
+        byte[] bytes = content.getBytes(CharsetSniffer.WINDOWS_1257);
+        List<String[]> expected = StatementParser.parse(createTempCsv(bytes), Format.SWEDBANK);
+
+        try (StatementSession session = StatementSession.open(
+                new ByteArrayInputStream(bytes), FormatRegistry.getDefault(), null)) {
+            assertEquals(Format.SWEDBANK, session.getFormat().getBuiltIn());
+            assertEquals(CharsetSniffer.WINDOWS_1257, session.getCharset());
+            List<String[]> rows = drain(session.rows());
+            assertEquals(expected.size(), rows.size());
+            assertArrayEquals(expected.get(0), rows.get(0));
+        }
+    }
+
+    @Test
+    public void unknownHeaderThrowsWithHeaderLine() throws Exception {
+        File file = createTempCsv("\"Col A\",\"Col B\"\n1,2\n");
+        try {
+            StatementSession.open(file);
+            fail("Expected UnrecognisedFormatException");
+        } catch (UnrecognisedFormatException e) {
+            assertEquals("\"Col A\",\"Col B\"", e.getHeaderLine());
+        }
+    }
+
+    @Test(expected = UnrecognisedFormatException.class)
+    public void emptyFileThrows() throws Exception {
+        StatementSession.open(createTempCsv(new byte[0]));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rowsCanOnlyBeOpenedOnce() throws Exception {
+        File file = createTempCsv(SECU_HEADER + "\n");
+        try (StatementSession session = StatementSession.open(file)) {
+            session.rows().close();
+            session.rows();
+        }
+    }
+
+    @Test
+    public void readFirstLineStopsAtCrOrLf() {
+        ByteBuffer crlf = ByteBuffer.wrap("a,b\r\nc,d\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals("a,b", StatementSession.readFirstLine(crlf));
+
+        ByteBuffer noEol = ByteBuffer.wrap("väärtus".getBytes(StandardCharsets.UTF_8));
+        assertEquals("väärtus", StatementSession.readFirstLine(noEol));
+
+        assertNull(StatementSession.readFirstLine(ByteBuffer.allocate(0)));
+        assertEquals("", StatementSession.readFirstLine(ByteBuffer.wrap(new byte[]{'\n', 'x'})));
+    }
+
+    // ── Integration tests (real sample files) ───────────────────────────
+
+    @Test
+    public void realFilesMatchDetectAndParse() throws Exception {
+        File bankFile = new File("test-data/bank_statement.csv");
+        File secuFile = new File("test-data/secu_statement.csv");
+        if (!bankFile.exists() || !secuFile.exists()) {
+            return; // skip in environments without sample data
+        }
+        assertSameAsDetectAndParse(bankFile);
+        assertSameAsDetectAndParse(secuFile);
+    }
+}
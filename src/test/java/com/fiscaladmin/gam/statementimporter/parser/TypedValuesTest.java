@@ -0,0 +1,167 @@
+package com.fiscaladmin.gam.statementimporter.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TypedValuesTest {
+
+    private static long cents(String text) {
+        return TypedValues.parseMinorUnits(text, 2);
+    }
+
+    // ── Amounts ─────────────────────────────────────────────────────────
+
+    @Test
+    public void plainAmounts() {
+        assertEquals(1250L, cents("12.50"));
+        assertEquals(-1250L, cents("-12.50"));
+        assertEquals(1250L, cents("+12,5"));
+        assertEquals(1200L, cents("12"));
+        assertEquals(5L, cents("0.05"));
+        assertEquals(0L, cents("0"));
+        assertEquals(0L, cents("-0,00"));
+    }
+
+    @Test
+    public void estonianGroupingAndDecimalComma() {
+        assertEquals(123456L, cents("1 234,56"));
+        assertEquals(-123456L, cents("-1 234,56"));
+        assertEquals(123456789L, cents("1 234 567,89"));
+        assertEquals(123456L, cents("  1 234,56  "));
+        assertEquals(-123456L, cents("\u22121 234,56"));
+    }
+
+    @Test
+    public void lastSeparatorIsDecimalWhenBothOccur() {
+        assertEquals(123456L, cents("1.234,56"));
+        assertEquals(123456L, cents("1,234.56"));
+        assertEquals(123456789L, cents("1.234.567,89"));
+    }
+
+    @Test
+    public void repeatedSeparatorGroups() {
+        assertEquals(123456700L, cents("1.234.567"));
+        assertEquals(123456700L, cents("1,234,567"));
+    }
+
+    @Test
+    public void extraFractionDigitsMustBeZero() {
+        assertEquals(1250L, cents("12.5000"));
+        assertEquals(TypedValues.NO_AMOUNT, cents("12.505"));
+        assertEquals(12345678L, TypedValues.parseMinorUnits("0.12345678", 8));
+    }
+
+    @Test
+    public void loneSeparatorBeforeThreeDigitsIsAmbiguous() {
+        for (String text : Arrays.asList("1,000", "1.000", "1,234", "-1.234", "123,456", "1 234,567")) {
+            assertEquals("'" + text + "'", TypedValues.NO_AMOUNT, cents(text));
+            assertEquals("'" + text + "'", TypedValues.NO_AMOUNT, TypedValues.parseMinorUnits(text, 3));
+        }
+        // Unambiguous: grouping can not lead with a lone 0 or four digits, and
+        // two separators settle which one is decimal
+        assertEquals(125L, TypedValues.parseMinorUnits("0.125", 3));
+        assertEquals(1234567L, TypedValues.parseMinorUnits("1234.567", 3));
+        assertEquals(100000L, cents("1,000.00"));
+        assertEquals(100000000L, cents("1.000.000"));
+        assertEquals(100L, cents("1,0000"));
+        assertEquals(1000L, cents("10,00"));
+    }
+
+    @Test
+    public void invalidAmounts() {
+        for (String text : Arrays.asList(null, "", "   ", "-", "abc", "12a", "1 2 3,4 5", "1  000",
+                "12 ,50", "EUR 12", "--1", "1,2.3.4")) {
+            assertEquals("'" + text + "'", TypedValues.NO_AMOUNT, cents(text));
+        }
+    }
+
+    @Test
+    public void overflowIsInvalid() {
+        assertEquals(999999999999999999L, TypedValues.parseMinorUnits("999999999999999999", 0));
+        assertEquals(TypedValues.NO_AMOUNT, cents("99999999999999999"));
+        assertEquals(100L, cents("000000000000000000001"));
+    }
+
+    // ── Dates ───────────────────────────────────────────────────────────
+
+    @Test
+    public void isoAndDottedDates() {
+        long expected = LocalDate.of(2024, 6, 1).toEpochDay();
+        assertEquals(expected, TypedValues.parseEpochDay("2024-06-01"));
+        assertEquals(expected, TypedValues.parseEpochDay("01.06.2024"));
+        assertEquals(expected, TypedValues.parseEpochDay("1.6.2024"));
+        assertEquals(expected, TypedValues.parseEpochDay(" 01.06.2024 "));
+        assertEquals(0, TypedValues.parseEpochDay("1970-01-01"));
+        assertEquals(-1, TypedValues.parseEpochDay("31.12.1969"));
+    }
+
+    @Test
+    public void epochDayMatchesLocalDate() {
+        for (LocalDate d = LocalDate.of(1899, 1, 1); d.getYear() < 2101; d = d.plusDays(1)) {
+            assertEquals(d.toString(), d.toEpochDay(),
+                    TypedValues.toEpochDay(d.getYear(), d.getMonthValue(), d.getDayOfMonth()));
+        }
+    }
+
+    @Test
+    public void invalidDates() {
+        for (String text : Arrays.asList(null, "", "2024-13-01", "2024-02-30", "29.02.2023", "31.04.2024",
+                "01.06.24", "2024/06/01", "2024-6-1", "01.06.2024 10:00", "aa.bb.cccc", "0.06.2024")) {
+            assertEquals("'" + text + "'", TypedValues.NO_DATE, TypedValues.parseEpochDay(text));
+        }
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), TypedValues.parseEpochDay("29.02.2024"));
+    }
+
+    // ── TypedRowCursor ──────────────────────────────────────────────────
+
+    @Test
+    public void cursorDecodesBankColumnsAndKeepsRows() throws IOException {
+        String[] row = new String[18];
+        row[2] = "01.06.2024";
+        row[7] = "-1 234,56";
+        row[11] = "";
+        String[] bad = new String[18];
+        bad[2] = "tomorrow";
+        bad[7] = "n/a";
+
+        try (TypedRowCursor cursor = TypedRowCursor.forFormat(
+                RowCursor.fromList(Arrays.asList(row, bad)), FormatRegistry.builtIn(Format.LHV_BANK))) {
+            assertArrayEquals(new int[]{7, 11}, cursor.getAmountColumns());
+            assertArrayEquals(new int[]{2}, cursor.getDateColumns());
+
+            assertSame(row, cursor.nextRow());
+            assertEquals(-123456L, cursor.getAmount(7));
+            assertEquals(TypedValues.NO_AMOUNT, cursor.getAmount(11));
+            assertEquals(LocalDate.of(2024, 6, 1).toEpochDay(), cursor.getEpochDay(2));
+
+            assertSame(bad, cursor.nextRow());
+            assertEquals(TypedValues.NO_AMOUNT, cursor.getAmount(7));
+            assertEquals(TypedValues.NO_DATE, cursor.getEpochDay(2));
+            assertNull(cursor.nextRow());
+
+            assertEquals(1, cursor.getInvalidAmountCount());
+            assertEquals(1, cursor.getInvalidDateCount());
+        }
+    }
+
+    @Test
+    public void cursorUsesSecuMapping() {
+        TypedRowCursor cursor = TypedRowCursor.forFormat(
+                RowCursor.fromList(Arrays.<String[]>asList()), FormatRegistry.builtIn(Format.SECURITIES));
+        assertArrayEquals(new int[]{8, 9, 10}, cursor.getAmountColumns());
+        assertArrayEquals(new int[]{0, 1}, cursor.getDateColumns());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cursorRejectsUntypedColumn() throws IOException {
+        TypedRowCursor cursor = new TypedRowCursor(
+                RowCursor.fromList(Arrays.<String[]>asList(new String[]{"1", "2"})), new int[]{0}, 2, new int[0]);
+        cursor.nextRow();
+        cursor.getAmount(1);
+    }
+}
@@ -2,10 +2,13 @@ package com.fiscaladmin.gam.statementimporter.persister;
 
 import com.fiscaladmin.gam.statementimporter.mapping.MappingConfigurations;
 import com.fiscaladmin.gam.statementimporter.mapping.MappingConfig;
+import com.fiscaladmin.gam.statementimporter.parser.RowCursor;
+import com.fiscaladmin.gam.statementimporter.parser.StatementBatch;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.*;
 
@@ -565,4 +568,157 @@ public class RawTransactionPersisterTest {
             }
         }
     }
+
+    // -------------------------------------------------------------------------
+    // Streaming (RowCursor) persist
+    // -------------------------------------------------------------------------
+
+    @Test
+    public void persistCursorFlushesInChunksAndKeepsSequence() throws Exception {
+        int rowCount = RawTransactionPersister.STREAM_BATCH_SIZE * 2 + 5;
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(bankRow("EE1234", String.format("DOC%04d", i),
+                    "2024-06-01", String.valueOf(i), "EUR", "REF" + i));
+        }
+
+        int inserted = RawTransactionPersister.persistStream(RowCursor.fromList(rows), "STMT-STREAM",
+                MappingConfigurations.LHV_BANK_CONFIG, con, 0, new PersistOptions());
+
+        assertEquals(rowCount, inserted);
+        assertEquals(rowCount, countRowsWithStatementId("app_fd_bank_account_trx", "STMT-STREAM"));
+        assertEquals(String.valueOf(rowCount), getColumnValue("app_fd_bank_account_trx",
+                "c_transaction_id", "c_provider_reference = 'REF" + (rowCount - 1) + "'"));
+    }
+
+    @Test
+    public void persistEmptyCursorReturnsZero() throws Exception {
+        int inserted = RawTransactionPersister.persistStream(RowCursor.fromList(Collections.emptyList()),
+                "STMT001", MappingConfigurations.LHV_BANK_CONFIG, con, 0, new PersistOptions());
+
+        assertEquals(0, inserted);
+        assertEquals(0, countRows("app_fd_bank_account_trx"));
+    }
+
+    @Test
+    public void persistCursorContinuesTransactionIdsAfterOffset() throws Exception {
+        List<String[]> rows = new ArrayList<>();
+        rows.add(bankRow("EE1234", "DOC1", "2024-06-01", "1.00", "EUR", "REF_X"));
+        rows.add(bankRow("EE1234", "DOC2", "2024-06-01", "2.00", "EUR", "REF_Y"));
+
+        int inserted = RawTransactionPersister.persistStream(RowCursor.fromList(rows), "STMT-ZIP",
+                MappingConfigurations.LHV_BANK_CONFIG, con, 161, new PersistOptions());
+
+        assertEquals(2, inserted);
+        assertEquals("162", getColumnValue("app_fd_bank_account_trx",
+                "c_transaction_id", "c_provider_reference = 'REF_X'"));
+        assertEquals("163", getColumnValue("app_fd_bank_account_trx",
+                "c_transaction_id", "c_provider_reference = 'REF_Y'"));
+    }
+
+    // -------------------------------------------------------------------------
+    // Chunk size and commit interval
+    // -------------------------------------------------------------------------
+
+    @Test
+    public void persistListInConfiguredChunks() throws Exception {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            rows.add(bankRow("EE1234", "DOC" + i, "2024-06-01", String.valueOf(i), "EUR", "REF" + i));
+        }
+        PersistOptions options = new PersistOptions();
+        options.setBatchSize(5);
+        options.setCommitInterval(10);
+
+        int inserted = RawTransactionPersister.persistStream(RowCursor.fromList(rows), "STMT-CHUNKS",
+                MappingConfigurations.LHV_BANK_CONFIG, con, 0, options);
+
+        assertEquals(23, inserted);
+        assertEquals(23, countRowsWithStatementId("app_fd_bank_account_trx", "STMT-CHUNKS"));
+        assertEquals("023", getColumnValue("app_fd_bank_account_trx",
+                "c_transaction_id", "c_provider_reference = 'REF22'"));
+        assertTrue(con.getAutoCommit());
+    }
+
+    @Test
+    public void failedPersistKeepsOnlyCommittedChunks() throws Exception {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            rows.add(bankRow("EE1234", "DOC" + i, "2024-06-01", String.valueOf(i), "EUR", "REF" + i));
+        }
+        RowCursor source = RowCursor.fromList(rows);
+        RowCursor failing = new RowCursor() {
+            private int read;
+
+            @Override
+            public String[] nextRow() throws IOException {
+                if (++read > 23) {
+                    throw new IOException("truncated file");
+                }
+                return source.nextRow();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        PersistOptions options = new PersistOptions();
+        options.setBatchSize(5);
+        options.setCommitInterval(10);
+
+        try {
+            RawTransactionPersister.persistStream(failing, "STMT-FAIL",
+                    MappingConfigurations.LHV_BANK_CONFIG, con, 0, options);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // rows 21-23 were never committed
+        }
+
+        assertEquals(20, countRowsWithStatementId("app_fd_bank_account_trx", "STMT-FAIL"));
+        assertTrue(con.getAutoCommit());
+    }
+
+    @Test
+    public void persistOptionsClampInvalidValues() {
+        PersistOptions options = new PersistOptions();
+        assertEquals(PersistOptions.DEFAULT_BATCH_SIZE, options.getBatchSize());
+        assertEquals(0, options.getCommitInterval());
+
+        options.setBatchSize(0);
+        options.setCommitInterval(-5);
+        assertEquals(1, options.getBatchSize());
+        assertEquals(0, options.getCommitInterval());
+    }
+
+    // -------------------------------------------------------------------------
+    // Columnar (StatementBatch) persist
+    // -------------------------------------------------------------------------
+
+    @Test
+    public void persistBatchMatchesListPersist() throws Exception {
+        int rowCount = RawTransactionPersister.STREAM_BATCH_SIZE + 3;
+        StatementBatch batch = new StatementBatch();
+        for (int i = 0; i < rowCount; i++) {
+            batch.add(bankRow("EE1234", String.format("DOC%04d", i),
+                    "2024-06-01", String.valueOf(i), "EUR", "REF" + i));
+        }
+
+        int inserted = RawTransactionPersister.persistBatch(batch, "STMT-BATCH",
+                MappingConfigurations.LHV_BANK_CONFIG, con);
+
+        assertEquals(rowCount, inserted);
+        assertEquals(rowCount, countRowsWithStatementId("app_fd_bank_account_trx", "STMT-BATCH"));
+        assertEquals("001", getColumnValue("app_fd_bank_account_trx",
+                "c_transaction_id", "c_provider_reference = 'REF0'"));
+        assertEquals("DOC0007", getColumnValue("app_fd_bank_account_trx",
+                "c_document_nr", "c_provider_reference = 'REF7'"));
+        assertEquals(String.valueOf(rowCount), getColumnValue("app_fd_bank_account_trx",
+                "c_transaction_id", "c_provider_reference = 'REF" + (rowCount - 1) + "'"));
+    }
+
+    @Test
+    public void persistEmptyBatchReturnsZero() throws Exception {
+        assertEquals(0, RawTransactionPersister.persistBatch(new StatementBatch(), "STMT001",
+                MappingConfigurations.LHV_BANK_CONFIG, con));
+    }
 }